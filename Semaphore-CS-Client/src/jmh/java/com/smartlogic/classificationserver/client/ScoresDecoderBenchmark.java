@@ -0,0 +1,87 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.smartlogic.classificationserver.client.csvparser.CSVParser;
+
+/**
+ * Compares ClassificationScore(String) with ScoresDecoder on the SCORES field of a history record.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec (-Djmh.benchmarks=&lt;regexp&gt; to choose benchmarks)
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoresDecoderBenchmark {
+
+	@Param({ "10", "100" })
+	public int scoreCount;
+
+	private String field;
+	private String[] cells;
+	private ScoresDecoder scoresDecoder;
+
+	@Setup
+	public void setup() {
+		StringBuilder stringBuilder = new StringBuilder();
+		for (int i = 0; i < scoreCount; i++) {
+			if (i > 0) stringBuilder.append(',');
+			stringBuilder.append("Class" + (i % 4) + ".Term \\(" + (i % 50) + "\\)(" + (1000 + i % 50) + "):0." + (10 + i % 90));
+		}
+		field = stringBuilder.toString();
+		cells = CSVParser.parseLine(field);
+		scoresDecoder = new ScoresDecoder();
+	}
+
+	@Benchmark
+	public List<ClassificationScore> classificationScore() {
+		List<ClassificationScore> classificationScores = new ArrayList<ClassificationScore>(cells.length);
+		for (String cell: cells) {
+			try {
+				classificationScores.add(new ClassificationScore(cell));
+			} catch (NotAScoreException e) {
+				break;
+			}
+		}
+		return classificationScores;
+	}
+
+	@Benchmark
+	public void decodeCells(Blackhole blackhole) {
+		int size = scoresDecoder.decode(cells, 0);
+		for (int i = 0; i < size; i++) {
+			blackhole.consume(scoresDecoder.getClassIndex(i));
+			blackhole.consume(scoresDecoder.getScore(i));
+		}
+	}
+
+	@Benchmark
+	public void decodeField(Blackhole blackhole) {
+		int size = scoresDecoder.decode(field);
+		for (int i = 0; i < size; i++) {
+			blackhole.consume(scoresDecoder.getClassIndex(i));
+			blackhole.consume(scoresDecoder.getScore(i));
+		}
+	}
+}
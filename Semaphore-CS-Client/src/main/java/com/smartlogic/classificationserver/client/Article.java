@@ -15,6 +15,10 @@ import org.w3c.dom.NodeList;
  */
 public class Article extends ClassifiableObject {
 
+	/* An empty article, filled in by ResultReader */
+	Article() {
+	}
+
 	protected Article(Element articleElement) {
 		NodeList childrenNodes = articleElement.getChildNodes();
 		for (int n = 0; n < childrenNodes.getLength(); n++) {
@@ -0,0 +1,227 @@
+package com.smartlogic.classificationserver.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Classifies many short documents (titles, abstracts, messages) with a few requests rather than one each.
+ *
+ * Documents are packed into one HTML document per request, each in an article element of its own, and sent
+ * in multi-article mode. The articles of the response are taken to be the documents in the order they were
+ * packed, and each is returned as the result of its document. Should the server not return exactly one article
+ * per document, the documents of that request are classified one at a time instead, so a result never belongs
+ * to the wrong document.
+ *
+ * Requests are sent through the client's request pool, so several are in flight at once.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class ArticlePacker {
+	private static final Logger logger = LoggerFactory.getLogger(ArticlePacker.class);
+
+	private final ClassificationClient classificationClient;
+
+	public ArticlePacker(ClassificationClient classificationClient) {
+		this.classificationClient = classificationClient;
+	}
+
+	private int maxDocuments = 50;
+
+	public int getMaxDocuments() {
+		return maxDocuments;
+	}
+
+	/**
+	 * @param maxDocuments The most documents packed into one request
+	 */
+	public void setMaxDocuments(int maxDocuments) {
+		this.maxDocuments = maxDocuments;
+	}
+
+	private int maxCharacters = 100000;
+
+	public int getMaxCharacters() {
+		return maxCharacters;
+	}
+
+	/**
+	 * @param maxCharacters The most characters of text packed into one request. A longer document is still sent, in a request of its own.
+	 */
+	public void setMaxCharacters(int maxCharacters) {
+		this.maxCharacters = maxCharacters;
+	}
+
+	/**
+	 * Classify the documents
+	 *
+	 * @param bodies The documents
+	 * @return the result of each document, in the same order
+	 * @throws ClassificationException if any request fails
+	 */
+	public List<Result> classify(List<Body> bodies) throws ClassificationException {
+		return classify(bodies, null);
+	}
+
+	/**
+	 * Classify the documents
+	 *
+	 * @param bodies The documents
+	 * @param titles The title of each document, or null if they have none
+	 * @return the result of each document, in the same order
+	 * @throws ClassificationException if any request fails
+	 */
+	public List<Result> classify(List<Body> bodies, List<Title> titles) throws ClassificationException {
+		try {
+			return classifyAsync(bodies, titles).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof ClassificationException) throw (ClassificationException)e.getCause();
+			throw new ClassificationException(e.getCause().getClass().getSimpleName() + " classifying packed documents: " + e.getCause().getMessage());
+		}
+	}
+
+	/**
+	 * Classify the documents on the client's request pool
+	 *
+	 * @param bodies The documents
+	 * @param titles The title of each document, or null if they have none
+	 * @return a future that completes with the result of each document, in the same order
+	 */
+	public CompletableFuture<List<Result>> classifyAsync(List<Body> bodies, List<Title> titles) {
+		if ((titles != null) && (titles.size() != bodies.size())) {
+			throw new IllegalArgumentException(titles.size() + " titles for " + bodies.size() + " documents");
+		}
+
+		final Result[] results = new Result[bodies.size()];
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+		List<Integer> batch = new ArrayList<Integer>();
+		int batchCharacters = 0;
+		for (int d = 0; d < bodies.size(); d++) {
+			String text = getText(bodies.get(d));
+			if (text.trim().isEmpty()) {
+				// As for a single document, an empty one is not sent
+				results[d] = new Result();
+				continue;
+			}
+			int characters = text.length() + getText(getTitle(titles, d)).length();
+			if (!batch.isEmpty() && ((batch.size() >= maxDocuments) || (batchCharacters + characters > maxCharacters))) {
+				futures.add(submit(batch, bodies, titles, results));
+				batch = new ArrayList<Integer>();
+				batchCharacters = 0;
+			}
+			batch.add(d);
+			batchCharacters += characters;
+		}
+		if (!batch.isEmpty()) {
+			futures.add(submit(batch, bodies, titles, results));
+		}
+
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+				.thenApply(done -> Arrays.asList(results));
+	}
+
+	private CompletableFuture<Void> submit(final List<Integer> batch, final List<Body> bodies, final List<Title> titles, final Result[] results) {
+		return classificationClient.classifyAsync(() -> {
+			classifyBatch(batch, bodies, titles, results);
+			return null;
+		});
+	}
+
+	private void classifyBatch(List<Integer> batch, List<Body> bodies, List<Title> titles, Result[] results) throws ClassificationException {
+		if (batch.size() > 1) {
+			Result packedResult = classificationClient.getMultiArticleResult(pack(batch, bodies, titles), "packed.html");
+			List<Article> articles = packedResult.getArticles();
+			if (articles.size() == batch.size()) {
+				int a = 0;
+				for (Article article: articles) {
+					results[batch.get(a++)] = toResult(article);
+				}
+				return;
+			}
+			logger.warn("{} articles returned for {} packed documents; classifying them one at a time", articles.size(), batch.size());
+		}
+		for (int d: batch) {
+			results[d] = classificationClient.getClassifiedDocument(bodies.get(d), getTitle(titles, d));
+		}
+	}
+
+	/* The documents as the articles of an HTML document */
+	private byte[] pack(List<Integer> batch, List<Body> bodies, List<Title> titles) {
+		StringBuilder html = new StringBuilder("<html><body>");
+		for (int d: batch) {
+			html.append("<article>");
+			String title = getText(getTitle(titles, d));
+			if (!title.isEmpty()) {
+				html.append("<h1>");
+				escape(html, title);
+				html.append("</h1>");
+			}
+			for (String paragraph: getText(bodies.get(d)).split("\n\n")) {
+				if (paragraph.isEmpty()) continue;
+				html.append("<p>");
+				escape(html, paragraph);
+				html.append("</p>");
+			}
+			html.append("</article>\n");
+		}
+		html.append("</body></html>");
+		return html.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/* The article's scores, filtered as the client filters a document's, as a result of its own */
+	private Result toResult(Article article) {
+		Result result = new Result();
+		ScoreFilter scoreFilter = classificationClient.getScoreFilter();
+		for (Collection<ClassificationScore> classificationScores: article.getAllClassifications().values()) {
+			for (ClassificationScore classificationScore: (scoreFilter == null) ? classificationScores : scoreFilter.filter(classificationScores)) {
+				result.addClassificationScore(classificationScore);
+			}
+		}
+		// A filtered result holds only its scores
+		if (scoreFilter == null) {
+			result.addArticle(article);
+		}
+		return result;
+	}
+
+	/* The client needs a title, even an empty one, to classify a document on its own */
+	private static Title getTitle(List<Title> titles, int d) {
+		Title title = (titles == null) ? null : titles.get(d);
+		return (title == null) ? new Title("") : title;
+	}
+
+	private static String getText(StringObject stringObject) {
+		if ((stringObject == null) || (stringObject.getValue() == null)) return "";
+		return stringObject.getValue();
+	}
+
+	private static void escape(StringBuilder html, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '<':
+				html.append("&lt;");
+				break;
+			case '>':
+				html.append("&gt;");
+				break;
+			case '&':
+				html.append("&amp;");
+				break;
+			case '"':
+				html.append("&quot;");
+				break;
+			default:
+				html.append(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.Arrays;
+
+/**
+ * Classification history held column by column, one primitive array per field.
+ *
+ * Records are added by an AuditDecoder. Times are milliseconds since the epoch, and values that a record does
+ * not have are AuditFormat.UNDEFINED_FLOAT, AuditFormat.UNDEFINED_INT or UNDEFINED_TIME. A time that could not
+ * be parsed is 0, as with AuditFormat.UNDEFINED_DATE.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class AuditColumns {
+
+	public final static long UNDEFINED_TIME = Long.MIN_VALUE;
+
+	private int size = 0;
+	private boolean[] success;
+	private long[] startTime;
+	private long[] finishTime;
+	private float[] threshold;
+	private float[] clusteringThreshold;
+	private float[] documentScoreLimit;
+	private float[] timeTaken;
+	private int[] errorNum;
+	private String[] auditTag;
+
+	public AuditColumns() {
+		this(1024);
+	}
+
+	/**
+	 * @param capacity The number of records to make room for at first
+	 */
+	public AuditColumns(int capacity) {
+		capacity = Math.max(1, capacity);
+		success = new boolean[capacity];
+		startTime = new long[capacity];
+		finishTime = new long[capacity];
+		threshold = new float[capacity];
+		clusteringThreshold = new float[capacity];
+		documentScoreLimit = new float[capacity];
+		timeTaken = new float[capacity];
+		errorNum = new int[capacity];
+		auditTag = new String[capacity];
+	}
+
+	void add(boolean success, long startTime, long finishTime, float threshold, float clusteringThreshold,
+			float documentScoreLimit, float timeTaken, int errorNum, String auditTag) {
+		if (size == this.success.length) grow();
+		this.success[size] = success;
+		this.startTime[size] = startTime;
+		this.finishTime[size] = finishTime;
+		this.threshold[size] = threshold;
+		this.clusteringThreshold[size] = clusteringThreshold;
+		this.documentScoreLimit[size] = documentScoreLimit;
+		this.timeTaken[size] = timeTaken;
+		this.errorNum[size] = errorNum;
+		this.auditTag[size] = auditTag;
+		size++;
+	}
+
+	private void grow() {
+		int capacity = success.length * 2;
+		success = Arrays.copyOf(success, capacity);
+		startTime = Arrays.copyOf(startTime, capacity);
+		finishTime = Arrays.copyOf(finishTime, capacity);
+		threshold = Arrays.copyOf(threshold, capacity);
+		clusteringThreshold = Arrays.copyOf(clusteringThreshold, capacity);
+		documentScoreLimit = Arrays.copyOf(documentScoreLimit, capacity);
+		timeTaken = Arrays.copyOf(timeTaken, capacity);
+		errorNum = Arrays.copyOf(errorNum, capacity);
+		auditTag = Arrays.copyOf(auditTag, capacity);
+	}
+
+	/**
+	 * @return the number of records held
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param record The record's position
+	 * @return true if the record is a success record, false if it is an error record
+	 */
+	public boolean isSuccess(int record) {
+		return success[check(record)];
+	}
+
+	/**
+	 * @param record The record's position
+	 * @return the time the request started processing
+	 */
+	public long getStartTime(int record) {
+		return startTime[check(record)];
+	}
+
+	/**
+	 * @param record The record's position
+	 * @return the time the request finished processing
+	 */
+	public long getFinishTime(int record) {
+		return finishTime[check(record)];
+	}
+
+	/**
+	 * @param record The record's position
+	 * @return the threshold used for the classification
+	 */
+	public float getThreshold(int record) {
+		return threshold[check(record)];
+	}
+
+	/**
+	 * @param record The record's position
+	 * @return the clustering threshold used for the classification
+	 */
+	public float getClusteringThreshold(int record) {
+		return clusteringThreshold[check(record)];
+	}
+
+	/**
+	 * @param record The record's position
+	 * @return the limit on the number of document level scores
+	 */
+	public float getDocumentScoreLimit(int record) {
+		return documentScoreLimit[check(record)];
+	}
+
+	/**
+	 * @param record The record's position
+	 * @return the time taken (in milliseconds) for the request
+	 */
+	public float getTimeTaken(int record) {
+		return timeTaken[check(record)];
+	}
+
+	/**
+	 * @param record The record's position
+	 * @return the error number for the result (0 for success)
+	 */
+	public int getErrorNum(int record) {
+		return errorNum[check(record)];
+	}
+
+	/**
+	 * @param record The record's position
+	 * @return the audit tag specified in the request
+	 */
+	public String getAuditTag(int record) {
+		return auditTag[check(record)];
+	}
+
+	private int check(int record) {
+		if ((record < 0) || (record >= size)) throw new IndexOutOfBoundsException("Record " + record + " of " + size);
+		return record;
+	}
+}
@@ -0,0 +1,157 @@
+package com.smartlogic.classificationserver.client;
+
+import java.text.ParseException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.ibm.icu.text.SimpleDateFormat;
+
+import com.smartlogic.classificationserver.client.AuditFormat.DataField;
+
+/**
+ * An AuditFormat compiled for decoding many records.
+ *
+ * The column of every numeric field is resolved and each date format is built once, when the decoder is
+ * created. Each record is then parsed a single time into an AuditColumns, rather than on every call to a
+ * ClassificationRecord getter. Consecutive records logged in the same second share the parsed time.
+ *
+ * A decoder keeps parsing state and must not be shared between threads.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class AuditDecoder {
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final AuditFormat auditFormat;
+
+	private final DateColumn startTime;
+	private final DateColumn finishTime;
+	private final int thresholdColumn;
+	private final int clusteringThresholdColumn;
+	private final int documentScoreLimitColumn;
+	private final int timeTakenColumn;
+	private final int errorNumColumn;
+	private final int auditTagColumn;
+
+	private long malformedValues = 0;
+
+	AuditDecoder(AuditFormat auditFormat) {
+		this.auditFormat = auditFormat;
+		startTime = new DateColumn(auditFormat, DataField.STARTTIME);
+		finishTime = new DateColumn(auditFormat, DataField.FINISHTIME);
+		thresholdColumn = auditFormat.getColumn(DataField.THRESHOLD);
+		clusteringThresholdColumn = auditFormat.getColumn(DataField.CLUSTERINGTHRESHOLD);
+		documentScoreLimitColumn = auditFormat.getColumn(DataField.DOCUMENTSCORELIMIT);
+		timeTakenColumn = auditFormat.getColumn(DataField.TIMETAKEN);
+		errorNumColumn = auditFormat.getColumn(DataField.ERRORNUM);
+		auditTagColumn = auditFormat.getColumn(DataField.AUDITTAG);
+	}
+
+	/**
+	 * @return The format this decoder was compiled from
+	 */
+	public AuditFormat getAuditFormat() {
+		return auditFormat;
+	}
+
+	/**
+	 * Is the data line in the format expected for this decoder
+	 * @param data The data line containing the audit for this record
+	 * @return True if data matches the AuditFormat
+	 */
+	public boolean isExample(String[] data) {
+		return auditFormat.isExample(data);
+	}
+
+	/**
+	 * Parse one record onto the end of the columns
+	 * @param data The data line containing the audit for this record
+	 * @param success True if this is a success record
+	 * @param auditColumns The columns to add the record to
+	 */
+	public void decode(String[] data, boolean success, AuditColumns auditColumns) {
+		auditColumns.add(success,
+				startTime.parse(data),
+				finishTime.parse(data),
+				getFloat(thresholdColumn, data),
+				getFloat(clusteringThresholdColumn, data),
+				getFloat(documentScoreLimitColumn, data),
+				getFloat(timeTakenColumn, data),
+				getInt(errorNumColumn, data),
+				getString(auditTagColumn, data));
+	}
+
+	private static String getString(int column, String[] data) {
+		return ((column == -1) || (column >= data.length)) ? null : data[column];
+	}
+
+	private float getFloat(int column, String[] data) {
+		String stringValue = getString(column, data);
+		try {
+			return (stringValue == null) ? AuditFormat.UNDEFINED_FLOAT : Float.parseFloat(stringValue);
+		} catch (NumberFormatException e) {
+			malformed("NumberFormatException in Float field: " + e.getMessage());
+			return AuditFormat.UNDEFINED_FLOAT;
+		}
+	}
+
+	private int getInt(int column, String[] data) {
+		String stringValue = getString(column, data);
+		try {
+			return (stringValue == null) ? AuditFormat.UNDEFINED_INT : Integer.parseInt(stringValue);
+		} catch (NumberFormatException e) {
+			malformed("NumberFormatException in Integer field: " + e.getMessage());
+			return AuditFormat.UNDEFINED_INT;
+		}
+	}
+
+	/* A log of millions of records must not become millions of log lines, so only the first is logged */
+	private void malformed(String message) {
+		if (malformedValues++ == 0) {
+			logger.warn(message + " (further malformed values are counted, not logged)");
+		} else if (logger.isDebugEnabled()) {
+			logger.debug(message);
+		}
+	}
+
+	/**
+	 * @return the number of values this decoder could not parse and decoded as undefined
+	 */
+	public long getMalformedValues() {
+		return malformedValues;
+	}
+
+	/* A date field, with its format built once and the last value parsed remembered */
+	private class DateColumn {
+		private final int column;
+		private final String dateFormatPattern;
+		private final SimpleDateFormat dateFormat;
+		private String lastValue = null;
+		private long lastTime;
+
+		private DateColumn(AuditFormat auditFormat, DataField dataField) {
+			column = auditFormat.getColumn(dataField);
+			dateFormatPattern = (column == -1) ? null : auditFormat.getDateFormat(dataField);
+			dateFormat = (column == -1) ? null : new SimpleDateFormat(dateFormatPattern);
+		}
+
+		private long parse(String[] data) {
+			String stringValue = getString(column, data);
+			if (stringValue == null) return AuditColumns.UNDEFINED_TIME;
+			if (stringValue.equals(lastValue)) return lastTime;
+
+			long time;
+			try {
+				time = dateFormat.parse(stringValue).getTime();
+			} catch (ParseException e) {
+				malformed("ParseException in Date field (" + dateFormatPattern + "): " + e.getMessage());
+				time = AuditFormat.UNDEFINED_DATE.getTime();
+			}
+			lastValue = stringValue;
+			lastTime = time;
+			return time;
+		}
+	}
+}
@@ -31,7 +31,7 @@ public class AuditFormat {
 	public final static boolean UNDEFINED_BOOLEAN = false;
 	public final static Date UNDEFINED_DATE = new Date(0);
 
-	private enum DataField {
+	enum DataField {
 		STARTTIME, 				// The time that the request started processing
         FINISHTIME,				// The time that the request finished processing
         SOURCEIP,				// The ip address of the client sending the request
@@ -108,6 +108,26 @@ public class AuditFormat {
 		}
 	}
 
+	/**
+	 * Compile this format into a decoder that reads each record once into primitive columns
+	 * @return The decoder
+	 */
+	public AuditDecoder compile() {
+		return new AuditDecoder(this);
+	}
+
+	/* The column holding a field; -1 if the format does not include it */
+	int getColumn(DataField dataField) {
+		Integer column = fieldPositions.get(dataField);
+		return (column == null) ? -1 : column;
+	}
+
+	/* The date format of a field's column */
+	String getDateFormat(DataField dataField) {
+		String dateFormat = fieldFormats.get(fieldPositions.get(dataField));
+		return (dateFormat == null) ? defaultDateFormat : dateFormat;
+	}
+
 	/**
 	 * Is the data line in the format expected for this AuditFormat. This is tested by checking the fixed format fields to see if they match.
 	 * If they match, then it is assume that the data is of this format.
@@ -342,6 +362,18 @@ public class AuditFormat {
 		return classificationScores;
 	}
 
+	/**
+	 * Decode the scores from the data line into the decoder's arrays, without creating a ClassificationScore
+	 * for each tag
+	 * @param data The data line containing the audit for this record
+	 * @param scoresDecoder The decoder to hold the scores
+	 * @return The number of scores decoded
+	 */
+	public int getClassificationScores(String[] data, ScoresDecoder scoresDecoder) {
+		Integer startColumn = fieldPositions.get(DataField.SCORES);
+		return scoresDecoder.decode(data, (startColumn == null) ? data.length : startColumn);
+	}
+
 	private float getFloatField(DataField dataField, String[] data) {
 		String stringValue = getStringField(dataField, data);
 		try {
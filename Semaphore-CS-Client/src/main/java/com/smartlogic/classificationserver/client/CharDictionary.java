@@ -0,0 +1,105 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.Arrays;
+
+/**
+ * Numbers the distinct strings seen in a stream of characters.
+ *
+ * Characters are looked up straight from a buffer, so a String is only created the first time a value is seen.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+class CharDictionary {
+
+	private String[] strings = new String[16];
+	private int[] hashes = new int[16];
+	private int size = 0;
+
+	// Open addressing: each slot holds a string's index plus one, or 0 when empty
+	private int[] slots = new int[32];
+
+	/**
+	 * @param chars  The buffer holding the value
+	 * @param length The length of the value, which starts at the beginning of the buffer
+	 * @return the index of the value, which is added if it has not been seen before
+	 */
+	int lookup(char[] chars, int length) {
+		int hash = hash(chars, length);
+		int slot = slot(chars, length, hash);
+		int entry = slots[slot];
+		return (entry == 0) ? add(new String(chars, 0, length), hash, slot) : entry - 1;
+	}
+
+	/**
+	 * @param chars  The buffer holding the value
+	 * @param length The length of the value, which starts at the beginning of the buffer
+	 * @return the index of the value, or -1 if it has not been seen before
+	 */
+	int find(char[] chars, int length) {
+		return slots[slot(chars, length, hash(chars, length))] - 1;
+	}
+
+	/* The slot holding the value, or the empty slot where it belongs */
+	private int slot(char[] chars, int length, int hash) {
+		int mask = slots.length - 1;
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			int entry = slots[slot];
+			if ((entry == 0) || ((hashes[entry - 1] == hash) && matches(strings[entry - 1], chars, length))) {
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * @param index The index of a value
+	 * @return the value
+	 */
+	String get(int index) {
+		return strings[index];
+	}
+
+	int size() {
+		return size;
+	}
+
+	private int add(String string, int hash, int slot) {
+		if (size == strings.length) {
+			strings = Arrays.copyOf(strings, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		int index = size++;
+		strings[index] = string;
+		hashes[index] = hash;
+		slots[slot] = index + 1;
+		if (size * 2 > slots.length) rehash();
+		return index;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for (int index = 0; index < size; index++) {
+			int slot = hashes[index] & mask;
+			while (slots[slot] != 0) slot = (slot + 1) & mask;
+			slots[slot] = index + 1;
+		}
+	}
+
+	private static int hash(char[] chars, int length) {
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		// Spread the bits, as the low ones pick the slot
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean matches(String string, char[] chars, int length) {
+		if (string.length() != length) return false;
+		for (int i = 0; i < length; i++) {
+			if (string.charAt(i) != chars[i]) return false;
+		}
+		return true;
+	}
+}
@@ -70,6 +70,15 @@ public abstract class ClassifiableObject extends MetadataHoldingObject {
 		}
 	}
 
+	protected void addClassificationScore(ClassificationScore classificationScore) {
+		Collection<ClassificationScore> categoryCollection = categories.get(classificationScore.getRulebaseClass());
+		if (categoryCollection == null) {
+			categoryCollection = new TreeSet<ClassificationScore>();
+			categories.put(classificationScore.getRulebaseClass(), categoryCollection);
+		}
+		categoryCollection.add(classificationScore);
+	}
+
 	protected void addMeta(String name, String value){
 		if (noData(name))
 			return;
@@ -1,20 +1,47 @@
 package com.smartlogic.classificationserver.client;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -26,8 +53,9 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.http.Consts;
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
@@ -36,6 +64,9 @@ import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
 import org.apache.http.conn.HttpClientConnectionManager;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.entity.ContentType;
@@ -43,16 +74,23 @@ import org.apache.http.entity.mime.FormBodyPart;
 import org.apache.http.entity.mime.FormBodyPartBuilder;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.ByteArrayBody;
+import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.FileBody;
+import org.apache.http.entity.mime.content.InputStreamBody;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import com.smartlogic.classificationserver.client.cache.NearDuplicateIndex;
+import com.smartlogic.classificationserver.client.cache.ResultCache;
+import com.smartlogic.classificationserver.client.cache.SimHash;
+
 /**
  * General purpose client for the classification server
  *
@@ -142,6 +180,7 @@ public class ClassificationClient implements AutoCloseable {
 	public void commitPublishSet(String publishSetName) throws ClassificationException {
 		String commandString = getCommandXML("publish_set", publishSetName);
 		sendPostRequest(commandString, null);
+		invalidateResultCache();
 	}
 
 	/**
@@ -153,6 +192,7 @@ public class ClassificationClient implements AutoCloseable {
 	public void deactivatePublishSet(String publishSetName) throws ClassificationException {
 		String commandString = getCommandXML("publish_set_deactivate", publishSetName);
 		sendPostRequest(commandString, null);
+		invalidateResultCache();
 	}
 
 	/**
@@ -168,6 +208,19 @@ public class ClassificationClient implements AutoCloseable {
 		return csInfo;
 	}
 
+	/**
+	 * Return the information that one node of a classification server farm makes available.
+	 *
+	 * @param url The URL of the node
+	 * @return Classification Server information
+	 * @throws ClassificationException - There has been a connectivity issue
+	 */
+	public CSInfo getInfo(String url) throws ClassificationException {
+		logger.debug("getInfo: {}", url);
+
+		return new CSInfo(sendPostRequest(url, getCommandEntity(getCommandXML("info", null), null), EntityUtils::toByteArray));
+	}
+
 	/**
 	 * Return the list of languages available on the cs instance
 	 *
@@ -224,15 +277,27 @@ public class ClassificationClient implements AutoCloseable {
 	}
 
 	/**
-	 * Set the configuration of the classification server
+	 * Set the configuration of the classification server.
+	 *
+	 * The configuration is read when the client sends its first request, and the client then works from that
+	 * copy, so the configuration object must not be changed while the client is in use. To change the server,
+	 * parameters or token of a client in use, set a configuration again; its timeouts only apply to a new client.
 	 *
 	 * @param classificationConfiguration The configuration to use
 	 */
 	public void setClassificationConfiguration(ClassificationConfiguration classificationConfiguration) {
-		this.classificationConfiguration = classificationConfiguration;
+		synchronized (this) {
+			this.classificationConfiguration = classificationConfiguration;
+			if (httpClient == null) return;
+		}
+		try {
+			requestSettings = new RequestSettings(classificationConfiguration, getProxyURL());
+		} catch (ClassificationException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
 	}
 
-	private UUID auditUUID = null;
+	private volatile UUID auditUUID = null;
 
 	/**
 	 * Return the UUID object used to tag the request
@@ -254,7 +319,7 @@ public class ClassificationClient implements AutoCloseable {
 		this.auditUUID = auditGUID;
 	}
 
-	private String proxyHost = null;
+	private volatile String proxyHost = null;
 
 	/**
 	 * The name of the proxy host in use.
@@ -276,7 +341,7 @@ public class ClassificationClient implements AutoCloseable {
 		this.proxyHost = proxyHost;
 	}
 
-	private int proxyPort;
+	private volatile int proxyPort;
 
 	/**
 	 * The port of the proxy being used
@@ -298,13 +363,11 @@ public class ClassificationClient implements AutoCloseable {
 		this.proxyPort = proxyPort;
 	}
 
-	private String proxyURL;
+	private volatile String proxyURL;
 
 	private String getProxyURL() {
-		if (proxyURL == null) {
-			if ((proxyHost != null) && (proxyPort != 0)) {
-				proxyURL = "http://" + proxyHost + ":" + proxyPort;
-			}
+		if ((proxyURL == null) && (proxyHost != null) && (proxyPort != 0)) {
+			return "http://" + proxyHost + ":" + proxyPort;
 		}
 		return proxyURL;
 	}
@@ -326,7 +389,7 @@ public class ClassificationClient implements AutoCloseable {
 	 * @throws ClassificationException Classification exception
 	 */
 	public Result getClassifiedDocument(File inputFile, String fileType) throws ClassificationException {
-		return new Result(getStructuredDocument(inputFile, fileType));
+		return getClassifiedDocument(inputFile, fileType, null, null);
 	}
 
 	public Document getStructuredDocument(File inputFile, String fileType) throws ClassificationException {
@@ -343,7 +406,7 @@ public class ClassificationClient implements AutoCloseable {
 	 * @throws ClassificationException Classification exception
 	 */
 	public Result getClassifiedDocument(FileName fileName, Body body, Title title) throws ClassificationException {
-		return new Result(getStructuredDocument(fileName, body, title));
+		return getClassifiedDocument(fileName, body, title, null);
 	}
 
 	public Document getStructuredDocument(FileName fileName, Body body, Title title) throws ClassificationException {
@@ -359,7 +422,7 @@ public class ClassificationClient implements AutoCloseable {
 	 * @throws ClassificationException Classification exception
 	 */
 	public Result getClassifiedDocument(Body body, Title title) throws ClassificationException {
-		return new Result(getStructuredDocument(body, title));
+		return getClassifiedDocument(null, body, title, null);
 	}
 
 	public Document getStructuredDocument(Body body, Title title) throws ClassificationException {
@@ -378,16 +441,24 @@ public class ClassificationClient implements AutoCloseable {
 	 */
 	public Result getClassifiedDocument(FileName fileName, Body body, Title title,
 			Map<String, Collection<String>> metadata) throws ClassificationException {
-		return new Result(getStructuredDocument(fileName, body, title, metadata));
+		Collection<FormBodyPart> parts = getRequestParts(fileName, body, title, metadata);
+		if ((nearDuplicateIndex == null) || (parts == null)) return getResult(parts);
+		requestTiming.remove();
+		return shadow(parts, toResult(getBodyResponse(body, parts), requestTiming.get()));
 	}
 
 	public Document getStructuredDocument(FileName fileName, Body body, Title title,
 			Map<String, Collection<String>> metadata) throws ClassificationException {
+		return toDocument(getRequestParts(fileName, body, title, metadata));
+	}
+
+	private Collection<FormBodyPart> getRequestParts(FileName fileName, Body body, Title title,
+			Map<String, Collection<String>> metadata) throws ClassificationException {
 		logger.debug("Treating document: '" + title.getValue() + "'");
 
 		// If there is no body, then don't bother attempting to classify the document
 		if ((body == null) || (body.getValue() == null) || (body.getValue().trim().length() == 0)) {
-			return getBlankStructuredDocument();
+			return null;
 		}
 
 		Collection<FormBodyPart> parts = new ArrayList<FormBodyPart>();
@@ -395,7 +466,7 @@ public class ClassificationClient implements AutoCloseable {
 		addTitle(parts, title);
 		addMetadata(parts, metadata);
 		addByteArray(parts, body, fileName);
-		return XMLReader.getDocument(getClassifications(parts));
+		return parts;
 	}
 
 	public byte[] getClassificationServerResponse(FileName filename, Body body, Title title,
@@ -413,7 +484,7 @@ public class ClassificationClient implements AutoCloseable {
 		addTitle(parts, title);
 		addMetadata(parts, metadata);
 		addByteArray(parts, body, filename);
-		return getClassificationServerResponse(parts);
+		return getBodyResponse(body, parts);
 	}
 
 	/**
@@ -427,7 +498,7 @@ public class ClassificationClient implements AutoCloseable {
 	 */
 	public Result getClassifiedDocument(Body body, Title title, Map<String, Collection<String>> metadata)
 			throws ClassificationException {
-		return new Result(getStructuredDocument(body, title, metadata));
+		return getClassifiedDocument(null, body, title, metadata);
 	}
 
 	public Document getStructuredDocument(Body body, Title title, Map<String, Collection<String>> metadata)
@@ -443,7 +514,7 @@ public class ClassificationClient implements AutoCloseable {
 	 * @throws ClassificationException Classification exception
 	 */
 	public Result getClassifiedDocument(URL url) throws ClassificationException {
-		return new Result(getStructuredDocument(url));
+		return getClassifiedDocument(url, null, null);
 	}
 
 	public Document getStructuredDocument(URL url) throws ClassificationException {
@@ -461,19 +532,309 @@ public class ClassificationClient implements AutoCloseable {
 	 */
 	public Result getClassifiedDocument(URL url, Title title, Map<String, Collection<String>> metadata)
 			throws ClassificationException {
-		return new Result(getStructuredDocument(url, title, metadata));
+		return getResult(getRequestParts(url, title, metadata));
 	}
 
 	public Document getStructuredDocument(URL url, Title title, Map<String, Collection<String>> metadata)
 			throws ClassificationException {
+		return toDocument(getRequestParts(url, title, metadata));
+	}
+
+	private Collection<FormBodyPart> getRequestParts(URL url, Title title, Map<String, Collection<String>> metadata)
+			throws ClassificationException {
 		Collection<FormBodyPart> parts = new ArrayList<FormBodyPart>();
 		addTitle(parts, title);
 		addMetadata(parts, metadata);
 		parts.add(getFormPart("path", url.toExternalForm()));
-		return XMLReader.getDocument(getClassifications(parts));
+		return parts;
+	}
+
+	/* Asynchronous classification requests */
+
+	/**
+	 * Classify the supplied file without blocking the calling thread
+	 *
+	 * @param inputFile The input file to classify
+	 * @param fileType  File type of "inputFile". If the file type is not supplied
+	 *                  (i.e. is null) then it will be guessed by classification
+	 *                  server.
+	 * @return a future holding the classifications as returned by classification server.
+	 * @see #classifyAsync(AsyncRequest)
+	 */
+	public CompletableFuture<Result> classifyAsync(final File inputFile, final String fileType) {
+		return classifyAsync(() -> getClassifiedDocument(inputFile, fileType));
+	}
+
+	/**
+	 * Classify the supplied file without blocking the calling thread
+	 *
+	 * @param inputFile The input file to classify
+	 * @param fileType  File type of "inputFile". If null it will be guessed by classification server.
+	 * @param title     The document title
+	 * @param metadata  Map containing metadata
+	 * @return a future holding the classifications as returned by classification server.
+	 */
+	public CompletableFuture<Result> classifyAsync(final File inputFile, final String fileType, final Title title,
+			final Map<String, Collection<String>> metadata) {
+		return classifyAsync(() -> getClassifiedDocument(inputFile, fileType, title, metadata));
+	}
+
+	/**
+	 * Classify the supplied title and body as if they were a document without blocking the calling thread
+	 *
+	 * @param body  The document body
+	 * @param title The document title
+	 * @return a future holding the classifications as returned by classification server.
+	 */
+	public CompletableFuture<Result> classifyAsync(final Body body, final Title title) {
+		return classifyAsync(() -> getClassifiedDocument(body, title));
+	}
+
+	/**
+	 * Classify the supplied title and body as if they were a document without blocking the calling thread
+	 *
+	 * @param fileName The file name of the document to classify
+	 * @param body     The document body
+	 * @param title    The document title
+	 * @return a future holding the classifications as returned by classification server.
+	 */
+	public CompletableFuture<Result> classifyAsync(final FileName fileName, final Body body, final Title title) {
+		return classifyAsync(() -> getClassifiedDocument(fileName, body, title));
+	}
+
+	/**
+	 * Classify the supplied title and body as if they were a document without blocking the calling thread
+	 *
+	 * @param body     The document body
+	 * @param title    The document title
+	 * @param metadata Map containing metadata
+	 * @return a future holding the classifications as returned by classification server.
+	 */
+	public CompletableFuture<Result> classifyAsync(final Body body, final Title title,
+			final Map<String, Collection<String>> metadata) {
+		return classifyAsync(() -> getClassifiedDocument(body, title, metadata));
+	}
+
+	/**
+	 * Classify the supplied title and body as if they were a document without blocking the calling thread
+	 *
+	 * @param fileName The file name of the document to classify
+	 * @param body     The document body
+	 * @param title    The document title
+	 * @param metadata Map containing metadata
+	 * @return a future holding the classifications as returned by classification server.
+	 */
+	public CompletableFuture<Result> classifyAsync(final FileName fileName, final Body body, final Title title,
+			final Map<String, Collection<String>> metadata) {
+		return classifyAsync(() -> getClassifiedDocument(fileName, body, title, metadata));
+	}
+
+	/**
+	 * Classify the supplied url without blocking the calling thread
+	 *
+	 * @param url The URL to classify
+	 * @return a future holding the classifications as returned by classification server.
+	 */
+	public CompletableFuture<Result> classifyAsync(final URL url) {
+		return classifyAsync(() -> getClassifiedDocument(url));
+	}
+
+	/**
+	 * Classify the supplied url with the extra metadata without blocking the calling thread
+	 *
+	 * @param url      The URL to classify
+	 * @param title    The document title
+	 * @param metadata Map containing metadata
+	 * @return a future holding the classifications as returned by classification server.
+	 */
+	public CompletableFuture<Result> classifyAsync(final URL url, final Title title,
+			final Map<String, Collection<String>> metadata) {
+		return classifyAsync(() -> getClassifiedDocument(url, title, metadata));
+	}
+
+	/**
+	 * Classify the supplied data without blocking the calling thread
+	 *
+	 * @param data     Data to classify
+	 * @param fileName A string containing the name of the file to classify
+	 * @return a future holding the structured result of the classification
+	 */
+	public CompletableFuture<Result> classifyAsync(final byte[] data, final String fileName) {
+		return classifyAsync(() -> getClassifiedDocument(data, fileName));
+	}
+
+	/**
+	 * Classify the supplied data without blocking the calling thread
+	 *
+	 * @param data     Data to classify
+	 * @param fileName A string containing the name of the file to classify
+	 * @param title    The document title
+	 * @param metadata Map containing metadata
+	 * @return a future holding the structured result of the classification
+	 */
+	public CompletableFuture<Result> classifyAsync(final byte[] data, final String fileName, final Title title,
+			final Map<String, Collection<String>> metadata) {
+		return classifyAsync(() -> getClassifiedDocument(data, fileName, title, metadata));
+	}
+
+	/**
+	 * A classification request that can be run by {@link ClassificationClient#classifyAsync(AsyncRequest)}
+	 *
+	 * @param <T> The type of the request's result
+	 */
+	@FunctionalInterface
+	public interface AsyncRequest<T> {
+		T call() throws ClassificationException;
+	}
+
+	/**
+	 * Run the supplied request on the client's request pool.
+	 *
+	 * At most clientPoolSize requests are sent to classification server at once and up to asyncQueueSize
+	 * more wait for a free connection. Once both are full this method blocks until a request completes, so
+	 * a single thread feeding documents can never get further ahead of the server than that. If the calling
+	 * thread is interrupted while waiting, the returned future fails with a ClassificationException.
+	 *
+	 * @param <T>     The type of the request's result
+	 * @param request The request to run
+	 * @return a future that completes with the request's result, or exceptionally with its ClassificationException
+	 */
+	public <T> CompletableFuture<T> classifyAsync(final AsyncRequest<T> request) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		initializeAsync();
+		try {
+			asyncPermits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(new ClassificationException("Interrupted waiting to queue request"));
+			return future;
+		}
+		try {
+			asyncExecutor.execute(new AsyncTask<T>(request, future, asyncPermits));
+		} catch (RuntimeException e) {
+			// Rejected because the client has been closed
+			asyncPermits.release();
+			future.completeExceptionally(new ClassificationException("Request rejected: " + e.getMessage()));
+		}
+		return future;
+	}
+
+	/* Keeps the future with the request so a request close() never sends can still be failed */
+	private static class AsyncTask<T> implements Runnable {
+		private final AsyncRequest<T> request;
+		private final CompletableFuture<T> future;
+		private final Semaphore permits;
+
+		private AsyncTask(AsyncRequest<T> request, CompletableFuture<T> future, Semaphore permits) {
+			this.request = request;
+			this.future = future;
+			this.permits = permits;
+		}
+
+		@Override
+		public void run() {
+			T result;
+			try {
+				result = request.call();
+			} catch (Throwable t) {
+				permits.release();
+				future.completeExceptionally(t);
+				return;
+			}
+			// Release first so the permit is back by the time anyone waiting on the future sees it complete
+			permits.release();
+			future.complete(result);
+		}
+
+		private void cancel() {
+			permits.release();
+			future.completeExceptionally(new ClassificationException("Client closed before the request was sent"));
+		}
 	}
 
-	private final static SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ssZ");
+	private volatile int asyncQueueSize = 100;
+
+	/**
+	 * The number of asynchronous requests that may wait for a free connection
+	 *
+	 * @return The queue size
+	 */
+	public int getAsyncQueueSize() {
+		return asyncQueueSize;
+	}
+
+	/**
+	 * Set the number of asynchronous requests that may wait for a free connection before classifyAsync
+	 * blocks its caller (default 100). This must be set before the first asynchronous request.
+	 *
+	 * @param asyncQueueSize The queue size
+	 */
+	public void setAsyncQueueSize(int asyncQueueSize) {
+		this.asyncQueueSize = asyncQueueSize;
+	}
+
+	private volatile long closeTimeoutMS = 10000;
+
+	public long getCloseTimeoutMS() {
+		return closeTimeoutMS;
+	}
+
+	/**
+	 * @param closeTimeoutMS How long close() waits for accepted asynchronous requests to finish (default 10000)
+	 */
+	public void setCloseTimeoutMS(long closeTimeoutMS) {
+		this.closeTimeoutMS = closeTimeoutMS;
+	}
+
+	/**
+	 * @return the number of asynchronous requests that are running or waiting to run
+	 */
+	public int getAsyncRequestsOutstanding() {
+		if (asyncExecutor == null) {
+			return 0;
+		}
+		return clientPoolSize + asyncQueueSize - asyncPermits.availablePermits();
+	}
+
+	private ThreadPoolExecutor asyncExecutor = null;
+	private AsyncPermits asyncPermits = null;
+
+	/* Lets the permits follow the pool size */
+	private static class AsyncPermits extends Semaphore {
+		private static final long serialVersionUID = 1L;
+
+		private AsyncPermits(int permits) {
+			super(permits);
+		}
+
+		@Override
+		protected void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
+
+	private synchronized void initializeAsync() {
+		if (asyncExecutor == null) {
+			final String threadPrefix = "ClassificationClient-async-" + asyncClientCount.incrementAndGet() + "-";
+			asyncPermits = new AsyncPermits(clientPoolSize + asyncQueueSize);
+			asyncExecutor = new ThreadPoolExecutor(clientPoolSize, clientPoolSize, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger threadCount = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, threadPrefix + threadCount.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			asyncExecutor.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	private static final AtomicInteger asyncClientCount = new AtomicInteger();
+
+	private final static DateTimeFormatter historyTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssZ");
 
 	/**
 	 * Return the classification records for all requests between the two supplied
@@ -488,14 +849,45 @@ public class ClassificationClient implements AutoCloseable {
 			throws ClassificationException {
 		logger.info("getClassificationHistory - entry");
 
+		ClassificationHistory classificationHistory = new ClassificationHistory(
+				getClassificationHistoryData(formatHistoryTime(startTime), formatHistoryTime(endTime)));
+		return classificationHistory.getClassificationRecords();
+	}
+
+	/**
+	 * Read the classification records for all requests between the two supplied dates one at a time.
+	 *
+	 * The range is fetched in windows of windowMS, up to clientPoolSize of them at once, so a long or busy
+	 * range can be read without holding all of it in memory.
+	 *
+	 * @param startTime The earliest possible date for returned results
+	 * @param endTime   The latest possible date for returned results
+	 * @param windowMS  The length of each window fetched from classification server
+	 * @return A reader that returns the records in time order
+	 */
+	public ClassificationHistoryReader getClassificationHistoryReader(Date startTime, Date endTime, long windowMS) {
+		return new ClassificationHistoryReader(this, startTime, endTime, windowMS, clientPoolSize);
+	}
+
+	CompletableFuture<ClassificationHistory> getClassificationHistoryAsync(Date startTime, Date endTime) {
+		final String start = formatHistoryTime(startTime);
+		final String finish = formatHistoryTime(endTime);
+		return classifyAsync(() -> new ClassificationHistory(getClassificationHistoryData(start, finish)));
+	}
+
+	private static String formatHistoryTime(Date time) {
+		return historyTimeFormatter.format(ZonedDateTime.ofInstant(time.toInstant(), ZoneId.systemDefault()));
+	}
+
+	// History is never answered from the result cache, as it grows over time
+	private byte[] getClassificationHistoryData(String startTime, String endTime) throws ClassificationException {
 		ArrayList<FormBodyPart> partsList = new ArrayList<FormBodyPart>();
-		partsList.add(getFormPart("start_time", simpleDateFormat.format(startTime)));
-		partsList.add(getFormPart("finish_time", simpleDateFormat.format(endTime)));
+		partsList.add(getFormPart("start_time", startTime));
+		partsList.add(getFormPart("finish_time", endTime));
 		partsList.add(getFormPart("operation", "getclassificationhistory"));
 
-		ClassificationHistory classificationHistory = new ClassificationHistory(
-				getClassificationServerResponse(partsList));
-		return classificationHistory.getClassificationRecords();
+		// The audit log read is the configured server's own
+		return sendCommandRequest(getRequestEntity(getRequestTemplate(), partsList));
 	}
 
 	public byte[] getClassifiedBytes(Body body, Title title, Map<String, Collection<String>> metadata)
@@ -512,7 +904,7 @@ public class ClassificationClient implements AutoCloseable {
 		addTitle(parts, title);
 		addMetadata(parts, metadata);
 		addByteArray(parts, body, null);
-		return getClassifications(parts);
+		return getBodyResponse(body, parts);
 	}
 
 	public byte[] getClassifiedBytes(URL url, Title title, Map<String, Collection<String>> metadata)
@@ -528,6 +920,71 @@ public class ClassificationClient implements AutoCloseable {
 		return getClassificationServerResponse(null, body, title, null);
 	}
 
+	/**
+	 * Write the output of classification server for the supplied title and body to the stream as it arrives,
+	 * so however large the response, it is never held in memory. Nothing is written for an empty body. A
+	 * response from the near duplicate index is written from there; one read from the server is not added to
+	 * the index or the result cache, as that would mean holding it.
+	 *
+	 * @param filename     The file name of the document to classify
+	 * @param body         The document body
+	 * @param title        The document title
+	 * @param metadata     Map containing metadata
+	 * @param outputStream Where the response is written. It is flushed, but not closed.
+	 * @return The number of bytes written
+	 * @throws ClassificationException Classification exception
+	 */
+	public long getClassificationServerResponse(FileName filename, Body body, Title title,
+			Map<String, Collection<String>> metadata, OutputStream outputStream) throws ClassificationException {
+		return writeBodyResponse(body, getRequestParts(filename, body, title, metadata), outputStream);
+	}
+
+	/**
+	 * As for the stream, writing the output of classification server to the channel
+	 *
+	 * @param filename The file name of the document to classify
+	 * @param body     The document body
+	 * @param title    The document title
+	 * @param metadata Map containing metadata
+	 * @param channel  Where the response is written. It is not closed.
+	 * @return The number of bytes written
+	 * @throws ClassificationException Classification exception
+	 */
+	public long getClassificationServerResponse(FileName filename, Body body, Title title,
+			Map<String, Collection<String>> metadata, WritableByteChannel channel) throws ClassificationException {
+		return getClassificationServerResponse(filename, body, title, metadata, Channels.newOutputStream(channel));
+	}
+
+	/**
+	 * Write the output of classification server for the supplied title and body to the stream as it arrives
+	 *
+	 * @param body         The document body
+	 * @param title        The document title
+	 * @param metadata     Map containing metadata
+	 * @param outputStream Where the response is written. It is flushed, but not closed.
+	 * @return The number of bytes written
+	 * @throws ClassificationException Classification exception
+	 */
+	public long getClassifiedBytes(Body body, Title title, Map<String, Collection<String>> metadata,
+			OutputStream outputStream) throws ClassificationException {
+		return getClassificationServerResponse(null, body, title, metadata, outputStream);
+	}
+
+	/**
+	 * Write the output of classification server for the supplied title and body to the channel as it arrives
+	 *
+	 * @param body     The document body
+	 * @param title    The document title
+	 * @param metadata Map containing metadata
+	 * @param channel  Where the response is written. It is not closed.
+	 * @return The number of bytes written
+	 * @throws ClassificationException Classification exception
+	 */
+	public long getClassifiedBytes(Body body, Title title, Map<String, Collection<String>> metadata,
+			WritableByteChannel channel) throws ClassificationException {
+		return getClassificationServerResponse(null, body, title, metadata, Channels.newOutputStream(channel));
+	}
+
 	/**
 	 * Return directly the output from classification server with no analysis
 	 *
@@ -551,18 +1008,22 @@ public class ClassificationClient implements AutoCloseable {
 	 * @throws ClassificationException Classification exception
 	 */
 	public Result getClassifiedDocument(byte[] data, String fileName) throws ClassificationException {
-		return new Result(getStructuredDocument(data, fileName));
+		return getResult(getRequestParts(data, fileName));
 	}
 
 	public Document getStructuredDocument(byte[] data, String fileName) throws ClassificationException {
+		return toDocument(getRequestParts(data, fileName));
+	}
+
+	private Collection<FormBodyPart> getRequestParts(byte[] data, String fileName) throws ClassificationException {
 		Collection<FormBodyPart> parts = new ArrayList<FormBodyPart>();
 
 		if ((data == null) || (data.length == 0))
-			return getBlankStructuredDocument();
+			return null;
 
 		addByteArray(parts, data, fileName);
 
-		return XMLReader.getDocument(getClassificationServerResponse(parts));
+		return parts;
 	}
 
 	/**
@@ -577,11 +1038,16 @@ public class ClassificationClient implements AutoCloseable {
 	 */
 	public Result getClassifiedDocument(byte[] data, String fileName, Title title,
 			Map<String, Collection<String>> metadata) throws ClassificationException {
-		return new Result(getStructuredDocument(data, fileName, title, metadata));
+		return getResult(getRequestParts(data, fileName, title, metadata));
 	}
 
 	public Document getStructuredDocument(byte[] data, String fileName, Title title,
 			Map<String, Collection<String>> metadata) throws ClassificationException {
+		return toDocument(getRequestParts(data, fileName, title, metadata));
+	}
+
+	private Collection<FormBodyPart> getRequestParts(byte[] data, String fileName, Title title,
+			Map<String, Collection<String>> metadata) throws ClassificationException {
 		logger.debug("Treating file: '" + fileName + "'");
 		Collection<FormBodyPart> parts = new ArrayList<FormBodyPart>();
 
@@ -589,7 +1055,7 @@ public class ClassificationClient implements AutoCloseable {
 		addMetadata(parts, metadata);
 		addByteArray(parts, data, fileName);
 
-		return XMLReader.getDocument(getClassificationServerResponse(parts));
+		return parts;
 	}
 
 	/**
@@ -606,48 +1072,208 @@ public class ClassificationClient implements AutoCloseable {
 	 */
 	public Result getClassifiedDocument(File inputFile, String fileType, Title title,
 			Map<String, Collection<String>> metadata) throws ClassificationException {
-		return new Result(getStructuredDocument(inputFile, fileType, title, metadata));
+		return getResult(getRequestParts(inputFile, fileType, title, metadata));
 	}
 
 	public Document getStructuredDocument(File inputFile, String fileType, Title title,
 			Map<String, Collection<String>> metadata) throws ClassificationException {
+		return toDocument(getRequestParts(inputFile, fileType, title, metadata));
+	}
+
+	private Collection<FormBodyPart> getRequestParts(File inputFile, String fileType, Title title,
+			Map<String, Collection<String>> metadata) throws ClassificationException {
 		Collection<FormBodyPart> parts = new ArrayList<FormBodyPart>();
 
 		addTitle(parts, title);
 		addMetadata(parts, metadata);
 		addFile(parts, inputFile, fileType);
 
-		return XMLReader.getDocument(getClassificationServerResponse(parts));
-	}
-
-	private void addTitle(Collection<FormBodyPart> parts, Title title) {
-		if ((title != null) && (title.getValue() != null) && (title.getValue().length() > 0)) {
-			parts.add(title.asFormPart());
-		}
-	}
-
-	private void addByteArray(Collection<FormBodyPart> parts, Body body, FileName filename) {
-		if (filename == null) {
-			parts.add(body.asFormPart());
-		} else {
-			addByteArray(parts, body.getValue().getBytes(Charset.forName("UTF-8")), filename.getValue());
-		}
-	}
-
-	private void addByteArray(Collection<FormBodyPart> parts, byte[] data, String fileName) {
-		parts.add(FormBodyPartBuilder.create("UploadFile", new ByteArrayBody(data, fileName)).build());
+		return parts;
 	}
 
-	private void addFile(Collection<FormBodyPart> parts, File inputFile, String fileType)
+	/**
+	 * Classify the file at the supplied path. The file is streamed to classification server rather than read into memory.
+	 *
+	 * @param path     The file to classify
+	 * @param title    The document title
+	 * @param metadata Map containing metadata
+	 * @return The structured result of the classification
+	 * @throws ClassificationException Classification exception
+	 */
+	public Result getClassifiedDocument(Path path, Title title, Map<String, Collection<String>> metadata)
 			throws ClassificationException {
-		if (inputFile == null) {
+		if (path == null) {
 			throw new ClassificationException("Null input file provided");
 		}
-		if (!inputFile.exists()) {
-			throw new ClassificationException("Input file not found: " + inputFile.getAbsolutePath());
+		if (!Files.isRegularFile(path)) {
+			throw new ClassificationException("Input file not found: " + path.toAbsolutePath());
 		}
+		logger.debug("Treating file: '" + path + "'");
 
-		parts.add(getFormPart("UploadFile", inputFile));
+		Collection<FormBodyPart> parts = new ArrayList<FormBodyPart>();
+		addTitle(parts, title);
+		addMetadata(parts, metadata);
+		parts.add(FormBodyPartBuilder.create("UploadFile", new PathBody(path)).build());
+		return getResult(parts);
+	}
+
+	/**
+	 * Classify the content of the supplied stream. The content is streamed to classification server as it
+	 * is read, so it is never held in memory; as its length is not known it is sent chunked. The stream is
+	 * closed once it has been sent.
+	 *
+	 * @param inputStream The content to classify
+	 * @param fileName    The name of the file the content came from, used by classification server to tell its type
+	 * @param title       The document title
+	 * @param metadata    Map containing metadata
+	 * @return The structured result of the classification
+	 * @throws ClassificationException Classification exception
+	 */
+	public Result getClassifiedDocument(InputStream inputStream, String fileName, Title title,
+			Map<String, Collection<String>> metadata) throws ClassificationException {
+		if (inputStream == null) {
+			throw new ClassificationException("Null input stream provided");
+		}
+		logger.debug("Treating stream: '" + fileName + "'");
+
+		Collection<FormBodyPart> parts = new ArrayList<FormBodyPart>();
+		addTitle(parts, title);
+		addMetadata(parts, metadata);
+		parts.add(FormBodyPartBuilder.create("UploadFile",
+				new InputStreamBody(inputStream, ContentType.DEFAULT_BINARY, fileName)).build());
+		return getResult(parts);
+	}
+
+	/**
+	 * Classify the content of the supplied channel, as for an input stream. The channel is closed once it
+	 * has been sent.
+	 *
+	 * @param channel  The content to classify
+	 * @param fileName The name of the file the content came from, used by classification server to tell its type
+	 * @param title    The document title
+	 * @param metadata Map containing metadata
+	 * @return The structured result of the classification
+	 * @throws ClassificationException Classification exception
+	 */
+	public Result getClassifiedDocument(ReadableByteChannel channel, String fileName, Title title,
+			Map<String, Collection<String>> metadata) throws ClassificationException {
+		if (channel == null) {
+			throw new ClassificationException("Null channel provided");
+		}
+		return getClassifiedDocument(Channels.newInputStream(channel), fileName, title, metadata);
+	}
+
+	/* Null parts are a document that is not sent because it is empty */
+	private Document toDocument(Collection<FormBodyPart> parts) throws ClassificationException {
+		if (parts == null) return getBlankStructuredDocument();
+		return XMLReader.getDocument(getClassificationServerResponse(parts));
+	}
+
+	private Result getResult(Collection<FormBodyPart> parts) throws ClassificationException {
+		if (parts == null) return new Result();
+		return shadow(parts, getServerResult(parts));
+	}
+
+	/* Classify for a ShadowClassifier, which this client is the shadow of */
+	Result getShadowResult(Collection<FormBodyPart> parts) throws ClassificationException {
+		return getServerResult(parts);
+	}
+
+	/* Hand the request to the shadow classifier, if there is one and the parts can be sent again */
+	private Result shadow(Collection<FormBodyPart> parts, Result result) {
+		ShadowClassifier currentShadowClassifier = shadowClassifier;
+		if ((currentShadowClassifier != null) && isRepeatable(parts)) {
+			currentShadowClassifier.offer(parts, result);
+		}
+		return result;
+	}
+
+	private Result getServerResult(Collection<FormBodyPart> parts) throws ClassificationException {
+		if ((resultCache != null) || (!streamingResults && (scoreFilter == null))) {
+			// A timing left after the request is this request's; there is none if the cache answered
+			requestTiming.remove();
+			return toResult(getClassificationServerResponse(parts), requestTiming.get());
+		}
+
+		// Parse the response as it arrives rather than buffering it
+		final ScoreFilter currentScoreFilter = scoreFilter;
+		return sendPostRequest(getRequestEntity(getRequestTemplate(), parts), responseEntity -> {
+			try (InputStream inputStream = responseEntity.getContent()) {
+				return ResultReader.read(inputStream, currentScoreFilter);
+			}
+		});
+	}
+
+	/**
+	 * Classify the supplied title and body without the score filter, for LargeDocumentClassifier, which
+	 * filters the scores once it has merged them.
+	 */
+	Result getUnfilteredResult(Body body, Title title, Map<String, Collection<String>> metadata) throws ClassificationException {
+		Collection<FormBodyPart> parts = getRequestParts(null, body, title, metadata);
+		if (parts == null) return new Result();
+		return ResultReader.read(getClassificationServerResponse(parts));
+	}
+
+	/**
+	 * Classify a document in multi-article mode, whatever article mode is configured. Used by
+	 * ArticlePacker, which relies on each packed document coming back as an article of its own.
+	 * The score filter is not applied, as it would drop the articles.
+	 */
+	Result getMultiArticleResult(byte[] data, String fileName) throws ClassificationException {
+		Collection<FormBodyPart> parts = new ArrayList<FormBodyPart>();
+		addByteArray(parts, data, fileName);
+		return ResultReader.read(getClassificationServerResponse(getRequestSettings().getMultiArticleTemplate(), parts));
+	}
+
+	/* Parse a response, adding the time taken to the timing of the request that read it */
+	private Result toResult(byte[] response, RequestTiming timing) throws ClassificationException {
+		LatencyRecorder recorder = latencyRecorder;
+		if ((timing == null) || (recorder == null) || timing.isParsed()) return toResult(response);
+
+		long start = System.nanoTime();
+		Result result = toResult(response);
+		recorder.recordParse(timing, System.nanoTime() - start);
+		return result;
+	}
+
+	private Result toResult(byte[] response) throws ClassificationException {
+		if (scoreFilter != null) {
+			return ResultReader.read(response, scoreFilter);
+		}
+		if (streamingResults) {
+			return ResultReader.read(response);
+		}
+		return new Result((response == null) ? getBlankStructuredDocument() : XMLReader.getDocument(response));
+	}
+
+	private void addTitle(Collection<FormBodyPart> parts, Title title) {
+		if ((title != null) && (title.getValue() != null) && (title.getValue().length() > 0)) {
+			parts.add(title.asFormPart());
+		}
+	}
+
+	private void addByteArray(Collection<FormBodyPart> parts, Body body, FileName filename) {
+		if (filename == null) {
+			parts.add(body.asFormPart());
+		} else {
+			addByteArray(parts, body.getValue().getBytes(Charset.forName("UTF-8")), filename.getValue());
+		}
+	}
+
+	private void addByteArray(Collection<FormBodyPart> parts, byte[] data, String fileName) {
+		parts.add(FormBodyPartBuilder.create("UploadFile", new ByteArrayBody(data, fileName)).build());
+	}
+
+	private void addFile(Collection<FormBodyPart> parts, File inputFile, String fileType)
+			throws ClassificationException {
+		if (inputFile == null) {
+			throw new ClassificationException("Null input file provided");
+		}
+		if (!inputFile.exists()) {
+			throw new ClassificationException("Input file not found: " + inputFile.getAbsolutePath());
+		}
+
+		parts.add(getFormPart("UploadFile", inputFile));
 	}
 
 	private void addFileContent(Collection<FormBodyPart> parts, byte[] fileContent, String fileName)
@@ -676,30 +1302,11 @@ public class ClassificationClient implements AutoCloseable {
 		}
 	}
 
-	private MultipartEntityBuilder getDefaultParts() {
-		MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create();
-
-		for (String parameterName : classificationConfiguration.getAdditionalParameters().keySet()) {
-			String value = classificationConfiguration.getAdditionalParameters().get(parameterName);
-			if ((value != null) && (value.length() > 0)) {
-				multipartEntityBuilder.addPart(getFormPart(parameterName, value));
-			}
-		}
-		if (classificationConfiguration.isSingleArticle())
-			multipartEntityBuilder.addPart(getFormPart("singlearticle", "on"));
-		if (classificationConfiguration.isMultiArticle())
-			multipartEntityBuilder.addPart(getFormPart("multiarticle", "on"));
-		if (classificationConfiguration.isFeedback())
-			multipartEntityBuilder.addPart(getFormPart("feedback", "on"));
-		if (classificationConfiguration.isStylesheet())
-			multipartEntityBuilder.addPart(getFormPart("stylesheet", "on"));
-		if (classificationConfiguration.isUseGeneratedKeys())
-			multipartEntityBuilder.addPart(getFormPart("use_generated_keys", "on"));
-		if (classificationConfiguration.isReturnHashCode())
-			multipartEntityBuilder.addPart(getFormPart("return_hash", "on"));
-		return multipartEntityBuilder;
+	private RequestTemplate getRequestTemplate() throws ClassificationException {
+		return getRequestSettings().getRequestTemplate();
 	}
 
+
 	private final static ContentType contentType = ContentType.create("text/plain", Consts.UTF_8);
 
 	private static FormBodyPart getFormPart(String name, String value) {
@@ -711,21 +1318,289 @@ public class ClassificationClient implements AutoCloseable {
 	}
 
 	private byte[] getClassificationServerResponse(Collection<FormBodyPart> parts) throws ClassificationException {
+		return getClassificationServerResponse(getRequestTemplate(), parts);
+	}
 
-		MultipartEntityBuilder multipartEntityBuilder = getDefaultParts();
-		for (FormBodyPart part : parts)
-			multipartEntityBuilder.addPart(part);
-
-		if (this.getAuditUUID() != null) {
-			multipartEntityBuilder.addPart(getFormPart("audit_tag", this.getAuditUUID().toString()));
+	private byte[] getClassificationServerResponse(RequestTemplate requestTemplate, Collection<FormBodyPart> parts)
+			throws ClassificationException {
+		ResultCache cache = resultCache;
+		String cacheKey = getResultCacheKey(cache, requestTemplate.getParts(), parts);
+		long cacheGeneration = 0;
+		if (cacheKey != null) {
+			byte[] cachedData = cache.get(cacheKey);
+			if (cachedData != null) {
+				logger.debug("getClassificationServerResponse - cached: " + cachedData.length);
+				return cachedData;
+			}
+			cacheGeneration = cache.getGeneration();
 		}
 
-		byte[] returnedData = sendPostRequest(multipartEntityBuilder.build());
+		byte[] returnedData = sendPostRequest(getRequestEntity(requestTemplate, parts));
+		if (cacheKey != null) {
+			// Dropped if the cache was invalidated while the request was out
+			cache.put(cacheKey, returnedData, cacheGeneration);
+		}
 
 		logger.debug("getClassificationServerResponse - exit: " + returnedData.length);
 		return returnedData;
 	}
 
+	/* The response for a body, or for a near duplicate of it if there is an index */
+	private byte[] getBodyResponse(Body body, Collection<FormBodyPart> parts) throws ClassificationException {
+		NearDuplicateIndex index = nearDuplicateIndex;
+		if (index == null) return getClassificationServerResponse(parts);
+
+		String context = getNearDuplicateContext(parts);
+		long fingerprint = SimHash.fingerprint(body.getValue());
+		byte[] response = index.get(context, fingerprint);
+		if (response != null) {
+			logger.debug("getBodyResponse - near duplicate: " + response.length);
+			return response;
+		}
+		response = getClassificationServerResponse(parts);
+		index.put(context, fingerprint, response);
+		return response;
+	}
+
+	/*
+	 * An exact hash of what is sent besides the body text: the title, the metadata and the file name. The body's
+	 * own part is the last; its text is compared by fingerprint instead.
+	 */
+	private static String getNearDuplicateContext(Collection<FormBodyPart> parts) throws ClassificationException {
+		MessageDigest messageDigest = getMessageDigest();
+		try (DigestOutputStream digestOutputStream = new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, messageDigest)) {
+			int remaining = parts.size();
+			for (FormBodyPart part : parts) {
+				ContentBody body = part.getBody();
+				digestOutputStream.write(0);
+				digestOutputStream.write(part.getName().getBytes(StandardCharsets.UTF_8));
+				digestOutputStream.write(0);
+				if (body.getFilename() != null) {
+					digestOutputStream.write(body.getFilename().getBytes(StandardCharsets.UTF_8));
+				}
+				if (--remaining > 0) {
+					digestOutputStream.write(0);
+					body.writeTo(digestOutputStream);
+				}
+			}
+		} catch (IOException e) {
+			throw new ClassificationException("IOException hashing request for the near duplicate index: %s", e.getMessage());
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(messageDigest.digest());
+	}
+
+	/* As getBodyResponse, but writing the response to the stream */
+	private long writeBodyResponse(Body body, Collection<FormBodyPart> parts, OutputStream outputStream) throws ClassificationException {
+		if (parts == null) return 0;
+
+		// A response read from the server is streamed, not held, so it is not added to the index
+		NearDuplicateIndex index = nearDuplicateIndex;
+		if (index != null) {
+			byte[] response = index.get(getNearDuplicateContext(parts), SimHash.fingerprint(body.getValue()));
+			if (response != null) {
+				logger.debug("writeBodyResponse - near duplicate: " + response.length);
+				return write(response, outputStream);
+			}
+		}
+		return writeResponse(parts, outputStream);
+	}
+
+	/* As getClassificationServerResponse, but writing the response to the stream as it arrives */
+	private long writeResponse(Collection<FormBodyPart> parts, OutputStream outputStream) throws ClassificationException {
+		RequestTemplate requestTemplate = getRequestTemplate();
+		ResultCache cache = resultCache;
+		String cacheKey = getResultCacheKey(cache, requestTemplate.getParts(), parts);
+		if (cacheKey != null) {
+			byte[] cachedData = cache.get(cacheKey);
+			if (cachedData != null) {
+				logger.debug("writeResponse - cached: " + cachedData.length);
+				return write(cachedData, outputStream);
+			}
+		}
+
+		long written = sendPostRequest(getRequestEntity(requestTemplate, parts), responseEntity -> copy(responseEntity, outputStream));
+		logger.debug("writeResponse - exit: " + written);
+		return written;
+	}
+
+	private static long write(byte[] response, OutputStream outputStream) throws ClassificationException {
+		try {
+			outputStream.write(response);
+			outputStream.flush();
+		} catch (IOException e) {
+			throw new ClassificationException("IOException writing classification server response: " + e.getMessage());
+		}
+		return response.length;
+	}
+
+	private static long copy(HttpEntity responseEntity, OutputStream outputStream) throws IOException, ClassificationException {
+		byte[] buffer = new byte[8192];
+		long written = 0;
+		try (InputStream inputStream = responseEntity.getContent()) {
+			while (true) {
+				int read;
+				try {
+					read = inputStream.read(buffer);
+				} catch (IOException e) {
+					// Once part of the response has been written the request cannot be tried again elsewhere
+					if (written == 0) throw e;
+					throw new ClassificationException("IOException reading classification server response after "
+							+ written + " bytes: " + e.getMessage());
+				}
+				if (read == -1) break;
+				try {
+					outputStream.write(buffer, 0, read);
+				} catch (IOException e) {
+					throw new ClassificationException("IOException writing classification server response: " + e.getMessage());
+				}
+				written += read;
+			}
+		}
+		try {
+			outputStream.flush();
+		} catch (IOException e) {
+			throw new ClassificationException("IOException writing classification server response: " + e.getMessage());
+		}
+		return written;
+	}
+
+	private HttpEntity getRequestEntity(RequestTemplate requestTemplate, Collection<FormBodyPart> parts) {
+		long start = System.nanoTime();
+		LatencyRecorder recorder = latencyRecorder;
+		UUID currentAuditUUID = this.getAuditUUID();
+
+		String auditTag = null;
+		HttpEntity requestEntity;
+		if (recorder != null) {
+			// Each request has a tag of its own, so the server's audit log can be matched with its timing
+			auditTag = (currentAuditUUID == null) ? UUID.randomUUID().toString()
+					: currentAuditUUID.toString() + "-" + requestSequence.incrementAndGet();
+			requestEntity = requestTemplate.getEntity(parts, auditTag);
+		} else {
+			// A fixed tag is encoded with the rest of the template
+			String fixedAuditTag = (currentAuditUUID == null) ? null : currentAuditUUID.toString();
+			requestEntity = requestTemplate.withAuditTag(fixedAuditTag).getEntity(parts, null);
+		}
+
+		if (recorder != null) {
+			requestTiming.set(new RequestTiming(auditTag, requestEntity, System.nanoTime() - start));
+		}
+		return requestEntity;
+	}
+
+	/*
+	 * The key is a hash of the rulebase fingerprint, the server and every part sent apart from the audit tag.
+	 * Null if there is no cache, the fingerprint is unknown, or a part cannot be read twice.
+	 */
+	private String getResultCacheKey(ResultCache cache, Collection<FormBodyPart> defaultParts, Collection<FormBodyPart> parts)
+			throws ClassificationException {
+		if (cache == null) return null;
+
+		String fingerprint = getRulebaseFingerprint(cache);
+		if (fingerprint == null) return null;
+
+		MessageDigest messageDigest = getMessageDigest();
+		try (DigestOutputStream digestOutputStream = new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, messageDigest)) {
+			digestOutputStream.write(fingerprint.getBytes(StandardCharsets.UTF_8));
+			digestOutputStream.write(0);
+			digestOutputStream.write(getRequestSettings().getUrl().getBytes(StandardCharsets.UTF_8));
+			for (Collection<FormBodyPart> partCollection : Arrays.asList(defaultParts, parts)) {
+				for (FormBodyPart part : partCollection) {
+					ContentBody body = part.getBody();
+					if (!isRepeatable(body)) {
+						return null;
+					}
+					digestOutputStream.write(0);
+					digestOutputStream.write(part.getName().getBytes(StandardCharsets.UTF_8));
+					digestOutputStream.write(0);
+					if (body.getFilename() != null) {
+						digestOutputStream.write(body.getFilename().getBytes(StandardCharsets.UTF_8));
+					}
+					digestOutputStream.write(0);
+					digestOutputStream.write(Long.toString(body.getContentLength()).getBytes(StandardCharsets.UTF_8));
+					digestOutputStream.write(0);
+					body.writeTo(digestOutputStream);
+				}
+			}
+		} catch (IOException e) {
+			throw new ClassificationException("IOException hashing request for the result cache: %s", e.getMessage());
+		}
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(messageDigest.digest());
+	}
+
+	/*
+	 * The rulebase classes alone are unchanged by a publish that keeps the same classes and rule counts, so the
+	 * generation of each worker process is added. The server restarts its workers to load new rulebases.
+	 * Both are commands, so they are read from the configured server every time, never from whichever node a
+	 * balancer picks; nodes differ in their worker generations.
+	 */
+	private String getRulebaseFingerprint(ResultCache cache) {
+		if (cache.isValidationDue()) {
+			synchronized (cache) {
+				if (cache.isValidationDue()) {
+					String fingerprint = null;
+					try {
+						MessageDigest messageDigest = getMessageDigest();
+						messageDigest.update(sendPostRequest(getCommandXML("listrulenetclasses", null), null));
+						messageDigest.update(getWorkerGenerations().getBytes(StandardCharsets.UTF_8));
+						fingerprint = Base64.getUrlEncoder().withoutPadding().encodeToString(messageDigest.digest());
+					} catch (ClassificationException e) {
+						logger.warn("Unable to read the rulebase classes, so the result cache is not used: {}", e.getMessage());
+					}
+					cache.setFingerprint(fingerprint);
+				}
+			}
+		}
+		return cache.getFingerprint();
+	}
+
+	/* Empty if the server does not report its workers; the cache's maximum age still applies */
+	private String getWorkerGenerations() {
+		StringBuilder generations = new StringBuilder();
+		try {
+			CSInfo csInfo = getInfo();
+			for (Collection<CSProcess> processes : Arrays.asList(csInfo.getParentProcesses(), csInfo.getChildrenProcesses())) {
+				if (processes == null) continue;
+				for (CSProcess process : processes) {
+					generations.append(process.getId()).append(':').append(process.getGeneration()).append(';');
+				}
+			}
+		} catch (ClassificationException e) {
+			logger.debug("Unable to read the worker generations for the result cache: {}", e.getMessage());
+		}
+		return generations.toString();
+	}
+
+	private static boolean isRepeatable(ContentBody body) {
+		return (body instanceof StringBody) || (body instanceof ByteArrayBody) || (body instanceof FileBody)
+				|| (body instanceof PathBody);
+	}
+
+	private static boolean isRepeatable(Collection<FormBodyPart> parts) {
+		for (FormBodyPart part : parts) {
+			if (!isRepeatable(part.getBody())) return false;
+		}
+		return true;
+	}
+
+	private static MessageDigest getMessageDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void invalidateResultCache() {
+		if (resultCache != null) {
+			resultCache.invalidate();
+		}
+		if (nearDuplicateIndex != null) {
+			nearDuplicateIndex.clear();
+		}
+	}
+
 	private byte[] getClassifications(Collection<FormBodyPart> partsList) throws ClassificationException {
 		return getClassifications(partsList, null);
 	}
@@ -734,7 +1609,7 @@ public class ClassificationClient implements AutoCloseable {
 			throws ClassificationException {
 		byte[] returnedData = getClassificationServerResponse(partsList);
 		if ((returnedData != null) && (outMeta != null)) {
-			Result result = new Result(XMLReader.getDocument(returnedData));
+			Result result = ResultReader.read(returnedData);
 			if (result.getMetadata() != null) {
 				for (String meta : result.getMetadata().keySet()) {
 					outMeta.put(meta, result.getMetadata().get(meta));
@@ -768,18 +1643,112 @@ public class ClassificationClient implements AutoCloseable {
 		return getClassificationServerResponse(parts);
 	}
 
-	private DocumentBuilder documentBuilder = null;
+	/**
+	 * Write the output of classification server for the supplied file to the stream as it arrives, so however
+	 * large the response, it is never held in memory. A response from the result cache is written from there;
+	 * one read from the server is not added to the cache.
+	 *
+	 * @param inputFile    The input file to classify
+	 * @param fileType     File type of "inputFile", or null for classification server to guess it
+	 * @param title        The document title
+	 * @param metadata     Map containing metadata
+	 * @param outputStream Where the response is written. It is flushed, but not closed.
+	 * @return The number of bytes written
+	 * @throws ClassificationException Classification exception
+	 */
+	public long getClassificationServerResponse(File inputFile, String fileType, Title title,
+			Map<String, Collection<String>> metadata, OutputStream outputStream) throws ClassificationException {
+		logger.debug("Treating file: '" + inputFile + "'");
+
+		Collection<FormBodyPart> parts = new ArrayList<FormBodyPart>();
+		addFile(parts, inputFile, fileType);
+
+		addTitle(parts, title);
+		addMetadata(parts, metadata);
+		return writeResponse(parts, outputStream);
+	}
+
+	/**
+	 * As for the stream, writing the output of classification server to the channel
+	 *
+	 * @param inputFile The input file to classify
+	 * @param fileType  File type of "inputFile", or null for classification server to guess it
+	 * @param title     The document title
+	 * @param metadata  Map containing metadata
+	 * @param channel   Where the response is written. It is not closed.
+	 * @return The number of bytes written
+	 * @throws ClassificationException Classification exception
+	 */
+	public long getClassificationServerResponse(File inputFile, String fileType, Title title,
+			Map<String, Collection<String>> metadata, WritableByteChannel channel) throws ClassificationException {
+		return getClassificationServerResponse(inputFile, fileType, title, metadata, Channels.newOutputStream(channel));
+	}
+
+	/**
+	 * Write the output of classification server for the supplied content to the stream as it arrives
+	 *
+	 * @param fileContent  The content to classify
+	 * @param fileName     The name of the file the content came from
+	 * @param title        The document title
+	 * @param metadata     Map containing metadata
+	 * @param outputStream Where the response is written. It is flushed, but not closed.
+	 * @return The number of bytes written
+	 * @throws ClassificationException Classification exception
+	 */
+	public long getClassificationServerResponse(byte[] fileContent, String fileName, Title title,
+			Map<String, Collection<String>> metadata, OutputStream outputStream) throws ClassificationException {
+		logger.debug("Treating raw bytes: '" + title + "'");
+
+		Collection<FormBodyPart> parts = new ArrayList<FormBodyPart>();
+		addFileContent(parts, fileContent, fileName);
+
+		addTitle(parts, title);
+		addMetadata(parts, metadata);
+		return writeResponse(parts, outputStream);
+	}
+
+	/**
+	 * As for the stream, writing the output of classification server to the channel
+	 *
+	 * @param fileContent The content to classify
+	 * @param fileName    The name of the file the content came from
+	 * @param title       The document title
+	 * @param metadata    Map containing metadata
+	 * @param channel     Where the response is written. It is not closed.
+	 * @return The number of bytes written
+	 * @throws ClassificationException Classification exception
+	 */
+	public long getClassificationServerResponse(byte[] fileContent, String fileName, Title title,
+			Map<String, Collection<String>> metadata, WritableByteChannel channel) throws ClassificationException {
+		return getClassificationServerResponse(fileContent, fileName, title, metadata, Channels.newOutputStream(channel));
+	}
+
+	/*
+	 * Commands are few and their XML never changes, so each is built once. Publish set names are not, so the
+	 * commands that carry one are built each time rather than cached without limit.
+	 */
+	private static final ConcurrentMap<String, String> commandXMLCache = new ConcurrentHashMap<String, String>();
 
 	private String getCommandXML(String command, String publishSetName) throws ClassificationException {
-		if (documentBuilder == null) {
-			DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-			try {
-				documentBuilder = documentBuilderFactory.newDocumentBuilder();
-			} catch (ParserConfigurationException e) {
-				throw new ClassificationException(
-						String.format("ParserConfigurationException building CS command: %s %s - %s", command,
-								publishSetName, e.getMessage()));
-			}
+		if (publishSetName != null) return buildCommandXML(command, publishSetName);
+
+		String commandXML = commandXMLCache.get(command);
+		if (commandXML == null) {
+			commandXML = buildCommandXML(command, null);
+			commandXMLCache.putIfAbsent(command, commandXML);
+		}
+		return commandXML;
+	}
+
+	private static String buildCommandXML(String command, String publishSetName) throws ClassificationException {
+		// A document builder is not thread safe, so each command has its own
+		DocumentBuilder documentBuilder;
+		try {
+			documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+		} catch (ParserConfigurationException e) {
+			throw new ClassificationException(
+					String.format("ParserConfigurationException building CS command: %s %s - %s", command,
+							publishSetName, e.getMessage()));
 		}
 		Document document = documentBuilder.newDocument();
 		Element requestElement = document.createElement("request");
@@ -809,6 +1778,22 @@ public class ClassificationClient implements AutoCloseable {
 	}
 
 	private byte[] sendPostRequest(String commandString, File pakFile) throws ClassificationException {
+		return sendCommandRequest(getCommandEntity(commandString, pakFile));
+	}
+
+	/*
+	 * Commands go to the configured URL, never through the node balancer. The steps of a publish must all
+	 * reach the same server, and a command that failed part way is not safe to send again elsewhere.
+	 */
+	private byte[] sendCommandRequest(HttpEntity requestEntity) throws ClassificationException {
+		try {
+			return sendPostRequest(getRequestSettings().getUrl(), requestEntity, EntityUtils::toByteArray);
+		} finally {
+			requestFinished(requestEntity);
+		}
+	}
+
+	private HttpEntity getCommandEntity(String commandString, File pakFile) {
 
 		MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create();
 
@@ -821,13 +1806,146 @@ public class ClassificationClient implements AutoCloseable {
 				.create("XML_INPUT", new StringBody(commandString, ContentType.TEXT_XML)).build();
 		multipartEntityBuilder.addPart(commandPart);
 
-		return sendPostRequest(multipartEntityBuilder.build());
+		return multipartEntityBuilder.build();
 	}
 
 	private PoolingHttpClientConnectionManager poolingConnectionManager;
 	private RequestConfig requestConfig;
 
-	private int clientPoolSize = 2;
+	private volatile boolean streamingResults = true;
+
+	public boolean isStreamingResults() {
+		return streamingResults;
+	}
+
+	/**
+	 * @param streamingResults If true (the default) results are read from the response in a single
+	 *                         streaming pass; if false the response is parsed into a DOM first
+	 */
+	public void setStreamingResults(boolean streamingResults) {
+		this.streamingResults = streamingResults;
+	}
+
+	private volatile ResultCache resultCache = null;
+
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * @param resultCache If not null, classification responses are kept in this cache and a request that
+	 *                    matches an earlier one is answered from it without going to classification server.
+	 *                    The cache is cleared when the rulebases on classification server are seen to change,
+	 *                    and when it reaches its maximum age.
+	 */
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	private volatile LatencyRecorder latencyRecorder = null;
+	private final ThreadLocal<RequestTiming> requestTiming = new ThreadLocal<RequestTiming>();
+	private final AtomicLong requestSequence = new AtomicLong();
+
+	public LatencyRecorder getLatencyRecorder() {
+		return latencyRecorder;
+	}
+
+	/**
+	 * @param latencyRecorder If not null, every classification request is timed, phase by phase, into the
+	 *                        recorder. Each request is then sent with an audit tag of its own: a random UUID, or
+	 *                        the client's audit UUID followed by a sequence number if it has one.
+	 */
+	public void setLatencyRecorder(LatencyRecorder latencyRecorder) {
+		this.latencyRecorder = latencyRecorder;
+	}
+
+	/**
+	 * @return the timing of the last classification request sent by the calling thread while a latency recorder
+	 *         was set; null if there is none, or if the last document was answered without a request
+	 */
+	public RequestTiming getLastRequestTiming() {
+		return requestTiming.get();
+	}
+
+	private volatile NearDuplicateIndex nearDuplicateIndex = null;
+
+	public NearDuplicateIndex getNearDuplicateIndex() {
+		return nearDuplicateIndex;
+	}
+
+	/**
+	 * @param nearDuplicateIndex If not null, a body that is a near duplicate of one already classified, with the
+	 *                           same title, metadata and file name, is given the earlier body's response without
+	 *                           going to classification server. Only documents classified from a Body are looked
+	 *                           up. Responses written to a stream or channel are looked up but never added, as
+	 *                           they are not held. The index is cleared when a publish set is committed or
+	 *                           deactivated.
+	 */
+	public void setNearDuplicateIndex(NearDuplicateIndex nearDuplicateIndex) {
+		this.nearDuplicateIndex = nearDuplicateIndex;
+	}
+
+	private volatile ShadowClassifier shadowClassifier = null;
+
+	public ShadowClassifier getShadowClassifier() {
+		return shadowClassifier;
+	}
+
+	/**
+	 * @param shadowClassifier If not null, a sample of classification requests are sent to its shadow client as
+	 *                         well once their results are ready, and the results compared
+	 */
+	public void setShadowClassifier(ShadowClassifier shadowClassifier) {
+		this.shadowClassifier = shadowClassifier;
+	}
+
+	private volatile NodeBalancer nodeBalancer = null;
+
+	public NodeBalancer getNodeBalancer() {
+		return nodeBalancer;
+	}
+
+	/**
+	 * @param nodeBalancer If not null, classification requests are spread across the balancer's nodes instead of
+	 *                     going to the configured URL. Commands, such as publishing, info and history, still go
+	 *                     to the configured URL alone. The balancer starts polling the nodes through this client
+	 *                     and is closed with it.
+	 */
+	public void setNodeBalancer(NodeBalancer nodeBalancer) {
+		this.nodeBalancer = nodeBalancer;
+		if (nodeBalancer != null) {
+			synchronized (this) {
+				if (poolingConnectionManager != null) {
+					poolingConnectionManager.setMaxTotal(getMaxTotalConnections());
+				}
+			}
+			nodeBalancer.start(this::getInfo);
+		}
+	}
+
+	/**
+	 * @return the URL that commands, publishing among them, are sent to: the configured URL, whether or not
+	 *         there is a node balancer
+	 * @throws ClassificationException if the configured URL is not valid
+	 */
+	public String getCommandUrl() throws ClassificationException {
+		return getRequestSettings().getUrl();
+	}
+
+	private volatile ScoreFilter scoreFilter = null;
+
+	public ScoreFilter getScoreFilter() {
+		return scoreFilter;
+	}
+
+	/**
+	 * @param scoreFilter If not null, results only hold the document level scores that pass the filter
+	 */
+	public void setScoreFilter(ScoreFilter scoreFilter) {
+		this.scoreFilter = scoreFilter;
+	}
+
+	private volatile int clientPoolSize = 2;
 
 	public int getClientPoolSize() {
 		return clientPoolSize;
@@ -837,32 +1955,258 @@ public class ClassificationClient implements AutoCloseable {
 		this.clientPoolSize = clientPoolSize;
 	}
 
-	private CloseableHttpClient httpClient = null;
+	private volatile boolean adaptivePoolSize = false;
+
+	public boolean isAdaptivePoolSize() {
+		return adaptivePoolSize;
+	}
+
+	/**
+	 * @param adaptivePoolSize If true, the client pool is sized to the number of worker processes that
+	 *                         classification server reports, and re-sized every poolSizeIntervalMS as
+	 *                         the server is scaled. This must be set before the first request.
+	 */
+	public void setAdaptivePoolSize(boolean adaptivePoolSize) {
+		this.adaptivePoolSize = adaptivePoolSize;
+	}
+
+	private volatile long poolSizeIntervalMS = 60000;
+
+	public long getPoolSizeIntervalMS() {
+		return poolSizeIntervalMS;
+	}
+
+	/**
+	 * @param poolSizeIntervalMS How often the pool size is re-evaluated in adaptive mode (default 60000)
+	 */
+	public void setPoolSizeIntervalMS(long poolSizeIntervalMS) {
+		this.poolSizeIntervalMS = poolSizeIntervalMS;
+	}
+
+	private volatile int maxClientPoolSize = 64;
+
+	public int getMaxClientPoolSize() {
+		return maxClientPoolSize;
+	}
+
+	/**
+	 * @param maxClientPoolSize The largest pool that adaptive mode will use (default 64)
+	 */
+	public void setMaxClientPoolSize(int maxClientPoolSize) {
+		this.maxClientPoolSize = maxClientPoolSize;
+	}
+
+	/**
+	 * Size the client pool to the number of worker processes classification server has now. If the server
+	 * reports no workers, as it may in a partial response, the pool is left as it is.
+	 *
+	 * With a node balancer, the connections to each node are limited to that node's own worker count instead,
+	 * and the sum over the nodes is returned. A node that cannot be read keeps its previous limit.
+	 *
+	 * @return the new pool size
+	 * @throws ClassificationException - There has been a connectivity issue
+	 */
+	public int resizePool() throws ClassificationException {
+		NodeBalancer balancer = nodeBalancer;
+		if (balancer != null) {
+			return resizeNodePools(balancer);
+		}
+
+		int workers = getWorkers(getInfo());
+		if (workers == 0) {
+			logger.warn("Classification server reported no worker processes; keeping the client pool size of {}", clientPoolSize);
+			return clientPoolSize;
+		}
+		int poolSize = Math.min(workers, maxClientPoolSize);
+		resizePool(poolSize);
+		return poolSize;
+	}
+
+	private static int getWorkers(CSInfo csInfo) {
+		return (csInfo.getChildrenProcesses() == null) ? 0 : csInfo.getChildrenProcesses().size();
+	}
+
+	private int resizeNodePools(NodeBalancer balancer) throws ClassificationException {
+		RequestSettings settings = getRequestSettings();
+		for (ClassificationNode node : balancer.getNodes()) {
+			int workers;
+			try {
+				workers = getWorkers(getInfo(node.getUrl()));
+			} catch (ClassificationException e) {
+				logger.warn("Unable to read the worker processes of node {}: {}", node.getUrl(), e.getMessage());
+				continue;
+			}
+			if (workers == 0) {
+				logger.warn("Node {} reported no worker processes; keeping its pool size", node.getUrl());
+				continue;
+			}
+			int poolSize = Math.min(workers, maxClientPoolSize);
+			synchronized (this) {
+				if (poolSize != node.getPoolSize()) {
+					logger.info("Resizing pool for node {} to {}", node.getUrl(), poolSize);
+					node.setPoolSize(poolSize);
+					if (poolingConnectionManager != null) {
+						poolingConnectionManager.setMaxPerRoute(getRoute(node.getUrl(), settings), poolSize);
+					}
+				}
+			}
+		}
+		synchronized (this) {
+			int total = getMaxTotalConnections();
+			if (poolingConnectionManager != null) {
+				poolingConnectionManager.setMaxTotal(total);
+			}
+			return total;
+		}
+	}
+
+	/* The route the connection manager pools a node's connections under, as the default route planner plans it */
+	private static HttpRoute getRoute(String url, RequestSettings settings) throws ClassificationException {
+		URL nodeURL;
+		try {
+			nodeURL = new URL(url);
+		} catch (MalformedURLException e) {
+			throw new ClassificationException("Invalid classification server URL: " + e.getMessage());
+		}
+		HttpHost target = new HttpHost(nodeURL.getHost(), (nodeURL.getPort() > 0) ? nodeURL.getPort() : nodeURL.getDefaultPort(),
+				nodeURL.getProtocol());
+		boolean secure = "https".equalsIgnoreCase(nodeURL.getProtocol());
+		if (settings.getProxyURL() == null) {
+			return new HttpRoute(target, null, secure);
+		}
+		return new HttpRoute(target, null, HttpHost.create(settings.getProxyURL()), secure);
+	}
+
+	private synchronized void resizePool(int poolSize) {
+		int previous = clientPoolSize;
+		if (poolSize == previous) return;
+		logger.info("Resizing client pool from {} to {}", previous, poolSize);
+		clientPoolSize = poolSize;
+
+		if (poolingConnectionManager != null) {
+			poolingConnectionManager.setDefaultMaxPerRoute(poolSize);
+			poolingConnectionManager.setMaxTotal(getMaxTotalConnections());
+		}
+		if (asyncExecutor != null) {
+			// The core size can never be above the maximum, so the order depends on the direction
+			if (poolSize > previous) {
+				asyncExecutor.setMaximumPoolSize(poolSize);
+				asyncExecutor.setCorePoolSize(poolSize);
+				asyncPermits.release(poolSize - previous);
+			} else {
+				asyncExecutor.setCorePoolSize(poolSize);
+				asyncExecutor.setMaximumPoolSize(poolSize);
+				asyncPermits.reducePermits(previous - poolSize);
+			}
+		}
+	}
+
+	private ScheduledExecutorService poolSizer = null;
+
+	private void startPoolSizer() {
+		poolSizer = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "ClassificationClient-poolSizer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		poolSizer.scheduleWithFixedDelay(() -> {
+			try {
+				resizePool();
+			} catch (ClassificationException | RuntimeException e) {
+				logger.warn("Unable to size client pool from classification server info: {}", e.getMessage());
+			}
+		}, 0, poolSizeIntervalMS, TimeUnit.MILLISECONDS);
+	}
+
+	private volatile CloseableHttpClient httpClient = null;
+	private volatile RequestSettings requestSettings = null;
 	private IdleConnectionMonitorThread idleConnectionMonitorThread;
 
-	private synchronized void initialize() {
-		if (httpClient == null) {
-			httpClient = getHttpClient();
+	/* Build the client on its first request; after that no lock is taken */
+	private void initialize() throws ClassificationException {
+		if (httpClient != null) return;
+		synchronized (this) {
+			if (httpClient == null) {
+				requestSettings = new RequestSettings(classificationConfiguration, getProxyURL());
+				httpClient = getHttpClient(requestSettings);
+				if (adaptivePoolSize) {
+					startPoolSizer();
+				}
+			}
 		}
 	}
+
+	private RequestSettings getRequestSettings() throws ClassificationException {
+		initialize();
+		return requestSettings;
+	}
 	
-	private CloseableHttpClient getHttpClient() {
+	private int getMaxTotalConnections() {
+		NodeBalancer balancer = nodeBalancer;
+		if (balancer == null) return clientPoolSize;
+
+		int total = 0;
+		for (ClassificationNode node : balancer.getNodes()) {
+			total += (node.getPoolSize() > 0) ? node.getPoolSize() : clientPoolSize;
+		}
+		return total;
+	}
+
+	private CloseableHttpClient getHttpClient(RequestSettings settings) {
 			
-		poolingConnectionManager = new PoolingHttpClientConnectionManager();
+		poolingConnectionManager = new PoolingHttpClientConnectionManager() {
+			@Override
+			public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+				ConnectionRequest connectionRequest = super.requestConnection(route, state);
+				RequestTiming timing = requestTiming.get();
+				if ((timing == null) || !timing.isSending()) return connectionRequest;
+
+				// Time how long the request waits for a connection from the pool
+				return new ConnectionRequest() {
+					@Override
+					public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+							throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+						long start = System.nanoTime();
+						try {
+							return connectionRequest.get(timeout, timeUnit);
+						} finally {
+							timing.poolWaited(System.nanoTime() - start);
+						}
+					}
+
+					@Override
+					public boolean cancel() {
+						return connectionRequest.cancel();
+					}
+				};
+			}
+		};
 		poolingConnectionManager.setValidateAfterInactivity(0);
 		poolingConnectionManager.setDefaultMaxPerRoute(clientPoolSize);
-		poolingConnectionManager.setMaxTotal(clientPoolSize);
+		poolingConnectionManager.setMaxTotal(getMaxTotalConnections());
+		NodeBalancer balancer = nodeBalancer;
+		if (balancer != null) {
+			for (ClassificationNode node : balancer.getNodes()) {
+				if (node.getPoolSize() > 0) {
+					try {
+						poolingConnectionManager.setMaxPerRoute(getRoute(node.getUrl(), settings), node.getPoolSize());
+					} catch (ClassificationException e) {
+						logger.warn("Unable to limit connections to node {}: {}", node.getUrl(), e.getMessage());
+					}
+				}
+			}
+		}
 
 		// Make sure that idle and stale connections are discarded
 		idleConnectionMonitorThread = new IdleConnectionMonitorThread(poolingConnectionManager);
 		idleConnectionMonitorThread.start();
 
 		RequestConfig.Builder requestConfigBuilder = RequestConfig.copy(RequestConfig.DEFAULT)
-				.setSocketTimeout(classificationConfiguration.getSocketTimeoutMS())
-				.setConnectTimeout(classificationConfiguration.getConnectionTimeoutMS())
-				.setConnectionRequestTimeout(classificationConfiguration.getConnectionTimeoutMS());
-		if (getProxyURL() != null) {
-			HttpHost proxy = HttpHost.create(getProxyURL());
+				.setSocketTimeout(settings.getSocketTimeoutMS())
+				.setConnectTimeout(settings.getConnectionTimeoutMS())
+				.setConnectionRequestTimeout(settings.getConnectionTimeoutMS());
+		if (settings.getProxyURL() != null) {
+			HttpHost proxy = HttpHost.create(settings.getProxyURL());
 			requestConfigBuilder.setProxy(proxy);
 		}
 		requestConfig = requestConfigBuilder.build();
@@ -872,9 +2216,40 @@ public class ClassificationClient implements AutoCloseable {
 				.setConnectionManager(poolingConnectionManager).build();
 	}
 
+	/**
+	 * Close the client. Asynchronous requests that have already been accepted are given up to closeTimeoutMS
+	 * to finish; after that running requests are interrupted and the futures of any not yet sent fail with a
+	 * ClassificationException.
+	 */
 	@Override
 	public void close() {
-		idleConnectionMonitorThread.shutdown();
+		ExecutorService executor;
+		synchronized (this) {
+			executor = asyncExecutor;
+		}
+		if (executor != null) {
+			executor.shutdown();
+			try {
+				if (!executor.awaitTermination(closeTimeoutMS, TimeUnit.MILLISECONDS)) {
+					logger.warn("close - asynchronous requests still running after {}ms", closeTimeoutMS);
+					cancelAsync(executor.shutdownNow());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cancelAsync(executor.shutdownNow());
+			}
+		}
+		synchronized (this) {
+			if (poolSizer != null) {
+				poolSizer.shutdownNow();
+			}
+		}
+		if (nodeBalancer != null) {
+			nodeBalancer.close();
+		}
+		if (idleConnectionMonitorThread != null) {
+			idleConnectionMonitorThread.shutdown();
+		}
 		if (httpClient != null) {
 			try {
 				httpClient.close();
@@ -884,70 +2259,167 @@ public class ClassificationClient implements AutoCloseable {
 		}
 	}
 
+	private static void cancelAsync(List<Runnable> unsent) {
+		for (Runnable runnable: unsent) {
+			((AsyncTask<?>) runnable).cancel();
+		}
+	}
+
+	/* Reads a successful response */
+	@FunctionalInterface
+	private interface ResponseReader<T> {
+		T read(HttpEntity responseEntity) throws IOException, ClassificationException;
+	}
+
 	private byte[] sendPostRequest(HttpEntity requestEntity) throws ClassificationException {
+		return sendPostRequest(requestEntity, EntityUtils::toByteArray);
+	}
+
+	private <T> T sendPostRequest(HttpEntity requestEntity, ResponseReader<T> responseReader) throws ClassificationException {
+		try {
+			NodeBalancer balancer = nodeBalancer;
+			if (balancer == null) {
+				return sendPostRequest(getRequestSettings().getUrl(), requestEntity, responseReader);
+			}
+
+			ClassificationNode node = balancer.select();
+			try {
+				return sendPostRequest(balancer, node, requestEntity, responseReader);
+			} catch (NodeUnavailableException e) {
+				// One more try elsewhere, if the request can be sent again
+				if (!requestEntity.isRepeatable() || (balancer.getNodes().size() == 1)) throw e;
+				logger.debug("Retrying on another node: {}", e.getMessage());
+				return sendPostRequest(balancer, balancer.select(node), requestEntity, responseReader);
+			}
+		} finally {
+			requestFinished(requestEntity);
+		}
+	}
+
+	/* The timing outlives the request on this thread, and must not keep its document too */
+	private void requestFinished(HttpEntity requestEntity) {
+		RequestTiming timing = requestTiming.get();
+		if ((timing != null) && timing.isFor(requestEntity)) {
+			timing.requestFinished();
+		}
+	}
+
+	private <T> T sendPostRequest(NodeBalancer balancer, ClassificationNode node, HttpEntity requestEntity,
+			ResponseReader<T> responseReader) throws ClassificationException {
+		node.requestStarted();
+		try {
+			T response = sendPostRequest(node.getUrl(), requestEntity, responseReader);
+			balancer.succeeded(node);
+			return response;
+		} catch (NodeUnavailableException e) {
+			balancer.failed(node);
+			throw e;
+		} catch (ClassificationException e) {
+			// The node answered; the problem is with the request
+			balancer.succeeded(node);
+			throw e;
+		} finally {
+			node.requestFinished();
+		}
+	}
+
+	/* Thrown when a classification server cannot be reached or says that it is unavailable */
+	private static class NodeUnavailableException extends ClassificationException {
+		private static final long serialVersionUID = 1L;
+
+		private NodeUnavailableException(String message) {
+			super(message);
+		}
+	}
+
+	private static boolean isUnavailable(int statusCode) {
+		return (statusCode == HttpStatus.SC_BAD_GATEWAY) || (statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE)
+				|| (statusCode == HttpStatus.SC_GATEWAY_TIMEOUT);
+	}
+
+	private <T> T sendPostRequest(String url, HttpEntity requestEntity, ResponseReader<T> responseReader) throws ClassificationException {
 		initialize();
 
+		LatencyRecorder recorder = latencyRecorder;
+		RequestTiming timing = requestTiming.get();
+		if ((recorder == null) || (timing == null) || !timing.isFor(requestEntity)) {
+			timing = null;
+		}
+
 		HttpPost httpPost = null;
-		byte[] responseData;
 		try {
-			httpPost = new HttpPost(classificationConfiguration.getUrl());
+			httpPost = new HttpPost(url);
 			addHeaders(httpPost);
-			httpPost.setEntity(requestEntity);
+			httpPost.setEntity((timing == null) ? requestEntity : new TimedEntity(requestEntity, timing));
 
+			if (timing != null) timing.sendStarted();
 			try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+				if (timing != null) {
+					timing.responseStarted();
+					timing.sendFinished();
+				}
 				if (response == null)
 					throw new ClassificationException(
-							"Null response from http client: " + classificationConfiguration.getUrl());
+							"Null response from http client: " + url);
 				if (response.getStatusLine() == null)
 					throw new ClassificationException(
-							"Null status line from http client: " + classificationConfiguration.getUrl());
+							"Null status line from http client: " + url);
 
 				int statusCode = response.getStatusLine().getStatusCode();
 
 				HttpEntity responseEntity = response.getEntity();
 
 				logger.debug("Status: " + statusCode);
-				ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-				try (InputStream responseInputStream = responseEntity.getContent()) {
-					IOUtils.copy(responseInputStream, byteArrayOutputStream);
+				if (statusCode == HttpStatus.SC_OK) {
+					T read = responseReader.read(responseEntity);
+					if (timing != null) {
+						timing.responseRead();
+						recorder.record(timing);
+					}
+					return read;
 				}
-				responseData = byteArrayOutputStream.toByteArray();
+
+				byte[] responseData = EntityUtils.toByteArray(responseEntity);
 				if (statusCode == HttpStatus.SC_INTERNAL_SERVER_ERROR) {
 					throw new ClassificationException(
 							"Internal classification server error: " + new String(responseData, "UTF-8"));
-				} else if (statusCode != HttpStatus.SC_OK) {
+				} else if (isUnavailable(statusCode)) {
+					throw new NodeUnavailableException(
+							"HttpStatus: " + statusCode + " received from classification server ("
+									+ url + ") " + new String(responseData, "UTF-8"));
+				} else {
 					throw new ClassificationException(
 							"HttpStatus: " + statusCode + " received from classification server ("
-									+ classificationConfiguration.getUrl() + ") " + new String(responseData, "UTF-8"));
+									+ url + ") " + new String(responseData, "UTF-8"));
 				}
 			}
 		} catch (ClientProtocolException e) {
 			throw new ClassificationException(
 					"ClientProtocolException talking to classification server" + e.getMessage());
 		} catch (IOException e) {
-			throw new ClassificationException("IOException talking to classification server" + e.getMessage());
+			throw new NodeUnavailableException("IOException talking to classification server" + e.getMessage());
 		} finally {
+			if (timing != null) {
+				timing.sendFinished();
+			}
 			if (httpPost != null) {
 				httpPost.abort();
 			}
 		}
-
-		return responseData;
 	}
 
-	private static Document blankDocument = null;
+	private static final byte[] blankStructuredDocument = "<response><STRUCTUREDDOCUMENT/></response>".getBytes(StandardCharsets.UTF_8);
 
+	/* A new document each time, as the caller may change it */
 	private final Document getBlankStructuredDocument() throws ClassificationException {
-		if (blankDocument == null)
-			blankDocument = XMLReader
-					.getDocument("<response><STRUCTUREDDOCUMENT/></response>".getBytes(StandardCharsets.UTF_8));
-		return blankDocument;
+		return XMLReader.getDocument(blankStructuredDocument);
 	}
 
-	private void addHeaders(HttpRequest httpRequest) {
-		if (classificationConfiguration.getApiToken() != null) {
-			logger.trace("Adding authorization header: {}", classificationConfiguration.getApiToken());
-			httpRequest.addHeader("Authorization", classificationConfiguration.getApiToken());
+	private void addHeaders(HttpRequest httpRequest) throws ClassificationException {
+		String apiToken = getRequestSettings().getApiToken();
+		if (apiToken != null) {
+			logger.trace("Adding authorization header: {}", apiToken);
+			httpRequest.addHeader("Authorization", apiToken);
 		}
 	}
 
@@ -2,6 +2,8 @@ package com.smartlogic.classificationserver.client;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -87,10 +89,6 @@ public class ClassificationHistory extends XMLReader {
 	 */
 	public Collection<ClassificationRecord> getClassificationRecords() throws ClassificationException {
 		logger.debug("getClassificationRecords - entry");
-		AuditFormat successFormat = getAuditFormat(getSuccessFormat());
-		if (logger.isDebugEnabled()) logger.debug("getClassificationRecords - success format: " + successFormat);
-		AuditFormat errorFormat = getAuditFormat(getFailFormat());
-		if (logger.isDebugEnabled()) logger.debug("getClassificationRecords - error format: " + errorFormat);
 		
 		Collection<ClassificationRecord> returnData = new ArrayList<ClassificationRecord>();
 		
@@ -99,14 +97,93 @@ public class ClassificationHistory extends XMLReader {
 			logger.debug(getLogData());
 		}
 		
-		String[] logDataArray = getLogData().split("\n");
-		
-		StringBuilder stringBuilder = new StringBuilder("");
-		for (String logDataLine: logDataArray) {
-			String trimmedLogDataLine = rtrim(logDataLine);
-			if (trimmedLogDataLine.endsWith("\\")) {
-				stringBuilder.append(trimmedLogDataLine.substring(0, trimmedLogDataLine.length()-1));
+		Iterator<ClassificationRecord> iterator = getClassificationRecordIterator();
+		while (iterator.hasNext()) {
+			returnData.add(iterator.next());
+		}
+		if (logger.isDebugEnabled()) logger.debug("getClassificationRecords - exit: " + returnData.size());
+		return returnData;
+	}
+	
+	/**
+	 * Walk through the classification records one at a time. Each record is only built when it is reached,
+	 * so the log data is never held twice.
+	 * @return An iterator over the classification records in the original data set, in log order
+	 * @throws ClassificationException Classification exception
+	 */
+	public Iterator<ClassificationRecord> getClassificationRecordIterator() throws ClassificationException {
+		final AuditFormat successFormat = getAuditFormat(getSuccessFormat());
+		if (logger.isDebugEnabled()) logger.debug("getClassificationRecordIterator - success format: " + successFormat);
+		final AuditFormat errorFormat = getAuditFormat(getFailFormat());
+		if (logger.isDebugEnabled()) logger.debug("getClassificationRecordIterator - error format: " + errorFormat);
+
+		final LogDataRows logDataRows = new LogDataRows();
+		return new Iterator<ClassificationRecord>() {
+			private ClassificationRecord nextRecord = null;
+
+			@Override
+			public boolean hasNext() {
+				if (nextRecord == null) {
+					String[] data = logDataRows.next();
+					if (data == null) return false;
+					if (successFormat.isExample(data)) {
+						nextRecord = new SuccessRecord(data, successFormat);
+					} else {
+						nextRecord = new ErrorRecord(data, errorFormat);
+					}
+				}
+				return true;
+			}
+
+			@Override
+			public ClassificationRecord next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				ClassificationRecord classificationRecord = nextRecord;
+				nextRecord = null;
+				return classificationRecord;
+			}
+		};
+	}
+	
+	/**
+	 * Decode every classification record into primitive columns. Each record is parsed once, with
+	 * the success and failure formats compiled beforehand, and no record objects are created.
+	 * @return The records that were in the original data set, in log order
+	 * @throws ClassificationException Classification exception
+	 */
+	public AuditColumns getAuditColumns() throws ClassificationException {
+		AuditDecoder successDecoder = getAuditFormat(getSuccessFormat()).compile();
+		AuditDecoder errorDecoder = getAuditFormat(getFailFormat()).compile();
+
+		AuditColumns auditColumns = new AuditColumns();
+		LogDataRows logDataRows = new LogDataRows();
+		String[] data;
+		while ((data = logDataRows.next()) != null) {
+			if (successDecoder.isExample(data)) {
+				successDecoder.decode(data, true, auditColumns);
 			} else {
+				errorDecoder.decode(data, false, auditColumns);
+			}
+		}
+		return auditColumns;
+	}
+	
+	/* Splits the log data into the cells of each record. Lines ending in a backslash continue on the next line */
+	private class LogDataRows {
+		private int position = 0;
+
+		private String[] next() {
+			StringBuilder stringBuilder = new StringBuilder("");
+			while (position < logData.length()) {
+				int lineEnd = logData.indexOf('\n', position);
+				if (lineEnd == -1) lineEnd = logData.length();
+				String trimmedLogDataLine = rtrim(logData.substring(position, lineEnd));
+				position = lineEnd + 1;
+
+				if (trimmedLogDataLine.endsWith("\\")) {
+					stringBuilder.append(trimmedLogDataLine.substring(0, trimmedLogDataLine.length()-1));
+					continue;
+				}
 				String[] data;
 				if (stringBuilder.length() > 0) {
 					stringBuilder.append(trimmedLogDataLine);
@@ -115,17 +192,10 @@ public class ClassificationHistory extends XMLReader {
 				} else {
 					data = splitCells(trimmedLogDataLine);
 				}
-				if (data.length == 0) continue;
-				if (successFormat.isExample(data)) {
-					returnData.add(new SuccessRecord(data, successFormat));
-				} else {
-					returnData.add(new ErrorRecord(data, errorFormat));
-				}
-				
+				if (data.length > 0) return data;
 			}
+			return null;
 		}
-		if (logger.isDebugEnabled()) logger.debug("getClassificationRecords - exit: " + returnData.size());
-		return returnData;
 	}
 	
 	private AuditFormat getAuditFormat(String inputFormat) throws ClassificationException {
@@ -137,7 +207,7 @@ public class ClassificationHistory extends XMLReader {
 		}
 	}
 	
-	private String[] splitCells(String inputData) throws ClassificationException {
+	private String[] splitCells(String inputData) {
 		return CSVParser.parseLine(inputData);
 	}
 	
@@ -0,0 +1,103 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads the classification history for a time range one record at a time.
+ *
+ * The range is split into windows that are requested separately. While the records of one window are read,
+ * the following windows are already being fetched and parsed on the client's request pool, so at most
+ * lookahead windows beyond the current one are held in memory however long the range is. Records are
+ * returned in time order: window by window, and in log order within each window.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class ClassificationHistoryReader implements AutoCloseable {
+
+	private final ClassificationClient classificationClient;
+	private final long endTime;
+	private final long windowMS;
+	private final int lookahead;
+
+	private long nextWindowStart;
+	private boolean allRequested = false;
+	private final Deque<CompletableFuture<ClassificationHistory>> windows = new ArrayDeque<CompletableFuture<ClassificationHistory>>();
+	private Iterator<ClassificationRecord> currentWindow = Collections.emptyIterator();
+
+	ClassificationHistoryReader(ClassificationClient classificationClient, Date startTime, Date endTime, long windowMS,
+			int lookahead) {
+		this.classificationClient = classificationClient;
+		this.nextWindowStart = startTime.getTime();
+		this.endTime = endTime.getTime();
+		// Classification server works to the second
+		this.windowMS = Math.max(1000, ((windowMS + 999) / 1000) * 1000);
+		this.lookahead = Math.max(1, lookahead);
+	}
+
+	/**
+	 * Read the next classification record
+	 *
+	 * @return the next record, or null once the whole range has been read
+	 * @throws ClassificationException Classification exception
+	 */
+	public ClassificationRecord read() throws ClassificationException {
+		while (!currentWindow.hasNext()) {
+			requestWindows();
+			CompletableFuture<ClassificationHistory> window = windows.poll();
+			if (window == null) return null;
+			currentWindow = await(window).getClassificationRecordIterator();
+		}
+		return currentWindow.next();
+	}
+
+	private void requestWindows() {
+		while (!allRequested && (windows.size() < lookahead)) {
+			long windowStart = nextWindowStart;
+			long windowEnd = windowStart + windowMS;
+			long finishTime;
+			if (windowEnd >= endTime) {
+				finishTime = endTime;
+				allRequested = true;
+			} else {
+				// The finish time is inclusive, so stop short of the next window
+				finishTime = windowEnd - 1000;
+			}
+			windows.add(classificationClient.getClassificationHistoryAsync(new Date(windowStart), new Date(finishTime)));
+			nextWindowStart = windowEnd;
+		}
+	}
+
+	private ClassificationHistory await(CompletableFuture<ClassificationHistory> window) throws ClassificationException {
+		try {
+			return window.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ClassificationException("Interrupted waiting for classification history");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ClassificationException) {
+				throw (ClassificationException) e.getCause();
+			}
+			throw new ClassificationException("Unable to read classification history: " + e.getCause());
+		}
+	}
+
+	/**
+	 * Stop reading. Windows that have been requested but not read are discarded.
+	 */
+	@Override
+	public void close() {
+		for (CompletableFuture<ClassificationHistory> window: windows) {
+			window.cancel(false);
+		}
+		windows.clear();
+		allRequested = true;
+		currentWindow = Collections.emptyIterator();
+	}
+}
@@ -0,0 +1,120 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The state of one classification server in a farm, as seen by a NodeBalancer.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class ClassificationNode {
+
+	private final String url;
+
+	ClassificationNode(String url) {
+		this.url = url;
+	}
+
+	/**
+	 * @return The URL that classification requests for this node are sent to
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	private volatile int idleWorkers = -1;
+
+	/**
+	 * @return the number of idle worker processes at the last poll; -1 if not known
+	 */
+	public int getIdleWorkers() {
+		return idleWorkers;
+	}
+
+	void setIdleWorkers(int idleWorkers) {
+		this.idleWorkers = idleWorkers;
+	}
+
+	private volatile long polledAt = 0;
+
+	/**
+	 * @return when the node was last polled successfully (milliseconds since the epoch); 0 if never
+	 */
+	public long getPolledAt() {
+		return polledAt;
+	}
+
+	void setPolledAt(long polledAt) {
+		this.polledAt = polledAt;
+	}
+
+	private volatile int poolSize = 0;
+
+	/**
+	 * @return the number of connections the client keeps to this node, as set by resizePool(); 0 for the
+	 *         client pool size
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/**
+	 * @return the number of requests from this client the node is handling now
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	void requestStarted() {
+		inFlight.incrementAndGet();
+	}
+
+	void requestFinished() {
+		inFlight.decrementAndGet();
+	}
+
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+	public int getConsecutiveFailures() {
+		return consecutiveFailures.get();
+	}
+
+	int failed() {
+		return consecutiveFailures.incrementAndGet();
+	}
+
+	void succeeded() {
+		consecutiveFailures.set(0);
+	}
+
+	private volatile long ejectedUntil = 0;
+
+	/**
+	 * @return true if the node is out of use after failing
+	 */
+	public boolean isEjected() {
+		return System.currentTimeMillis() < ejectedUntil;
+	}
+
+	void eject(long ejectedUntil) {
+		this.ejectedUntil = ejectedUntil;
+	}
+
+	void readmit() {
+		this.ejectedUntil = 0;
+		consecutiveFailures.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "ClassificationNode [url=" + url + ", idleWorkers=" + idleWorkers + ", inFlight=" + inFlight
+				+ ", consecutiveFailures=" + consecutiveFailures + ", ejected=" + isEjected() + "]";
+	}
+}
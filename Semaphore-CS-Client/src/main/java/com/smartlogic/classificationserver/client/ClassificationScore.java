@@ -135,6 +135,13 @@ public class ClassificationScore implements Comparable<ClassificationScore> {
 		return id;
 	}
 
+	/*
+	 * Identifies the term across results: its class and id, or its class and name if it has no id
+	 */
+	String getTermKey() {
+		return rulebaseClass + "\u0000" + ((id == null) ? "\u0000" + name : id);
+	}
+
 
 	/**
 	 * Doing this manually for now. We don't have many of these. But this is a ton of work
@@ -0,0 +1,238 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Classifies a very large document as a number of smaller ones.
+ *
+ * The body is split on paragraph boundaries into chunks of at most chunkCharacters each. A paragraph longer
+ * than that is split too, after the last sentence that fits or else at the last white space. Each chunk begins
+ * with the last paragraphs of the one before, up to overlapCharacters of them, so that text near a boundary is
+ * seen in context. The chunks are classified in parallel through the client's request pool, so no one request
+ * holds a classification server worker for long. Their scores are then merged into a single result, and the
+ * client's score filter is applied to the merged scores alone.
+ *
+ * The merged result holds the scores and the document level metadata of the first chunk. It has no articles,
+ * meta nodes or hash, as those belong to the chunks. A body no longer than chunkCharacters is classified as
+ * it is, in one request.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class LargeDocumentClassifier {
+	private static final Logger logger = LoggerFactory.getLogger(LargeDocumentClassifier.class);
+
+	/**
+	 * How the scores of each term in the chunks become the term's score in the merged result
+	 */
+	public enum Aggregation {
+		/** The highest score of any chunk */
+		MAX,
+		/** The mean of the chunks' scores, weighted by their length; a chunk without the term counts as zero */
+		WEIGHTED_MEAN
+	}
+
+	private final ClassificationClient classificationClient;
+
+	public LargeDocumentClassifier(ClassificationClient classificationClient) {
+		this.classificationClient = classificationClient;
+	}
+
+	private int chunkCharacters = 50000;
+
+	public int getChunkCharacters() {
+		return chunkCharacters;
+	}
+
+	/**
+	 * @param chunkCharacters The most characters in a chunk
+	 */
+	public void setChunkCharacters(int chunkCharacters) {
+		this.chunkCharacters = chunkCharacters;
+	}
+
+	private int overlapCharacters = 2000;
+
+	public int getOverlapCharacters() {
+		return overlapCharacters;
+	}
+
+	/**
+	 * @param overlapCharacters The most characters of whole paragraphs repeated from the end of one chunk at the start of the next
+	 */
+	public void setOverlapCharacters(int overlapCharacters) {
+		this.overlapCharacters = overlapCharacters;
+	}
+
+	private Aggregation aggregation = Aggregation.MAX;
+
+	public Aggregation getAggregation() {
+		return aggregation;
+	}
+
+	/**
+	 * @param aggregation How chunk scores are merged (default MAX)
+	 */
+	public void setAggregation(Aggregation aggregation) {
+		this.aggregation = aggregation;
+	}
+
+	/**
+	 * Classify the supplied title and body as if they were a document
+	 *
+	 * @param body  The document body
+	 * @param title The document title, sent with every chunk
+	 * @return the merged result
+	 * @throws ClassificationException if any chunk cannot be classified
+	 */
+	public Result classify(Body body, Title title) throws ClassificationException {
+		return classify(body, title, null);
+	}
+
+	/**
+	 * Classify the supplied title and body as if they were a document
+	 *
+	 * @param body     The document body
+	 * @param title    The document title, sent with every chunk
+	 * @param metadata Metadata sent with every chunk
+	 * @return the merged result
+	 * @throws ClassificationException if any chunk cannot be classified
+	 */
+	public Result classify(Body body, Title title, Map<String, Collection<String>> metadata) throws ClassificationException {
+		if ((body == null) || (body.getValue() == null) || (body.getValue().length() <= chunkCharacters)) {
+			return classificationClient.getClassifiedDocument(null, body, title, metadata);
+		}
+
+		List<String> chunks = split(body.getValue());
+		logger.debug("classify - {} characters in {} chunks", body.getValue().length(), chunks.size());
+
+		List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>(chunks.size());
+		for (String chunk: chunks) {
+			// Unfiltered, as a score below the threshold in one chunk still counts towards the merged score
+			futures.add(classificationClient.classifyAsync(() -> classificationClient.getUnfilteredResult(new Body(chunk), title, metadata)));
+		}
+		List<Result> results = new ArrayList<Result>(chunks.size());
+		try {
+			for (CompletableFuture<Result> future: futures) {
+				results.add(future.join());
+			}
+		} catch (CompletionException e) {
+			for (CompletableFuture<Result> future: futures) {
+				future.cancel(false);
+			}
+			if (e.getCause() instanceof ClassificationException) throw (ClassificationException)e.getCause();
+			throw new ClassificationException(e.getCause().getClass().getSimpleName() + " classifying chunk: " + e.getCause().getMessage());
+		}
+		return merge(chunks, results);
+	}
+
+	/* The paragraphs of the body, as chunks with paragraphs separated by single new lines, as Body expects */
+	private List<String> split(String text) {
+		List<String> paragraphs = new ArrayList<String>();
+		for (String paragraph: text.split("\\r?\\n\\s*\\r?\\n")) {
+			paragraph = paragraph.trim();
+			while ((chunkCharacters > 0) && (paragraph.length() > chunkCharacters)) {
+				int end = getBreak(paragraph);
+				paragraphs.add(paragraph.substring(0, end));
+				paragraph = paragraph.substring(end).trim();
+			}
+			if (!paragraph.isEmpty()) paragraphs.add(paragraph);
+		}
+
+		List<String> chunks = new ArrayList<String>();
+		int start = 0;
+		while (start < paragraphs.size()) {
+			int end = start;
+			int length = 0;
+			while ((end < paragraphs.size()) && ((end == start) || (length + paragraphs.get(end).length() <= chunkCharacters))) {
+				length += paragraphs.get(end).length();
+				end++;
+			}
+			chunks.add(String.join("\n", paragraphs.subList(start, end)));
+			if (end == paragraphs.size()) break;
+
+			// Step back over whole paragraphs for the overlap, always leaving the next chunk further on
+			int next = end;
+			int overlap = 0;
+			while ((next - 1 > start) && (overlap + paragraphs.get(next - 1).length() <= overlapCharacters)) {
+				next--;
+				overlap += paragraphs.get(next).length();
+			}
+			start = next;
+		}
+		return chunks;
+	}
+
+	/* Where a paragraph longer than a chunk ends: after the last sentence that fits, if that is at least half a
+	 * chunk, else at the last white space, else at the limit itself */
+	private int getBreak(String paragraph) {
+		int space = -1;
+		for (int i = chunkCharacters; i > 0; i--) {
+			if (!Character.isWhitespace(paragraph.charAt(i))) continue;
+			if (space == -1) space = i;
+			if (i < chunkCharacters / 2) break;
+			if (".!?".indexOf(paragraph.charAt(i - 1)) >= 0) return i;
+		}
+		if (space > 0) return space;
+		// Not between the two halves of a surrogate pair
+		boolean surrogate = (chunkCharacters > 1) && Character.isHighSurrogate(paragraph.charAt(chunkCharacters - 1));
+		return surrogate ? chunkCharacters - 1 : chunkCharacters;
+	}
+
+	private Result merge(List<String> chunks, List<Result> results) {
+		float totalLength = 0;
+		for (String chunk: chunks) {
+			totalLength += chunk.length();
+		}
+
+		Map<String, ClassificationScore> terms = new LinkedHashMap<String, ClassificationScore>();
+		Map<String, Float> scores = new LinkedHashMap<String, Float>();
+		for (int c = 0; c < results.size(); c++) {
+			float weight = chunks.get(c).length() / totalLength;
+			for (Collection<ClassificationScore> classificationScores: results.get(c).getAllClassifications().values()) {
+				for (ClassificationScore classificationScore: classificationScores) {
+					String key = classificationScore.getTermKey();
+					terms.putIfAbsent(key, classificationScore);
+					Float score = scores.get(key);
+					if (aggregation == Aggregation.MAX) {
+						scores.put(key, (score == null) ? classificationScore.getScore() : Math.max(score, classificationScore.getScore()));
+					} else {
+						scores.put(key, ((score == null) ? 0.0f : score) + (classificationScore.getScore() * weight));
+					}
+				}
+			}
+		}
+
+		Map<String, List<ClassificationScore>> merged = new LinkedHashMap<String, List<ClassificationScore>>();
+		for (Map.Entry<String, ClassificationScore> term: terms.entrySet()) {
+			ClassificationScore first = term.getValue();
+			List<ClassificationScore> classScores = merged.get(first.getRulebaseClass());
+			if (classScores == null) {
+				classScores = new ArrayList<ClassificationScore>();
+				merged.put(first.getRulebaseClass(), classScores);
+			}
+			classScores.add(new ClassificationScore(first.getRulebaseClass(), first.getName(), scores.get(term.getKey()), first.getId()));
+		}
+
+		Result result = new Result();
+		ScoreFilter scoreFilter = classificationClient.getScoreFilter();
+		for (List<ClassificationScore> classScores: merged.values()) {
+			for (ClassificationScore classificationScore: (scoreFilter == null) ? classScores : scoreFilter.filter(classScores)) {
+				result.addClassificationScore(classificationScore);
+			}
+		}
+		for (Map.Entry<String, String> meta: results.get(0).getMetadata().entrySet()) {
+			result.addMeta(meta.getKey(), meta.getValue());
+		}
+		return result;
+	}
+}
@@ -0,0 +1,101 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of latencies, accurate to within one eighth of the recorded value.
+ *
+ * Values are held in microseconds. Each power of two range is split into eight equal buckets, so the
+ * histogram has a fixed size however long the latencies recorded.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/**
+	 * Record a latency
+	 *
+	 * @param duration The latency
+	 * @param timeUnit The unit of the latency
+	 */
+	public void record(long duration, TimeUnit timeUnit) {
+		long micros = Math.max(0, timeUnit.toMicros(duration));
+		counts.incrementAndGet(bucketFor(micros));
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+		long max;
+		while ((max = maxMicros.get()) < micros && !maxMicros.compareAndSet(max, micros)) {
+			// Retry
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return the mean latency in milliseconds, or zero if nothing has been recorded
+	 */
+	public double getMeanMS() {
+		long recorded = count.get();
+		return (recorded == 0) ? 0 : totalMicros.get() / 1000.0 / recorded;
+	}
+
+	/**
+	 * @return the largest latency recorded, in milliseconds
+	 */
+	public double getMaxMS() {
+		return maxMicros.get() / 1000.0;
+	}
+
+	/**
+	 * @param percentile The percentile required, between 0 and 100
+	 * @return the latency in milliseconds below which that percentage of recorded latencies fall
+	 */
+	public double getPercentileMS(double percentile) {
+		long recorded = count.get();
+		if (recorded == 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(recorded * percentile / 100.0);
+		long cumulative = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			cumulative += counts.get(bucket);
+			if (cumulative >= Math.max(1, target)) {
+				return Math.min(upperBound(bucket), maxMicros.get()) / 1000.0;
+			}
+		}
+		return getMaxMS();
+	}
+
+	static int bucketFor(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		long subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (subBucket + 1) * width - 1;
+	}
+}
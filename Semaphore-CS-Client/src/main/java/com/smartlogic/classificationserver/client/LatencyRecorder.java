@@ -0,0 +1,170 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records where the time goes in the classification requests of a client.
+ *
+ * Once set on a client, every classification request is sent with an audit tag of its own and timed phase by
+ * phase. Each phase has a histogram, and the timings of the most recent requests are kept by audit tag. When
+ * the classification server's audit log for the period is read with getClassificationHistory, correlate
+ * matches its records with those timings, adding the time the server itself took to each.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class LatencyRecorder {
+	private static final Logger logger = LoggerFactory.getLogger(LatencyRecorder.class);
+
+	/**
+	 * The phases of a request, as in RequestTiming
+	 */
+	public enum Phase {
+		BUILD, POOL_WAIT, CONNECT, UPLOAD, FIRST_BYTE, DOWNLOAD, PARSE, TOTAL,
+		/** The time recorded in the classification server's audit log */
+		SERVER,
+		/** The time to first byte less the server's time */
+		QUEUE_AND_NETWORK
+	}
+
+	/**
+	 * Told of each request once its response has been read
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		void timed(RequestTiming requestTiming);
+	}
+
+	private final Map<Phase, LatencyHistogram> histograms = new EnumMap<Phase, LatencyHistogram>(Phase.class);
+	private final int maxTimings;
+	private final Map<String, RequestTiming> timings;
+
+	public LatencyRecorder() {
+		this(10000);
+	}
+
+	/**
+	 * @param maxTimings The number of recent request timings kept for correlation
+	 */
+	public LatencyRecorder(int maxTimings) {
+		for (Phase phase: Phase.values()) {
+			histograms.put(phase, new LatencyHistogram());
+		}
+		this.maxTimings = maxTimings;
+		this.timings = new LinkedHashMap<String, RequestTiming>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, RequestTiming> eldest) {
+				return size() > LatencyRecorder.this.maxTimings;
+			}
+		};
+	}
+
+	private volatile Listener listener = null;
+
+	public Listener getListener() {
+		return listener;
+	}
+
+	/**
+	 * @param listener If not null, told of each request as it is recorded
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @param phase The phase
+	 * @return the histogram of the phase's durations
+	 */
+	public LatencyHistogram getHistogram(Phase phase) {
+		return histograms.get(phase);
+	}
+
+	/**
+	 * @param auditTag The audit tag sent with a request
+	 * @return the request's timing, or null if it is not one of the recent requests
+	 */
+	public synchronized RequestTiming getTiming(String auditTag) {
+		return timings.get(auditTag);
+	}
+
+	void record(RequestTiming requestTiming) {
+		record(Phase.BUILD, requestTiming.getBuildNanos());
+		record(Phase.POOL_WAIT, requestTiming.getPoolWaitNanos());
+		record(Phase.CONNECT, requestTiming.getConnectNanos());
+		record(Phase.UPLOAD, requestTiming.getUploadNanos());
+		record(Phase.FIRST_BYTE, requestTiming.getFirstByteNanos());
+		record(Phase.DOWNLOAD, requestTiming.getDownloadNanos());
+		record(Phase.TOTAL, requestTiming.getTotalNanos());
+		synchronized (this) {
+			timings.put(requestTiming.getAuditTag(), requestTiming);
+		}
+
+		Listener currentListener = listener;
+		if (currentListener != null) {
+			try {
+				currentListener.timed(requestTiming);
+			} catch (RuntimeException e) {
+				logger.error("Latency listener failed: {}", e.getMessage());
+			}
+		}
+	}
+
+	void recordParse(RequestTiming requestTiming, long parseNanos) {
+		requestTiming.setParseNanos(parseNanos);
+		record(Phase.PARSE, parseNanos);
+	}
+
+	private void record(Phase phase, long nanos) {
+		histograms.get(phase).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Add the server's time for each request in the audit records to its timing
+	 *
+	 * @param classificationRecords Records read with ClassificationClient.getClassificationHistory
+	 * @return the number of records matched with a timing
+	 */
+	public int correlate(Collection<ClassificationRecord> classificationRecords) {
+		int matched = 0;
+		for (ClassificationRecord classificationRecord: classificationRecords) {
+			if (correlate(classificationRecord.getAuditTag(), classificationRecord.getTimeTaken())) matched++;
+		}
+		return matched;
+	}
+
+	/**
+	 * Add the server's time for each request in the audit records to its timing
+	 *
+	 * @param auditColumns Records read with ClassificationHistory.getAuditColumns
+	 * @return the number of records matched with a timing
+	 */
+	public int correlate(AuditColumns auditColumns) {
+		int matched = 0;
+		for (int record = 0; record < auditColumns.size(); record++) {
+			if (correlate(auditColumns.getAuditTag(record), auditColumns.getTimeTaken(record))) matched++;
+		}
+		return matched;
+	}
+
+	private boolean correlate(String auditTag, float timeTakenMS) {
+		if ((auditTag == null) || (timeTakenMS < 0)) return false;
+		RequestTiming requestTiming = getTiming(auditTag);
+		// Each request is counted once, however often its record is read
+		if ((requestTiming == null) || (requestTiming.getServerTimeTakenMS() >= 0)) return false;
+
+		requestTiming.setServerTimeTakenMS(timeTakenMS);
+		record(Phase.SERVER, (long)(timeTakenMS * 1000000));
+		record(Phase.QUEUE_AND_NETWORK, requestTiming.getQueueAndNetworkNanos());
+		return true;
+	}
+}
@@ -16,18 +16,8 @@ public class MetadataHoldingObject extends XMLReader {
 		String name = metaElement.getAttribute("name");
 		String value = metaElement.getAttribute("value");
 		String score = metaElement.getAttribute("score");
-		MetaNode metaNode = new MetaNode(name, value, score);
+		MetaNode metaNode = addMetaNode(name, value, score);
 
-		Collection<MetaNode> metaNodesForName = metaNodes.get(name);
-		if (metaNodesForName == null) {
-			metaNodesForName = new ArrayList<MetaNode>();
-			metaNodes.put(name, metaNodesForName);
-		}
-		metaNodesForName.add(metaNode);
-
-		
-		
-		
 		NodeList nodeList = metaElement.getChildNodes();
 		if (nodeList == null) return;
 
@@ -42,6 +32,18 @@ public class MetadataHoldingObject extends XMLReader {
 		}
 	}
 
+	protected MetaNode addMetaNode(String name, String value, String score) {
+		MetaNode metaNode = new MetaNode(name, value, score);
+
+		Collection<MetaNode> metaNodesForName = metaNodes.get(name);
+		if (metaNodesForName == null) {
+			metaNodesForName = new ArrayList<MetaNode>();
+			metaNodes.put(name, metaNodesForName);
+		}
+		metaNodesForName.add(metaNode);
+		return metaNode;
+	}
+
 	public Map<String, Collection<MetaNode>> getMetaNodes() {
 		return metaNodes;
 	}
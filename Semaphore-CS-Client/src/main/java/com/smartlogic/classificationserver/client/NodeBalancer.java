@@ -0,0 +1,248 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the classification requests of a ClassificationClient across a farm of classification servers.
+ * Commands, publishing among them, are not balanced; they go to the client's configured URL.
+ *
+ * Every node is polled for its info in the background and each request goes to the node with the most idle
+ * worker processes, less the requests this client already has in flight there. Nodes whose idle count is
+ * not known are chosen round robin, as are nodes that tie.
+ *
+ * A node is ejected for ejectionMS after failuresToEject connection failures or unavailable responses in a
+ * row, or a failed poll. It is readmitted when a poll succeeds or the ejection time passes. If every node is
+ * ejected, requests are spread across all of them rather than failing outright.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class NodeBalancer implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(NodeBalancer.class);
+
+	/**
+	 * How the balancer reads the info of a single node
+	 */
+	@FunctionalInterface
+	public interface InfoSource {
+		CSInfo getInfo(String url) throws ClassificationException;
+	}
+
+	private final List<ClassificationNode> nodes;
+	private final AtomicInteger nextNode = new AtomicInteger();
+
+	/**
+	 * @param urls The classification request URL of each node
+	 */
+	public NodeBalancer(Collection<String> urls) {
+		if ((urls == null) || urls.isEmpty()) {
+			throw new IllegalArgumentException("At least one node URL is required");
+		}
+		List<ClassificationNode> nodeList = new ArrayList<ClassificationNode>();
+		for (String url: urls) {
+			nodeList.add(new ClassificationNode(url));
+		}
+		nodes = Collections.unmodifiableList(nodeList);
+	}
+
+	public List<ClassificationNode> getNodes() {
+		return nodes;
+	}
+
+	private long pollIntervalMS = 5000;
+
+	public long getPollIntervalMS() {
+		return pollIntervalMS;
+	}
+
+	/**
+	 * @param pollIntervalMS How often each node's info is read (default 5000)
+	 */
+	public void setPollIntervalMS(long pollIntervalMS) {
+		this.pollIntervalMS = pollIntervalMS;
+	}
+
+	private long ejectionMS = 30000;
+
+	public long getEjectionMS() {
+		return ejectionMS;
+	}
+
+	/**
+	 * @param ejectionMS How long a failing node is left out (default 30000)
+	 */
+	public void setEjectionMS(long ejectionMS) {
+		this.ejectionMS = ejectionMS;
+	}
+
+	private int failuresToEject = 3;
+
+	public int getFailuresToEject() {
+		return failuresToEject;
+	}
+
+	/**
+	 * @param failuresToEject The number of request failures in a row that eject a node (default 3)
+	 */
+	public void setFailuresToEject(int failuresToEject) {
+		this.failuresToEject = failuresToEject;
+	}
+
+	private Set<String> idleStatuses = new HashSet<String>(Arrays.asList("idle"));
+
+	public Set<String> getIdleStatuses() {
+		return idleStatuses;
+	}
+
+	/**
+	 * @param idleStatuses The worker process statuses (case insensitive) that count as idle (default "idle")
+	 */
+	public void setIdleStatuses(Set<String> idleStatuses) {
+		Set<String> lowerCase = new HashSet<String>();
+		for (String idleStatus: idleStatuses) {
+			lowerCase.add(idleStatus.toLowerCase(Locale.ROOT));
+		}
+		this.idleStatuses = lowerCase;
+	}
+
+	/**
+	 * @return the node the next request should go to
+	 */
+	public ClassificationNode select() {
+		return select(null);
+	}
+
+	/**
+	 * @param avoid A node not to use unless there is no other
+	 * @return the node the next request should go to
+	 */
+	ClassificationNode select(ClassificationNode avoid) {
+		List<ClassificationNode> candidates = new ArrayList<ClassificationNode>(nodes.size());
+		for (ClassificationNode node: nodes) {
+			if (!node.isEjected() && (node != avoid)) candidates.add(node);
+		}
+		if (candidates.isEmpty()) {
+			for (ClassificationNode node: nodes) {
+				if (node != avoid) candidates.add(node);
+			}
+		}
+		if (candidates.isEmpty()) {
+			candidates = nodes;
+		}
+
+		// Scan from a rotating start so that ties and unknown nodes are shared round robin
+		int start = Math.floorMod(nextNode.getAndIncrement(), candidates.size());
+		ClassificationNode best = null;
+		int bestScore = Integer.MIN_VALUE;
+		for (int i = 0; i < candidates.size(); i++) {
+			ClassificationNode node = candidates.get((start + i) % candidates.size());
+			if (node.getIdleWorkers() < 0) continue;
+			int score = node.getIdleWorkers() - node.getInFlight();
+			if (score > bestScore) {
+				best = node;
+				bestScore = score;
+			}
+		}
+		return (best == null) ? candidates.get(start) : best;
+	}
+
+	/**
+	 * Record that a node answered a request
+	 *
+	 * @param node The node
+	 */
+	public void succeeded(ClassificationNode node) {
+		node.succeeded();
+	}
+
+	/**
+	 * Record that a node could not be reached or was unavailable
+	 *
+	 * @param node The node
+	 */
+	public void failed(ClassificationNode node) {
+		if (node.failed() >= failuresToEject) {
+			eject(node);
+		}
+	}
+
+	private void eject(ClassificationNode node) {
+		if (!node.isEjected()) {
+			logger.warn("Ejecting classification server node {} for {} ms", node.getUrl(), ejectionMS);
+		}
+		node.eject(System.currentTimeMillis() + ejectionMS);
+	}
+
+	/**
+	 * Read the info of every node once
+	 *
+	 * @param infoSource How to read a node's info
+	 */
+	public void poll(InfoSource infoSource) {
+		for (ClassificationNode node: nodes) {
+			try {
+				CSInfo csInfo = infoSource.getInfo(node.getUrl());
+				int idleWorkers = 0;
+				if (csInfo.getChildrenProcesses() != null) {
+					for (CSProcess csProcess: csInfo.getChildrenProcesses()) {
+						if ((csProcess.getStatus() != null) && idleStatuses.contains(csProcess.getStatus().toLowerCase(Locale.ROOT))) {
+							idleWorkers++;
+						}
+					}
+				}
+				node.setIdleWorkers(idleWorkers);
+				node.setPolledAt(System.currentTimeMillis());
+				if (node.isEjected()) {
+					logger.info("Readmitting classification server node {}", node.getUrl());
+				}
+				node.readmit();
+			} catch (ClassificationException | RuntimeException e) {
+				logger.warn("Unable to read info from classification server node {}: {}", node.getUrl(), e.getMessage());
+				node.setIdleWorkers(-1);
+				eject(node);
+			}
+		}
+	}
+
+	private ScheduledExecutorService poller = null;
+
+	/**
+	 * Start polling the nodes in the background
+	 *
+	 * @param infoSource How to read a node's info
+	 */
+	public synchronized void start(InfoSource infoSource) {
+		if (poller != null) return;
+		poller = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "NodeBalancer-poll");
+			thread.setDaemon(true);
+			return thread;
+		});
+		poller.scheduleWithFixedDelay(() -> poll(infoSource), 0, pollIntervalMS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop polling
+	 */
+	@Override
+	public synchronized void close() {
+		if (poller != null) {
+			poller.shutdownNow();
+			poller = null;
+		}
+	}
+}
@@ -17,10 +17,26 @@ public class Paragraph {
 	
 	private String content;
 	public String getContent() {
+		if ((content == null) && (contentSource != null)) {
+			content = contentSource.subSequence(contentStart, contentEnd).toString();
+			contentSource = null;
+		}
 		return content;
 	}
 	public void setContent(String content) {
 		this.content = content;
+		this.contentSource = null;
+	}
+
+	/* Content held as a range of a larger buffer until it is asked for */
+	private CharSequence contentSource;
+	private int contentStart;
+	private int contentEnd;
+	void setContent(CharSequence contentSource, int contentStart, int contentEnd) {
+		this.content = null;
+		this.contentSource = contentSource;
+		this.contentStart = contentStart;
+		this.contentEnd = contentEnd;
 	}
 	
 }
@@ -0,0 +1,67 @@
+package com.smartlogic.classificationserver.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.MIME;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+
+/**
+ * A multipart body part that streams a file to the request in large blocks.
+ *
+ * The file is read through a channel straight into the buffer that is written to the connection, so it
+ * is never held in memory as a whole and is only copied once on its way out.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+class PathBody extends AbstractContentBody {
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	private final Path path;
+
+	PathBody(Path path) {
+		super(ContentType.DEFAULT_BINARY);
+		this.path = path;
+	}
+
+	@Override
+	public String getFilename() {
+		return path.getFileName().toString();
+	}
+
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		byte[] block = new byte[BLOCK_SIZE];
+		ByteBuffer byteBuffer = ByteBuffer.wrap(block);
+		try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+			int read;
+			while ((read = fileChannel.read(byteBuffer)) != -1) {
+				outputStream.write(block, 0, read);
+				byteBuffer.clear();
+			}
+		}
+		outputStream.flush();
+	}
+
+	@Override
+	public String getTransferEncoding() {
+		return MIME.ENC_BINARY;
+	}
+
+	@Override
+	public long getContentLength() {
+		try {
+			return Files.size(path);
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.smartlogic.classificationserver.client;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.Consts;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.FormBodyPart;
+import org.apache.http.entity.mime.FormBodyPartBuilder;
+import org.apache.http.entity.mime.content.StringBody;
+
+/**
+ * What a client needs from its ClassificationConfiguration to send requests, captured once so that every
+ * thread sharing the client sees the same settings without reading the mutable configuration.
+ *
+ * The default form parts are built and encoded here too, as a RequestTemplate, so the same encoding is sent
+ * with every request. A second template asks for multi article results whatever the configuration, for
+ * requests that pack several documents as articles.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+final class RequestSettings {
+
+	private static final ContentType contentType = ContentType.create("text/plain", Consts.UTF_8);
+
+	private final String url;
+	private final String apiToken;
+	private final int connectionTimeoutMS;
+	private final int socketTimeoutMS;
+	private final String proxyURL;
+	private final RequestTemplate requestTemplate;
+	private final RequestTemplate multiArticleTemplate;
+
+	RequestSettings(ClassificationConfiguration classificationConfiguration, String proxyURL) throws ClassificationException {
+		try {
+			this.url = classificationConfiguration.getUrl();
+		} catch (MalformedURLException e) {
+			throw new ClassificationException("Invalid classification server URL: " + e.getMessage());
+		}
+		this.apiToken = classificationConfiguration.getApiToken();
+		this.connectionTimeoutMS = classificationConfiguration.getConnectionTimeoutMS();
+		this.socketTimeoutMS = classificationConfiguration.getSocketTimeoutMS();
+		this.proxyURL = proxyURL;
+		this.requestTemplate = new RequestTemplate(getDefaultParts(classificationConfiguration, false));
+		this.multiArticleTemplate = new RequestTemplate(getDefaultParts(classificationConfiguration, true));
+	}
+
+	private static List<FormBodyPart> getDefaultParts(ClassificationConfiguration classificationConfiguration, boolean forceMultiArticle) {
+		List<FormBodyPart> defaultParts = new ArrayList<FormBodyPart>();
+
+		Map<String, String> additionalParameters = classificationConfiguration.getAdditionalParameters();
+		if (additionalParameters != null) {
+			for (Map.Entry<String, String> additionalParameter : additionalParameters.entrySet()) {
+				String value = additionalParameter.getValue();
+				if ((value != null) && (value.length() > 0)) {
+					defaultParts.add(getFormPart(additionalParameter.getKey(), value));
+				}
+			}
+		}
+		// Both flags are sent if both are configured; singlearticle would undo a forced multiarticle
+		if (classificationConfiguration.isSingleArticle() && !forceMultiArticle)
+			defaultParts.add(getFormPart("singlearticle", "on"));
+		if (classificationConfiguration.isMultiArticle() || forceMultiArticle)
+			defaultParts.add(getFormPart("multiarticle", "on"));
+		if (classificationConfiguration.isFeedback())
+			defaultParts.add(getFormPart("feedback", "on"));
+		if (classificationConfiguration.isStylesheet())
+			defaultParts.add(getFormPart("stylesheet", "on"));
+		if (classificationConfiguration.isUseGeneratedKeys())
+			defaultParts.add(getFormPart("use_generated_keys", "on"));
+		if (classificationConfiguration.isReturnHashCode())
+			defaultParts.add(getFormPart("return_hash", "on"));
+		return defaultParts;
+	}
+
+	static FormBodyPart getFormPart(String name, String value) {
+		return FormBodyPartBuilder.create(name, new StringBody(value, contentType)).build();
+	}
+
+	String getUrl() {
+		return url;
+	}
+
+	String getApiToken() {
+		return apiToken;
+	}
+
+	int getConnectionTimeoutMS() {
+		return connectionTimeoutMS;
+	}
+
+	int getSocketTimeoutMS() {
+		return socketTimeoutMS;
+	}
+
+	String getProxyURL() {
+		return proxyURL;
+	}
+
+	/**
+	 * @return the template of a request, with the article flags as configured
+	 */
+	RequestTemplate getRequestTemplate() {
+		return requestTemplate;
+	}
+
+	/**
+	 * @return the template of a request that asks for multi article results
+	 */
+	RequestTemplate getMultiArticleTemplate() {
+		return multiArticleTemplate;
+	}
+}
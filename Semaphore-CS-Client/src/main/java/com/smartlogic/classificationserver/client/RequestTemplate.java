@@ -0,0 +1,166 @@
+package com.smartlogic.classificationserver.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.mime.FormBodyPart;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+
+/**
+ * The part of a classification request that is the same for every document: the default parameters of the
+ * configuration and, when it is fixed, the audit tag.
+ *
+ * The template encodes these parts once, under a boundary of its own. Each request is then that encoding
+ * followed by the document's own parts under the same boundary, so the default parts are neither built nor
+ * encoded again.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+final class RequestTemplate {
+
+	private static final char[] BOUNDARY_CHARS = "-_1234567890abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+	private final List<FormBodyPart> parts;
+	private final String auditTag;
+	private final String boundary;
+	private final byte[] prefix;
+
+	/* The last template made from this one with a fixed audit tag */
+	private volatile RequestTemplate tagged = null;
+
+	RequestTemplate(List<FormBodyPart> parts) {
+		this(parts, null);
+	}
+
+	private RequestTemplate(List<FormBodyPart> parts, String auditTag) {
+		this.parts = Collections.unmodifiableList(new ArrayList<FormBodyPart>(parts));
+		this.auditTag = auditTag;
+		this.boundary = getBoundary();
+		this.prefix = encode();
+	}
+
+	/* As MultipartEntityBuilder would choose one */
+	private static String getBoundary() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		char[] boundary = new char[random.nextInt(11) + 30];
+		for (int i = 0; i < boundary.length; i++) {
+			boundary[i] = BOUNDARY_CHARS[random.nextInt(BOUNDARY_CHARS.length)];
+		}
+		return new String(boundary);
+	}
+
+	/* The encoded parts, without the delimiter that closes the body */
+	private byte[] encode() {
+		MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create().setBoundary(boundary);
+		for (FormBodyPart part : parts)
+			multipartEntityBuilder.addPart(part);
+		if (auditTag != null)
+			multipartEntityBuilder.addPart(RequestSettings.getFormPart("audit_tag", auditTag));
+
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try {
+			multipartEntityBuilder.build().writeTo(byteArrayOutputStream);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to encode request parameters: " + e.getMessage(), e);
+		}
+		byte[] encoded = byteArrayOutputStream.toByteArray();
+		int length = encoded.length - getCloseDelimiter().length;
+		if ((length < 0) || !Arrays.equals(Arrays.copyOfRange(encoded, length, encoded.length), getCloseDelimiter())) {
+			throw new IllegalStateException("Unexpected encoding of request parameters");
+		}
+		return Arrays.copyOf(encoded, length);
+	}
+
+	private byte[] getCloseDelimiter() {
+		return ("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @return the default parts, without any audit tag
+	 */
+	List<FormBodyPart> getParts() {
+		return parts;
+	}
+
+	/**
+	 * @param fixedAuditTag An audit tag sent with every request, or null for none
+	 * @return this template with the audit tag encoded too
+	 */
+	RequestTemplate withAuditTag(String fixedAuditTag) {
+		if (fixedAuditTag == null) return this;
+		RequestTemplate current = tagged;
+		if ((current == null) || !fixedAuditTag.equals(current.auditTag)) {
+			current = new RequestTemplate(parts, fixedAuditTag);
+			tagged = current;
+		}
+		return current;
+	}
+
+	/**
+	 * @param documentParts   The parts of the request that belong to the document
+	 * @param requestAuditTag An audit tag for this request alone, or null for none
+	 * @return the request entity
+	 */
+	HttpEntity getEntity(Collection<FormBodyPart> documentParts, String requestAuditTag) {
+		MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create().setBoundary(boundary);
+		for (FormBodyPart part : documentParts)
+			multipartEntityBuilder.addPart(part);
+		if (requestAuditTag != null)
+			multipartEntityBuilder.addPart(RequestSettings.getFormPart("audit_tag", requestAuditTag));
+		return new TemplateEntity(prefix, multipartEntityBuilder.build());
+	}
+
+	/* The encoded template followed by the document's multipart body */
+	private static class TemplateEntity extends AbstractHttpEntity {
+		private final byte[] prefix;
+		private final HttpEntity documentEntity;
+
+		private TemplateEntity(byte[] prefix, HttpEntity documentEntity) {
+			this.prefix = prefix;
+			this.documentEntity = documentEntity;
+			setContentType(documentEntity.getContentType());
+			setChunked(documentEntity.isChunked());
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return documentEntity.isRepeatable();
+		}
+
+		@Override
+		public long getContentLength() {
+			long documentLength = documentEntity.getContentLength();
+			return (documentLength < 0) ? -1 : prefix.length + documentLength;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			return new SequenceInputStream(new ByteArrayInputStream(prefix), documentEntity.getContent());
+		}
+
+		@Override
+		public void writeTo(OutputStream outputStream) throws IOException {
+			outputStream.write(prefix);
+			documentEntity.writeTo(outputStream);
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return documentEntity.isStreaming();
+		}
+	}
+}
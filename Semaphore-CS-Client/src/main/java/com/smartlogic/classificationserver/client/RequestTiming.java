@@ -0,0 +1,203 @@
+package com.smartlogic.classificationserver.client;
+
+import org.apache.http.HttpEntity;
+
+/**
+ * Where the time went in one classification request.
+ *
+ * The phases follow one another: building the multipart request, waiting for a pooled connection, connecting
+ * and sending the request headers, uploading the body, waiting for the first byte of the response, reading the
+ * response and parsing it. When results are streamed the response is parsed as it is read, so the parse time
+ * is part of the download time and the parse phase is zero.
+ *
+ * The audit tag sent with the request lets the timing be matched with the classification server's own record
+ * of the request, which gives the time the server spent on it.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class RequestTiming {
+
+	private final String auditTag;
+	private final long startedAt;
+	private final long buildNanos;
+
+	/* The entity being timed; cleared once the request is over, however it ended */
+	private volatile HttpEntity requestEntity;
+	private volatile boolean sending = false;
+
+	private volatile long sendStarted;
+	private volatile long poolWaitNanos;
+	private volatile long uploadStarted;
+	private volatile long uploadFinished;
+	private volatile long requestBytes;
+	private volatile long responseStarted;
+	private volatile long downloadNanos;
+	private volatile long parseNanos;
+	private volatile boolean parsed = false;
+	private volatile float serverTimeTakenMS = AuditFormat.UNDEFINED_FLOAT;
+
+	RequestTiming(String auditTag, HttpEntity requestEntity, long buildNanos) {
+		this.auditTag = auditTag;
+		this.startedAt = System.currentTimeMillis();
+		this.requestEntity = requestEntity;
+		this.buildNanos = buildNanos;
+	}
+
+	boolean isFor(HttpEntity entity) {
+		return requestEntity == entity;
+	}
+
+	boolean isSending() {
+		return sending;
+	}
+
+	void sendStarted() {
+		poolWaitNanos = 0;
+		uploadStarted = 0;
+		uploadFinished = 0;
+		sendStarted = System.nanoTime();
+		sending = true;
+	}
+
+	void poolWaited(long nanos) {
+		poolWaitNanos = nanos;
+	}
+
+	void uploadStarted() {
+		uploadStarted = System.nanoTime();
+	}
+
+	void uploadFinished(long bytes) {
+		uploadFinished = System.nanoTime();
+		requestBytes = bytes;
+	}
+
+	void responseStarted() {
+		responseStarted = System.nanoTime();
+		// A body that was never written leaves upload and first byte to share the wait
+		if (uploadStarted == 0) uploadStarted = responseStarted;
+		if (uploadFinished == 0) uploadFinished = responseStarted;
+	}
+
+	void sendFinished() {
+		sending = false;
+	}
+
+	void responseRead() {
+		downloadNanos = System.nanoTime() - responseStarted;
+	}
+
+	void requestFinished() {
+		requestEntity = null;
+	}
+
+	boolean isParsed() {
+		return parsed;
+	}
+
+	void setParseNanos(long parseNanos) {
+		this.parseNanos = parseNanos;
+		this.parsed = true;
+	}
+
+	void setServerTimeTakenMS(float serverTimeTakenMS) {
+		this.serverTimeTakenMS = serverTimeTakenMS;
+	}
+
+	/**
+	 * @return the audit tag sent with the request
+	 */
+	public String getAuditTag() {
+		return auditTag;
+	}
+
+	/**
+	 * @return when the request was started, in milliseconds since the epoch
+	 */
+	public long getStartedAt() {
+		return startedAt;
+	}
+
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+
+	/**
+	 * @return the time spent waiting for a connection from the client's pool
+	 */
+	public long getPoolWaitNanos() {
+		return poolWaitNanos;
+	}
+
+	/**
+	 * @return the time from having a pooled connection to starting to send the body, including connecting
+	 */
+	public long getConnectNanos() {
+		return Math.max(0, uploadStarted - sendStarted - poolWaitNanos);
+	}
+
+	public long getUploadNanos() {
+		return uploadFinished - uploadStarted;
+	}
+
+	/**
+	 * @return the time from the end of the upload to the response headers: the server's queue and classification time
+	 */
+	public long getFirstByteNanos() {
+		return responseStarted - uploadFinished;
+	}
+
+	/**
+	 * @return the time spent reading the response, including parsing it when results are streamed
+	 */
+	public long getDownloadNanos() {
+		return downloadNanos;
+	}
+
+	/**
+	 * @return the time spent parsing a response that was read in full first
+	 */
+	public long getParseNanos() {
+		return parseNanos;
+	}
+
+	/**
+	 * @return the time from starting to build the request to having read the response, not counting a later parse
+	 */
+	public long getTotalNanos() {
+		return buildNanos + (responseStarted - sendStarted) + downloadNanos;
+	}
+
+	/**
+	 * @return the size of the request body in bytes
+	 */
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	/**
+	 * @return the time the classification server recorded for the request in its audit log; -1 if it has not been matched
+	 */
+	public float getServerTimeTakenMS() {
+		return serverTimeTakenMS;
+	}
+
+	/**
+	 * @return the time to first byte not spent classifying on the server: queueing on the server and the network; -1
+	 *         if the timing has not been matched with the server's audit log
+	 */
+	public long getQueueAndNetworkNanos() {
+		if (serverTimeTakenMS < 0) return -1;
+		return Math.max(0, getFirstByteNanos() - (long)(serverTimeTakenMS * 1000000));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("RequestTiming [auditTag=%s, buildMS=%.3f, poolWaitMS=%.3f, connectMS=%.3f, uploadMS=%.3f, firstByteMS=%.3f, "
+				+ "downloadMS=%.3f, parseMS=%.3f, totalMS=%.3f, requestBytes=%d, serverTimeTakenMS=%.1f]",
+				auditTag, buildNanos / 1e6, poolWaitNanos / 1e6, getConnectNanos() / 1e6, getUploadNanos() / 1e6,
+				getFirstByteNanos() / 1e6, downloadNanos / 1e6, parseNanos / 1e6, getTotalNanos() / 1e6, requestBytes,
+				serverTimeTakenMS);
+	}
+}
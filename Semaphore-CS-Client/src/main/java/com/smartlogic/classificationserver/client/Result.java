@@ -12,6 +12,10 @@ import org.w3c.dom.NodeList;
 public class Result extends ClassifiableObject {
 	protected static final Log logger = LogFactory.getLog(Result.class);
 
+	/* An empty result, filled in by ResultReader */
+	Result() {
+	}
+
 	public Result(Document document) throws ClassificationException {
 		// If there is no data provided, then just return an empty category list
 		if (document == null) return;
@@ -50,7 +54,7 @@ public class Result extends ClassifiableObject {
 		NodeList candidateNodeList = parentElement.getElementsByTagName(candidateName);
 		if ((candidateNodeList != null) && (candidateNodeList.getLength() > 0)) {
 			for (int n = 0; n < candidateNodeList.getLength(); n++) {
-				Element candidateElement = (Element)candidateNodeList.item(0);
+				Element candidateElement = (Element)candidateNodeList.item(n);
 				if ("HASH".equals(candidateElement.getAttribute("name"))) {
 					setHash(candidateElement.getAttribute("value"));
 				}
@@ -66,7 +70,7 @@ public class Result extends ClassifiableObject {
 	public List<Article> getArticles() {
 		return articles;
 	}
-	private void addArticle(Article article) {
+	void addArticle(Article article) {
 		articles.add(article);
 	}
 	
@@ -0,0 +1,323 @@
+package com.smartlogic.classificationserver.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Builds a Result directly from a classification server response in a single streaming pass.
+ *
+ * This gives the same Result as parsing the response into a DOM and passing it to the Result constructor,
+ * without building the DOM. The text of paragraphs and fields is collected into one buffer for the whole
+ * response and a String is only created for a paragraph when its content is asked for.
+ *
+ * With a ScoreFilter only the document level scores that pass the filter are kept. Each rulebase class
+ * collects its scores in a heap bounded to the filter's size, and a score is dropped before its value or
+ * id is read if it is under the threshold or no better than the worst score already held.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class ResultReader {
+
+	private static final XMLInputFactory xmlInputFactory = createXMLInputFactory();
+
+	private static XMLInputFactory createXMLInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		return factory;
+	}
+
+	/**
+	 * @param data The classification server response
+	 * @return the result; empty if there is no data
+	 * @throws ClassificationException if the response cannot be parsed or has no STRUCTUREDDOCUMENT element
+	 */
+	public static Result read(byte[] data) throws ClassificationException {
+		return read(data, null);
+	}
+
+	/**
+	 * @param data        The classification server response
+	 * @param scoreFilter The scores to keep; everything is kept if null
+	 * @return the result; empty if there is no data
+	 * @throws ClassificationException if the response cannot be parsed or has no STRUCTUREDDOCUMENT element
+	 */
+	public static Result read(byte[] data, ScoreFilter scoreFilter) throws ClassificationException {
+		if (data == null) return new Result();
+		return read(new ByteArrayInputStream(data), scoreFilter);
+	}
+
+	/**
+	 * @param inputStream The classification server response. The stream is read to the end of the document but not closed.
+	 * @return the result
+	 * @throws ClassificationException if the response cannot be parsed or has no STRUCTUREDDOCUMENT element
+	 */
+	public static Result read(InputStream inputStream) throws ClassificationException {
+		return read(inputStream, null);
+	}
+
+	/**
+	 * @param inputStream The classification server response. The stream is read to the end of the document but not closed.
+	 * @param scoreFilter The scores to keep; everything is kept if null
+	 * @return the result
+	 * @throws ClassificationException if the response cannot be parsed or has no STRUCTUREDDOCUMENT element
+	 */
+	public static Result read(InputStream inputStream, ScoreFilter scoreFilter) throws ClassificationException {
+		XMLStreamReader xmlStreamReader = null;
+		try {
+			xmlStreamReader = xmlInputFactory.createXMLStreamReader(inputStream);
+			if (scoreFilter != null) {
+				return new ResultReader().readScores(xmlStreamReader, scoreFilter);
+			}
+			return new ResultReader().read(xmlStreamReader);
+		} catch (XMLStreamException e) {
+			throw new ClassificationException("%s parsing classification server response: %s", e.getClass().getSimpleName(), e.getMessage());
+		} finally {
+			if (xmlStreamReader != null) {
+				try {
+					xmlStreamReader.close();
+				} catch (XMLStreamException e) {
+					// Nothing more can be done
+				}
+			}
+		}
+	}
+
+	private final Result result = new Result();
+
+	/* The text of every paragraph in the response */
+	private final StringBuilder text = new StringBuilder();
+
+	private int depth = 0;
+	private int structuredDocumentDepth = -1;
+	private boolean structuredDocumentFound = false;
+
+	private final Deque<Article> articles = new ArrayDeque<Article>();
+	private final Deque<Integer> articleDepths = new ArrayDeque<Integer>();
+	private final Deque<MetaNode> metaNodes = new ArrayDeque<MetaNode>();
+	private final Deque<Integer> metaNodeDepths = new ArrayDeque<Integer>();
+
+	private Paragraph paragraph = null;
+	private int paragraphDepth = -1;
+	private int paragraphStart = -1;
+
+	private String hash = null;
+	private String systemHash = null;
+	private String metaHash = null;
+
+	private ResultReader() {
+	}
+
+	private Result read(XMLStreamReader reader) throws XMLStreamException, ClassificationException {
+		while (reader.hasNext()) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				startElement(reader);
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				endElement();
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if (paragraph != null) {
+					text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				}
+				break;
+			default:
+				break;
+			}
+		}
+
+		if (!structuredDocumentFound) {
+			throw new ClassificationException("No STRUCTUREDDOCUMENT element returned by classification server");
+		}
+
+		// The hash value can be present as a HASH element, as a SYSTEM node, or as a META node
+		if (hash == null) hash = systemHash;
+		if (hash == null) hash = metaHash;
+		if (hash != null) result.setHash(hash);
+		return result;
+	}
+
+	private Result readScores(XMLStreamReader reader, ScoreFilter scoreFilter) throws XMLStreamException, ClassificationException {
+		float threshold = scoreFilter.getThreshold();
+		int maxScores = scoreFilter.getMaxScoresPerClass();
+		Map<String, PriorityQueue<ClassificationScore>> heaps = new HashMap<String, PriorityQueue<ClassificationScore>>();
+
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				if (depth == structuredDocumentDepth) structuredDocumentDepth = -1;
+				depth--;
+				continue;
+			}
+			if (event != XMLStreamConstants.START_ELEMENT) continue;
+			depth++;
+
+			if (!structuredDocumentFound) {
+				if ((depth > 1) && "STRUCTUREDDOCUMENT".equals(reader.getLocalName())) {
+					structuredDocumentFound = true;
+					structuredDocumentDepth = depth;
+				}
+				continue;
+			}
+			if ((depth != structuredDocumentDepth + 1) || (structuredDocumentDepth == -1) || !"META".equals(reader.getLocalName())) continue;
+
+			String scoreValue = reader.getAttributeValue(null, "score");
+			if ((scoreValue == null) || (scoreValue.length() == 0)) continue;
+			float score;
+			try {
+				score = Float.parseFloat(scoreValue);
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if (score < threshold) continue;
+
+			String rulebaseClass = reader.getAttributeValue(null, "name");
+			if ((rulebaseClass == null) || (rulebaseClass.length() == 0)) continue;
+			PriorityQueue<ClassificationScore> heap = heaps.get(rulebaseClass);
+			if (heap == null) {
+				// Reverse order puts the lowest score at the head
+				heap = new PriorityQueue<ClassificationScore>(Collections.reverseOrder());
+				heaps.put(rulebaseClass, heap);
+			} else if ((maxScores > 0) && (heap.size() >= maxScores) && (score <= heap.peek().getScore())) {
+				continue;
+			}
+
+			String value = reader.getAttributeValue(null, "value");
+			if ((value == null) || (value.length() == 0)) continue;
+			String id = reader.getAttributeValue(null, "id");
+			heap.add(new ClassificationScore(rulebaseClass, value, score, ((id == null) || (id.length() == 0)) ? null : id));
+			if ((maxScores > 0) && (heap.size() > maxScores)) {
+				heap.poll();
+			}
+		}
+
+		if (!structuredDocumentFound) {
+			throw new ClassificationException("No STRUCTUREDDOCUMENT element returned by classification server");
+		}
+		for (PriorityQueue<ClassificationScore> heap: heaps.values()) {
+			for (ClassificationScore classificationScore: heap) {
+				result.addClassificationScore(classificationScore);
+			}
+		}
+		return result;
+	}
+
+	private void startElement(XMLStreamReader reader) {
+		if (depth == 1) return;
+		String name = reader.getLocalName();
+
+		if ("HASH".equals(name)) {
+			if (hash == null) hash = attribute(reader, "value");
+		} else if ("SYSTEM".equals(name)) {
+			if ("HASH".equals(attribute(reader, "name"))) systemHash = attribute(reader, "value");
+		} else if ("META".equals(name) && "HASH".equals(attribute(reader, "name"))) {
+			metaHash = attribute(reader, "value");
+		}
+
+		if (!structuredDocumentFound) {
+			if ("STRUCTUREDDOCUMENT".equals(name)) {
+				structuredDocumentFound = true;
+				structuredDocumentDepth = depth;
+			}
+			return;
+		}
+		if (structuredDocumentDepth == -1) return;
+
+		if ("ARTICLE".equals(name)) {
+			Article article = new Article();
+			result.addArticle(article);
+			articles.push(article);
+			articleDepths.push(depth);
+			return;
+		}
+
+		if ("META".equals(name)) {
+			if (depth == structuredDocumentDepth + 1) {
+				String metaName = attribute(reader, "name");
+				String value = attribute(reader, "value");
+				String score = attribute(reader, "score");
+				if (score.length() == 0) {
+					result.addMeta(metaName, value);
+				} else {
+					result.addCategory(attribute(reader, "id"), metaName, value, score);
+				}
+				pushMetaNode(result.addMetaNode(metaName, value, score));
+			} else if (!metaNodes.isEmpty() && (depth == metaNodeDepths.peek() + 1)) {
+				pushMetaNode(metaNodes.peek().addMetaNode(attribute(reader, "name"), attribute(reader, "value"), attribute(reader, "score")));
+			} else if (isArticleChild()) {
+				articles.peek().addCategory(attribute(reader, "id"), attribute(reader, "name"), attribute(reader, "value"), attribute(reader, "score"));
+			}
+			return;
+		}
+
+		if ((paragraph == null) && isArticleChild()) {
+			if ("PARAGRAPH".equals(name)) {
+				startParagraph(new Paragraph());
+			} else if ("FIELD".equals(name)) {
+				Paragraph field = new Paragraph();
+				field.setField(attribute(reader, "NAME"));
+				startParagraph(field);
+			}
+		}
+	}
+
+	private void endElement() {
+		if (depth == paragraphDepth) {
+			paragraph.setContent(text, paragraphStart, text.length());
+			articles.peek().addParagraph(paragraph);
+			paragraph = null;
+			paragraphDepth = -1;
+		}
+		if (!metaNodes.isEmpty() && (depth == metaNodeDepths.peek())) {
+			metaNodes.pop();
+			metaNodeDepths.pop();
+		}
+		if (!articles.isEmpty() && (depth == articleDepths.peek())) {
+			articles.pop();
+			articleDepths.pop();
+		}
+		if (depth == structuredDocumentDepth) {
+			structuredDocumentDepth = -1;
+		}
+	}
+
+	private boolean isArticleChild() {
+		return !articles.isEmpty() && (depth == articleDepths.peek() + 1);
+	}
+
+	private void pushMetaNode(MetaNode metaNode) {
+		metaNodes.push(metaNode);
+		metaNodeDepths.push(depth);
+	}
+
+	private void startParagraph(Paragraph newParagraph) {
+		paragraph = newParagraph;
+		paragraphDepth = depth;
+		paragraphStart = text.length();
+	}
+
+	/* As Element.getAttribute, an absent attribute is an empty string */
+	private static String attribute(XMLStreamReader reader, String name) {
+		String value = reader.getAttributeValue(null, name);
+		return (value == null) ? "" : value;
+	}
+}
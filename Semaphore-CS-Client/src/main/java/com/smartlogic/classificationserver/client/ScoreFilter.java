@@ -0,0 +1,59 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.Collection;
+import java.util.PriorityQueue;
+
+/**
+ * Limits a result to its best document level classification scores.
+ *
+ * When a client has a score filter, results hold only the scores of each rulebase class at or above the
+ * threshold, at most maxScoresPerClass of them. Everything else in the response (metadata, meta nodes,
+ * articles, paragraphs and the hash) is skipped while it is read.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class ScoreFilter {
+
+	private final float threshold;
+	private final int maxScoresPerClass;
+
+	/**
+	 * @param threshold         Scores below this are dropped
+	 * @param maxScoresPerClass The number of scores kept for each rulebase class; zero or less for no limit
+	 */
+	public ScoreFilter(float threshold, int maxScoresPerClass) {
+		this.threshold = threshold;
+		this.maxScoresPerClass = maxScoresPerClass;
+	}
+
+	public float getThreshold() {
+		return threshold;
+	}
+
+	public int getMaxScoresPerClass() {
+		return maxScoresPerClass;
+	}
+
+	/**
+	 * @param classificationScores The scores of one rulebase class
+	 * @return the scores that pass the filter
+	 */
+	Collection<ClassificationScore> filter(Collection<ClassificationScore> classificationScores) {
+		PriorityQueue<ClassificationScore> heap = new PriorityQueue<ClassificationScore>(
+				(a, b) -> Float.compare(a.getScore(), b.getScore()));
+		for (ClassificationScore classificationScore: classificationScores) {
+			if (classificationScore.getScore() < threshold) continue;
+			heap.add(classificationScore);
+			if ((maxScoresPerClass > 0) && (heap.size() > maxScoresPerClass)) {
+				heap.poll();
+			}
+		}
+		return heap;
+	}
+
+	@Override
+	public String toString() {
+		return "ScoreFilter [threshold=" + threshold + ", maxScoresPerClass=" + maxScoresPerClass + "]";
+	}
+}
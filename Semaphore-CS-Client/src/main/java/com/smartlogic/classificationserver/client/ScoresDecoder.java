@@ -0,0 +1,266 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.Arrays;
+
+/**
+ * Decodes the SCORES field of classification history records into parallel arrays.
+ *
+ * Each score is read in a single pass over its characters, in either of the formats that
+ * ClassificationScore(String) accepts:
+ * RULEBASE_CLASS.TERMNAME(TERM_ID):score or RULEBASE_CLASS.TERMNAME:score
+ *
+ * Rulebase classes are numbered in a dictionary that lasts as long as the decoder. Names, ids and score texts
+ * are looked up in dictionaries of their own. Strings are only created for values the decoder has not seen
+ * before, so once the dictionaries are warm, decoding a record allocates nothing.
+ *
+ * The arrays are reused by each call to decode. A decoder is not safe for use by more than one thread.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class ScoresDecoder {
+
+	// Past this many distinct score texts, new ones are parsed but not kept
+	private static final int MAX_SCORE_TEXTS = 8192;
+
+	private final CharDictionary classes = new CharDictionary();
+	private final CharDictionary strings = new CharDictionary();
+	private final CharDictionary scoreTexts = new CharDictionary();
+	private float[] scoreValues = new float[64];
+
+	private char[] cell = new char[256];
+	private char[] value = new char[256];
+
+	private int size = 0;
+	private int[] classIndexes = new int[16];
+	private int[] nameIndexes = new int[16];
+	private int[] idIndexes = new int[16];
+	private float[] scores = new float[16];
+
+	/**
+	 * Decode a whole comma separated SCORES field, stopping at the first value that is not a score.
+	 *
+	 * Values are split as CSVParser splits a log line: commas within double quotes do not split, and the
+	 * quotes themselves are dropped.
+	 *
+	 * @param field The field
+	 * @return the number of scores decoded
+	 */
+	public int decode(CharSequence field) {
+		size = 0;
+		int length = field.length();
+		int cellLength = 0;
+		boolean inQuotes = false;
+		for (int i = 0; i < length; i++) {
+			char c = field.charAt(i);
+			if (c == '\\') {
+				if (i < (length - 1)) {
+					i++;
+					char next = field.charAt(i);
+					if (next != '"') cellLength = append(cellLength, c);
+					cellLength = append(cellLength, next);
+				}
+			} else if (c == '"') {
+				inQuotes = !inQuotes;
+			} else if ((c == ',') && !inQuotes) {
+				if (!add(cellLength)) return size;
+				cellLength = 0;
+			} else {
+				cellLength = append(cellLength, c);
+			}
+		}
+		add(cellLength);
+		return size;
+	}
+
+	/**
+	 * Decode scores that have already been split into cells, stopping at the first cell that is not a score.
+	 *
+	 * @param cells The cells
+	 * @param from  The first cell to decode
+	 * @return the number of scores decoded
+	 */
+	public int decode(String[] cells, int from) {
+		size = 0;
+		for (int c = from; c < cells.length; c++) {
+			String data = cells[c];
+			if (data.length() > cell.length) cell = new char[Math.max(data.length(), cell.length * 2)];
+			data.getChars(0, data.length(), cell, 0);
+			if (!add(data.length())) break;
+		}
+		return size;
+	}
+
+	private int append(int cellLength, char c) {
+		if (cellLength == cell.length) cell = Arrays.copyOf(cell, cellLength * 2);
+		cell[cellLength] = c;
+		return cellLength + 1;
+	}
+
+	/* Decode the score held in the cell buffer. Returns false if it is not a score */
+	private boolean add(int cellLength) {
+		int dotPos = -1;
+		int braPos = -1;
+		int ketPos = -1;
+		int colPos = -1;
+		boolean escaped = false;
+		for (int i = 0; i < cellLength; i++) {
+			char c = cell[i];
+			if (escaped) {
+				escaped = false;
+			} else if (c == '\\') {
+				escaped = true;
+			} else if ((c == '.') && (dotPos == -1)) {
+				dotPos = i;
+			} else if ((c == '(') && (braPos == -1)) {
+				braPos = i;
+			} else if ((c == ')') && (ketPos == -1)) {
+				ketPos = i;
+			} else if ((c == ':') && (colPos == -1)) {
+				colPos = i;
+			}
+		}
+		if ((dotPos == -1) || (colPos == -1)) return false;
+		if (ketPos < colPos - 1) { // brackets are part of term's name
+			ketPos = -1;
+			braPos = -1;
+		}
+
+		float score;
+		int length = unprotect(colPos + 1, cellLength);
+		int scoreIndex = scoreTexts.find(value, length);
+		if (scoreIndex != -1) {
+			score = scoreValues[scoreIndex];
+		} else {
+			try {
+				score = Float.parseFloat(new String(value, 0, length));
+			} catch (NumberFormatException e) {
+				return false;
+			}
+			if (scoreTexts.size() < MAX_SCORE_TEXTS) {
+				scoreIndex = scoreTexts.lookup(value, length);
+				if (scoreIndex == scoreValues.length) scoreValues = Arrays.copyOf(scoreValues, scoreIndex * 2);
+				scoreValues[scoreIndex] = score;
+			}
+		}
+
+		if (size == scores.length) grow();
+		classIndexes[size] = lookup(classes, 0, dotPos);
+		if ((braPos != -1) && (ketPos != -1) && (ketPos > braPos)) {
+			nameIndexes[size] = lookup(strings, dotPos + 1, braPos);
+			idIndexes[size] = lookup(strings, braPos + 1, ketPos);
+		} else {
+			nameIndexes[size] = lookup(strings, dotPos + 1, colPos);
+			idIndexes[size] = -1;
+		}
+		scores[size] = score;
+		size++;
+		return true;
+	}
+
+	private int lookup(CharDictionary dictionary, int start, int end) {
+		return dictionary.lookup(value, unprotect(start, end));
+	}
+
+	/* Copy part of the cell to the value buffer without its protecting backslashes, returning the length */
+	private int unprotect(int start, int end) {
+		if (end - start > value.length) value = new char[Math.max(end - start, value.length * 2)];
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			char c = cell[i];
+			if ((c == '\\') && (i < end - 1)) {
+				char next = cell[i + 1];
+				if ((next == '\\') || (next == '(') || (next == ')') || (next == ':')) {
+					c = next;
+					i++;
+				}
+			}
+			value[length++] = c;
+		}
+		return length;
+	}
+
+	private void grow() {
+		int capacity = scores.length * 2;
+		classIndexes = Arrays.copyOf(classIndexes, capacity);
+		nameIndexes = Arrays.copyOf(nameIndexes, capacity);
+		idIndexes = Arrays.copyOf(idIndexes, capacity);
+		scores = Arrays.copyOf(scores, capacity);
+	}
+
+	/**
+	 * @return the number of scores from the last decode
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param score The score's position
+	 * @return the number of the score's rulebase class in the class dictionary
+	 */
+	public int getClassIndex(int score) {
+		return classIndexes[check(score)];
+	}
+
+	/**
+	 * @param score The score's position
+	 * @return the score's rulebase class
+	 */
+	public String getRulebaseClass(int score) {
+		return classes.get(classIndexes[check(score)]);
+	}
+
+	/**
+	 * @param score The score's position
+	 * @return the name of the term
+	 */
+	public String getName(int score) {
+		return strings.get(nameIndexes[check(score)]);
+	}
+
+	/**
+	 * @param score The score's position
+	 * @return the id of the term, or null if the score did not have one
+	 */
+	public String getId(int score) {
+		int idIndex = idIndexes[check(score)];
+		return (idIndex == -1) ? null : strings.get(idIndex);
+	}
+
+	/**
+	 * @param score The score's position
+	 * @return the value of the score
+	 */
+	public float getScore(int score) {
+		return scores[check(score)];
+	}
+
+	/**
+	 * @param score The score's position
+	 * @return the score as a ClassificationScore
+	 */
+	public ClassificationScore getClassificationScore(int score) {
+		return new ClassificationScore(getRulebaseClass(score), getName(score), getScore(score), getId(score));
+	}
+
+	/**
+	 * @return the number of rulebase classes seen by this decoder
+	 */
+	public int getClassCount() {
+		return classes.size();
+	}
+
+	/**
+	 * @param classIndex The number of a rulebase class
+	 * @return the name of the rulebase class
+	 */
+	public String getClassName(int classIndex) {
+		return classes.get(classIndex);
+	}
+
+	private int check(int score) {
+		if ((score < 0) || (score >= size)) throw new IndexOutOfBoundsException("Score " + score + " of " + size);
+		return score;
+	}
+}
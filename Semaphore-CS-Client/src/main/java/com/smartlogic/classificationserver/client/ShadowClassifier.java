@@ -0,0 +1,303 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.entity.mime.FormBodyPart;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a sample of a client's classification requests to a second, shadow, client as well, and compares the
+ * results. The shadow client may point at a candidate classification server, or at the same server with a
+ * different publish set in its additional parameters.
+ *
+ * Once set on a client, each request that can be sent again is sampled with probability fraction. The shadow
+ * request is only queued once the primary result is ready, and is sent from a pool of its own. When that pool's
+ * queue is full the sample is dropped rather than waited for, so the primary request never waits on the shadow.
+ * Each pair of results is compared as a ShadowComparison, and the comparisons are summed into agreement
+ * figures.
+ *
+ * The shadow client is not closed by close(); it belongs to the caller.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class ShadowClassifier implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(ShadowClassifier.class);
+
+	private static final AtomicInteger shadowCount = new AtomicInteger();
+
+	/**
+	 * Told of each comparison as it is made, on a thread of the shadow pool
+	 */
+	@FunctionalInterface
+	public interface Listener {
+		void compared(ShadowComparison shadowComparison);
+	}
+
+	private final ClassificationClient shadowClient;
+
+	public ShadowClassifier(ClassificationClient shadowClient) {
+		this.shadowClient = shadowClient;
+	}
+
+	public ClassificationClient getShadowClient() {
+		return shadowClient;
+	}
+
+	private volatile float fraction = 0.1f;
+
+	public float getFraction() {
+		return fraction;
+	}
+
+	/**
+	 * @param fraction The fraction of requests sent to the shadow client as well (default 0.1)
+	 */
+	public void setFraction(float fraction) {
+		this.fraction = fraction;
+	}
+
+	private int threads = 0;
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads The number of shadow requests sent at once; 0 (the default) for the shadow client's pool size.
+	 *                This must be set before the first request.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	private int queueSize = 100;
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * @param queueSize The number of shadow requests that may wait to be sent before further samples are dropped
+	 *                  (default 100). This must be set before the first request.
+	 */
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	private volatile float tolerance = 0.05f;
+
+	public float getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * @param tolerance The largest difference in any score for two results with the same terms to agree (default 0.05)
+	 */
+	public void setTolerance(float tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	private volatile Listener listener = null;
+
+	public Listener getListener() {
+		return listener;
+	}
+
+	/**
+	 * @param listener If not null, told of each comparison
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	private volatile long closeTimeoutMS = 10000;
+
+	public long getCloseTimeoutMS() {
+		return closeTimeoutMS;
+	}
+
+	/**
+	 * @param closeTimeoutMS How long close() waits for queued shadow requests to finish (default 10000)
+	 */
+	public void setCloseTimeoutMS(long closeTimeoutMS) {
+		this.closeTimeoutMS = closeTimeoutMS;
+	}
+
+	private ThreadPoolExecutor executor = null;
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+		if (executor == null) {
+			int poolSize = (threads > 0) ? threads : shadowClient.getClientPoolSize();
+			final String threadPrefix = "ShadowClassifier-" + shadowCount.incrementAndGet() + "-";
+			executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+						private final AtomicInteger threadCount = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, threadPrefix + threadCount.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
+						}
+					}, (runnable, rejectingExecutor) -> dropped.incrementAndGet());
+			executor.allowCoreThreadTimeOut(true);
+		}
+		return executor;
+	}
+
+	/*
+	 * Called by the primary client with each result it has classified. The parts must be repeatable.
+	 */
+	void offer(Collection<FormBodyPart> parts, Result primary) {
+		float currentFraction = fraction;
+		if ((currentFraction <= 0.0f) || (ThreadLocalRandom.current().nextFloat() >= currentFraction)) return;
+
+		sampled.incrementAndGet();
+		Map<String, ClassificationScore> primaryScores = ShadowComparison.getScores(primary);
+		// Rejected, and counted as dropped, if the queue is full or the pool has been closed
+		getExecutor().execute(() -> compare(parts, primary, primaryScores));
+	}
+
+	private void compare(Collection<FormBodyPart> parts, Result primary, Map<String, ClassificationScore> primaryScores) {
+		Result shadow;
+		try {
+			shadow = shadowClient.getShadowResult(parts);
+		} catch (ClassificationException | RuntimeException e) {
+			failed.incrementAndGet();
+			logger.debug("Shadow request failed: {}", e.getMessage());
+			return;
+		}
+
+		ShadowComparison shadowComparison = new ShadowComparison(primary, primaryScores, shadow, tolerance);
+		record(shadowComparison);
+
+		Listener currentListener = listener;
+		if (currentListener != null) {
+			try {
+				currentListener.compared(shadowComparison);
+			} catch (RuntimeException e) {
+				logger.error("Shadow listener failed: {}", e.getMessage());
+			}
+		}
+	}
+
+	private final AtomicLong sampled = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	private long compared = 0;
+	private long agreed = 0;
+	private double totalJaccard = 0.0;
+	private double totalMeanScoreDifference = 0.0;
+	private float maxScoreDifference = 0.0f;
+
+	private synchronized void record(ShadowComparison shadowComparison) {
+		compared++;
+		if (shadowComparison.isAgreed()) agreed++;
+		totalJaccard += shadowComparison.getJaccard();
+		totalMeanScoreDifference += shadowComparison.getMeanScoreDifference();
+		maxScoreDifference = Math.max(maxScoreDifference, shadowComparison.getMaxScoreDifference());
+	}
+
+	/**
+	 * @return the number of requests sampled for the shadow, whether or not they were compared
+	 */
+	public long getSampled() {
+		return sampled.get();
+	}
+
+	/**
+	 * @return the number of samples dropped because the shadow pool's queue was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return the number of shadow requests that failed
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return the number of requests whose primary and shadow results have been compared
+	 */
+	public synchronized long getCompared() {
+		return compared;
+	}
+
+	/**
+	 * @return the number of comparisons in which the results agreed
+	 */
+	public synchronized long getAgreed() {
+		return agreed;
+	}
+
+	/**
+	 * @return the fraction of comparisons in which the results agreed; 1 if there have been none
+	 */
+	public synchronized double getAgreementRate() {
+		return (compared == 0) ? 1.0 : (double)agreed / compared;
+	}
+
+	/**
+	 * @return the mean over the comparisons of the fraction of terms common to both results
+	 */
+	public synchronized double getMeanJaccard() {
+		return (compared == 0) ? 1.0 : totalJaccard / compared;
+	}
+
+	/**
+	 * @return the mean over the comparisons of their mean difference in score
+	 */
+	public synchronized double getMeanScoreDifference() {
+		return (compared == 0) ? 0.0 : totalMeanScoreDifference / compared;
+	}
+
+	/**
+	 * @return the largest difference in score of any term in any comparison
+	 */
+	public synchronized float getMaxScoreDifference() {
+		return maxScoreDifference;
+	}
+
+	/**
+	 * Close the shadow pool. Shadow requests that have already been queued are allowed closeTimeoutMS to finish.
+	 * After that, those not yet sent are counted as dropped and those being sent are interrupted.
+	 */
+	@Override
+	public void close() {
+		ThreadPoolExecutor currentExecutor;
+		synchronized (this) {
+			currentExecutor = executor;
+		}
+		if (currentExecutor == null) return;
+
+		currentExecutor.shutdown();
+		try {
+			if (currentExecutor.awaitTermination(closeTimeoutMS, TimeUnit.MILLISECONDS)) return;
+			logger.warn("close - shadow requests still running after {}ms", closeTimeoutMS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		dropped.addAndGet(currentExecutor.shutdownNow().size());
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("ShadowClassifier [sampled=%d, compared=%d, agreed=%d, dropped=%d, failed=%d, meanJaccard=%.3f, "
+				+ "meanScoreDifference=%.3f, maxScoreDifference=%.3f]", sampled.get(), compared, agreed, dropped.get(),
+				failed.get(), getMeanJaccard(), getMeanScoreDifference(), maxScoreDifference);
+	}
+}
@@ -0,0 +1,134 @@
+package com.smartlogic.classificationserver.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How the document level scores of a shadow result differ from those of the primary result for the same request.
+ *
+ * Terms are matched by class and id, or by class and name if they have no id. A term missing from one of
+ * the results counts as a score of zero there.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class ShadowComparison {
+
+	private final Result primary;
+	private final Result shadow;
+	private final List<ClassificationScore> onlyInPrimary = new ArrayList<ClassificationScore>();
+	private final List<ClassificationScore> onlyInShadow = new ArrayList<ClassificationScore>();
+	private final float jaccard;
+	private final float meanScoreDifference;
+	private final float maxScoreDifference;
+	private final boolean agreed;
+
+	/* The primary scores are taken when the request is sampled, as its caller may change the result later */
+	ShadowComparison(Result primary, Map<String, ClassificationScore> primaryScores, Result shadow, float tolerance) {
+		this.primary = primary;
+		this.shadow = shadow;
+
+		Map<String, ClassificationScore> shadowScores = getScores(shadow);
+		Set<String> terms = new HashSet<String>(primaryScores.keySet());
+		terms.addAll(shadowScores.keySet());
+
+		int common = 0;
+		float totalDifference = 0.0f;
+		float max = 0.0f;
+		for (String term: terms) {
+			ClassificationScore primaryScore = primaryScores.get(term);
+			ClassificationScore shadowScore = shadowScores.get(term);
+			if (primaryScore == null) {
+				onlyInShadow.add(shadowScore);
+			} else if (shadowScore == null) {
+				onlyInPrimary.add(primaryScore);
+			} else {
+				common++;
+			}
+			float difference = Math.abs(((primaryScore == null) ? 0.0f : primaryScore.getScore())
+					- ((shadowScore == null) ? 0.0f : shadowScore.getScore()));
+			totalDifference += difference;
+			max = Math.max(max, difference);
+		}
+		Collections.sort(onlyInPrimary);
+		Collections.sort(onlyInShadow);
+
+		this.jaccard = terms.isEmpty() ? 1.0f : (float)common / terms.size();
+		this.meanScoreDifference = terms.isEmpty() ? 0.0f : totalDifference / terms.size();
+		this.maxScoreDifference = max;
+		this.agreed = (common == terms.size()) && (max <= tolerance);
+	}
+
+	static Map<String, ClassificationScore> getScores(Result result) {
+		Map<String, ClassificationScore> scores = new LinkedHashMap<String, ClassificationScore>();
+		for (Collection<ClassificationScore> classificationScores: result.getAllClassifications().values()) {
+			for (ClassificationScore classificationScore: classificationScores) {
+				scores.putIfAbsent(classificationScore.getTermKey(), classificationScore);
+			}
+		}
+		return scores;
+	}
+
+	public Result getPrimary() {
+		return primary;
+	}
+
+	public Result getShadow() {
+		return shadow;
+	}
+
+	/**
+	 * @return the terms of the primary result missing from the shadow result, highest score first
+	 */
+	public List<ClassificationScore> getOnlyInPrimary() {
+		return Collections.unmodifiableList(onlyInPrimary);
+	}
+
+	/**
+	 * @return the terms of the shadow result missing from the primary result, highest score first
+	 */
+	public List<ClassificationScore> getOnlyInShadow() {
+		return Collections.unmodifiableList(onlyInShadow);
+	}
+
+	/**
+	 * @return the number of terms in both results over the number in either; 1 if neither has any
+	 */
+	public float getJaccard() {
+		return jaccard;
+	}
+
+	/**
+	 * @return the mean difference in score over the terms in either result
+	 */
+	public float getMeanScoreDifference() {
+		return meanScoreDifference;
+	}
+
+	/**
+	 * @return the largest difference in score of any term
+	 */
+	public float getMaxScoreDifference() {
+		return maxScoreDifference;
+	}
+
+	/**
+	 * @return true if both results have the same terms, with scores within the shadow classifier's tolerance
+	 */
+	public boolean isAgreed() {
+		return agreed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ShadowComparison [agreed=%s, jaccard=%.3f, meanScoreDifference=%.3f, maxScoreDifference=%.3f, "
+				+ "onlyInPrimary=%d, onlyInShadow=%d]", agreed, jaccard, meanScoreDifference, maxScoreDifference,
+				onlyInPrimary.size(), onlyInShadow.size());
+	}
+}
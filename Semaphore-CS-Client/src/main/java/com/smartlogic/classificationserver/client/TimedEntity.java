@@ -0,0 +1,53 @@
+package com.smartlogic.classificationserver.client;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * A request entity that tells its RequestTiming when its upload starts and finishes, and how many bytes it sent.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+class TimedEntity extends HttpEntityWrapper {
+
+	private final RequestTiming requestTiming;
+
+	TimedEntity(HttpEntity wrappedEntity, RequestTiming requestTiming) {
+		super(wrappedEntity);
+		this.requestTiming = requestTiming;
+	}
+
+	@Override
+	public void writeTo(OutputStream outputStream) throws IOException {
+		requestTiming.uploadStarted();
+		CountingOutputStream countingOutputStream = new CountingOutputStream(outputStream);
+		super.writeTo(countingOutputStream);
+		countingOutputStream.flush();
+		requestTiming.uploadFinished(countingOutputStream.count);
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		private CountingOutputStream(OutputStream outputStream) {
+			super(outputStream);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
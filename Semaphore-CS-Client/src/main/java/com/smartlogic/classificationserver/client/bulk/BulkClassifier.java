@@ -0,0 +1,544 @@
+package com.smartlogic.classificationserver.client.bulk;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.smartlogic.classificationserver.client.CSInfo;
+import com.smartlogic.classificationserver.client.ClassificationClient;
+import com.smartlogic.classificationserver.client.ClassificationException;
+import com.smartlogic.classificationserver.client.LatencyHistogram;
+import com.smartlogic.classificationserver.client.Result;
+import com.smartlogic.classificationserver.client.Title;
+
+/**
+ * Classifies every file below a directory, or every file in a list, in parallel.
+ *
+ * Directories are walked by a work stealing pool: each directory becomes a task that forks a task for each
+ * subdirectory and for each batch of files, so idle threads take work from busy ones however the files are
+ * spread across the tree. A list of files is split into batches the same way. By default the pool has one thread per classification server worker process, as
+ * reported by getInfo(), limited to the client's pool size.
+ *
+ * Failed requests are retried with exponential backoff. If a checkpoint file is set, every file written to
+ * the sink is recorded there and a later run over the same directory skips it, so an interrupted run can
+ * be resumed. Progress, throughput and latency are reported to the progress listener as the run goes.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class BulkClassifier {
+	private static final Logger logger = LoggerFactory.getLogger(BulkClassifier.class);
+
+	/**
+	 * How a single file is classified
+	 */
+	@FunctionalInterface
+	public interface FileClassification {
+		Result classify(ClassificationClient classificationClient, File file) throws ClassificationException;
+	}
+
+	/**
+	 * Receives progress reports during a run
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		void progress(BulkProgress bulkProgress);
+	}
+
+	private static final int MAX_BATCH_SIZE = 64;
+
+	private final ClassificationClient classificationClient;
+
+	public BulkClassifier(ClassificationClient classificationClient) {
+		this.classificationClient = classificationClient;
+	}
+
+	private FileFilter fileFilter = null;
+
+	public FileFilter getFileFilter() {
+		return fileFilter;
+	}
+
+	/**
+	 * @param fileFilter Only files accepted by this filter are classified; all files if null (the default).
+	 *                   Directories are always descended.
+	 */
+	public void setFileFilter(FileFilter fileFilter) {
+		this.fileFilter = fileFilter;
+	}
+
+	private FileClassification fileClassification = new FileClassification() {
+		@Override
+		public Result classify(ClassificationClient client, File file) throws ClassificationException {
+			return client.getClassifiedDocument(file, null, new Title(file.getName()), null);
+		}
+	};
+
+	public FileClassification getFileClassification() {
+		return fileClassification;
+	}
+
+	/**
+	 * @param fileClassification How each file is classified; by default the file is sent with its name as the title
+	 */
+	public void setFileClassification(FileClassification fileClassification) {
+		this.fileClassification = fileClassification;
+	}
+
+	private final List<ResultSink> resultSinks = new ArrayList<ResultSink>();
+
+	public Collection<ResultSink> getResultSinks() {
+		return resultSinks;
+	}
+
+	/**
+	 * @param resultSink A sink to receive every result. The sink is closed at the end of the run.
+	 */
+	public void addResultSink(ResultSink resultSink) {
+		resultSinks.add(resultSink);
+	}
+
+	private int maxAttempts = 3;
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param maxAttempts The number of times a file is sent before it is counted as failed (default 3)
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	private long retryDelayMS = 500;
+
+	public long getRetryDelayMS() {
+		return retryDelayMS;
+	}
+
+	/**
+	 * @param retryDelayMS The delay before the first retry, doubled for each later one (default 500)
+	 */
+	public void setRetryDelayMS(long retryDelayMS) {
+		this.retryDelayMS = retryDelayMS;
+	}
+
+	private File checkpointFile = null;
+
+	public File getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	/**
+	 * @param checkpointFile The file recording completed files; created if it does not exist
+	 */
+	public void setCheckpointFile(File checkpointFile) {
+		this.checkpointFile = checkpointFile;
+	}
+
+	private int parallelism = 0;
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism The number of files classified at once; zero (the default) means one per
+	 *                    classification server worker process
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	private ProgressListener progressListener = new ProgressListener() {
+		@Override
+		public void progress(BulkProgress bulkProgress) {
+			logger.info("Bulk classification: {}", bulkProgress);
+		}
+	};
+
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	/**
+	 * @param progressListener The listener for progress reports; by default they are logged
+	 */
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	private long progressIntervalMS = 10000;
+
+	public long getProgressIntervalMS() {
+		return progressIntervalMS;
+	}
+
+	public void setProgressIntervalMS(long progressIntervalMS) {
+		this.progressIntervalMS = progressIntervalMS;
+	}
+
+	private volatile boolean cancelled = false;
+
+	/**
+	 * Stop the current run once the files being classified are finished
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	/* State of the current run */
+	private Path rootPath;
+	private Checkpoint checkpoint;
+	private final AtomicLong filesClassified = new AtomicLong();
+	private final AtomicLong filesFailed = new AtomicLong();
+	private final AtomicLong filesSkipped = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong bytesClassified = new AtomicLong();
+	private LatencyHistogram latencies;
+	private long startTime;
+	private long lastReportTime;
+	private long lastReportClassified;
+
+	/**
+	 * Classify every file below the supplied directory
+	 *
+	 * @param inputDirectory The directory to classify
+	 * @return the final progress report
+	 * @throws ClassificationException if the directory or checkpoint cannot be read, or a run is already in progress
+	 */
+	public BulkProgress classifyDirectory(File inputDirectory) throws ClassificationException {
+		if (!inputDirectory.isDirectory()) {
+			throw new ClassificationException("Input directory '%s' is not a directory", inputDirectory.getAbsolutePath());
+		}
+		Path directory = inputDirectory.toPath();
+		return run(inputDirectory.getAbsolutePath(), directory, threads -> new DirectoryTask(directory, threads));
+	}
+
+	/**
+	 * Classify each of the supplied files. The file filter applies to them as it does to files found in a
+	 * directory, and any directory in the list is walked.
+	 *
+	 * As the files need not share a directory, each is known to the checkpoint and the sinks by its absolute
+	 * path without the root, for instance "home/user/file.txt". Resuming a run needs the same files at the same
+	 * paths.
+	 *
+	 * @param files The files to classify
+	 * @return the final progress report
+	 * @throws ClassificationException if the checkpoint cannot be read, or a run is already in progress
+	 */
+	public BulkProgress classifyFiles(Collection<File> files) throws ClassificationException {
+		List<Path> paths = new ArrayList<Path>(files.size());
+		for (File file: files) {
+			paths.add(file.toPath().toAbsolutePath());
+		}
+		return run(files.size() + " files", null, threads -> new FileListTask(paths, threads));
+	}
+
+	private BulkProgress run(String description, Path root, IntFunction<ForkJoinTask<?>> rootTask) throws ClassificationException {
+		// Runs are not synchronized on this, so that progress reports never wait on a run
+		if (!running.compareAndSet(false, true)) {
+			throw new ClassificationException("A bulk classification run is already in progress");
+		}
+		try {
+			return runExclusively(description, root, rootTask);
+		} finally {
+			running.set(false);
+		}
+	}
+
+	private BulkProgress runExclusively(String description, Path root, IntFunction<ForkJoinTask<?>> rootTask) throws ClassificationException {
+		int threads = getEffectiveParallelism();
+		logger.info("run - entry: {} with {} threads", description, threads);
+
+		rootPath = root;
+		checkpoint = null;
+		filesClassified.set(0);
+		filesFailed.set(0);
+		filesSkipped.set(0);
+		retries.set(0);
+		bytesClassified.set(0);
+		latencies = new LatencyHistogram();
+		cancelled = false;
+		startTime = System.currentTimeMillis();
+		lastReportTime = startTime;
+		lastReportClassified = 0;
+
+		ForkJoinPool forkJoinPool = new ForkJoinPool(threads);
+		ScheduledExecutorService reporter = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "BulkClassifier-progress");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			checkpoint = (checkpointFile == null) ? null : new Checkpoint(checkpointFile);
+			if (checkpoint != null) {
+				logger.info("run - resuming with {} files already classified", checkpoint.size());
+			}
+			reporter.scheduleAtFixedRate(this::report, progressIntervalMS, progressIntervalMS, TimeUnit.MILLISECONDS);
+
+			forkJoinPool.invoke(rootTask.apply(threads));
+		} catch (IOException e) {
+			throw new ClassificationException("IOException reading checkpoint %s: %s", checkpointFile, e.getMessage());
+		} finally {
+			forkJoinPool.shutdown();
+			reporter.shutdownNow();
+			try {
+				reporter.awaitTermination(progressIntervalMS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			closeQuietly();
+		}
+
+		BulkProgress bulkProgress = snapshot(true);
+		progressListener.progress(bulkProgress);
+		logger.info("run - exit: {}", bulkProgress);
+		return bulkProgress;
+	}
+
+	private int getEffectiveParallelism() {
+		int poolSize = classificationClient.getClientPoolSize();
+		if (parallelism > 0) {
+			if (parallelism > poolSize) {
+				logger.warn("Parallelism {} is more than the client pool size {}; requests will queue for connections", parallelism, poolSize);
+			}
+			return parallelism;
+		}
+
+		int workers = 0;
+		try {
+			CSInfo csInfo = classificationClient.getInfo();
+			if (csInfo.getChildrenProcesses() != null) {
+				workers = csInfo.getChildrenProcesses().size();
+			}
+		} catch (ClassificationException e) {
+			logger.warn("Unable to read the number of classification server workers: {}", e.getMessage());
+		}
+		if (workers == 0) {
+			return poolSize;
+		}
+		if (workers > poolSize) {
+			logger.warn("Classification server has {} workers but the client pool size is {}; increase the pool size to use them all", workers, poolSize);
+			return poolSize;
+		}
+		return workers;
+	}
+
+	private void closeQuietly() {
+		if (checkpoint != null) {
+			try {
+				checkpoint.close();
+			} catch (IOException e) {
+				logger.error("Unable to close checkpoint {}: {}", checkpointFile, e.getMessage());
+			}
+		}
+		for (ResultSink resultSink: resultSinks) {
+			try {
+				resultSink.close();
+			} catch (IOException e) {
+				logger.error("Unable to close result sink {}: {}", resultSink, e.getMessage());
+			}
+		}
+	}
+
+	/* Runs on the reporting thread, and only reads counters and the checkpoint, which has a lock of its own */
+	private void report() {
+		try {
+			if (checkpoint != null) {
+				checkpoint.flush();
+			}
+			progressListener.progress(snapshot(false));
+		} catch (Exception e) {
+			// Never let a failed report stop the reporting thread
+			logger.warn("Progress report failed: {}", e.getMessage());
+		}
+	}
+
+	private BulkProgress snapshot(boolean finished) {
+		long now = System.currentTimeMillis();
+		long classified = filesClassified.get();
+		double recentRate = (now == lastReportTime) ? 0 : (classified - lastReportClassified) * 1000.0 / (now - lastReportTime);
+		lastReportTime = now;
+		lastReportClassified = classified;
+		return new BulkProgress(classified, filesFailed.get(), filesSkipped.get(), retries.get(), bytesClassified.get(),
+				now - startTime, recentRate, latencies, finished);
+	}
+
+	private String relativePath(Path path) {
+		Path relative = (rootPath == null) ? path.getRoot().relativize(path) : rootPath.relativize(path);
+		return relative.toString().replace(File.separatorChar, '/');
+	}
+
+	/* Enough batches for every thread to take some, but not a task per file */
+	private void forkBatches(List<Path> files, int threads, List<ForkJoinTask<?>> tasks) {
+		int batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, files.size() / (threads * 4)));
+		for (int start = 0; start < files.size(); start += batchSize) {
+			tasks.add(new FileBatchTask(files.subList(start, Math.min(start + batchSize, files.size()))).fork());
+		}
+	}
+
+	private boolean accept(Path path) {
+		return (fileFilter == null) || fileFilter.accept(path.toFile());
+	}
+
+	private void classifyFile(Path path) {
+		String relativePath = relativePath(path);
+		File file = path.toFile();
+		if ((checkpoint != null) && checkpoint.isDone(relativePath)) {
+			filesSkipped.incrementAndGet();
+			return;
+		}
+
+		Exception lastException = null;
+		for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+			if (attempt > 1) {
+				retries.incrementAndGet();
+				try {
+					Thread.sleep(retryDelayMS << Math.min(attempt - 2, 20));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+
+			Result result;
+			long start = System.nanoTime();
+			try {
+				result = fileClassification.classify(classificationClient, file);
+			} catch (ClassificationException e) {
+				logger.debug("Attempt {} failed for {}: {}", attempt, relativePath, e.getMessage());
+				lastException = e;
+				continue;
+			}
+			latencies.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+			try {
+				for (ResultSink resultSink: resultSinks) {
+					resultSink.write(file, relativePath, result);
+				}
+				if (checkpoint != null) {
+					checkpoint.markDone(relativePath);
+				}
+			} catch (IOException e) {
+				// Writing again will not help
+				lastException = e;
+				break;
+			}
+			filesClassified.incrementAndGet();
+			bytesClassified.addAndGet(file.length());
+			return;
+		}
+
+		filesFailed.incrementAndGet();
+		logger.error("Unable to classify '{}': {}", relativePath, (lastException == null) ? "cancelled" : lastException.getMessage());
+		for (ResultSink resultSink: resultSinks) {
+			resultSink.failed(file, relativePath, lastException);
+		}
+	}
+
+	private class DirectoryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Path directory;
+		private final int threads;
+
+		private DirectoryTask(Path directory, int threads) {
+			this.directory = directory;
+			this.threads = threads;
+		}
+
+		@Override
+		protected void compute() {
+			List<Path> files = new ArrayList<Path>();
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+			try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory)) {
+				for (Path path: directoryStream) {
+					if (Files.isDirectory(path)) {
+						tasks.add(new DirectoryTask(path, threads).fork());
+					} else if (accept(path)) {
+						files.add(path);
+					}
+				}
+			} catch (IOException e) {
+				logger.error("Unable to read directory '{}': {}", directory, e.getMessage());
+			}
+
+			forkBatches(files, threads, tasks);
+			for (ForkJoinTask<?> task: tasks) {
+				task.join();
+			}
+		}
+	}
+
+	private class FileListTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Path> paths;
+		private final int threads;
+
+		private FileListTask(List<Path> paths, int threads) {
+			this.paths = paths;
+			this.threads = threads;
+		}
+
+		@Override
+		protected void compute() {
+			List<Path> files = new ArrayList<Path>();
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+			for (Path path: paths) {
+				if (Files.isDirectory(path)) {
+					tasks.add(new DirectoryTask(path, threads).fork());
+				} else if (accept(path)) {
+					files.add(path);
+				}
+			}
+
+			forkBatches(files, threads, tasks);
+			for (ForkJoinTask<?> task: tasks) {
+				task.join();
+			}
+		}
+	}
+
+	private class FileBatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Path> files;
+
+		private FileBatchTask(List<Path> files) {
+			this.files = files;
+		}
+
+		@Override
+		protected void compute() {
+			for (Path path: files) {
+				if (cancelled) {
+					return;
+				}
+				classifyFile(path);
+			}
+		}
+	}
+}
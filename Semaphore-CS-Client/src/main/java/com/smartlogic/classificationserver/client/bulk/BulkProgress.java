@@ -0,0 +1,128 @@
+package com.smartlogic.classificationserver.client.bulk;
+
+import com.smartlogic.classificationserver.client.LatencyHistogram;
+
+/**
+ * A snapshot of the progress of a bulk classification run
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class BulkProgress {
+
+	private final long filesClassified;
+	private final long filesFailed;
+	private final long filesSkipped;
+	private final long retries;
+	private final long bytesClassified;
+	private final long elapsedMS;
+	private final double recentFilesPerSecond;
+	private final double meanLatencyMS;
+	private final double p50LatencyMS;
+	private final double p95LatencyMS;
+	private final double p99LatencyMS;
+	private final double maxLatencyMS;
+	private final boolean finished;
+
+	BulkProgress(long filesClassified, long filesFailed, long filesSkipped, long retries, long bytesClassified,
+			long elapsedMS, double recentFilesPerSecond, LatencyHistogram latencies, boolean finished) {
+		this.filesClassified = filesClassified;
+		this.filesFailed = filesFailed;
+		this.filesSkipped = filesSkipped;
+		this.retries = retries;
+		this.bytesClassified = bytesClassified;
+		this.elapsedMS = elapsedMS;
+		this.recentFilesPerSecond = recentFilesPerSecond;
+		this.meanLatencyMS = latencies.getMeanMS();
+		this.p50LatencyMS = latencies.getPercentileMS(50);
+		this.p95LatencyMS = latencies.getPercentileMS(95);
+		this.p99LatencyMS = latencies.getPercentileMS(99);
+		this.maxLatencyMS = latencies.getMaxMS();
+		this.finished = finished;
+	}
+
+	/**
+	 * @return the number of files classified and written to the sink in this run
+	 */
+	public long getFilesClassified() {
+		return filesClassified;
+	}
+
+	/**
+	 * @return the number of files that could not be classified after every retry
+	 */
+	public long getFilesFailed() {
+		return filesFailed;
+	}
+
+	/**
+	 * @return the number of files skipped because the checkpoint shows they were classified by an earlier run
+	 */
+	public long getFilesSkipped() {
+		return filesSkipped;
+	}
+
+	/**
+	 * @return the number of requests that were retried
+	 */
+	public long getRetries() {
+		return retries;
+	}
+
+	public long getBytesClassified() {
+		return bytesClassified;
+	}
+
+	public long getElapsedMS() {
+		return elapsedMS;
+	}
+
+	/**
+	 * @return the files classified per second since the run started
+	 */
+	public double getFilesPerSecond() {
+		return (elapsedMS == 0) ? 0 : filesClassified * 1000.0 / elapsedMS;
+	}
+
+	/**
+	 * @return the files classified per second since the previous progress report
+	 */
+	public double getRecentFilesPerSecond() {
+		return recentFilesPerSecond;
+	}
+
+	public double getMeanLatencyMS() {
+		return meanLatencyMS;
+	}
+
+	public double getP50LatencyMS() {
+		return p50LatencyMS;
+	}
+
+	public double getP95LatencyMS() {
+		return p95LatencyMS;
+	}
+
+	public double getP99LatencyMS() {
+		return p99LatencyMS;
+	}
+
+	public double getMaxLatencyMS() {
+		return maxLatencyMS;
+	}
+
+	/**
+	 * @return true if this is the final report of the run
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d classified, %d failed, %d skipped, %d retries in %.1fs: %.1f files/s (recent %.1f), "
+				+ "latency mean %.1fms p50 %.1fms p95 %.1fms p99 %.1fms max %.1fms",
+				filesClassified, filesFailed, filesSkipped, retries, elapsedMS / 1000.0, getFilesPerSecond(),
+				recentFilesPerSecond, meanLatencyMS, p50LatencyMS, p95LatencyMS, p99LatencyMS, maxLatencyMS);
+	}
+}
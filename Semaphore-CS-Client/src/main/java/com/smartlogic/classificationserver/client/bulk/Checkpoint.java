@@ -0,0 +1,129 @@
+package com.smartlogic.classificationserver.client.bulk;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The record of files completed by a bulk run.
+ *
+ * The file is an append only list of relative paths, one per line, so it survives the process being
+ * killed at any point. In memory only a 64 bit hash of each path is held, in an open addressing table,
+ * so that millions of completed files cost a few bytes each.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+class Checkpoint implements Closeable {
+
+	private final Writer writer;
+
+	private long[] table = new long[1 << 16];
+	private int size = 0;
+	private boolean containsZero = false;
+	private boolean closed = false;
+
+	Checkpoint(File checkpointFile) throws IOException {
+		if (checkpointFile.exists()) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(checkpointFile.toPath()), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.length() > 0) {
+						add(hash(line));
+					}
+				}
+			}
+		}
+		writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(checkpointFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8));
+	}
+
+	synchronized boolean isDone(String relativePath) {
+		long hash = hash(relativePath);
+		if (hash == 0) {
+			return containsZero;
+		}
+		int mask = table.length - 1;
+		for (int slot = (int) (hash ^ (hash >>> 32)) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			if (table[slot] == hash) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	synchronized void markDone(String relativePath) throws IOException {
+		writer.write(relativePath);
+		writer.write('\n');
+		add(hash(relativePath));
+	}
+
+	synchronized int size() {
+		return size + (containsZero ? 1 : 0);
+	}
+
+	/* A late progress report may flush after the run has closed the checkpoint */
+	synchronized void flush() throws IOException {
+		if (!closed) {
+			writer.flush();
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		writer.close();
+	}
+
+	private void add(long hash) {
+		if (hash == 0) {
+			containsZero = true;
+			return;
+		}
+		if ((size + 1) * 2 > table.length) {
+			resize();
+		}
+		int mask = table.length - 1;
+		int slot = (int) (hash ^ (hash >>> 32)) & mask;
+		while (table[slot] != 0) {
+			if (table[slot] == hash) {
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = hash;
+		size++;
+	}
+
+	private void resize() {
+		long[] oldTable = table;
+		table = new long[oldTable.length * 2];
+		size = 0;
+		for (long hash: oldTable) {
+			if (hash != 0) {
+				add(hash);
+			}
+		}
+	}
+
+	/** 64 bit FNV-1a */
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			hash ^= (c & 0xff);
+			hash *= 0x100000001b3L;
+			hash ^= (c >>> 8);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,70 @@
+package com.smartlogic.classificationserver.client.bulk;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+
+import com.smartlogic.classificationserver.client.ClassificationScore;
+import com.smartlogic.classificationserver.client.Result;
+
+/**
+ * Writes every score from a run to a single CSV file, one row per score:
+ * path, rulebase class, name, id, score.
+ *
+ * An existing file is appended to, so a resumed run adds to the output of the interrupted one.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class CsvResultSink implements ResultSink {
+
+	private final Writer writer;
+
+	public CsvResultSink(File csvFile) throws IOException {
+		boolean newFile = !csvFile.exists() || (csvFile.length() == 0);
+		writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(csvFile.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8));
+		if (newFile) {
+			writer.write("path,class,name,id,score\n");
+		}
+	}
+
+	@Override
+	public void write(File file, String relativePath, Result result) throws IOException {
+		// Build the rows for the file first so they are written together
+		StringBuilder rows = new StringBuilder();
+		for (Map.Entry<String, Collection<ClassificationScore>> entry: result.getAllClassifications().entrySet()) {
+			for (ClassificationScore classificationScore: entry.getValue()) {
+				rows.append(quote(relativePath)).append(',');
+				rows.append(quote(entry.getKey())).append(',');
+				rows.append(quote(classificationScore.getName())).append(',');
+				rows.append(quote(classificationScore.getId())).append(',');
+				rows.append(classificationScore.getScore()).append('\n');
+			}
+		}
+		synchronized (writer) {
+			writer.write(rows.toString());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (writer) {
+			writer.close();
+		}
+	}
+
+	private static String quote(String value) {
+		if (value == null) {
+			return "";
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+}
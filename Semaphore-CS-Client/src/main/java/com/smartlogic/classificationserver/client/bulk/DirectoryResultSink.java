@@ -0,0 +1,54 @@
+package com.smartlogic.classificationserver.client.bulk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Map;
+
+import com.smartlogic.classificationserver.client.ClassificationScore;
+import com.smartlogic.classificationserver.client.Result;
+
+/**
+ * Writes the scores for each file to a file of the same relative path in an output directory.
+ *
+ * Each output file lists every rulebase class followed by its scores, one "name:score" line each.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class DirectoryResultSink implements ResultSink {
+
+	private final File outputDirectory;
+	private final String suffix;
+
+	/**
+	 * @param outputDirectory The directory to write to
+	 * @param suffix          The suffix added to each input file name
+	 */
+	public DirectoryResultSink(File outputDirectory, String suffix) {
+		this.outputDirectory = outputDirectory;
+		this.suffix = suffix;
+	}
+
+	@Override
+	public void write(File file, String relativePath, Result result) throws IOException {
+		File outputFile = new File(outputDirectory, relativePath + "." + suffix);
+		File parent = outputFile.getParentFile();
+		if ((parent != null) && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+			throw new IOException("Unable to create output directory: " + parent.getAbsolutePath());
+		}
+
+		try (Writer writer = new OutputStreamWriter(Files.newOutputStream(outputFile.toPath()), StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, Collection<ClassificationScore>> entry: result.getAllClassifications().entrySet()) {
+				writer.write(entry.getKey() + "\r\n");
+				for (ClassificationScore classificationScore: entry.getValue()) {
+					writer.write(classificationScore.getName() + ":" + classificationScore.getScore() + "\r\n");
+				}
+			}
+		}
+	}
+}
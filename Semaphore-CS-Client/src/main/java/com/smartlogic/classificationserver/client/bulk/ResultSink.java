@@ -0,0 +1,42 @@
+package com.smartlogic.classificationserver.client.bulk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import com.smartlogic.classificationserver.client.Result;
+
+/**
+ * Where a bulk classification run sends its results.
+ *
+ * Sinks are called from many threads at once and must be thread safe. A file is only recorded in the
+ * checkpoint once its result has been written, so after an interrupted run a sink may be given the same
+ * file again.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public interface ResultSink extends Closeable {
+
+	/**
+	 * @param file         The file that was classified
+	 * @param relativePath The path of the file relative to the directory being classified, using '/' separators
+	 * @param result       The classification result
+	 * @throws IOException if the result cannot be written; the file is then counted as failed
+	 */
+	void write(File file, String relativePath, Result result) throws IOException;
+
+	/**
+	 * Called when a file could not be classified after every retry
+	 *
+	 * @param file         The file that failed
+	 * @param relativePath The path of the file relative to the directory being classified
+	 * @param exception    The exception from the last attempt
+	 */
+	default void failed(File file, String relativePath, Exception exception) {
+	}
+
+	@Override
+	default void close() throws IOException {
+	}
+}
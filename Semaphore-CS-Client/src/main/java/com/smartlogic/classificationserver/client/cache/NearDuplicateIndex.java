@@ -0,0 +1,218 @@
+package com.smartlogic.classificationserver.client.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classification server responses, found by the SimHash fingerprint of the document body they were produced for.
+ *
+ * A lookup returns the response of the closest body seen whose fingerprint is at least as similar as the
+ * threshold, so syndicated copies of a story that differ only in bylines or boilerplate are classified once.
+ * Each response is kept with a context, an exact hash of what else was sent with the body, such as its title,
+ * metadata and file name. A near duplicate is only looked for among the bodies with the same context, as the
+ * response depends on those too.
+ *
+ * Fingerprints are split into bands, one more than the number of bits that may differ, so any fingerprint
+ * close enough must match another exactly in at least one band. Only the fingerprints sharing a band are
+ * compared. The least recently used entries are dropped beyond maxEntries.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class NearDuplicateIndex {
+
+	private final int maxDistance;
+	private final int maxEntries;
+	private final int[] bandStarts;
+	private final List<Map<Long, List<Key>>> bands;
+	private final Map<Key, byte[]> entries;
+
+	private final AtomicLong exactHits = new AtomicLong();
+	private final AtomicLong nearHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param similarity The fraction of fingerprint bits that must match for a body to be a near duplicate, from 0.5 to 1
+	 * @param maxEntries The number of responses held
+	 */
+	public NearDuplicateIndex(float similarity, int maxEntries) {
+		if ((similarity < 0.5f) || (similarity > 1.0f)) {
+			throw new IllegalArgumentException("Similarity must be from 0.5 to 1: " + similarity);
+		}
+		this.maxDistance = (int)Math.floor((1.0f - similarity) * 64 + 0.0001f);
+		this.maxEntries = maxEntries;
+
+		int bandCount = maxDistance + 1;
+		bandStarts = new int[bandCount + 1];
+		bands = new ArrayList<Map<Long, List<Key>>>(bandCount);
+		for (int b = 0; b < bandCount; b++) {
+			bandStarts[b] = (b * 64) / bandCount;
+			bands.add(new HashMap<Long, List<Key>>());
+		}
+		bandStarts[bandCount] = 64;
+
+		this.entries = new LinkedHashMap<Key, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+				if (size() <= NearDuplicateIndex.this.maxEntries) return false;
+				removeFromBands(eldest.getKey());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @return the number of fingerprint bits in which a near duplicate may differ
+	 */
+	public int getMaxDistance() {
+		return maxDistance;
+	}
+
+	/* A fingerprint and the context it was seen in */
+	private static final class Key {
+		private final String context;
+		private final long fingerprint;
+
+		private Key(String context, long fingerprint) {
+			this.context = (context == null) ? "" : context;
+			this.fingerprint = fingerprint;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) return false;
+			Key key = (Key)other;
+			return (fingerprint == key.fingerprint) && context.equals(key.context);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * context.hashCode() + Long.hashCode(fingerprint);
+		}
+	}
+
+	/**
+	 * @param fingerprint The fingerprint of a body sent on its own
+	 * @return the response for the same or the most similar body within the threshold; null if there is none
+	 */
+	public byte[] get(long fingerprint) {
+		return get(null, fingerprint);
+	}
+
+	/**
+	 * @param context     An exact hash of what else was sent with the body; null for nothing
+	 * @param fingerprint The fingerprint of the body
+	 * @return the response for the same or the most similar body with the same context within the threshold;
+	 *         null if there is none
+	 */
+	public synchronized byte[] get(String context, long fingerprint) {
+		Key key = new Key(context, fingerprint);
+		byte[] response = entries.get(key);
+		if (response != null) {
+			exactHits.incrementAndGet();
+			return response;
+		}
+
+		Key closest = null;
+		int closestDistance = Integer.MAX_VALUE;
+		for (int b = 0; b < bands.size(); b++) {
+			List<Key> candidates = bands.get(b).get(band(fingerprint, b));
+			if (candidates == null) continue;
+			for (Key candidate: candidates) {
+				if (!candidate.context.equals(key.context)) continue;
+				int distance = SimHash.distance(fingerprint, candidate.fingerprint);
+				if ((distance <= maxDistance) && (distance < closestDistance)) {
+					closest = candidate;
+					closestDistance = distance;
+				}
+			}
+		}
+		if (closestDistance == Integer.MAX_VALUE) {
+			misses.incrementAndGet();
+			return null;
+		}
+		nearHits.incrementAndGet();
+		return entries.get(closest);
+	}
+
+	/**
+	 * @param fingerprint The fingerprint of a body sent on its own
+	 * @param response    The classification server response for it
+	 */
+	public void put(long fingerprint, byte[] response) {
+		put(null, fingerprint, response);
+	}
+
+	/**
+	 * @param context     An exact hash of what else was sent with the body; null for nothing
+	 * @param fingerprint The fingerprint of the body
+	 * @param response    The classification server response for it
+	 */
+	public synchronized void put(String context, long fingerprint, byte[] response) {
+		Key key = new Key(context, fingerprint);
+		if (entries.put(key, response) != null) return;
+		for (int b = 0; b < bands.size(); b++) {
+			List<Key> bucket = bands.get(b).get(band(fingerprint, b));
+			if (bucket == null) {
+				bucket = new ArrayList<Key>(1);
+				bands.get(b).put(band(fingerprint, b), bucket);
+			}
+			bucket.add(key);
+		}
+	}
+
+	/**
+	 * Remove every entry, as when the rulebases on classification server change
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		for (Map<Long, List<Key>> band: bands) {
+			band.clear();
+		}
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private void removeFromBands(Key key) {
+		for (int b = 0; b < bands.size(); b++) {
+			long bandKey = band(key.fingerprint, b);
+			List<Key> bucket = bands.get(b).get(bandKey);
+			if (bucket == null) continue;
+			bucket.remove(key);
+			if (bucket.isEmpty()) bands.get(b).remove(bandKey);
+		}
+	}
+
+	/* The fingerprint's bits in the band, which need not be a whole number of bytes */
+	private long band(long fingerprint, int b) {
+		int width = bandStarts[b + 1] - bandStarts[b];
+		long mask = (width == 64) ? -1L : ((1L << width) - 1);
+		return (fingerprint >>> bandStarts[b]) & mask;
+	}
+
+	/**
+	 * @return the number of lookups that found a body with the same fingerprint
+	 */
+	public long getExactHitCount() {
+		return exactHits.get();
+	}
+
+	/**
+	 * @return the number of lookups that found a near duplicate
+	 */
+	public long getNearHitCount() {
+		return nearHits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+}
@@ -0,0 +1,287 @@
+package com.smartlogic.classificationserver.client.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of classification server responses, keyed by a hash of everything sent in the request.
+ *
+ * Responses are held in a least recently used memory tier and, optionally, a disk tier of memory mapped
+ * segment files that survives restarts. A disk hit is copied into the memory tier.
+ *
+ * The client that uses the cache records a fingerprint of the rulebases loaded on the classification
+ * server, checked every revalidateIntervalMS, and includes it in every key. When the fingerprint changes
+ * both tiers are cleared, and entries written under an old fingerprint can never be found again.
+ *
+ * The fingerprint is made from the rulebase classes and the generation of the server's worker processes,
+ * which is increased when they are restarted to load new rulebases. The server reports nothing that is
+ * certain to change with every publish, so the cache is also cleared once it is maxAgeMS old (an hour by
+ * default) whatever the fingerprint says. That bounds how long a result can outlive the rulebases it came
+ * from.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class ResultCache implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(ResultCache.class);
+
+	private final int maxMemoryEntries;
+	private final Map<String, byte[]> memory;
+	private final SegmentStore disk;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/* Increased by every clear, so a response requested before it is not put after it */
+	private long generation = 0;
+	private volatile long clearedAt = System.currentTimeMillis();
+
+	/**
+	 * A cache held in memory only
+	 *
+	 * @param maxMemoryEntries The number of responses held in memory
+	 */
+	public ResultCache(int maxMemoryEntries) {
+		this(maxMemoryEntries, null);
+	}
+
+	/**
+	 * A cache held in memory and on disk
+	 *
+	 * @param maxMemoryEntries The number of responses held in memory
+	 * @param diskDirectory    The directory for the segment files; entries already there are reused
+	 * @param segmentSize      The size in bytes of each segment file
+	 * @param maxSegments      The number of segment files kept; the oldest is deleted when another is needed
+	 * @throws IOException if the segment files cannot be created or read
+	 */
+	public ResultCache(int maxMemoryEntries, File diskDirectory, int segmentSize, int maxSegments) throws IOException {
+		this(maxMemoryEntries, new SegmentStore(diskDirectory, segmentSize, maxSegments));
+	}
+
+	private ResultCache(int maxMemoryEntries, SegmentStore disk) {
+		this.maxMemoryEntries = maxMemoryEntries;
+		this.memory = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+				return size() > ResultCache.this.maxMemoryEntries;
+			}
+		};
+		this.disk = disk;
+	}
+
+	/**
+	 * @param key The request hash
+	 * @return the cached response or null
+	 */
+	public byte[] get(String key) {
+		byte[] response;
+		long readGeneration;
+		synchronized (memory) {
+			response = memory.get(key);
+			readGeneration = generation;
+		}
+		if (response != null) {
+			memoryHits.incrementAndGet();
+			return response;
+		}
+
+		if (disk != null) {
+			response = disk.get(key);
+			if (response != null) {
+				// The segment is read outside the lock, so a clear may have come in between
+				synchronized (memory) {
+					if (readGeneration == generation) {
+						memory.put(key, response);
+						diskHits.incrementAndGet();
+						return response;
+					}
+				}
+				logger.debug("Result cache cleared while a segment was read; not using the response");
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * @param key      The request hash
+	 * @param response The response from classification server
+	 */
+	public void put(String key, byte[] response) {
+		synchronized (memory) {
+			putEntry(key, response);
+		}
+	}
+
+	/**
+	 * Put a response unless the cache has been cleared since it was requested
+	 *
+	 * @param key        The request hash
+	 * @param response   The response from classification server
+	 * @param generation The generation of the cache when the request was sent
+	 */
+	public void put(String key, byte[] response, long generation) {
+		synchronized (memory) {
+			if (generation != this.generation) {
+				logger.debug("Result cache cleared while the request was sent; not caching the response");
+				return;
+			}
+			putEntry(key, response);
+		}
+	}
+
+	private void putEntry(String key, byte[] response) {
+		memory.put(key, response);
+		if (disk != null) {
+			try {
+				disk.put(key, response);
+			} catch (IOException e) {
+				logger.warn("Unable to write to result cache segment: {}", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return a number that changes every time the cache is cleared
+	 */
+	public long getGeneration() {
+		synchronized (memory) {
+			return generation;
+		}
+	}
+
+	/**
+	 * Remove every entry from both tiers
+	 */
+	public void clear() {
+		synchronized (memory) {
+			generation++;
+			clearedAt = System.currentTimeMillis();
+			memory.clear();
+			if (disk != null) {
+				try {
+					disk.clear();
+				} catch (IOException e) {
+					logger.warn("Unable to clear result cache segments: {}", e.getMessage());
+				}
+			}
+		}
+	}
+
+	/* The rulebase fingerprint */
+
+	private long revalidateIntervalMS = 60000;
+
+	public long getRevalidateIntervalMS() {
+		return revalidateIntervalMS;
+	}
+
+	/**
+	 * @param revalidateIntervalMS How often the client checks whether the rulebases on classification server
+	 *                             have changed (default 60000)
+	 */
+	public void setRevalidateIntervalMS(long revalidateIntervalMS) {
+		this.revalidateIntervalMS = revalidateIntervalMS;
+	}
+
+	private long maxAgeMS = 3600000;
+
+	public long getMaxAgeMS() {
+		return maxAgeMS;
+	}
+
+	/**
+	 * @param maxAgeMS How long responses are kept before the cache is cleared, however the rulebase fingerprint
+	 *                 looks (default 3600000); 0 to rely on the fingerprint alone. The age is checked when the
+	 *                 fingerprint is.
+	 */
+	public void setMaxAgeMS(long maxAgeMS) {
+		this.maxAgeMS = maxAgeMS;
+	}
+
+	private volatile String fingerprint = null;
+	private volatile long validatedAt = 0;
+	private String lastFingerprint = null;
+
+	/**
+	 * @return the fingerprint of the rulebases the cached responses were produced by; null if it is not known,
+	 *         in which case the cache must not be used
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public boolean isValidationDue() {
+		return (validatedAt == 0) || (System.currentTimeMillis() - validatedAt >= revalidateIntervalMS);
+	}
+
+	/**
+	 * Record the rulebase fingerprint just read from classification server. Both tiers are cleared if it has changed.
+	 *
+	 * @param fingerprint The fingerprint; null if it could not be read
+	 */
+	public synchronized void setFingerprint(String fingerprint) {
+		if ((fingerprint != null) && !fingerprint.equals(lastFingerprint)) {
+			if (lastFingerprint != null) {
+				logger.info("Rulebases on classification server have changed; clearing result cache");
+				clear();
+			}
+			lastFingerprint = fingerprint;
+		} else if ((maxAgeMS > 0) && (System.currentTimeMillis() - clearedAt >= maxAgeMS)) {
+			logger.info("Result cache is more than {} ms old; clearing it", maxAgeMS);
+			clear();
+		}
+		this.fingerprint = fingerprint;
+		this.validatedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Clear the cache and check the rulebase fingerprint before it is next used, as when a publish set is committed
+	 */
+	public synchronized void invalidate() {
+		clear();
+		validatedAt = 0;
+	}
+
+	public long getMemoryHitCount() {
+		return memoryHits.get();
+	}
+
+	public long getDiskHitCount() {
+		return diskHits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public int getMemorySize() {
+		synchronized (memory) {
+			return memory.size();
+		}
+	}
+
+	public int getDiskSize() {
+		return (disk == null) ? 0 : disk.size();
+	}
+
+	/**
+	 * Write the disk tier out to the segment files
+	 */
+	@Override
+	public void close() {
+		if (disk != null) {
+			disk.flush();
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package com.smartlogic.classificationserver.client.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The disk tier of the result cache: a set of fixed size, memory mapped segment files.
+ *
+ * Records are appended to the newest segment as key length, key, value length, value. The key length is
+ * written last, so a record cut short by the process dying reads as the end of the segment. When there
+ * are more than maxSegments segments the oldest is deleted with every entry in it. The index of keys to
+ * records is held in memory and rebuilt by scanning the segments when the store is opened.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+class SegmentStore {
+	private static final Logger logger = LoggerFactory.getLogger(SegmentStore.class);
+
+	private static final String PREFIX = "segment-";
+	private static final String SUFFIX = ".dat";
+
+	private static class Segment {
+		private final long id;
+		private final File file;
+		private final MappedByteBuffer buffer;
+
+		private Segment(long id, File file, MappedByteBuffer buffer) {
+			this.id = id;
+			this.file = file;
+			this.buffer = buffer;
+		}
+	}
+
+	private static class Location {
+		private final Segment segment;
+		private final int offset;
+		private final int length;
+
+		private Location(Segment segment, int offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	private final File directory;
+	private final int segmentSize;
+	private final int maxSegments;
+
+	private final Deque<Segment> segments = new ArrayDeque<Segment>();
+	private final Map<String, Location> index = new HashMap<String, Location>();
+
+	SegmentStore(File directory, int segmentSize, int maxSegments) throws IOException {
+		if (segmentSize < 1024) throw new IllegalArgumentException("Segment size must be at least 1024 bytes: " + segmentSize);
+		if (maxSegments < 1) throw new IllegalArgumentException("There must be at least one segment: " + maxSegments);
+
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.maxSegments = maxSegments;
+
+		Files.createDirectories(directory.toPath());
+		File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+		if (files != null) {
+			Arrays.sort(files);
+			for (File file: files) {
+				long id;
+				try {
+					id = Long.parseLong(file.getName().substring(PREFIX.length(), file.getName().length() - SUFFIX.length()));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				if (file.length() != segmentSize) {
+					// Written with a different segment size
+					deleteFile(file);
+					continue;
+				}
+				Segment segment = new Segment(id, file, map(file));
+				segments.addLast(segment);
+				scan(segment);
+			}
+		}
+		while (segments.size() > maxSegments) {
+			evictOldest();
+		}
+		if (segments.isEmpty()) {
+			addSegment();
+		}
+		logger.info("Opened result cache segments in {}: {} segments, {} entries", directory, segments.size(), index.size());
+	}
+
+	synchronized byte[] get(String key) {
+		Location location = index.get(key);
+		if (location == null) return null;
+
+		byte[] value = new byte[location.length];
+		ByteBuffer buffer = location.segment.buffer.duplicate();
+		buffer.position(location.offset);
+		buffer.get(value);
+		return value;
+	}
+
+	synchronized void put(String key, byte[] value) throws IOException {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int recordSize = 4 + keyBytes.length + 4 + value.length;
+		if (recordSize + 4 > segmentSize) {
+			// Too large to ever fit
+			return;
+		}
+
+		Segment segment = segments.peekLast();
+		int position = segment.buffer.position();
+		if (position + recordSize + 4 > segmentSize) {
+			segment = addSegment();
+			position = 0;
+		}
+
+		MappedByteBuffer buffer = segment.buffer;
+		buffer.position(position + 4);
+		buffer.put(keyBytes);
+		buffer.putInt(value.length);
+		int valueOffset = buffer.position();
+		buffer.put(value);
+		int end = buffer.position();
+		buffer.putInt(position, keyBytes.length);
+		buffer.position(end);
+
+		index.put(key, new Location(segment, valueOffset, value.length));
+	}
+
+	synchronized int size() {
+		return index.size();
+	}
+
+	synchronized void clear() throws IOException {
+		while (!segments.isEmpty()) {
+			evictOldest();
+		}
+		addSegment();
+	}
+
+	synchronized void flush() {
+		for (Segment segment: segments) {
+			segment.buffer.force();
+		}
+	}
+
+	private void scan(Segment segment) {
+		MappedByteBuffer buffer = segment.buffer;
+		int position = 0;
+		while (position + 4 <= segmentSize) {
+			int keyLength = buffer.getInt(position);
+			if ((keyLength <= 0) || (position + 4 + keyLength + 4 > segmentSize)) break;
+			int valueLength = buffer.getInt(position + 4 + keyLength);
+			int valueOffset = position + 4 + keyLength + 4;
+			if ((valueLength < 0) || (valueOffset + valueLength > segmentSize)) break;
+
+			byte[] keyBytes = new byte[keyLength];
+			ByteBuffer keyBuffer = buffer.duplicate();
+			keyBuffer.position(position + 4);
+			keyBuffer.get(keyBytes);
+			index.put(new String(keyBytes, StandardCharsets.UTF_8), new Location(segment, valueOffset, valueLength));
+			position = valueOffset + valueLength;
+		}
+		buffer.position(position);
+	}
+
+	private Segment addSegment() throws IOException {
+		long id = segments.isEmpty() ? 1 : segments.peekLast().id + 1;
+		File file = new File(directory, String.format("%s%012d%s", PREFIX, id, SUFFIX));
+		Segment segment = new Segment(id, file, map(file));
+		segments.addLast(segment);
+		while (segments.size() > maxSegments) {
+			evictOldest();
+		}
+		return segment;
+	}
+
+	private void evictOldest() {
+		Segment oldest = segments.removeFirst();
+		for (Iterator<Location> iterator = index.values().iterator(); iterator.hasNext();) {
+			if (iterator.next().segment == oldest) {
+				iterator.remove();
+			}
+		}
+		deleteFile(oldest.file);
+	}
+
+	private MappedByteBuffer map(File file) throws IOException {
+		try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// The mapping stays valid after the channel is closed
+			return fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		}
+	}
+
+	private static void deleteFile(File file) {
+		try {
+			Files.deleteIfExists(file.toPath());
+		} catch (IOException e) {
+			logger.warn("Unable to delete result cache segment {}: {}", file, e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.smartlogic.classificationserver.client.cache;
+
+/**
+ * 64 bit SimHash fingerprints of text.
+ *
+ * The text is split into lower cased words and each run of three words is hashed. Every bit of the fingerprint
+ * is set if more of those hashes have it set than not, so texts that share most of their word runs have
+ * fingerprints that differ in only a few bits.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public final class SimHash {
+
+	private static final int SHINGLE_WORDS = 3;
+
+	private SimHash() {
+	}
+
+	/**
+	 * @param text The text
+	 * @return the fingerprint of the text; 0 if it has no words
+	 */
+	public static long fingerprint(CharSequence text) {
+		int[] counts = new int[64];
+		long[] words = new long[SHINGLE_WORDS];
+		int wordCount = 0;
+		long word = FNV_OFFSET;
+		boolean inWord = false;
+		int length = text.length();
+		for (int i = 0; i <= length; i++) {
+			char c = (i < length) ? text.charAt(i) : ' ';
+			if (Character.isLetterOrDigit(c)) {
+				word = (word ^ Character.toLowerCase(c)) * FNV_PRIME;
+				inWord = true;
+			} else if (inWord) {
+				words[wordCount % SHINGLE_WORDS] = word;
+				wordCount++;
+				if (wordCount >= SHINGLE_WORDS) {
+					add(counts, shingle(words, wordCount));
+				}
+				word = FNV_OFFSET;
+				inWord = false;
+			}
+		}
+		// Too short for a whole shingle, so use the words alone
+		for (int w = 0; (w < wordCount) && (wordCount < SHINGLE_WORDS); w++) {
+			add(counts, mix(words[w]));
+		}
+		if (wordCount == 0) return 0;
+
+		long fingerprint = 0;
+		for (int b = 0; b < 64; b++) {
+			if (counts[b] > 0) fingerprint |= (1L << b);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * @param a A fingerprint
+	 * @param b Another fingerprint
+	 * @return the number of bits in which they differ
+	 */
+	public static int distance(long a, long b) {
+		return Long.bitCount(a ^ b);
+	}
+
+	/**
+	 * @param a A fingerprint
+	 * @param b Another fingerprint
+	 * @return the fraction of their bits that are the same, from 0 to 1
+	 */
+	public static float similarity(long a, long b) {
+		return 1.0f - (distance(a, b) / 64.0f);
+	}
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/* The hash of the last SHINGLE_WORDS words, in order */
+	private static long shingle(long[] words, int wordCount) {
+		long hash = FNV_OFFSET;
+		for (int w = wordCount - SHINGLE_WORDS; w < wordCount; w++) {
+			hash = (hash ^ words[w % SHINGLE_WORDS]) * FNV_PRIME;
+		}
+		return mix(hash);
+	}
+
+	private static void add(int[] counts, long hash) {
+		for (int b = 0; b < 64; b++) {
+			counts[b] += (((hash >>> b) & 1L) != 0) ? 1 : -1;
+		}
+	}
+
+	/* Spread every input bit across the output, as FNV alone leaves the high bits poorly mixed */
+	private static long mix(long hash) {
+		hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+		return hash ^ (hash >>> 31);
+	}
+}
@@ -0,0 +1,299 @@
+package com.smartlogic.classificationserver.client.publish;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.smartlogic.classificationserver.client.ClassificationClient;
+import com.smartlogic.classificationserver.client.ClassificationException;
+
+/**
+ * Publishes rulebase pak files to a classification server publish set.
+ *
+ * Pak files are uploaded in parallel. If a manifest directory is set, the size, modification time and hash of
+ * every pak file uploaded is recorded there for each publish set, and a later publish of the same set only
+ * sends the pak files that have changed. When a pak file has been dropped from the set, or there is no
+ * manifest yet, the publish set is cleared and every pak file is sent.
+ *
+ * Every step of a publish goes to the client's configured URL, even when the client has a node balancer, and
+ * the manifest belongs to that server alone. Other nodes of a farm need a publish of their own.
+ *
+ * The publish set is only committed once every pak file is on the server, so what is live changes in a
+ * single step. If any upload fails nothing is committed; the manifest records the uploads that did succeed,
+ * so publishing again only sends the rest.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class PublishManager {
+	private static final Logger logger = LoggerFactory.getLogger(PublishManager.class);
+
+	/**
+	 * Receives progress reports while publishing
+	 */
+	@FunctionalInterface
+	public interface ProgressListener {
+		void progress(PublishProgress publishProgress);
+	}
+
+	private final ClassificationClient classificationClient;
+
+	public PublishManager(ClassificationClient classificationClient) {
+		this.classificationClient = classificationClient;
+	}
+
+	private File manifestDirectory = null;
+
+	public File getManifestDirectory() {
+		return manifestDirectory;
+	}
+
+	/**
+	 * @param manifestDirectory The directory holding the manifest of each publish set; if null (the default)
+	 *                          every publish clears the publish set and sends every pak file
+	 */
+	public void setManifestDirectory(File manifestDirectory) {
+		this.manifestDirectory = manifestDirectory;
+	}
+
+	private int parallelism = 0;
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism The number of pak files uploaded at once; zero (the default) means the client's pool size
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	private boolean commit = true;
+
+	public boolean isCommit() {
+		return commit;
+	}
+
+	/**
+	 * @param commit If true (the default) the publish set is committed once every pak file is uploaded
+	 */
+	public void setCommit(boolean commit) {
+		this.commit = commit;
+	}
+
+	private ProgressListener progressListener = new ProgressListener() {
+		@Override
+		public void progress(PublishProgress publishProgress) {
+			logger.info("Publish: {}", publishProgress);
+		}
+	};
+
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	/**
+	 * @param progressListener The listener, told as each pak file is done; by default reports are logged
+	 */
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/* State of the current publish */
+	private String publishSetName;
+	private int pakFileCount;
+	private final AtomicInteger uploaded = new AtomicInteger();
+	private int skipped;
+	private final AtomicInteger failed = new AtomicInteger();
+	private final AtomicLong bytesUploaded = new AtomicLong();
+	private long bytesToUpload;
+	private boolean cleared;
+	private boolean committed;
+	private long startTime;
+
+	/**
+	 * Bring the publish set up to date with the supplied pak files, then commit it
+	 *
+	 * @param publishSetName The publish set
+	 * @param pakFiles       Every pak file that the publish set should hold
+	 * @return the final progress report
+	 * @throws ClassificationException if a pak file could not be uploaded or the publish set could not be committed
+	 */
+	public synchronized PublishProgress publish(String publishSetName, Collection<File> pakFiles) throws ClassificationException {
+		logger.info("publish - entry: {} with {} pak files", publishSetName, pakFiles.size());
+
+		Map<String, File> pakFilesByName = new LinkedHashMap<String, File>();
+		for (File pakFile: pakFiles) {
+			if (!pakFile.isFile()) {
+				throw new ClassificationException("Pak file not found: " + pakFile.getAbsolutePath());
+			}
+			if (pakFilesByName.put(pakFile.getName(), pakFile) != null) {
+				throw new ClassificationException("More than one pak file named " + pakFile.getName());
+			}
+		}
+
+		this.publishSetName = publishSetName;
+		pakFileCount = pakFilesByName.size();
+		uploaded.set(0);
+		skipped = 0;
+		failed.set(0);
+		bytesUploaded.set(0);
+		bytesToUpload = 0;
+		cleared = false;
+		committed = false;
+		startTime = System.currentTimeMillis();
+
+		PublishManifest manifest = getManifest(publishSetName);
+		ExecutorService executorService = Executors.newFixedThreadPool(getEffectiveParallelism(), runnable -> {
+			Thread thread = new Thread(runnable, "PublishManager-upload");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			// Describe every pak file first, hashing in parallel those that have changed on disk
+			Map<String, Future<PublishManifest.Entry>> descriptions = new LinkedHashMap<String, Future<PublishManifest.Entry>>();
+			for (Map.Entry<String, File> pakFile: pakFilesByName.entrySet()) {
+				descriptions.put(pakFile.getKey(), executorService.submit(() -> manifest.describe(pakFile.getValue())));
+			}
+
+			Set<String> removed = new HashSet<String>(manifest.getEntries().keySet());
+			removed.removeAll(pakFilesByName.keySet());
+			if (manifest.isEmpty() || !removed.isEmpty()) {
+				logger.info("publish - clearing publish set {}", publishSetName);
+				classificationClient.clearPublishSet(publishSetName);
+				manifest.clear();
+				saveManifest(manifest);
+				cleared = true;
+			}
+
+			List<String> toUpload = new ArrayList<String>();
+			Map<String, PublishManifest.Entry> entries = new LinkedHashMap<String, PublishManifest.Entry>();
+			for (Map.Entry<String, Future<PublishManifest.Entry>> description: descriptions.entrySet()) {
+				String name = description.getKey();
+				PublishManifest.Entry entry = await(description.getValue(), name);
+				entries.put(name, entry);
+				PublishManifest.Entry previous = manifest.get(name);
+				if ((previous != null) && (previous.size == entry.size) && previous.hash.equals(entry.hash)) {
+					skipped++;
+					manifest.put(name, entry);
+				} else {
+					toUpload.add(name);
+					bytesToUpload += entry.size;
+				}
+			}
+
+			List<Future<Void>> uploads = new ArrayList<Future<Void>>();
+			for (String name: toUpload) {
+				uploads.add(executorService.submit(() -> {
+					upload(name, pakFilesByName.get(name), entries.get(name), manifest);
+					return null;
+				}));
+			}
+			for (Future<Void> upload: uploads) {
+				awaitQuietly(upload);
+			}
+			saveManifest(manifest);
+
+			if (failed.get() > 0) {
+				throw new ClassificationException(String.format("%d of %d pak files could not be uploaded to publish set %s; it has not been committed",
+						failed.get(), toUpload.size(), publishSetName));
+			}
+			if (commit) {
+				classificationClient.commitPublishSet(publishSetName);
+				committed = true;
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+
+		PublishProgress publishProgress = snapshot(true);
+		progressListener.progress(publishProgress);
+		logger.info("publish - exit: {}", publishProgress);
+		return publishProgress;
+	}
+
+	private void upload(String name, File pakFile, PublishManifest.Entry entry, PublishManifest manifest) {
+		try {
+			classificationClient.sendPakFile(publishSetName, pakFile);
+			manifest.put(name, entry);
+			uploaded.incrementAndGet();
+			bytesUploaded.addAndGet(entry.size);
+		} catch (ClassificationException e) {
+			logger.error("Unable to upload pak file {} to publish set {}: {}", name, publishSetName, e.getMessage());
+			failed.incrementAndGet();
+		}
+		report();
+	}
+
+	private void report() {
+		try {
+			progressListener.progress(snapshot(false));
+		} catch (RuntimeException e) {
+			logger.error("Progress listener failed: {}", e.getMessage());
+		}
+	}
+
+	private PublishProgress snapshot(boolean finished) {
+		return new PublishProgress(publishSetName, pakFileCount, uploaded.get(), skipped, failed.get(), bytesUploaded.get(),
+				bytesToUpload, System.currentTimeMillis() - startTime, cleared, committed, finished);
+	}
+
+	private int getEffectiveParallelism() {
+		return (parallelism > 0) ? parallelism : Math.max(1, classificationClient.getClientPoolSize());
+	}
+
+	private PublishManifest getManifest(String publishSetName) throws ClassificationException {
+		try {
+			// Keyed by the server the publish commands go to, which is never chosen by a node balancer
+			return new PublishManifest(manifestDirectory, classificationClient.getCommandUrl(), publishSetName);
+		} catch (IOException e) {
+			throw new ClassificationException("IOException reading publish manifest: " + e.getMessage());
+		}
+	}
+
+	private void saveManifest(PublishManifest manifest) throws ClassificationException {
+		try {
+			manifest.save();
+		} catch (IOException e) {
+			throw new ClassificationException("IOException writing publish manifest: " + e.getMessage());
+		}
+	}
+
+	private static <T> T await(Future<T> future, String name) throws ClassificationException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ClassificationException("Interrupted reading pak file " + name);
+		} catch (ExecutionException e) {
+			throw new ClassificationException("Unable to read pak file " + name + ": " + e.getCause().getMessage());
+		}
+	}
+
+	private static void awaitQuietly(Future<?> future) throws ClassificationException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ClassificationException("Interrupted waiting for pak file upload");
+		} catch (ExecutionException e) {
+			// Failures are counted by the upload itself
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package com.smartlogic.classificationserver.client.publish;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The pak files that a publish set on one classification server holds, as last uploaded from here.
+ *
+ * Each line of the file holds a pak file's name, size, modification time and SHA-256 hash, separated by tabs.
+ * The first line is the server URL, so a manifest is never applied to another server. The file is replaced
+ * as a whole when it is saved, so it is never left half written.
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+class PublishManifest {
+
+	static class Entry {
+		final long size;
+		final long lastModified;
+		final String hash;
+
+		Entry(long size, long lastModified, String hash) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.hash = hash;
+		}
+	}
+
+	private final File file;
+	private final String serverUrl;
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+	/**
+	 * @param manifestDirectory The directory holding manifests; if null nothing is read or saved
+	 * @param serverUrl         The classification server's URL
+	 * @param publishSetName    The publish set
+	 * @throws IOException if the manifest exists but cannot be read
+	 */
+	PublishManifest(File manifestDirectory, String serverUrl, String publishSetName) throws IOException {
+		this.file = (manifestDirectory == null) ? null : new File(manifestDirectory, encode(publishSetName) + ".manifest");
+		this.serverUrl = serverUrl;
+		if ((file == null) || !file.exists()) return;
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			if (!serverUrl.equals(reader.readLine())) return;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length == 4) {
+					entries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3]));
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IOException("Corrupt publish manifest " + file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return true if the manifest holds any pak files
+	 */
+	boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	Map<String, Entry> getEntries() {
+		return entries;
+	}
+
+	synchronized Entry get(String name) {
+		return entries.get(name);
+	}
+
+	synchronized void put(String name, Entry entry) {
+		entries.put(name, entry);
+	}
+
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	synchronized void save() throws IOException {
+		if (file == null) return;
+		File directory = file.getAbsoluteFile().getParentFile();
+		Files.createDirectories(directory.toPath());
+		File temporaryFile = File.createTempFile(file.getName(), ".tmp", directory);
+		try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(serverUrl);
+			writer.write('\n');
+			for (Map.Entry<String, Entry> entry: entries.entrySet()) {
+				writer.write(entry.getKey() + "\t" + entry.getValue().size + "\t" + entry.getValue().lastModified + "\t" + entry.getValue().hash);
+				writer.write('\n');
+			}
+		}
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Describe a pak file, hashing it only if it differs in size or modification time from the manifest
+	 *
+	 * @param pakFile The pak file
+	 * @return The pak file's entry
+	 * @throws IOException if the file cannot be read
+	 */
+	Entry describe(File pakFile) throws IOException {
+		long size = pakFile.length();
+		long lastModified = pakFile.lastModified();
+		Entry entry = get(pakFile.getName());
+		if ((entry != null) && (entry.size == size) && (entry.lastModified == lastModified)) {
+			return entry;
+		}
+		return new Entry(size, lastModified, hash(pakFile));
+	}
+
+	private static String hash(File pakFile) throws IOException {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("SHA-256 not available: " + e.getMessage());
+		}
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream inputStream = Files.newInputStream(pakFile.toPath())) {
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				messageDigest.update(buffer, 0, read);
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b: messageDigest.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	private static String encode(String publishSetName) {
+		try {
+			return URLEncoder.encode(publishSetName, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.smartlogic.classificationserver.client.publish;
+
+/**
+ * A snapshot of the progress of publishing pak files
+ *
+ * @author Smartlogic Semaphore
+ *
+ */
+public class PublishProgress {
+
+	private final String publishSetName;
+	private final int pakFiles;
+	private final int pakFilesUploaded;
+	private final int pakFilesSkipped;
+	private final int pakFilesFailed;
+	private final long bytesUploaded;
+	private final long bytesToUpload;
+	private final long elapsedMS;
+	private final boolean cleared;
+	private final boolean committed;
+	private final boolean finished;
+
+	PublishProgress(String publishSetName, int pakFiles, int pakFilesUploaded, int pakFilesSkipped, int pakFilesFailed,
+			long bytesUploaded, long bytesToUpload, long elapsedMS, boolean cleared, boolean committed, boolean finished) {
+		this.publishSetName = publishSetName;
+		this.pakFiles = pakFiles;
+		this.pakFilesUploaded = pakFilesUploaded;
+		this.pakFilesSkipped = pakFilesSkipped;
+		this.pakFilesFailed = pakFilesFailed;
+		this.bytesUploaded = bytesUploaded;
+		this.bytesToUpload = bytesToUpload;
+		this.elapsedMS = elapsedMS;
+		this.cleared = cleared;
+		this.committed = committed;
+		this.finished = finished;
+	}
+
+	public String getPublishSetName() {
+		return publishSetName;
+	}
+
+	/**
+	 * @return the number of pak files in the publish set
+	 */
+	public int getPakFiles() {
+		return pakFiles;
+	}
+
+	/**
+	 * @return the number of pak files uploaded so far
+	 */
+	public int getPakFilesUploaded() {
+		return pakFilesUploaded;
+	}
+
+	/**
+	 * @return the number of pak files not uploaded because the manifest shows the server already has them
+	 */
+	public int getPakFilesSkipped() {
+		return pakFilesSkipped;
+	}
+
+	/**
+	 * @return the number of pak files that could not be uploaded
+	 */
+	public int getPakFilesFailed() {
+		return pakFilesFailed;
+	}
+
+	public long getBytesUploaded() {
+		return bytesUploaded;
+	}
+
+	/**
+	 * @return the total size of the pak files that need uploading
+	 */
+	public long getBytesToUpload() {
+		return bytesToUpload;
+	}
+
+	public long getElapsedMS() {
+		return elapsedMS;
+	}
+
+	/**
+	 * @return true if the publish set was cleared and every pak file sent again
+	 */
+	public boolean isCleared() {
+		return cleared;
+	}
+
+	/**
+	 * @return true if the publish set has been committed
+	 */
+	public boolean isCommitted() {
+		return committed;
+	}
+
+	/**
+	 * @return true if this is the report at the end of publishing
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	@Override
+	public String toString() {
+		return "PublishProgress [publishSetName=" + publishSetName + ", pakFiles=" + pakFiles + ", pakFilesUploaded="
+				+ pakFilesUploaded + ", pakFilesSkipped=" + pakFilesSkipped + ", pakFilesFailed=" + pakFilesFailed
+				+ ", bytesUploaded=" + bytesUploaded + ", bytesToUpload=" + bytesToUpload + ", elapsedMS=" + elapsedMS
+				+ ", cleared=" + cleared + ", committed=" + committed + ", finished=" + finished + "]";
+	}
+}
@@ -1,4 +1,5 @@
 import java.io.File;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -9,6 +10,7 @@ import java.util.UUID;
 import com.smartlogic.classificationserver.client.ClassificationClient;
 import com.smartlogic.classificationserver.client.ClassificationConfiguration;
 import com.smartlogic.classificationserver.client.Title;
+import com.smartlogic.classificationserver.client.bulk.BulkClassifier;
 
 public class ClassifyDirectory {
 
@@ -28,27 +30,25 @@ public class ClassifyDirectory {
 
 			UUID uuid = UUID.fromString("0000013d-34cb-7bf7-1145-7e371ef38400");
 			classificationClient.setAuditUUID(uuid);
-			File[] filesToClassify = directory.listFiles();
-			if (filesToClassify == null)
-				return;
-			for (File file : filesToClassify) {
-				try {
-					System.out.println("Treating file: " + file.getAbsolutePath());
+			Path root = directory.toPath();
+			BulkClassifier bulkClassifier = new BulkClassifier(classificationClient);
+			bulkClassifier.setFileClassification((client, file) -> {
+				System.out.println("Treating file: " + file.getAbsolutePath());
 
-					String filePath = file.getAbsolutePath();
-					filePath = filePath.substring(49);
-					filePath = filePath.replace('\\', '/');
-					System.out.println(filePath);
-					Map<String, Collection<String>> metas = new HashMap<String, Collection<String>>();
-					List<String> linkedList = new LinkedList<String>();
-					linkedList.add(filePath);
-					metas.put("ORIGINALURI", linkedList);
+				String filePath = root.relativize(file.toPath()).toString().replace('\\', '/');
+				System.out.println(filePath);
+				Map<String, Collection<String>> metas = new HashMap<String, Collection<String>>();
+				List<String> linkedList = new LinkedList<String>();
+				linkedList.add(filePath);
+				metas.put("ORIGINALURI", linkedList);
 
-					classificationClient.getClassifiedDocument(file, null, new Title(file.getName()), metas);
-				} catch (Exception e) {
-					System.out.println("Exception occurred: " + e.getMessage());
-					e.printStackTrace();
-				}
+				return client.getClassifiedDocument(file, null, new Title(file.getName()), metas);
+			});
+			try {
+				System.out.println(bulkClassifier.classifyDirectory(directory));
+			} catch (Exception e) {
+				System.out.println("Exception occurred: " + e.getMessage());
+				e.printStackTrace();
 			}
 		}
 	}
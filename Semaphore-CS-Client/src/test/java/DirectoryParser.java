@@ -2,12 +2,14 @@
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import com.smartlogic.classificationserver.client.ClassificationClient;
 import com.smartlogic.classificationserver.client.ClassificationException;
+import com.smartlogic.classificationserver.client.bulk.BulkClassifier;
 
 abstract public class DirectoryParser {
 	protected final static Log logger = LogFactory.getLog(DirectoryParser.class);
@@ -30,27 +32,30 @@ abstract public class DirectoryParser {
 		parseDirectory(inputDirectory, outputDirectory);
 	}
 
+	/**
+	 * Parse every file below the input directory with a BulkClassifier, writing each output file to the same
+	 * relative path below the output directory
+	 */
 	public void parseDirectory(File inputDirectory, File outputDirectory) throws Exception {
 		if ((inputDirectory == null) || (outputDirectory == null)) return;
 		
 		if (!outputDirectory.exists()) outputDirectory.mkdirs();
 		if (!outputDirectory.isDirectory()) throw new Exception("Output directory '" + outputDirectory.getAbsolutePath() + "' is not a directory");
 		
-		File[] inputFiles = inputDirectory.listFiles();
-		if (inputFiles == null) return;
-		
-		for (File inputFile: inputFiles) {
-			File outputFile = new File(outputDirectory, inputFile.getName() + "." + getSuffix());
-			if (inputFile.isDirectory()) {
-				parseDirectory(inputFile,outputFile);
-			} else {
-				try {
-					parseFile(inputFile, outputFile);
-				} catch (Exception e) {
-					logger.error("Error with file: '" + inputFile.getAbsolutePath() + "': " + e.getMessage());
-				}
+		Path inputPath = inputDirectory.toPath();
+		BulkClassifier bulkClassifier = new BulkClassifier(classificationClient);
+		bulkClassifier.setFileClassification((client, inputFile) -> {
+			File outputFile = new File(outputDirectory, inputPath.relativize(inputFile.toPath()) + "." + getSuffix());
+			outputFile.getParentFile().mkdirs();
+			try {
+				parseFile(inputFile, outputFile);
+			} catch (IOException e) {
+				throw new ClassificationException("Error with file: '" + inputFile.getAbsolutePath() + "': " + e.getMessage());
 			}
-		}
+			// The output is already written, so there is nothing for a result sink
+			return null;
+		});
+		bulkClassifier.classifyDirectory(inputDirectory);
 	}
 	
 	public abstract String getSuffix();
@@ -0,0 +1,161 @@
+package com.smartlogic.classificationserver.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A minimal stand-in for classification server that answers every request with a fixed response, so the
+ * client can be exercised without a real server.
+ */
+public class StubClassificationServer implements AutoCloseable {
+
+	public static final String DEFAULT_RESPONSE = "<response><STRUCTUREDDOCUMENT>"
+			+ "<META name=\"IPSV\" value=\"Markets\" score=\"0.80\" id=\"1\"/>"
+			+ "</STRUCTUREDDOCUMENT></response>";
+
+	private final HttpServer httpServer;
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private final List<String> requestBodies = new CopyOnWriteArrayList<String>();
+
+	private volatile String response = DEFAULT_RESPONSE;
+	private volatile int statusCode = 200;
+	private volatile CountDownLatch gate = null;
+	private final AtomicInteger failures = new AtomicInteger();
+
+	public StubClassificationServer() throws IOException {
+		httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		httpServer.setExecutor(executorService);
+		httpServer.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleRequest(exchange);
+			}
+		});
+		httpServer.start();
+	}
+
+	private void handleRequest(HttpExchange exchange) throws IOException {
+		int current = inFlight.incrementAndGet();
+		int max;
+		while ((max = maxInFlight.get()) < current && !maxInFlight.compareAndSet(max, current)) {
+			// Retry
+		}
+		try {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream inputStream = exchange.getRequestBody()) {
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = inputStream.read(buffer)) != -1) body.write(buffer, 0, read);
+			}
+			String requestBody = new String(body.toByteArray(), StandardCharsets.UTF_8);
+			requestBodies.add(requestBody);
+			requestCount.incrementAndGet();
+
+			CountDownLatch currentGate = gate;
+			if (currentGate != null) {
+				try {
+					currentGate.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			boolean fail = failures.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0;
+			byte[] responseBytes = responseFor(requestBody).getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(fail ? 500 : statusCode, responseBytes.length);
+			try (OutputStream outputStream = exchange.getResponseBody()) {
+				outputStream.write(responseBytes);
+			}
+		} finally {
+			inFlight.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Override to vary the response with the request
+	 *
+	 * @param requestBody The multipart request body
+	 * @return the response to send
+	 */
+	protected String responseFor(String requestBody) {
+		return response;
+	}
+
+	public String getUrl() {
+		return "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/index.html";
+	}
+
+	public ClassificationClient getClient(int clientPoolSize) {
+		ClassificationConfiguration classificationConfiguration = new ClassificationConfiguration();
+		classificationConfiguration.setUrl(getUrl());
+		ClassificationClient classificationClient = new ClassificationClient();
+		classificationClient.setClassificationConfiguration(classificationConfiguration);
+		classificationClient.setClientPoolSize(clientPoolSize);
+		return classificationClient;
+	}
+
+	public void setResponse(String response) {
+		this.response = response;
+	}
+
+	public void setStatusCode(int statusCode) {
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * @param failures The number of following requests to answer with a server error
+	 */
+	public void setFailures(int failures) {
+		this.failures.set(failures);
+	}
+
+	/**
+	 * @param gate If not null, requests are held until the latch is released
+	 */
+	public void setGate(CountDownLatch gate) {
+		this.gate = gate;
+	}
+
+	public int getRequestCount() {
+		return requestCount.get();
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public int getMaxInFlight() {
+		return maxInFlight.get();
+	}
+
+	public List<String> getRequestBodies() {
+		return requestBodies;
+	}
+
+	@Override
+	public void close() {
+		CountDownLatch currentGate = gate;
+		if (currentGate != null) {
+			while (currentGate.getCount() > 0) currentGate.countDown();
+		}
+		httpServer.stop(0);
+		executorService.shutdownNow();
+	}
+}
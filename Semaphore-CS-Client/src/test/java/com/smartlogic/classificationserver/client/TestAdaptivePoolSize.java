@@ -0,0 +1,108 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+public class TestAdaptivePoolSize {
+
+	private static class WorkerServer extends StubClassificationServer {
+		private volatile int workers;
+
+		private WorkerServer(int workers) throws Exception {
+			super();
+			this.workers = workers;
+		}
+
+		@Override
+		protected String responseFor(String requestBody) {
+			if (!requestBody.contains("op=\"info\"")) return super.responseFor(requestBody);
+
+			StringBuilder response = new StringBuilder("<response><info><children>");
+			for (int i = 0; i < workers; i++) {
+				response.append("<process id=\"" + (i + 1) + "\" status=\"idle\"/>");
+			}
+			return response.append("</children></info></response>").toString();
+		}
+	}
+
+	@Test
+	public void testResize() throws Exception {
+		try (WorkerServer server = new WorkerServer(6);
+				ClassificationClient client = server.getClient(2)) {
+			client.setAdaptivePoolSize(true);
+			client.setPoolSizeIntervalMS(3600000);
+			client.getClassifiedDocument(new Body("Body"), new Title("Title"));
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while ((client.getClientPoolSize() != 6) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10);
+			}
+			assertEquals(client.getClientPoolSize(), 6);
+
+			// All six connections are used at once
+			CountDownLatch gate = new CountDownLatch(1);
+			server.setGate(gate);
+			List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>();
+			for (int i = 0; i < 12; i++) {
+				futures.add(client.classifyAsync(new Body("Document body " + i), new Title("Title " + i)));
+			}
+			deadline = System.currentTimeMillis() + 5000;
+			while ((server.getInFlight() < 6) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(100);
+			assertEquals(server.getInFlight(), 6);
+			server.setGate(null);
+			gate.countDown();
+			for (CompletableFuture<Result> future: futures) {
+				future.get(10, TimeUnit.SECONDS);
+			}
+			assertEquals(client.getAsyncRequestsOutstanding(), 0);
+
+			// Scaled down, and capped
+			server.workers = 3;
+			assertEquals(client.resizePool(), 3);
+			assertEquals(client.getAsyncRequestsOutstanding(), 0);
+			server.workers = 100;
+			client.setMaxClientPoolSize(8);
+			assertEquals(client.resizePool(), 8);
+
+			// A response without workers leaves the pool as it is
+			server.workers = 0;
+			assertEquals(client.resizePool(), 8);
+			assertEquals(client.getClientPoolSize(), 8);
+			assertTrue(client.classifyAsync(new Body("Body"), new Title("Title")).get(10, TimeUnit.SECONDS) != null);
+		}
+	}
+
+	@Test
+	public void testNodes() throws Exception {
+		try (WorkerServer small = new WorkerServer(3);
+				WorkerServer large = new WorkerServer(5);
+				ClassificationClient client = small.getClient(2)) {
+			NodeBalancer nodeBalancer = new NodeBalancer(Arrays.asList(small.getUrl(), large.getUrl()));
+			nodeBalancer.setPollIntervalMS(3600000);
+			client.setNodeBalancer(nodeBalancer);
+
+			// Each node is sized from its own workers
+			assertEquals(client.resizePool(), 8);
+			assertEquals(nodeBalancer.getNodes().get(0).getPoolSize(), 3);
+			assertEquals(nodeBalancer.getNodes().get(1).getPoolSize(), 5);
+
+			large.workers = 0;
+			small.workers = 4;
+			assertEquals(client.resizePool(), 9);
+			assertEquals(nodeBalancer.getNodes().get(1).getPoolSize(), 5);
+			assertTrue(client.getClassifiedDocument(new Body("Body"), new Title("Title")) != null);
+		}
+	}
+}
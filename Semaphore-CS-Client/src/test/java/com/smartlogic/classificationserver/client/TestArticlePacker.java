@@ -0,0 +1,137 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.Test;
+
+public class TestArticlePacker {
+
+	/* Answers with an article for each packed article, scored with the text of its first paragraph */
+	private static class ArticleServer extends StubClassificationServer {
+		private static final Pattern PARAGRAPH = Pattern.compile("<article>(?:<h1>.*?</h1>)?<p>(.*?)</p>");
+
+		private volatile int missingArticles = 0;
+
+		ArticleServer() throws IOException {
+			super();
+		}
+
+		@Override
+		protected String responseFor(String requestBody) {
+			if (!requestBody.contains("<article>")) return super.responseFor(requestBody);
+
+			StringBuilder response = new StringBuilder("<response><STRUCTUREDDOCUMENT>");
+			Matcher matcher = PARAGRAPH.matcher(requestBody);
+			int articles = 0;
+			while (matcher.find()) {
+				articles++;
+				String text = matcher.group(1);
+				response.append("<ARTICLE><META name=\"Text\" value=\"").append(text).append("\" score=\"0.9\"/>");
+				response.append("<META name=\"Text\" value=\"weak\" score=\"0.1\"/>");
+				response.append("<PARAGRAPH>").append(text).append("</PARAGRAPH></ARTICLE>");
+			}
+			response.append("</STRUCTUREDDOCUMENT></response>");
+			String packed = response.toString();
+			for (int m = 0; m < missingArticles && articles > 0; m++) {
+				packed = packed.replaceFirst("<ARTICLE>.*?</ARTICLE>", "");
+			}
+			return packed;
+		}
+	}
+
+	private static List<Body> getBodies(int count) {
+		List<Body> bodies = new ArrayList<Body>();
+		for (int i = 0; i < count; i++) {
+			bodies.add(new Body((i % 7 == 3) ? "" : "Document " + i + " &amp; <more>"));
+		}
+		return bodies;
+	}
+
+	private static String getText(Result result) {
+		Collection<ClassificationScore> classificationScores = result.getAllClassifications().get("Text");
+		for (ClassificationScore classificationScore: classificationScores) {
+			if (classificationScore.getScore() > 0.5f) return classificationScore.getName();
+		}
+		return null;
+	}
+
+	@Test
+	public void testCorrelation() throws Exception {
+		try (ArticleServer server = new ArticleServer();
+				ClassificationClient client = server.getClient(3)) {
+			client.getClassificationConfiguration().setSingleArticle(true);
+			ArticlePacker articlePacker = new ArticlePacker(client);
+			articlePacker.setMaxDocuments(8);
+
+			List<Body> bodies = getBodies(60);
+			List<Title> titles = new ArrayList<Title>();
+			for (int i = 0; i < bodies.size(); i++) titles.add(new Title("Title " + i));
+			List<Result> results = articlePacker.classify(bodies, titles);
+			assertEquals(results.size(), 60);
+			for (int i = 0; i < results.size(); i++) {
+				if (i % 7 == 3) {
+					assertTrue(results.get(i).getAllClassifications().isEmpty());
+				} else {
+					assertEquals(getText(results.get(i)), "Document " + i + " &amp; <more>");
+					assertEquals(results.get(i).getAllClassifications().get("Text").size(), 2);
+					assertEquals(results.get(i).getArticles().size(), 1);
+				}
+			}
+			// 51 documents that are not empty, at most 8 to a request
+			assertEquals(server.getRequestCount(), 7);
+			for (String requestBody: server.getRequestBodies()) {
+				assertTrue(requestBody.contains("multiarticle"));
+				assertTrue(!requestBody.contains("singlearticle"));
+			}
+		}
+	}
+
+	@Test
+	public void testMaxCharacters() throws Exception {
+		try (ArticleServer server = new ArticleServer();
+				ClassificationClient client = server.getClient(2)) {
+			ArticlePacker articlePacker = new ArticlePacker(client);
+			articlePacker.setMaxCharacters(100);
+			List<Result> results = articlePacker.classify(getBodies(10));
+			// Each document is 23 characters, so four fit in a request and the last is sent on its own
+			assertEquals(server.getRequestCount(), 3);
+			assertEquals(getText(results.get(8)), "Document 8 &amp; <more>");
+			assertEquals(results.get(9).getAllClassifications().get("IPSV").iterator().next().getName(), "Markets");
+		}
+	}
+
+	@Test
+	public void testScoreFilter() throws Exception {
+		try (ArticleServer server = new ArticleServer();
+				ClassificationClient client = server.getClient(2)) {
+			client.setScoreFilter(new ScoreFilter(0.5f, 0));
+			List<Result> results = new ArticlePacker(client).classify(getBodies(5));
+			assertEquals(results.get(4).getAllClassifications().get("Text").size(), 1);
+			assertEquals(getText(results.get(4)), "Document 4 &amp; <more>");
+			assertTrue(results.get(4).getArticles().isEmpty());
+		}
+	}
+
+	@Test
+	public void testMismatch() throws Exception {
+		try (ArticleServer server = new ArticleServer();
+				ClassificationClient client = server.getClient(1)) {
+			server.missingArticles = 1;
+			ArticlePacker articlePacker = new ArticlePacker(client);
+			List<Result> results = articlePacker.classify(getBodies(3));
+			// One packed request, then each document on its own
+			assertEquals(server.getRequestCount(), 4);
+			for (Result result: results) {
+				assertEquals(result.getAllClassifications().get("IPSV").iterator().next().getName(), "Markets");
+			}
+		}
+	}
+}
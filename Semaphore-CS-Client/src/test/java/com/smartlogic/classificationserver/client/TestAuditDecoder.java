@@ -0,0 +1,118 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+public class TestAuditDecoder {
+
+	// Dates are tested apart: the ICU release this module uses cannot start on JDK 8 builds past update 255
+	private static final String SUCCESS_FORMAT = "$(FILENAME),$(DOCUMENTHASH),OK,$(THRESHOLD),$(TIMETAKEN),$(AUDITTAG),$(ERRORNUM)";
+	private static final String FAIL_FORMAT = "$(FILENAME),FAIL,$(ERRORNUM),$(ERRORMESSAGE)";
+
+	@Test
+	public void testMatchesRecords() throws Exception {
+		StringBuilder logData = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			if (i % 10 == 9) {
+				logData.append("file" + i + ",FAIL,12,Broken\n");
+			} else {
+				logData.append("file" + i + ",hash,OK,0." + (i % 7) + "," + i + ",tag" + i + ",0\n");
+			}
+		}
+		logData.append("odd,hash,OK,high,slow,odd,none\n");
+		ClassificationHistory classificationHistory = new ClassificationHistory(SUCCESS_FORMAT, FAIL_FORMAT, logData.toString());
+
+		AuditColumns auditColumns = classificationHistory.getAuditColumns();
+		List<ClassificationRecord> classificationRecords = new ArrayList<ClassificationRecord>(classificationHistory.getClassificationRecords());
+		assertEquals(auditColumns.size(), classificationRecords.size());
+		assertEquals(auditColumns.size(), 2001);
+
+		for (int i = 0; i < auditColumns.size(); i++) {
+			ClassificationRecord classificationRecord = classificationRecords.get(i);
+			assertEquals(auditColumns.isSuccess(i), classificationRecord instanceof SuccessRecord);
+			assertEquals(auditColumns.getStartTime(i), AuditColumns.UNDEFINED_TIME);
+			assertEquals(auditColumns.getErrorNum(i), classificationRecord.getErrorNum());
+			if (auditColumns.isSuccess(i)) {
+				assertEquals(auditColumns.getThreshold(i), classificationRecord.getThreshold());
+				assertEquals(auditColumns.getTimeTaken(i), classificationRecord.getTimeTaken());
+				assertEquals(auditColumns.getAuditTag(i), classificationRecord.getAuditTag());
+			} else {
+				assertEquals(auditColumns.getTimeTaken(i), AuditFormat.UNDEFINED_FLOAT);
+			}
+		}
+
+		// The unparseable record falls back to the undefined values
+		int last = auditColumns.size() - 1;
+		assertEquals(auditColumns.getTimeTaken(last), AuditFormat.UNDEFINED_FLOAT);
+		assertEquals(auditColumns.getThreshold(last), AuditFormat.UNDEFINED_FLOAT);
+		assertEquals(auditColumns.getErrorNum(last), AuditFormat.UNDEFINED_INT);
+	}
+
+	@Test
+	public void testMalformedValuesCounted() throws Exception {
+		AuditDecoder auditDecoder = new AuditFormat(SUCCESS_FORMAT.split(",")).compile();
+		AuditColumns auditColumns = new AuditColumns(4);
+		for (int i = 0; i < 3; i++) {
+			auditDecoder.decode(new String[] { "file", "hash", "OK", "high", "slow", "tag", "none" }, true, auditColumns);
+		}
+		assertEquals(auditDecoder.getMalformedValues(), 9);
+	}
+
+	@Test
+	public void testDates() throws Exception {
+		try {
+			new com.ibm.icu.text.SimpleDateFormat(AuditFormat.defaultDateFormat);
+		} catch (LinkageError e) {
+			throw new SkipException("ICU cannot start on this JDK: " + e);
+		}
+
+		String successFormat = "$(FILENAME),OK,$(STARTTIME::\"yyyy-MM-dd HH:mm:ss\"),$(FINISHTIME::\"yyyy-MM-dd HH:mm:ss\"),$(TIMETAKEN)";
+		StringBuilder logData = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			// Several records in each second, to use the last parsed time
+			logData.append("file" + i + ",OK,2020-01-02 03:04:" + String.format("%02d", i / 4)
+					+ ",2020-01-02 03:05:" + String.format("%02d", i / 4) + "," + i + "\n");
+		}
+		logData.append("bad,OK,yesterday,never,0\n");
+		ClassificationHistory classificationHistory = new ClassificationHistory(successFormat, FAIL_FORMAT, logData.toString());
+
+		AuditColumns auditColumns = classificationHistory.getAuditColumns();
+		List<ClassificationRecord> classificationRecords = new ArrayList<ClassificationRecord>(classificationHistory.getClassificationRecords());
+		assertEquals(auditColumns.size(), 101);
+		for (int i = 0; i < auditColumns.size(); i++) {
+			ClassificationRecord classificationRecord = classificationRecords.get(i);
+			assertEquals(auditColumns.getStartTime(i), classificationRecord.getStartDateTime().getTime());
+			assertEquals(auditColumns.getFinishTime(i), classificationRecord.getFinishDateTime().getTime());
+		}
+		assertEquals(auditColumns.getFinishTime(4) - auditColumns.getStartTime(4), 60000);
+		assertEquals(auditColumns.getStartTime(100), AuditFormat.UNDEFINED_DATE.getTime());
+	}
+
+	@Test
+	public void testMissingFields() throws Exception {
+		AuditDecoder auditDecoder = new AuditFormat(new String[] { "$(FILENAME)", "OK" }).compile();
+		assertTrue(auditDecoder.isExample(new String[] { "file.txt", "OK" }));
+		assertFalse(auditDecoder.isExample(new String[] { "file.txt", "FAIL" }));
+
+		AuditColumns auditColumns = new AuditColumns(1);
+		auditDecoder.decode(new String[] { "file.txt", "OK" }, true, auditColumns);
+		auditDecoder.decode(new String[] { "file2.txt", "OK" }, true, auditColumns);
+		assertEquals(auditColumns.size(), 2);
+		assertEquals(auditColumns.getStartTime(1), AuditColumns.UNDEFINED_TIME);
+		assertEquals(auditColumns.getThreshold(1), AuditFormat.UNDEFINED_FLOAT);
+		assertEquals(auditColumns.getErrorNum(1), AuditFormat.UNDEFINED_INT);
+		try {
+			auditColumns.getTimeTaken(2);
+			throw new AssertionError("Read past the end");
+		} catch (IndexOutOfBoundsException e) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.Test;
+
+public class TestClassificationHistoryReader {
+
+	private static final String SUCCESS_FORMAT = "$(FILENAME),OK,$(AUDITTAG)";
+	private static final String FAIL_FORMAT = "$(FILENAME),FAIL,$(ERRORMESSAGE)";
+
+	private static class HistoryServer extends StubClassificationServer {
+		private static final Pattern START_TIME = Pattern.compile("name=\"start_time\"[\\s\\S]*?\r\n\r\n(.*?)\r\n");
+
+		private HistoryServer() throws Exception {
+			super();
+		}
+
+		@Override
+		protected String responseFor(String requestBody) {
+			Matcher matcher = START_TIME.matcher(requestBody);
+			assertTrue(matcher.find(), requestBody);
+			String startTime = matcher.group(1);
+			StringBuilder logData = new StringBuilder();
+			for (int i = 0; i < 3; i++) {
+				logData.append(startTime + "," + (i == 2 ? "FAIL" : "OK") + ",tag" + i + "\n");
+			}
+			return "<response><SuccessFormat>" + SUCCESS_FORMAT + "</SuccessFormat><FailFormat>" + FAIL_FORMAT
+					+ "</FailFormat><logData>" + logData + "</logData></response>";
+		}
+
+		private List<String> getTimes(String field) {
+			Pattern pattern = Pattern.compile("name=\"" + field + "\"[\\s\\S]*?\r\n\r\n(.*?)\r\n");
+			List<String> times = new ArrayList<String>();
+			for (String requestBody: getRequestBodies()) {
+				Matcher matcher = pattern.matcher(requestBody);
+				if (matcher.find()) times.add(matcher.group(1));
+			}
+			return times;
+		}
+	}
+
+	@Test
+	public void testRecordIterator() throws Exception {
+		String logData = "first,OK,tag1\n"
+				+ "\n"
+				+ "second,OK,\\\n"
+				+ "continued   \n"
+				+ "third,FAIL,Broken\n";
+		ClassificationHistory classificationHistory = new ClassificationHistory(SUCCESS_FORMAT, FAIL_FORMAT, logData);
+
+		List<ClassificationRecord> classificationRecords = new ArrayList<ClassificationRecord>(classificationHistory.getClassificationRecords());
+		assertEquals(classificationRecords.size(), 3);
+		assertEquals(classificationRecords.get(0).getAuditTag(), "tag1");
+		assertEquals(classificationRecords.get(1).getAuditTag(), "continued");
+		assertTrue(classificationRecords.get(2) instanceof ErrorRecord);
+		assertEquals(classificationRecords.get(2).getErrorMessage(), "Broken");
+	}
+
+	@Test
+	public void testWindows() throws Exception {
+		Date startTime = new Date(1500000000000L);
+		Date endTime = new Date(startTime.getTime() + 5 * 60000);
+
+		try (HistoryServer server = new HistoryServer();
+				ClassificationClient client = server.getClient(3);
+				ClassificationHistoryReader reader = client.getClassificationHistoryReader(startTime, endTime, 60000)) {
+			List<ClassificationRecord> classificationRecords = new ArrayList<ClassificationRecord>();
+			ClassificationRecord classificationRecord;
+			while ((classificationRecord = reader.read()) != null) {
+				classificationRecords.add(classificationRecord);
+			}
+			assertNull(reader.read());
+			assertEquals(classificationRecords.size(), 15);
+			assertEquals(server.getRequestCount(), 5);
+
+			// Windows do not overlap and come back in order however they were fetched
+			List<String> startTimes = server.getTimes("start_time");
+			List<String> finishTimes = server.getTimes("finish_time");
+			List<String> sortedStartTimes = new ArrayList<String>(startTimes);
+			sortedStartTimes.sort(null);
+			for (int i = 0; i < 5; i++) {
+				String windowStart = sortedStartTimes.get(i);
+				assertEquals(classificationRecords.get(3 * i).getFileName(), windowStart);
+				assertTrue(classificationRecords.get(3 * i + 2) instanceof ErrorRecord);
+				assertTrue(finishTimes.get(startTimes.indexOf(windowStart)).compareTo(windowStart) > 0);
+				if (i > 0) {
+					assertTrue(finishTimes.get(startTimes.indexOf(sortedStartTimes.get(i - 1))).compareTo(windowStart) < 0);
+				}
+			}
+
+			// The single request form sees the same records
+			Collection<ClassificationRecord> allRecords = client.getClassificationHistory(startTime, endTime);
+			assertEquals(allRecords.size(), 3);
+		}
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		try (HistoryServer server = new HistoryServer();
+				ClassificationClient client = server.getClient(2);
+				ClassificationHistoryReader reader = client.getClassificationHistoryReader(new Date(0), new Date(3600000), 600000)) {
+			server.setStatusCode(500);
+			try {
+				reader.read();
+				fail("Server error ignored");
+			} catch (ClassificationException e) {
+				assertTrue(e.getMessage().contains("Internal classification server error"), e.getMessage());
+			}
+		}
+	}
+}
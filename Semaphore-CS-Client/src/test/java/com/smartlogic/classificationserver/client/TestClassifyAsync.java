@@ -0,0 +1,120 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+public class TestClassifyAsync {
+
+	@Test
+	public void testResults() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(4)) {
+			List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>();
+			for (int i = 0; i < 20; i++) {
+				futures.add(client.classifyAsync(new Body("Document body " + i), new Title("Title " + i)));
+			}
+			for (CompletableFuture<Result> future: futures) {
+				Result result = future.get(10, TimeUnit.SECONDS);
+				assertEquals(result.getAllClassifications().get("IPSV").iterator().next().getName(), "Markets");
+			}
+			assertEquals(server.getRequestCount(), 20);
+			assertTrue(server.getMaxInFlight() <= 4, "In flight requests capped: " + server.getMaxInFlight());
+		}
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				final ClassificationClient client = server.getClient(2)) {
+			client.setAsyncQueueSize(3);
+			CountDownLatch gate = new CountDownLatch(1);
+			server.setGate(gate);
+
+			final AtomicInteger submitted = new AtomicInteger();
+			Thread feeder = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 10; i++) {
+						client.classifyAsync(new Body("Document body " + i), new Title("Title " + i));
+						submitted.incrementAndGet();
+					}
+				}
+			};
+			feeder.start();
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while ((server.getInFlight() < 2) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(200);
+			assertEquals(submitted.get(), 5, "Two sending and three queued");
+			assertEquals(client.getAsyncRequestsOutstanding(), 5);
+			assertEquals(server.getInFlight(), 2);
+
+			gate.countDown();
+			feeder.join(10000);
+			assertEquals(submitted.get(), 10);
+		}
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2)) {
+			server.setStatusCode(500);
+			CompletableFuture<Result> future = client.classifyAsync(new Body("Document body"), new Title("Title"));
+			try {
+				future.get(10, TimeUnit.SECONDS);
+				fail("Server error ignored");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof ClassificationException, e.getCause().toString());
+			}
+			assertEquals(client.getAsyncRequestsOutstanding(), 0, "Permit returned");
+		}
+	}
+
+	@Test
+	public void testCloseTimeout() throws Exception {
+		CountDownLatch gate = new CountDownLatch(1);
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			server.setGate(gate);
+			client.setCloseTimeoutMS(200);
+			List<CompletableFuture<Result>> futures = new ArrayList<CompletableFuture<Result>>();
+			for (int i = 0; i < 3; i++) {
+				futures.add(client.classifyAsync(new Body("Document body " + i), new Title("Title " + i)));
+			}
+			long deadline = System.currentTimeMillis() + 5000;
+			while ((server.getInFlight() < 1) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10);
+			}
+
+			// The server never answers, so close() gives up and fails the requests it did not send
+			long start = System.currentTimeMillis();
+			client.close();
+			assertTrue(System.currentTimeMillis() - start < 5000, "Close waited " + (System.currentTimeMillis() - start) + "ms");
+			for (CompletableFuture<Result> future: futures.subList(1, 3)) {
+				try {
+					future.get(1, TimeUnit.SECONDS);
+					fail("Unsent request completed");
+				} catch (ExecutionException e) {
+					assertTrue(e.getCause() instanceof ClassificationException, e.getCause().toString());
+				}
+			}
+			assertEquals(server.getRequestCount(), 1);
+		} finally {
+			gate.countDown();
+		}
+	}
+}
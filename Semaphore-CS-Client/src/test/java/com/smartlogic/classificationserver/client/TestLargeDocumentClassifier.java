@@ -0,0 +1,173 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.testng.annotations.Test;
+
+public class TestLargeDocumentClassifier {
+
+	/* Scores Alpha and Beta by whether the chunk mentions them, Common for every chunk, and Varied by whether it mentions alpha */
+	private static class TopicServer extends StubClassificationServer {
+		TopicServer() throws IOException {
+			super();
+		}
+
+		@Override
+		protected String responseFor(String requestBody) {
+			StringBuilder response = new StringBuilder("<response><STRUCTUREDDOCUMENT>");
+			response.append("<META name=\"Language\" value=\"English\"/>");
+			if (requestBody.contains("alpha")) response.append("<META name=\"Topic\" value=\"Alpha\" id=\"A\" score=\"0.9\"/>");
+			if (requestBody.contains("beta")) response.append("<META name=\"Topic\" value=\"Beta\" id=\"B\" score=\"0.6\"/>");
+			response.append("<META name=\"Topic\" value=\"Common\" score=\"0.5\"/>");
+			response.append("<META name=\"Mood\" value=\"Varied\" score=\"" + (requestBody.contains("alpha") ? "0.8" : "0.3") + "\"/>");
+			response.append("</STRUCTUREDDOCUMENT></response>");
+			return response.toString();
+		}
+	}
+
+	/* 30 paragraphs of 100 characters; the first ten mention alpha and the last ten beta */
+	private static Body getBody() {
+		StringBuilder text = new StringBuilder();
+		for (int p = 0; p < 30; p++) {
+			StringBuilder paragraph = new StringBuilder("Paragraph " + p + " " + ((p < 10) ? "alpha" : (p >= 20) ? "beta" : "gamma"));
+			while (paragraph.length() < 100) paragraph.append('.');
+			if (p > 0) text.append('\n');
+			text.append(paragraph);
+		}
+		return new Body(text.toString());
+	}
+
+	private static float getScore(Result result, String name) {
+		Collection<ClassificationScore> classificationScores = result.getAllClassifications().get("Topic");
+		for (ClassificationScore classificationScore: classificationScores) {
+			if (classificationScore.getName().equals(name)) return classificationScore.getScore();
+		}
+		return -1;
+	}
+
+	@Test
+	public void testMax() throws Exception {
+		try (TopicServer server = new TopicServer();
+				ClassificationClient client = server.getClient(4)) {
+			LargeDocumentClassifier largeDocumentClassifier = new LargeDocumentClassifier(client);
+			largeDocumentClassifier.setChunkCharacters(1000);
+			largeDocumentClassifier.setOverlapCharacters(250);
+
+			Result result = largeDocumentClassifier.classify(getBody(), new Title("Large"));
+			assertEquals(getScore(result, "Alpha"), 0.9f);
+			assertEquals(getScore(result, "Beta"), 0.6f);
+			assertEquals(getScore(result, "Common"), 0.5f);
+			assertEquals(result.getAllClassifications().get("Topic").iterator().next().getId(), "A");
+			assertEquals(result.getMetadata().get("Language"), "English");
+
+			// Ten paragraphs to a chunk, the last two repeated at the start of the next
+			assertEquals(server.getRequestCount(), 4);
+			for (int p = 0; p < 30; p++) {
+				int requests = 0;
+				for (String requestBody: server.getRequestBodies()) {
+					if (requestBody.contains("Paragraph " + p + " ")) requests++;
+				}
+				assertEquals(requests, ((p == 8) || (p == 9) || (p == 16) || (p == 17) || (p == 24) || (p == 25)) ? 2 : 1, "Paragraph " + p);
+			}
+		}
+	}
+
+	@Test
+	public void testWeightedMean() throws Exception {
+		try (TopicServer server = new TopicServer();
+				ClassificationClient client = server.getClient(4)) {
+			LargeDocumentClassifier largeDocumentClassifier = new LargeDocumentClassifier(client);
+			largeDocumentClassifier.setChunkCharacters(1000);
+			largeDocumentClassifier.setOverlapCharacters(250);
+			largeDocumentClassifier.setAggregation(LargeDocumentClassifier.Aggregation.WEIGHTED_MEAN);
+
+			Result result = largeDocumentClassifier.classify(getBody(), new Title("Large"));
+			assertEquals(getScore(result, "Common"), 0.5f, 0.0001f);
+			// Alpha is in the first two of the four chunks, Beta in the last two, which is shorter
+			float alpha = getScore(result, "Alpha");
+			assertTrue((alpha > 0.45f) && (alpha < 0.55f), "Alpha " + alpha);
+			float beta = getScore(result, "Beta");
+			assertTrue((beta > 0.2f) && (beta < 0.3f), "Beta " + beta);
+		}
+	}
+
+	@Test
+	public void testSmallDocument() throws Exception {
+		try (TopicServer server = new TopicServer();
+				ClassificationClient client = server.getClient(2)) {
+			client.setScoreFilter(new ScoreFilter(0.55f, 0));
+			LargeDocumentClassifier largeDocumentClassifier = new LargeDocumentClassifier(client);
+			Result result = largeDocumentClassifier.classify(getBody(), new Title("Small enough"));
+			assertEquals(server.getRequestCount(), 1);
+			assertEquals(result.getAllClassifications().get("Topic").size(), 2);
+
+			// The filter applies to the merged scores
+			largeDocumentClassifier.setChunkCharacters(1000);
+			result = largeDocumentClassifier.classify(getBody(), new Title("Large"));
+			assertEquals(result.getAllClassifications().get("Topic").size(), 2);
+			assertEquals(getScore(result, "Common"), -1.0f);
+		}
+	}
+
+	@Test
+	public void testFilterAfterMerge() throws Exception {
+		try (TopicServer server = new TopicServer();
+				ClassificationClient client = server.getClient(4)) {
+			client.setScoreFilter(new ScoreFilter(0.5f, 0));
+			LargeDocumentClassifier largeDocumentClassifier = new LargeDocumentClassifier(client);
+			largeDocumentClassifier.setChunkCharacters(1000);
+			largeDocumentClassifier.setOverlapCharacters(250);
+			largeDocumentClassifier.setAggregation(LargeDocumentClassifier.Aggregation.WEIGHTED_MEAN);
+
+			// Varied is below the threshold in half the chunks, but its mean is not
+			Result result = largeDocumentClassifier.classify(getBody(), new Title("Large"));
+			Collection<ClassificationScore> moods = result.getAllClassifications().get("Mood");
+			assertEquals(moods.size(), 1);
+			float varied = moods.iterator().next().getScore();
+			assertTrue((varied > 0.55f) && (varied < 0.6f), "Varied " + varied);
+		}
+	}
+
+	@Test
+	public void testLongParagraph() throws Exception {
+		try (TopicServer server = new TopicServer();
+				ClassificationClient client = server.getClient(4)) {
+			LargeDocumentClassifier largeDocumentClassifier = new LargeDocumentClassifier(client);
+			largeDocumentClassifier.setChunkCharacters(300);
+			largeDocumentClassifier.setOverlapCharacters(0);
+
+			// One paragraph of 30 sentences is split between sentences
+			StringBuilder text = new StringBuilder();
+			for (int s = 0; s < 30; s++) {
+				text.append("Sentence ").append(s).append(" is about alpha. ");
+			}
+			largeDocumentClassifier.classify(new Body(text.toString()), new Title("Long"));
+			assertTrue(server.getRequestCount() > 2, "Requests " + server.getRequestCount());
+			for (int s = 0; s < 30; s++) {
+				int requests = 0;
+				for (String requestBody: server.getRequestBodies()) {
+					if (requestBody.contains("Sentence " + s + " is about alpha.")) requests++;
+				}
+				assertEquals(requests, 1, "Sentence " + s);
+			}
+
+			// With no white space at all, at the limit
+			char[] word = new char[700];
+			Arrays.fill(word, 'x');
+			int before = server.getRequestCount();
+			largeDocumentClassifier.classify(new Body(new String(word)), new Title("Word"));
+			assertEquals(server.getRequestCount() - before, 3);
+
+			// Paragraphs separated by blank lines with carriage returns are split too
+			largeDocumentClassifier.setChunkCharacters(30);
+			before = server.getRequestCount();
+			largeDocumentClassifier.classify(new Body("First paragraph of alpha\r\n \r\nSecond paragraph of beta"), new Title("Lines"));
+			assertEquals(server.getRequestCount() - before, 2);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.Test;
+
+public class TestLatencyRecorder {
+
+	private static final Pattern AUDIT_TAG = Pattern.compile("name=\"audit_tag\"[\\s\\S]*?\r\n\r\n(.*?)\r\n");
+
+	/* Takes at least 50ms over each response */
+	private static class SlowServer extends StubClassificationServer {
+		SlowServer() throws IOException {
+			super();
+		}
+
+		@Override
+		protected String responseFor(String requestBody) {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return super.responseFor(requestBody);
+		}
+
+		private List<String> getAuditTags() {
+			List<String> auditTags = new ArrayList<String>();
+			for (String requestBody: getRequestBodies()) {
+				Matcher matcher = AUDIT_TAG.matcher(requestBody);
+				if (matcher.find()) auditTags.add(matcher.group(1));
+			}
+			return auditTags;
+		}
+	}
+
+	@Test
+	public void testPhases() throws Exception {
+		try (SlowServer server = new SlowServer();
+				ClassificationClient client = server.getClient(2)) {
+			LatencyRecorder latencyRecorder = new LatencyRecorder();
+			List<RequestTiming> timed = new ArrayList<RequestTiming>();
+			latencyRecorder.setListener(timed::add);
+			client.setLatencyRecorder(latencyRecorder);
+
+			for (int i = 0; i < 3; i++) {
+				client.getClassifiedDocument(new Body("Document " + i), new Title("Title " + i));
+			}
+			assertEquals(latencyRecorder.getHistogram(LatencyRecorder.Phase.TOTAL).getCount(), 3);
+			assertEquals(latencyRecorder.getHistogram(LatencyRecorder.Phase.FIRST_BYTE).getCount(), 3);
+			assertTrue(latencyRecorder.getHistogram(LatencyRecorder.Phase.FIRST_BYTE).getPercentileMS(50) >= 45);
+			assertEquals(timed.size(), 3);
+
+			// Each request has a tag of its own, by which its timing can be found
+			List<String> auditTags = server.getAuditTags();
+			assertEquals(new HashSet<String>(auditTags).size(), 3);
+			RequestTiming requestTiming = client.getLastRequestTiming();
+			assertEquals(requestTiming.getAuditTag(), auditTags.get(2));
+			assertTrue(latencyRecorder.getTiming(auditTags.get(0)) == timed.get(0));
+			assertTrue(requestTiming.getFirstByteNanos() >= TimeUnit.MILLISECONDS.toNanos(45));
+			assertTrue(requestTiming.getRequestBytes() > 0);
+			assertTrue(requestTiming.getTotalNanos() >= requestTiming.getFirstByteNanos() + requestTiming.getUploadNanos());
+			assertEquals(requestTiming.getServerTimeTakenMS(), -1.0f);
+
+			// Commands are not timed
+			try {
+				client.getInfo();
+			} catch (ClassificationException e) {
+				// The stub does not answer as a server would
+			}
+			assertEquals(latencyRecorder.getHistogram(LatencyRecorder.Phase.TOTAL).getCount(), 3);
+		}
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		try (SlowServer server = new SlowServer();
+				ClassificationClient client = server.getClient(2)) {
+			LatencyRecorder latencyRecorder = new LatencyRecorder();
+			client.setLatencyRecorder(latencyRecorder);
+
+			// Streamed results are parsed as they are read
+			client.getClassifiedDocument(new Body("Streamed"), new Title("Streamed"));
+			assertEquals(latencyRecorder.getHistogram(LatencyRecorder.Phase.PARSE).getCount(), 0);
+
+			client.setStreamingResults(false);
+			client.getClassifiedDocument(new Body("Buffered"), new Title("Buffered"));
+			assertEquals(latencyRecorder.getHistogram(LatencyRecorder.Phase.PARSE).getCount(), 1);
+			assertTrue(client.getLastRequestTiming().getParseNanos() > 0);
+			assertEquals(latencyRecorder.getHistogram(LatencyRecorder.Phase.TOTAL).getCount(), 2);
+		}
+	}
+
+	@Test
+	public void testFailedRequest() throws Exception {
+		try (SlowServer server = new SlowServer();
+				ClassificationClient client = server.getClient(2)) {
+			LatencyRecorder latencyRecorder = new LatencyRecorder();
+			client.setLatencyRecorder(latencyRecorder);
+			server.setStatusCode(500);
+			try {
+				client.getClassifiedDocument(new Body("Failed"), new Title("Failed"));
+				fail("Expected the error response to be reported");
+			} catch (ClassificationException e) {
+				// Expected
+			}
+
+			// The timing left on the thread does not keep the request, and was not recorded
+			assertTrue(client.getLastRequestTiming().isFor(null));
+			assertEquals(latencyRecorder.getHistogram(LatencyRecorder.Phase.TOTAL).getCount(), 0);
+
+			server.setStatusCode(200);
+			client.getClassifiedDocument(new Body("Succeeded"), new Title("Succeeded"));
+			assertTrue(client.getLastRequestTiming().isFor(null));
+			assertEquals(latencyRecorder.getHistogram(LatencyRecorder.Phase.TOTAL).getCount(), 1);
+		}
+	}
+
+	@Test
+	public void testAuditUUID() throws Exception {
+		try (SlowServer server = new SlowServer();
+				ClassificationClient client = server.getClient(2)) {
+			client.setAuditUUID(java.util.UUID.fromString("00000000-0000-0000-0000-000000000001"));
+			client.getClassifiedDocument(new Body("Untimed"), new Title("Untimed"));
+			assertNull(client.getLastRequestTiming());
+
+			client.setLatencyRecorder(new LatencyRecorder());
+			client.getClassifiedDocument(new Body("Timed"), new Title("Timed"));
+			client.getClassifiedDocument(new Body("Timed again"), new Title("Timed again"));
+
+			List<String> auditTags = server.getAuditTags();
+			assertEquals(auditTags.get(0), "00000000-0000-0000-0000-000000000001");
+			assertEquals(auditTags.get(1), "00000000-0000-0000-0000-000000000001-1");
+			assertEquals(auditTags.get(2), "00000000-0000-0000-0000-000000000001-2");
+		}
+	}
+
+	@Test
+	public void testCorrelate() throws Exception {
+		try (SlowServer server = new SlowServer();
+				ClassificationClient client = server.getClient(2)) {
+			LatencyRecorder latencyRecorder = new LatencyRecorder();
+			client.setLatencyRecorder(latencyRecorder);
+			for (int i = 0; i < 4; i++) {
+				client.getClassifiedDocument(new Body("Document " + i), new Title("Title " + i));
+			}
+
+			StringBuilder logData = new StringBuilder();
+			for (String auditTag: server.getAuditTags()) {
+				logData.append("file,hash,OK,0.5,20," + auditTag + ",0\n");
+			}
+			logData.append("other,hash,OK,0.5,20,someone-else,0\n");
+			logData.append("file,FAIL,12,Broken\n");
+			ClassificationHistory classificationHistory = new ClassificationHistory(
+					"$(FILENAME),$(DOCUMENTHASH),OK,$(THRESHOLD),$(TIMETAKEN),$(AUDITTAG),$(ERRORNUM)",
+					"$(FILENAME),FAIL,$(ERRORNUM),$(ERRORMESSAGE)", logData.toString());
+
+			assertEquals(latencyRecorder.correlate(classificationHistory.getClassificationRecords()), 4);
+			// Each request is only counted once
+			assertEquals(latencyRecorder.correlate(classificationHistory.getAuditColumns()), 0);
+			assertEquals(latencyRecorder.getHistogram(LatencyRecorder.Phase.SERVER).getCount(), 4);
+			assertEquals(latencyRecorder.getHistogram(LatencyRecorder.Phase.QUEUE_AND_NETWORK).getCount(), 4);
+
+			RequestTiming requestTiming = client.getLastRequestTiming();
+			assertNotNull(requestTiming);
+			assertEquals(requestTiming.getServerTimeTakenMS(), 20.0f);
+			assertTrue(requestTiming.getQueueAndNetworkNanos() >= TimeUnit.MILLISECONDS.toNanos(25));
+
+			Set<String> correlated = new HashSet<String>();
+			for (String auditTag: server.getAuditTags()) {
+				if (latencyRecorder.getTiming(auditTag).getServerTimeTakenMS() == 20.0f) correlated.add(auditTag);
+			}
+			assertEquals(correlated.size(), 4);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+public class TestNodeBalancer {
+
+	private static class NodeServer extends StubClassificationServer {
+		private final int idleWorkers;
+
+		private NodeServer(int idleWorkers) throws Exception {
+			super();
+			this.idleWorkers = idleWorkers;
+		}
+
+		@Override
+		protected String responseFor(String requestBody) {
+			if (!requestBody.contains("op=\"info\"")) return super.responseFor(requestBody);
+
+			StringBuilder response = new StringBuilder("<response><info><parent><process id=\"0\" status=\"running\"/></parent><children>");
+			for (int i = 0; i < 4; i++) {
+				response.append("<process id=\"" + (i + 1) + "\" status=\"" + ((i < idleWorkers) ? "idle" : "busy") + "\" access_count=\"10\"/>");
+			}
+			return response.append("</children></info></response>").toString();
+		}
+
+		private int getClassificationCount() {
+			int count = 0;
+			for (String requestBody: getRequestBodies()) {
+				if (!requestBody.contains("op=\"info\"")) count++;
+			}
+			return count;
+		}
+	}
+
+	private static NodeBalancer getNodeBalancer(NodeServer... servers) {
+		String[] urls = new String[servers.length];
+		for (int i = 0; i < servers.length; i++) {
+			urls[i] = servers[i].getUrl();
+		}
+		NodeBalancer nodeBalancer = new NodeBalancer(Arrays.asList(urls));
+		nodeBalancer.setPollIntervalMS(3600000);
+		return nodeBalancer;
+	}
+
+	private static void awaitPoll(NodeBalancer nodeBalancer) throws InterruptedException {
+		for (ClassificationNode node: nodeBalancer.getNodes()) {
+			while (node.getPolledAt() == 0) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	@Test
+	public void testMostIdle() throws Exception {
+		try (NodeServer busy = new NodeServer(1);
+				NodeServer idle = new NodeServer(3);
+				ClassificationClient client = busy.getClient(2)) {
+			NodeBalancer nodeBalancer = getNodeBalancer(busy, idle);
+			client.setNodeBalancer(nodeBalancer);
+			awaitPoll(nodeBalancer);
+			assertEquals(nodeBalancer.getNodes().get(0).getIdleWorkers(), 1);
+			assertEquals(nodeBalancer.getNodes().get(1).getIdleWorkers(), 3);
+
+			for (int i = 0; i < 4; i++) {
+				client.getClassifiedDocument(new Body("Body"), new Title("Title"));
+			}
+			assertEquals(idle.getClassificationCount(), 4);
+			assertEquals(busy.getClassificationCount(), 0);
+
+			// Requests in flight count against a node's idle workers
+			nodeBalancer.getNodes().get(1).requestStarted();
+			nodeBalancer.getNodes().get(1).requestStarted();
+			nodeBalancer.getNodes().get(1).requestStarted();
+			assertEquals(nodeBalancer.select(), nodeBalancer.getNodes().get(0));
+		}
+	}
+
+	@Test
+	public void testRoundRobin() throws Exception {
+		NodeBalancer nodeBalancer = new NodeBalancer(Arrays.asList("http://first", "http://second", "http://third"));
+		nodeBalancer.setEjectionMS(0);
+		nodeBalancer.poll(url -> {
+			throw new ClassificationException("Info not available from " + url);
+		});
+
+		int[] selected = new int[3];
+		for (int i = 0; i < 9; i++) {
+			selected[nodeBalancer.getNodes().indexOf(nodeBalancer.select())]++;
+		}
+		assertEquals(selected, new int[] { 3, 3, 3 });
+
+		// Ejected nodes are skipped while any other is available
+		nodeBalancer.setEjectionMS(60000);
+		nodeBalancer.setFailuresToEject(1);
+		nodeBalancer.failed(nodeBalancer.getNodes().get(0));
+		for (int i = 0; i < 4; i++) {
+			assertTrue(nodeBalancer.select() != nodeBalancer.getNodes().get(0));
+		}
+		nodeBalancer.failed(nodeBalancer.getNodes().get(1));
+		nodeBalancer.failed(nodeBalancer.getNodes().get(2));
+		assertTrue(nodeBalancer.select() != null, "All ejected still gives a node");
+	}
+
+	@Test
+	public void testEjection() throws Exception {
+		try (NodeServer failing = new NodeServer(4);
+				NodeServer working = new NodeServer(1);
+				ClassificationClient client = working.getClient(2)) {
+			NodeBalancer nodeBalancer = getNodeBalancer(failing, working);
+			nodeBalancer.setFailuresToEject(2);
+			client.setNodeBalancer(nodeBalancer);
+			awaitPoll(nodeBalancer);
+
+			// Unavailable responses are retried elsewhere until the node is ejected
+			failing.setStatusCode(503);
+			for (int i = 0; i < 5; i++) {
+				Result result = client.getClassifiedDocument(new Body("Body"), new Title("Title"));
+				assertEquals(result.getAllClassifications().get("IPSV").iterator().next().getName(), "Markets");
+			}
+			ClassificationNode failingNode = nodeBalancer.getNodes().get(0);
+			assertTrue(failingNode.isEjected());
+			assertEquals(failing.getClassificationCount(), 2);
+			assertEquals(working.getClassificationCount(), 5);
+
+			// A good poll brings it back
+			failing.setStatusCode(200);
+			nodeBalancer.poll(client::getInfo);
+			assertFalse(failingNode.isEjected());
+			client.getClassifiedDocument(new Body("Body"), new Title("Title"));
+			assertEquals(failing.getClassificationCount(), 3);
+
+			// A node that has gone is ejected at once by the poll
+			failing.close();
+			nodeBalancer.poll(client::getInfo);
+			assertTrue(failingNode.isEjected());
+			assertEquals(failingNode.getIdleWorkers(), -1);
+			client.getClassifiedDocument(new Body("Body"), new Title("Title"));
+			assertEquals(working.getClassificationCount(), 6);
+		}
+	}
+
+	@Test
+	public void testCommands() throws Exception {
+		File pakFile = File.createTempFile("rulebase", ".pak");
+		try (NodeServer configured = new NodeServer(1);
+				NodeServer first = new NodeServer(4);
+				NodeServer second = new NodeServer(4);
+				ClassificationClient client = configured.getClient(2)) {
+			NodeBalancer nodeBalancer = getNodeBalancer(first, second);
+			client.setNodeBalancer(nodeBalancer);
+			awaitPoll(nodeBalancer);
+
+			// Every step of a publish goes to the configured server
+			client.clearPublishSet("Rulebases");
+			client.sendPakFile("Rulebases", pakFile);
+			client.commitPublishSet("Rulebases");
+			assertEquals(configured.getClassificationCount(), 3);
+			assertEquals(first.getClassificationCount() + second.getClassificationCount(), 0);
+
+			// And is not sent again elsewhere when it fails
+			configured.setStatusCode(503);
+			try {
+				client.commitPublishSet("Rulebases");
+				fail("Expected the unavailable server to be reported");
+			} catch (ClassificationException e) {
+				// Expected
+			}
+			assertEquals(configured.getClassificationCount(), 4);
+			assertEquals(first.getClassificationCount() + second.getClassificationCount(), 0);
+
+			// Classification requests are still balanced
+			configured.setStatusCode(200);
+			client.getClassifiedDocument(new Body("Body"), new Title("Title"));
+			assertEquals(configured.getClassificationCount(), 4);
+			assertEquals(first.getClassificationCount() + second.getClassificationCount(), 1);
+		} finally {
+			pakFile.delete();
+		}
+	}
+}
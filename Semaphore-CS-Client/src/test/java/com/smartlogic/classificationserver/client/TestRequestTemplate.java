@@ -0,0 +1,143 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.FormBodyPart;
+import org.apache.http.entity.mime.FormBodyPartBuilder;
+import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+import org.apache.http.entity.mime.content.InputStreamBody;
+import org.testng.annotations.Test;
+
+public class TestRequestTemplate {
+
+	private static byte[] getBytes(HttpEntity entity) throws Exception {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		entity.writeTo(byteArrayOutputStream);
+		return byteArrayOutputStream.toByteArray();
+	}
+
+	@Test
+	public void testEncoding() throws Exception {
+		List<FormBodyPart> defaultParts = Arrays.asList(RequestSettings.getFormPart("threshold", "20"),
+				RequestSettings.getFormPart("multiarticle", "on"));
+		RequestTemplate requestTemplate = new RequestTemplate(defaultParts);
+		FormBodyPart documentPart = FormBodyPartBuilder
+				.create("UploadFile", new ByteArrayBody("Document".getBytes(StandardCharsets.UTF_8), "document.txt")).build();
+
+		HttpEntity entity = requestTemplate.withAuditTag("fixed").getEntity(Arrays.asList(documentPart), "request");
+		String boundary = ContentType.parse(entity.getContentType().getValue()).getParameter("boundary");
+
+		// The same bytes as building the whole request at once
+		MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create().setBoundary(boundary);
+		multipartEntityBuilder.addPart(defaultParts.get(0));
+		multipartEntityBuilder.addPart(defaultParts.get(1));
+		multipartEntityBuilder.addPart(RequestSettings.getFormPart("audit_tag", "fixed"));
+		multipartEntityBuilder.addPart(documentPart);
+		multipartEntityBuilder.addPart(RequestSettings.getFormPart("audit_tag", "request"));
+		HttpEntity expected = multipartEntityBuilder.build();
+
+		byte[] bytes = getBytes(entity);
+		assertEquals(new String(bytes, StandardCharsets.UTF_8), new String(getBytes(expected), StandardCharsets.UTF_8));
+		assertEquals(entity.getContentLength(), bytes.length);
+		assertTrue(entity.isRepeatable());
+		assertEquals(getBytes(entity), bytes);
+	}
+
+	@Test
+	public void testAuditTag() throws Exception {
+		RequestTemplate requestTemplate = new RequestTemplate(Arrays.asList(RequestSettings.getFormPart("threshold", "20")));
+		assertTrue(requestTemplate.withAuditTag(null) == requestTemplate);
+		RequestTemplate tagged = requestTemplate.withAuditTag("first");
+		assertTrue(requestTemplate.withAuditTag("first") == tagged);
+		assertFalse(requestTemplate.withAuditTag("second") == tagged);
+		assertEquals(tagged.getParts().size(), 1);
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		RequestTemplate requestTemplate = new RequestTemplate(Arrays.asList(RequestSettings.getFormPart("threshold", "20")));
+		FormBodyPart streamPart = FormBodyPartBuilder.create("UploadFile",
+				new InputStreamBody(new ByteArrayInputStream("Streamed".getBytes(StandardCharsets.UTF_8)), "streamed.txt")).build();
+		HttpEntity entity = requestTemplate.getEntity(Arrays.asList(streamPart), null);
+		assertEquals(entity.getContentLength(), -1);
+		assertFalse(entity.isRepeatable());
+		String body = new String(getBytes(entity), StandardCharsets.UTF_8);
+		assertTrue(body.contains("name=\"threshold\""));
+		assertTrue(body.contains("Streamed"));
+	}
+
+	@Test
+	public void testRequests() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2)) {
+			client.getClassificationConfiguration().getAdditionalParameters().put("threshold", "20");
+			client.setAuditUUID(UUID.fromString("00000000-0000-0000-0000-000000000002"));
+			for (int i = 0; i < 3; i++) {
+				client.getClassifiedDocument(new Body("Document " + i), new Title("Title " + i));
+			}
+			// Commands come from the cache after the first
+			for (int i = 0; i < 2; i++) {
+				try {
+					client.getInfo();
+				} catch (ClassificationException e) {
+					// The stub does not answer commands as a server would
+				}
+			}
+			for (String requestBody: server.getRequestBodies().subList(0, 3)) {
+				assertTrue(requestBody.contains("name=\"threshold\""));
+				assertTrue(requestBody.contains("00000000-0000-0000-0000-000000000002"));
+			}
+			assertTrue(server.getRequestBodies().get(3).contains("<request op=\"info\"/>"));
+			assertTrue(server.getRequestBodies().get(4).contains("<request op=\"info\"/>"));
+
+			// Commands for a publish set are built for that set each time
+			client.clearPublishSet("first");
+			client.clearPublishSet("second");
+			assertTrue(server.getRequestBodies().get(5).contains("<publish_set>first</publish_set>"));
+			assertTrue(server.getRequestBodies().get(6).contains("<publish_set>second</publish_set>"));
+		}
+	}
+
+	private static List<String> getNames(RequestTemplate requestTemplate) {
+		List<String> names = new ArrayList<String>();
+		for (FormBodyPart part: requestTemplate.getParts()) names.add(part.getName());
+		return names;
+	}
+
+	@Test
+	public void testArticleFlags() throws Exception {
+		// The setters allow one mode at a time, but a configuration may report both
+		ClassificationConfiguration classificationConfiguration = new ClassificationConfiguration() {
+			@Override
+			public boolean isSingleArticle() {
+				return true;
+			}
+		};
+		classificationConfiguration.setUrl("http://localhost:5058");
+		RequestSettings requestSettings = new RequestSettings(classificationConfiguration, null);
+
+		// Both flags are sent as configured; only packed requests leave out singlearticle
+		assertEquals(getNames(requestSettings.getRequestTemplate()), Arrays.asList("singlearticle", "multiarticle"));
+		assertEquals(getNames(requestSettings.getMultiArticleTemplate()), Arrays.asList("multiarticle"));
+
+		classificationConfiguration = new ClassificationConfiguration();
+		classificationConfiguration.setUrl("http://localhost:5058");
+		classificationConfiguration.setSingleArticle(true);
+		requestSettings = new RequestSettings(classificationConfiguration, null);
+		assertEquals(getNames(requestSettings.getRequestTemplate()), Arrays.asList("singlearticle"));
+		assertEquals(getNames(requestSettings.getMultiArticleTemplate()), Arrays.asList("multiarticle"));
+	}
+}
@@ -0,0 +1,135 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.testng.annotations.Test;
+
+import com.smartlogic.classificationserver.client.cache.NearDuplicateIndex;
+
+public class TestResponseSink {
+
+	/* A response of about a megabyte */
+	private static String getLargeResponse() {
+		StringBuilder response = new StringBuilder("<response><STRUCTUREDDOCUMENT>");
+		for (int i = 0; i < 10000; i++) {
+			response.append("<META name=\"IPSV\" value=\"Term " + i + "\" score=\"0.50\" id=\"" + i + "\"/>");
+		}
+		response.append("</STRUCTUREDDOCUMENT></response>");
+		return response.toString();
+	}
+
+	@Test
+	public void testOutputStream() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2)) {
+			String response = getLargeResponse();
+			server.setResponse(response);
+
+			ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+			long written = client.getClassificationServerResponse(null, new Body("Document"), new Title("Title"), null, byteArrayOutputStream);
+			assertEquals(written, response.length());
+			assertEquals(byteArrayOutputStream.toByteArray(), client.getClassificationServerResponse(new Body("Document"), new Title("Title")));
+
+			byteArrayOutputStream.reset();
+			written = client.getClassificationServerResponse("Content".getBytes(StandardCharsets.UTF_8), "content.txt",
+					new Title("Title"), null, byteArrayOutputStream);
+			assertEquals(written, response.length());
+			assertEquals(new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8), response);
+			assertTrue(server.getRequestBodies().get(2).contains("content.txt"));
+
+			// Nothing to classify, so nothing written
+			byteArrayOutputStream.reset();
+			assertEquals(client.getClassifiedBytes(new Body(" "), new Title("Empty"), null, byteArrayOutputStream), 0);
+			assertEquals(byteArrayOutputStream.size(), 0);
+			assertEquals(server.getRequestCount(), 3);
+		}
+	}
+
+	@Test
+	public void testChannel() throws Exception {
+		File input = File.createTempFile("document", ".txt");
+		File output = File.createTempFile("response", ".xml");
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2)) {
+			Files.write(input.toPath(), "Document".getBytes(StandardCharsets.UTF_8));
+			String response = getLargeResponse();
+			server.setResponse(response);
+
+			try (FileChannel fileChannel = FileChannel.open(output.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				assertEquals(client.getClassificationServerResponse(input, null, new Title("Title"), null, fileChannel), response.length());
+				assertEquals(client.getClassifiedBytes(new Body("Document"), new Title("Title"), null, fileChannel), response.length());
+			}
+			assertEquals(new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8), response + response);
+		} finally {
+			input.delete();
+			output.delete();
+		}
+	}
+
+	@Test
+	public void testNearDuplicate() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2)) {
+			client.setNearDuplicateIndex(new NearDuplicateIndex(0.9f, 100));
+			byte[] response = client.getClassifiedBytes(new Body("The same document again"), new Title("Title"), null);
+
+			ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+			assertEquals(client.getClassifiedBytes(new Body("The same document again"), new Title("Title"), null, byteArrayOutputStream),
+					response.length);
+			assertEquals(byteArrayOutputStream.toByteArray(), response);
+			assertEquals(server.getRequestCount(), 1);
+		}
+	}
+
+	@Test
+	public void testFailures() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2)) {
+			server.setResponse(getLargeResponse());
+
+			// The sink fails part way through
+			OutputStream failingStream = new OutputStream() {
+				private int written = 0;
+
+				@Override
+				public void write(int b) throws IOException {
+					write(new byte[] { (byte) b }, 0, 1);
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					written += len;
+					if (written > 100000) throw new IOException("Disk full");
+				}
+			};
+			try {
+				client.getClassifiedBytes(new Body("Document"), new Title("Title"), null, failingStream);
+				fail("Expected the failed sink to be reported");
+			} catch (ClassificationException e) {
+				assertTrue(e.getMessage().contains("Disk full"), e.getMessage());
+			}
+
+			// An error response is not written
+			server.setStatusCode(500);
+			ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+			try {
+				client.getClassifiedBytes(new Body("Document"), new Title("Title"), null, byteArrayOutputStream);
+				fail("Expected the error response to be reported");
+			} catch (ClassificationException e) {
+				assertEquals(byteArrayOutputStream.size(), 0);
+			}
+			assertEquals(server.getRequestCount(), 2);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class TestResultReader {
+
+	private static final String RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<response>\n"
+			+ " <STRUCTUREDDOCUMENT>\n"
+			+ "  <SYSTEM name=\"Version\" value=\"4.2\"/>\n"
+			+ "  <SYSTEM name=\"HASH\" value=\"95bda699dc5f262137a7903d211bcc62\"/>\n"
+			+ "  <META name=\"Document_Title\" value=\"Cheese &amp; crackers\"/>\n"
+			+ "  <META name=\"IPSV\" value=\"Markets\" score=\"0.80\" id=\"1\">\n"
+			+ "   <META name=\"Broader\" value=\"Economics\">\n"
+			+ "    <META name=\"Broader\" value=\"Society\"/>\n"
+			+ "   </META>\n"
+			+ "  </META>\n"
+			+ "  <META name=\"IPSV\" value=\"Trade\" score=\"0.62\" id=\"2\"/>\n"
+			+ "  <META name=\"Topic\" value=\"Food\" score=\"0.55\"/>\n"
+			+ "  <ARTICLE>\n"
+			+ "   <META name=\"IPSV\" value=\"Markets\" score=\"0.91\" id=\"1\"/>\n"
+			+ "   <PARAGRAPH>The <B>first</B> paragraph &lt;here&gt;</PARAGRAPH>\n"
+			+ "   <FIELD NAME=\"title\"><![CDATA[A <title>]]></FIELD>\n"
+			+ "  </ARTICLE>\n"
+			+ "  <ARTICLE>\n"
+			+ "   <PARAGRAPH>Second article</PARAGRAPH>\n"
+			+ "   <PARAGRAPH/>\n"
+			+ "  </ARTICLE>\n"
+			+ " </STRUCTUREDDOCUMENT>\n"
+			+ "</response>";
+
+	@Test
+	public void testMatchesDocumentResult() throws Exception {
+		byte[] data = RESPONSE.getBytes(StandardCharsets.UTF_8);
+		Result expected = new Result(XMLReader.getDocument(data));
+		Result actual = ResultReader.read(data);
+
+		assertEquals(actual.getHash(), "95bda699dc5f262137a7903d211bcc62");
+		assertEquals(actual.getHash(), expected.getHash());
+		assertEquals(actual.getMetadata(), expected.getMetadata());
+		assertEquals(actual.getAllClassifications(), expected.getAllClassifications());
+		assertEquals(actual.getMetaNodes().toString(), expected.getMetaNodes().toString());
+		assertTrue(actual.getMetaNodes().get("IPSV").iterator().next().toString().contains("Society"));
+
+		assertEquals(actual.getArticles().size(), 2);
+		assertEquals(actual.getArticles().size(), expected.getArticles().size());
+		for (int a = 0; a < actual.getArticles().size(); a++) {
+			Article actualArticle = actual.getArticles().get(a);
+			Article expectedArticle = expected.getArticles().get(a);
+			assertEquals(actualArticle.getAllClassifications(), expectedArticle.getAllClassifications());
+			assertEquals(actualArticle.getParagraphs().size(), expectedArticle.getParagraphs().size());
+			for (int p = 0; p < actualArticle.getParagraphs().size(); p++) {
+				assertEquals(actualArticle.getParagraphs().get(p).getField(), expectedArticle.getParagraphs().get(p).getField());
+				assertEquals(actualArticle.getParagraphs().get(p).getContent(), expectedArticle.getParagraphs().get(p).getContent());
+			}
+		}
+		assertEquals(actual.getArticles().get(0).getParagraphs().get(0).getContent(), "The first paragraph <here>");
+		assertEquals(actual.getArticles().get(0).getParagraphs().get(1).getField(), "title");
+		assertEquals(actual.getArticles().get(0).getParagraphs().get(1).getContent(), "A <title>");
+	}
+
+	@Test
+	public void testEmptyAndInvalid() throws Exception {
+		Result empty = ResultReader.read((byte[]) null);
+		assertTrue(empty.getAllClassifications().isEmpty());
+		assertTrue(empty.getArticles().isEmpty());
+		assertNull(empty.getHash());
+
+		try {
+			ResultReader.read("<response/>".getBytes(StandardCharsets.UTF_8));
+			fail("No STRUCTUREDDOCUMENT");
+		} catch (ClassificationException e) {
+			assertTrue(e.getMessage().contains("STRUCTUREDDOCUMENT"), e.getMessage());
+		}
+		try {
+			ResultReader.read("<response><STRUCTUREDDOCUMENT>".getBytes(StandardCharsets.UTF_8));
+			fail("Truncated response");
+		} catch (ClassificationException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testClient() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			server.setResponse(RESPONSE);
+			Result streamed = client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+			client.setStreamingResults(false);
+			Result parsed = client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+
+			Map<String, Collection<ClassificationScore>> classifications = streamed.getAllClassifications();
+			assertEquals(classifications, parsed.getAllClassifications());
+			assertEquals(classifications.get("IPSV").iterator().next().getName(), "Markets");
+			assertEquals(streamed.getArticles().get(1).getParagraphs().get(0).getContent(), "Second article");
+
+			// Nothing is sent for an empty body
+			assertTrue(client.getClassifiedDocument(new Body(""), new Title("Title")).getAllClassifications().isEmpty());
+			client.setStreamingResults(true);
+			assertTrue(client.getClassifiedDocument(new Body(""), new Title("Title")).getAllClassifications().isEmpty());
+			assertEquals(server.getRequestCount(), 2);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class TestScoreFilter {
+
+	private static String response() {
+		StringBuilder response = new StringBuilder("<response><STRUCTUREDDOCUMENT>");
+		response.append("<SYSTEM name=\"HASH\" value=\"abc\"/>");
+		response.append("<META name=\"Document_Title\" value=\"Title\"/>");
+		for (int i = 0; i < 20; i++) {
+			// Scores 0.05 to 1.00 in a scattered order
+			int n = (i * 7) % 20 + 1;
+			response.append(String.format(Locale.ROOT, "<META name=\"IPSV\" value=\"Term %d\" score=\"%.2f\" id=\"%d\"/>", n, n / 20.0, n));
+		}
+		response.append("<META name=\"Topic\" value=\"Low\" score=\"0.10\"/>");
+		response.append("<META name=\"Topic\" value=\"High\" score=\"0.90\"/>");
+		response.append("<META name=\"Topic\" value=\"Bad\" score=\"high\"/>");
+		response.append("<ARTICLE><META name=\"IPSV\" value=\"Article\" score=\"0.99\"/><PARAGRAPH>Text</PARAGRAPH></ARTICLE>");
+		response.append("</STRUCTUREDDOCUMENT></response>");
+		return response.toString();
+	}
+
+	private static List<String> names(Collection<ClassificationScore> classificationScores) {
+		List<String> names = new ArrayList<String>();
+		for (ClassificationScore classificationScore: classificationScores) {
+			names.add(classificationScore.getName());
+		}
+		return names;
+	}
+
+	@Test
+	public void testTopK() throws Exception {
+		Result result = ResultReader.read(response().getBytes(StandardCharsets.UTF_8), new ScoreFilter(0.5f, 3));
+
+		Map<String, Collection<ClassificationScore>> classifications = result.getAllClassifications();
+		assertEquals(classifications.keySet().size(), 2);
+		assertEquals(names(classifications.get("IPSV")).toString(), "[Term 20, Term 19, Term 18]");
+		assertEquals(classifications.get("IPSV").iterator().next().getId(), "20");
+		assertEquals(names(classifications.get("Topic")).toString(), "[High]");
+
+		assertTrue(result.getMetadata().isEmpty());
+		assertTrue(result.getMetaNodes().isEmpty());
+		assertTrue(result.getArticles().isEmpty());
+		assertNull(result.getHash());
+	}
+
+	@Test
+	public void testThresholdOnly() throws Exception {
+		byte[] data = response().getBytes(StandardCharsets.UTF_8);
+		Result result = ResultReader.read(data, new ScoreFilter(0.0f, 0));
+		Result full = ResultReader.read(data);
+		assertEquals(result.getAllClassifications(), full.getAllClassifications());
+
+		result = ResultReader.read(data, new ScoreFilter(0.75f, 0));
+		assertEquals(result.getAllClassifications().get("IPSV").size(), 6);
+	}
+
+	@Test
+	public void testClient() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			server.setResponse(response());
+			client.setScoreFilter(new ScoreFilter(0.8f, 2));
+			Result result = client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+			assertEquals(names(result.getAllClassifications().get("IPSV")).toString(), "[Term 20, Term 19]");
+			assertTrue(result.getArticles().isEmpty());
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.smartlogic.classificationserver.client.csvparser.CSVParser;
+
+public class TestScoresDecoder {
+
+	private static final String[] SCORES = {
+			"Generic_UPWARD_ID.16227:0.54",
+			"Generic_UPWARD_ID.Cream Cheese(231):0.54",
+			"Generic_UPWARD_ID.Cream \\(Cheese\\)(231):0.54",
+			"Generic_UPWARD_ID.Cream \\\\Cheese(231):0.54",
+			"Generic_UPWARD_ID.Cream \\:Chee\\:se(231):0.54",
+			"Phones.\\(928\\) 373-5149:0.35",
+			"test.23-214\\(A\\):0.35",
+			"test.23-214\\\\(12):0.35",
+			"\\(Generic_UPWARD_ID\\).Cream Cheese(231):0.54",
+			"Places.Paris (France)(7):1.0",
+			"Places.Paris (France):0.125"
+	};
+
+	private static void assertSameScore(ScoresDecoder scoresDecoder, int position, ClassificationScore expected) {
+		assertEquals(scoresDecoder.getRulebaseClass(position), expected.getRulebaseClass());
+		assertEquals(scoresDecoder.getName(position), expected.getName());
+		assertEquals(scoresDecoder.getId(position), expected.getId());
+		assertEquals(scoresDecoder.getScore(position), expected.getScore());
+		assertEquals(scoresDecoder.getClassificationScore(position), expected);
+	}
+
+	@Test
+	public void testMatchesClassificationScore() throws Exception {
+		ScoresDecoder scoresDecoder = new ScoresDecoder();
+		for (String score: SCORES) {
+			assertEquals(scoresDecoder.decode(new String[] { score }, 0), 1, score);
+			assertSameScore(scoresDecoder, 0, new ClassificationScore(score));
+		}
+		assertEquals(scoresDecoder.getClassCount(), 5);
+	}
+
+	@Test
+	public void testField() throws Exception {
+		StringBuilder field = new StringBuilder();
+		List<ClassificationScore> expected = new ArrayList<ClassificationScore>();
+		for (int i = 0; i < 200; i++) {
+			String score = "Class" + (i % 3) + ".Term " + (i % 17) + "(" + (i % 17) + "):0." + (i % 100);
+			if (field.length() > 0) field.append(',');
+			field.append(score);
+			expected.add(new ClassificationScore(score));
+		}
+		// A quoted value with a comma in it, then something that is not a score
+		field.append(",\"Places.Paris, France:0.5\",http://example.com,Places.Lyon:0.5");
+		expected.add(new ClassificationScore("Places.Paris, France:0.5"));
+
+		ScoresDecoder scoresDecoder = new ScoresDecoder();
+		for (int pass = 0; pass < 2; pass++) {
+			assertEquals(scoresDecoder.decode(field), expected.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertSameScore(scoresDecoder, i, expected.get(i));
+			}
+		}
+		assertEquals(scoresDecoder.getClassCount(), 4);
+		assertEquals(scoresDecoder.getClassName(scoresDecoder.getClassIndex(1)), "Class1");
+		// Repeated values are the same string
+		assertSame(scoresDecoder.getName(0), scoresDecoder.getName(17));
+
+		// The same scores read from a record split into cells
+		String[] cells = CSVParser.parseLine("file.txt,OK," + field);
+		AuditFormat auditFormat = new AuditFormat(new String[] { "$(FILENAME)", "OK", "$(SCORES)" });
+		assertEquals(auditFormat.getClassificationScores(cells, scoresDecoder), expected.size());
+		assertEquals(new ArrayList<ClassificationScore>(auditFormat.getClassificationScores(cells)), expected);
+		for (int i = 0; i < expected.size(); i++) {
+			assertSameScore(scoresDecoder, i, expected.get(i));
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.annotations.Test;
+
+public class TestShadowClassifier {
+
+	private static final String CANDIDATE_RESPONSE = "<response><STRUCTUREDDOCUMENT>"
+			+ "<META name=\"IPSV\" value=\"Markets\" score=\"0.70\" id=\"1\"/>"
+			+ "<META name=\"IPSV\" value=\"Trade\" score=\"0.60\" id=\"2\"/>"
+			+ "</STRUCTUREDDOCUMENT></response>";
+
+	@Test
+	public void testAgreement() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				StubClassificationServer shadowServer = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2);
+				ClassificationClient shadowClient = shadowServer.getClient(2)) {
+			ShadowClassifier shadowClassifier = new ShadowClassifier(shadowClient);
+			shadowClassifier.setFraction(1.0f);
+			client.setShadowClassifier(shadowClassifier);
+
+			for (int i = 0; i < 10; i++) {
+				client.getClassifiedDocument(new Body("Document " + i), new Title("Title " + i));
+			}
+			shadowClassifier.close();
+
+			assertEquals(shadowServer.getRequestCount(), 10);
+			assertTrue(shadowServer.getRequestBodies().get(0).contains("Document"));
+			assertEquals(shadowClassifier.getSampled(), 10);
+			assertEquals(shadowClassifier.getCompared(), 10);
+			assertEquals(shadowClassifier.getAgreed(), 10);
+			assertEquals(shadowClassifier.getAgreementRate(), 1.0);
+			assertEquals(shadowClassifier.getMeanJaccard(), 1.0);
+			assertEquals(shadowClassifier.getMaxScoreDifference(), 0.0f);
+		}
+	}
+
+	@Test
+	public void testDisagreement() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				StubClassificationServer shadowServer = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2);
+				ClassificationClient shadowClient = shadowServer.getClient(2)) {
+			shadowServer.setResponse(CANDIDATE_RESPONSE);
+			ShadowClassifier shadowClassifier = new ShadowClassifier(shadowClient);
+			shadowClassifier.setFraction(1.0f);
+			List<ShadowComparison> comparisons = new CopyOnWriteArrayList<ShadowComparison>();
+			shadowClassifier.setListener(comparisons::add);
+			client.setShadowClassifier(shadowClassifier);
+
+			Result result = client.getClassifiedDocument(new Body("Document"), new Title("Title"));
+			assertEquals(result.getAllClassifications().get("IPSV").size(), 1);
+			shadowClassifier.close();
+
+			assertEquals(comparisons.size(), 1);
+			ShadowComparison shadowComparison = comparisons.get(0);
+			assertFalse(shadowComparison.isAgreed());
+			assertEquals(shadowComparison.getJaccard(), 0.5f);
+			assertEquals(shadowComparison.getMaxScoreDifference(), 0.6f, 0.0001f);
+			assertEquals(shadowComparison.getMeanScoreDifference(), 0.35f, 0.0001f);
+			assertTrue(shadowComparison.getOnlyInPrimary().isEmpty());
+			assertEquals(shadowComparison.getOnlyInShadow().get(0).getName(), "Trade");
+			assertEquals(shadowClassifier.getAgreed(), 0);
+
+			// A looser tolerance still needs the same terms
+			shadowServer.setResponse("<response><STRUCTUREDDOCUMENT>"
+					+ "<META name=\"IPSV\" value=\"Markets\" score=\"0.75\" id=\"1\"/></STRUCTUREDDOCUMENT></response>");
+			shadowClassifier = new ShadowClassifier(shadowClient);
+			shadowClassifier.setFraction(1.0f);
+			shadowClassifier.setTolerance(0.1f);
+			client.setShadowClassifier(shadowClassifier);
+			client.getClassifiedDocument(new Body("Document"), new Title("Title"));
+			shadowClassifier.close();
+			assertEquals(shadowClassifier.getAgreed(), 1);
+		}
+	}
+
+	@Test
+	public void testNoAddedLatency() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				StubClassificationServer shadowServer = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2);
+				ClassificationClient shadowClient = shadowServer.getClient(2)) {
+			// The shadow server holds every request until the end of the test
+			CountDownLatch gate = new CountDownLatch(1);
+			shadowServer.setGate(gate);
+			ShadowClassifier shadowClassifier = new ShadowClassifier(shadowClient);
+			shadowClassifier.setFraction(1.0f);
+			shadowClassifier.setThreads(1);
+			shadowClassifier.setQueueSize(1);
+			client.setShadowClassifier(shadowClassifier);
+
+			for (int i = 0; i < 5; i++) {
+				client.getClassifiedDocument(new Body("Document " + i), new Title("Title " + i));
+			}
+			assertEquals(server.getRequestCount(), 5);
+			// One being sent and one queued; the rest are dropped
+			assertEquals(shadowClassifier.getSampled(), 5);
+			assertEquals(shadowClassifier.getDropped(), 3);
+
+			gate.countDown();
+			shadowClassifier.close();
+			assertEquals(shadowClassifier.getCompared(), 2);
+			assertEquals(shadowServer.getRequestCount(), 2);
+		}
+	}
+
+	@Test
+	public void testCloseTimeout() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				StubClassificationServer shadowServer = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2);
+				ClassificationClient shadowClient = shadowServer.getClient(2)) {
+			CountDownLatch gate = new CountDownLatch(1);
+			shadowServer.setGate(gate);
+			ShadowClassifier shadowClassifier = new ShadowClassifier(shadowClient);
+			shadowClassifier.setFraction(1.0f);
+			shadowClassifier.setThreads(1);
+			shadowClassifier.setCloseTimeoutMS(100);
+			client.setShadowClassifier(shadowClassifier);
+
+			for (int i = 0; i < 3; i++) {
+				client.getClassifiedDocument(new Body("Document " + i), new Title("Title " + i));
+			}
+
+			// One held by the server, two queued behind it and dropped when the wait is over
+			long start = System.currentTimeMillis();
+			shadowClassifier.close();
+			assertTrue(System.currentTimeMillis() - start < 5000);
+			assertEquals(shadowClassifier.getDropped(), 2);
+			gate.countDown();
+		}
+	}
+
+	@Test
+	public void testSampling() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				StubClassificationServer shadowServer = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2);
+				ClassificationClient shadowClient = shadowServer.getClient(2)) {
+			ShadowClassifier shadowClassifier = new ShadowClassifier(shadowClient);
+			shadowClassifier.setFraction(0.0f);
+			client.setShadowClassifier(shadowClassifier);
+			for (int i = 0; i < 10; i++) {
+				client.getClassifiedDocument(new Body("Document " + i), new Title("Title " + i));
+			}
+
+			// A stream cannot be sent twice
+			shadowClassifier.setFraction(1.0f);
+			client.getClassifiedDocument(new ByteArrayInputStream("Streamed".getBytes(StandardCharsets.UTF_8)),
+					"streamed.txt", new Title("Streamed"), null);
+			shadowClassifier.close();
+
+			assertEquals(server.getRequestCount(), 11);
+			assertEquals(shadowClassifier.getSampled(), 0);
+			assertEquals(shadowServer.getRequestCount(), 0);
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+
+public class TestSharedClient {
+
+	private static final Pattern START_TIME = Pattern.compile("name=\"start_time\"[\\s\\S]*?\r\n\r\n(.*?)\r\n");
+
+	@Test
+	public void testConcurrentUse() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(8)) {
+			int threads = 16;
+			int iterations = 20;
+			CountDownLatch start = new CountDownLatch(1);
+			ExecutorService executorService = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+				for (int t = 0; t < threads; t++) {
+					final int thread = t;
+					futures.add(executorService.submit(() -> {
+						start.await();
+						int classified = 0;
+						for (int i = 0; i < iterations; i++) {
+							switch ((thread + i) % 3) {
+							case 0:
+								Result result = client.getClassifiedDocument(new Body("Document " + thread + " " + i), new Title("Title"));
+								assertEquals(result.getAllClassifications().get("IPSV").iterator().next().getScore(), 0.8f);
+								classified++;
+								break;
+							case 1:
+								try {
+									client.getInfo();
+								} catch (ClassificationException e) {
+									// The stub does not answer commands as a server would
+								}
+								break;
+							default:
+								try {
+									client.getClassificationHistory(new Date(1500000000000L + i * 1000L), new Date());
+								} catch (ClassificationException e) {
+									// Nor with history
+								}
+							}
+						}
+						return classified;
+					}));
+				}
+				start.countDown();
+				int classified = 0;
+				for (Future<Integer> future: futures) {
+					classified += future.get();
+				}
+				assertTrue(classified > 0);
+			} finally {
+				executorService.shutdownNow();
+			}
+
+			// Every command and every history time was built whole, however many threads built them at once
+			int commands = 0;
+			int histories = 0;
+			Pattern time = Pattern.compile("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}[+-]\\d{4}");
+			for (String requestBody: server.getRequestBodies()) {
+				if (requestBody.contains("XML_INPUT")) {
+					assertTrue(requestBody.contains("<request op=\"info\"/>"), requestBody);
+					commands++;
+				}
+				Matcher matcher = START_TIME.matcher(requestBody);
+				if (matcher.find()) {
+					assertTrue(time.matcher(matcher.group(1)).matches(), matcher.group(1));
+					histories++;
+				}
+			}
+			assertEquals(server.getRequestCount(), threads * iterations);
+			assertTrue(commands > 0);
+			assertTrue(histories > 0);
+		}
+	}
+
+	@Test
+	public void testBlankDocumentsAreNotShared() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			Document first = client.getStructuredDocument(new byte[0], "empty.txt");
+			Document second = client.getStructuredDocument(new byte[0], "empty.txt");
+			assertFalse(first == second);
+			first.getDocumentElement().appendChild(first.createElement("changed"));
+			assertEquals(second.getElementsByTagName("changed").getLength(), 0);
+			assertEquals(server.getRequestCount(), 0);
+		}
+	}
+
+	@Test
+	public void testConfigurationIsCaptured() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			ClassificationConfiguration classificationConfiguration = client.getClassificationConfiguration();
+			client.getClassifiedDocument(new Body("First"), new Title("First"));
+
+			// Changes to the configuration are not seen by a client in use
+			classificationConfiguration.getAdditionalParameters().put("threshold", "20");
+			client.getClassifiedDocument(new Body("Second"), new Title("Second"));
+			assertFalse(server.getRequestBodies().get(1).contains("name=\"threshold\""));
+
+			// Until it is set again
+			client.setClassificationConfiguration(classificationConfiguration);
+			client.getClassifiedDocument(new Body("Third"), new Title("Third"));
+			assertTrue(server.getRequestBodies().get(2).contains("name=\"threshold\""));
+		}
+	}
+}
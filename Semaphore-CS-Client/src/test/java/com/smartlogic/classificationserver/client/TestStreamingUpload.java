@@ -0,0 +1,93 @@
+package com.smartlogic.classificationserver.client;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+public class TestStreamingUpload {
+
+	private static String content(int length) {
+		char[] content = new char[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (char) ('a' + (i % 26));
+		}
+		return new String(content) + "END";
+	}
+
+	private static void assertMarkets(Result result) {
+		assertEquals(result.getAllClassifications().get("IPSV").iterator().next().getName(), "Markets");
+	}
+
+	@Test
+	public void testPath() throws Exception {
+		String content = content(3 * 1024 * 1024);
+		Path path = Files.createTempFile("upload", ".txt");
+		Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			assertMarkets(client.getClassifiedDocument(path, new Title("Title"), null));
+
+			String requestBody = server.getRequestBodies().get(0);
+			assertTrue(requestBody.contains("filename=\"" + path.getFileName() + "\""));
+			assertTrue(requestBody.contains(content), "File sent intact");
+
+			try {
+				client.getClassifiedDocument(path.resolveSibling("missing.txt"), null, null);
+				fail("Missing file accepted");
+			} catch (ClassificationException e) {
+				assertTrue(e.getMessage().contains("missing.txt"), e.getMessage());
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void testInputStreamAndChannel() throws Exception {
+		String content = content(100000);
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			assertMarkets(client.getClassifiedDocument(new ByteArrayInputStream(data), "stream.txt", new Title("Title"), null));
+			assertMarkets(client.getClassifiedDocument(Channels.newChannel(new ByteArrayInputStream(data)), "channel.txt", null, null));
+
+			assertTrue(server.getRequestBodies().get(0).contains("filename=\"stream.txt\""));
+			assertTrue(server.getRequestBodies().get(0).contains(content));
+			assertTrue(server.getRequestBodies().get(1).contains("filename=\"channel.txt\""));
+			assertTrue(server.getRequestBodies().get(1).contains(content));
+		}
+	}
+
+	@Test
+	public void testResponseModes() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			byte[] data = "Some text".getBytes(StandardCharsets.UTF_8);
+			for (boolean streamingResults: Arrays.asList(true, false)) {
+				client.setStreamingResults(streamingResults);
+				assertMarkets(client.getClassifiedDocument(data, "file.txt", null, null));
+			}
+			client.setScoreFilter(new ScoreFilter(0.9f, 1));
+			assertTrue(client.getClassifiedDocument(data, "file.txt", null, null).getAllClassifications().isEmpty());
+
+			server.setStatusCode(500);
+			try {
+				client.getClassifiedDocument(data, "file.txt", null, null);
+				fail("Server error ignored");
+			} catch (ClassificationException e) {
+				assertTrue(e.getMessage().contains("Internal classification server error"), e.getMessage());
+			}
+		}
+	}
+}
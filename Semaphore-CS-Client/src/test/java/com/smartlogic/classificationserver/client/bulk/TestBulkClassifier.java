@@ -0,0 +1,181 @@
+package com.smartlogic.classificationserver.client.bulk;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.smartlogic.classificationserver.client.ClassificationClient;
+import com.smartlogic.classificationserver.client.StubClassificationServer;
+import com.smartlogic.classificationserver.client.Title;
+
+public class TestBulkClassifier {
+
+	private static Path createTree(int directories, int filesPerDirectory) throws IOException {
+		Path root = Files.createTempDirectory("bulk");
+		for (int d = 0; d < directories; d++) {
+			Path directory = Files.createDirectories(root.resolve("dir" + d).resolve("sub"));
+			for (int f = 0; f < filesPerDirectory; f++) {
+				Files.write(directory.resolve("file" + f + ".txt"), ("Document " + d + " " + f).getBytes(StandardCharsets.UTF_8));
+			}
+			Files.write(directory.resolve("ignored.bin"), new byte[] { 1, 2, 3 });
+		}
+		return root;
+	}
+
+	@Test
+	public void testCsvAndCheckpoint() throws Exception {
+		Path root = createTree(3, 10);
+		File csvFile = Files.createTempFile("bulk", ".csv").toFile();
+		File checkpointFile = Files.createTempFile("bulk", ".checkpoint").toFile();
+		Files.delete(csvFile.toPath());
+		Files.delete(checkpointFile.toPath());
+
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(4)) {
+			BulkClassifier bulkClassifier = new BulkClassifier(client);
+			bulkClassifier.setParallelism(4);
+			bulkClassifier.setFileFilter(file -> file.getName().endsWith(".txt"));
+			bulkClassifier.setCheckpointFile(checkpointFile);
+			bulkClassifier.addResultSink(new CsvResultSink(csvFile));
+
+			BulkProgress bulkProgress = bulkClassifier.classifyDirectory(root.toFile());
+			assertEquals(bulkProgress.getFilesClassified(), 30);
+			assertEquals(bulkProgress.getFilesFailed(), 0);
+			assertTrue(bulkProgress.isFinished());
+			assertTrue(bulkProgress.getP50LatencyMS() > 0);
+			assertEquals(server.getRequestCount(), 30);
+
+			List<String> lines = Files.readAllLines(csvFile.toPath(), StandardCharsets.UTF_8);
+			assertEquals(lines.size(), 31);
+			assertEquals(lines.get(0), "path,class,name,id,score");
+			assertTrue(lines.contains("\"dir1/sub/file7.txt\",\"IPSV\",\"Markets\",\"1\",0.8"), lines.toString());
+
+			// A second run finds everything in the checkpoint
+			bulkClassifier = new BulkClassifier(client);
+			bulkClassifier.setParallelism(4);
+			bulkClassifier.setFileFilter(file -> file.getName().endsWith(".txt"));
+			bulkClassifier.setCheckpointFile(checkpointFile);
+			bulkProgress = bulkClassifier.classifyDirectory(root.toFile());
+			assertEquals(bulkProgress.getFilesClassified(), 0);
+			assertEquals(bulkProgress.getFilesSkipped(), 30);
+			assertEquals(server.getRequestCount(), 30);
+		}
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		Path root = createTree(1, 5);
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			server.setFailures(2);
+			BulkClassifier bulkClassifier = new BulkClassifier(client);
+			bulkClassifier.setParallelism(1);
+			bulkClassifier.setRetryDelayMS(1);
+			bulkClassifier.setFileFilter(file -> file.getName().endsWith(".txt"));
+
+			BulkProgress bulkProgress = bulkClassifier.classifyDirectory(root.toFile());
+			assertEquals(bulkProgress.getFilesClassified(), 5);
+			assertEquals(bulkProgress.getFilesFailed(), 0);
+			assertEquals(bulkProgress.getRetries(), 2);
+			assertEquals(server.getRequestCount(), 7);
+
+			server.setStatusCode(500);
+			bulkClassifier.setMaxAttempts(2);
+			bulkProgress = bulkClassifier.classifyDirectory(root.toFile());
+			assertEquals(bulkProgress.getFilesClassified(), 0);
+			assertEquals(bulkProgress.getFilesFailed(), 5);
+		}
+	}
+
+	@Test
+	public void testProgressDuringRun() throws Exception {
+		Path root = createTree(1, 10);
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			BulkClassifier bulkClassifier = new BulkClassifier(client);
+			bulkClassifier.setParallelism(1);
+			bulkClassifier.setFileFilter(file -> file.getName().endsWith(".txt"));
+			bulkClassifier.setFileClassification((classificationClient, file) -> {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return classificationClient.getClassifiedDocument(file, null, new Title(file.getName()), null);
+			});
+			List<BulkProgress> reports = new CopyOnWriteArrayList<BulkProgress>();
+			bulkClassifier.setProgressListener(reports::add);
+			bulkClassifier.setProgressIntervalMS(20);
+
+			long start = System.currentTimeMillis();
+			BulkProgress bulkProgress = bulkClassifier.classifyDirectory(root.toFile());
+			assertEquals(bulkProgress.getFilesClassified(), 10);
+			// Reports are made while the run goes, and do not hold up its end
+			assertTrue(reports.size() > 1, reports.toString());
+			assertTrue(!reports.get(0).isFinished());
+			assertTrue(reports.get(reports.size() - 1).isFinished());
+			assertTrue(System.currentTimeMillis() - start < 5000);
+		}
+	}
+
+	@Test
+	public void testFileList() throws Exception {
+		Path root = createTree(2, 3);
+		File checkpointFile = Files.createTempFile("bulk", ".checkpoint").toFile();
+		Files.delete(checkpointFile.toPath());
+
+		List<File> files = new ArrayList<File>();
+		files.add(root.resolve("dir0").resolve("sub").resolve("file0.txt").toFile());
+		files.add(root.resolve("dir0").resolve("sub").resolve("ignored.bin").toFile());
+		files.add(root.resolve("dir1").toFile());
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2)) {
+			BulkClassifier bulkClassifier = new BulkClassifier(client);
+			bulkClassifier.setParallelism(2);
+			bulkClassifier.setFileFilter(file -> file.getName().endsWith(".txt"));
+			bulkClassifier.setCheckpointFile(checkpointFile);
+			List<String> paths = new CopyOnWriteArrayList<String>();
+			bulkClassifier.addResultSink((file, relativePath, result) -> paths.add(relativePath));
+
+			BulkProgress bulkProgress = bulkClassifier.classifyFiles(files);
+			assertEquals(bulkProgress.getFilesClassified(), 4);
+			String expected = root.getRoot().relativize(root.resolve("dir0").resolve("sub").resolve("file0.txt")).toString()
+					.replace(File.separatorChar, '/');
+			assertTrue(paths.contains(expected), paths.toString());
+
+			// The checkpoint is kept by the same paths
+			bulkProgress = bulkClassifier.classifyFiles(files);
+			assertEquals(bulkProgress.getFilesSkipped(), 4);
+			assertEquals(server.getRequestCount(), 4);
+		}
+	}
+
+	@Test
+	public void testDirectorySink() throws Exception {
+		Path root = createTree(2, 3);
+		Path output = Files.createTempDirectory("bulkOutput");
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2)) {
+			BulkClassifier bulkClassifier = new BulkClassifier(client);
+			bulkClassifier.addResultSink(new DirectoryResultSink(output.toFile(), "scores"));
+			bulkClassifier.setProgressIntervalMS(TimeUnit.SECONDS.toMillis(1));
+
+			BulkProgress bulkProgress = bulkClassifier.classifyDirectory(root.toFile());
+			assertEquals(bulkProgress.getFilesClassified(), 8);
+
+			Path scores = output.resolve("dir0").resolve("sub").resolve("file2.txt.scores");
+			assertEquals(new String(Files.readAllBytes(scores), StandardCharsets.UTF_8), "IPSV\r\nMarkets:0.8\r\n");
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.smartlogic.classificationserver.client.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import com.smartlogic.classificationserver.client.Body;
+import com.smartlogic.classificationserver.client.ClassificationClient;
+import com.smartlogic.classificationserver.client.FileName;
+import com.smartlogic.classificationserver.client.StubClassificationServer;
+import com.smartlogic.classificationserver.client.Title;
+
+public class TestNearDuplicateIndex {
+
+	private static final String STORY = "Shares in the company rose sharply on Tuesday after it reported quarterly profits well ahead "
+			+ "of analyst expectations. The chief executive said demand for its products had recovered across every region, "
+			+ "and that the board expected the second half of the year to be stronger still. Rival firms also gained as "
+			+ "investors took the results as a sign that the wider sector was recovering from a difficult year.";
+
+	private static final String SYNDICATED = "By Staff Reporter. " + STORY + " Copyright 2024 Example News. All rights reserved.";
+
+	private static final String OTHER = "Heavy rain caused flooding across the north of the country overnight, closing roads "
+			+ "and railway lines. Forecasters warned that more rain was expected later in the week and urged people living "
+			+ "near rivers to prepare for further flooding, while emergency services rescued several drivers.";
+
+	@Test
+	public void testFingerprint() {
+		long story = SimHash.fingerprint(STORY);
+		assertEquals(SimHash.fingerprint(STORY.toUpperCase()), story);
+		assertTrue(SimHash.distance(story, SimHash.fingerprint(SYNDICATED)) <= 6, "Syndicated copy");
+		assertTrue(SimHash.distance(story, SimHash.fingerprint(OTHER)) > 16, "Other story");
+		assertEquals(SimHash.fingerprint(" .. "), 0);
+		assertTrue(SimHash.fingerprint("Flooding") != 0);
+	}
+
+	@Test
+	public void testLookup() {
+		NearDuplicateIndex index = new NearDuplicateIndex(0.9f, 100);
+		assertEquals(index.getMaxDistance(), 6);
+
+		long fingerprint = 0x0123456789abcdefL;
+		index.put(fingerprint, new byte[] { 1 });
+		assertEquals(index.get(fingerprint)[0], 1);
+		// Differing in bits spread over the fingerprint, up to the threshold
+		assertEquals(index.get(fingerprint ^ 0x8000100020004001L)[0], 1);
+		assertEquals(index.get(fingerprint ^ 0x8000100020004003L)[0], 1);
+		assertNull(index.get(fingerprint ^ 0x8000100020004007L));
+
+		// The closest is chosen
+		index.put(fingerprint ^ 0x3L, new byte[] { 2 });
+		assertEquals(index.get(fingerprint ^ 0x7L)[0], 2);
+
+		assertEquals(index.getExactHitCount(), 1);
+		assertEquals(index.getNearHitCount(), 3);
+		assertEquals(index.getMissCount(), 1);
+	}
+
+	@Test
+	public void testRandomNeighbours() {
+		NearDuplicateIndex index = new NearDuplicateIndex(0.95f, 10000);
+		Random random = new Random(42);
+		long[] fingerprints = new long[2000];
+		for (int i = 0; i < fingerprints.length; i++) {
+			fingerprints[i] = random.nextLong();
+			index.put(fingerprints[i], new byte[] { (byte)i });
+		}
+		// Every fingerprint within the distance is found, wherever the bits differ
+		for (int i = 0; i < fingerprints.length; i++) {
+			long neighbour = fingerprints[i];
+			for (int flip = 0; flip < index.getMaxDistance(); flip++) {
+				neighbour ^= 1L << random.nextInt(64);
+			}
+			assertEquals(index.get(neighbour)[0], (byte)i);
+		}
+	}
+
+	@Test
+	public void testEviction() {
+		NearDuplicateIndex index = new NearDuplicateIndex(0.95f, 2);
+		index.put(0x0123456789abcdefL, new byte[] { 1 });
+		index.put(0xfedcba9876543210L, new byte[] { 2 });
+		index.get(0x0123456789abcdefL);
+		index.put(0x5555aaaa5555aaaaL, new byte[] { 3 });
+		assertEquals(index.size(), 2);
+		assertEquals(index.get(0x0123456789abcdefL)[0], 1);
+		// The evicted fingerprint is gone from the bands as well, so its neighbour finds nothing
+		assertNull(index.get(0xfedcba9876543211L));
+		index.clear();
+		assertNull(index.get(0x0123456789abcdefL));
+	}
+
+	@Test
+	public void testContext() {
+		NearDuplicateIndex index = new NearDuplicateIndex(0.9f, 100);
+		long story = SimHash.fingerprint(STORY);
+		index.put("title", story, new byte[] { 1 });
+		index.put("other title", story, new byte[] { 2 });
+		assertEquals(index.get("title", story)[0], 1);
+		assertEquals(index.get("other title", SimHash.fingerprint(SYNDICATED))[0], 2);
+		assertNull(index.get(story));
+		assertNull(index.get("third title", SimHash.fingerprint(SYNDICATED)));
+		assertEquals(index.size(), 2);
+	}
+
+	@Test
+	public void testClient() throws Exception {
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			client.setNearDuplicateIndex(new NearDuplicateIndex(0.9f, 100));
+
+			assertEquals(client.getClassifiedDocument(new Body(STORY), new Title("Profits")).getAllClassifications().get("IPSV").size(), 1);
+			assertEquals(client.getClassifiedDocument(new Body(SYNDICATED), new Title("Profits")).getAllClassifications().get("IPSV").size(), 1);
+			client.getClassificationServerResponse(new Body(SYNDICATED), new Title("Profits"));
+			assertEquals(server.getRequestCount(), 1);
+
+			// The same body with another title, metadata or file name is sent
+			client.getClassifiedDocument(new Body(SYNDICATED), new Title("Profits rise"));
+			assertEquals(server.getRequestCount(), 2);
+			client.getClassifiedDocument(new Body(SYNDICATED), new Title("Profits"),
+					Collections.singletonMap("Source", Collections.singletonList("Wire")));
+			assertEquals(server.getRequestCount(), 3);
+			client.getClassifiedDocument(new FileName("story.txt"), new Body(SYNDICATED), new Title("Profits"));
+			assertEquals(server.getRequestCount(), 4);
+
+			client.getClassifiedDocument(new Body(OTHER), new Title("Floods"));
+			assertEquals(server.getRequestCount(), 5);
+
+			// Rulebases have changed
+			client.commitPublishSet("Set");
+			client.getClassifiedDocument(new Body(STORY), new Title("Profits"));
+			assertEquals(server.getRequestCount(), 7);
+		}
+	}
+}
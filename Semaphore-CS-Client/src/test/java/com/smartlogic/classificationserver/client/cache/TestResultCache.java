@@ -0,0 +1,197 @@
+package com.smartlogic.classificationserver.client.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import com.smartlogic.classificationserver.client.Body;
+import com.smartlogic.classificationserver.client.ClassificationClient;
+import com.smartlogic.classificationserver.client.NodeBalancer;
+import com.smartlogic.classificationserver.client.Result;
+import com.smartlogic.classificationserver.client.StubClassificationServer;
+import com.smartlogic.classificationserver.client.Title;
+
+public class TestResultCache {
+
+	private static class RulebaseServer extends StubClassificationServer {
+		private volatile String rulebases = "<response><Classes><Class Name=\"IPSV\" count_rules=\"10\"/></Classes></response>";
+		private volatile int generation = 1;
+
+		private RulebaseServer() throws Exception {
+			super();
+		}
+
+		@Override
+		protected String responseFor(String requestBody) {
+			if (requestBody.contains("listrulenetclasses")) return rulebases;
+			if (requestBody.contains("op=\"info\"")) {
+				return "<response><info><children><process id=\"1\" generation=\"" + generation + "\"/></children></info></response>";
+			}
+			return super.responseFor(requestBody);
+		}
+	}
+
+	@Test
+	public void testMemoryLRU() {
+		ResultCache resultCache = new ResultCache(2);
+		resultCache.put("a", new byte[] { 1 });
+		resultCache.put("b", new byte[] { 2 });
+		resultCache.get("a");
+		resultCache.put("c", new byte[] { 3 });
+
+		assertEquals(resultCache.get("a")[0], 1);
+		assertNull(resultCache.get("b"));
+		assertEquals(resultCache.get("c")[0], 3);
+		assertEquals(resultCache.getMemoryHitCount(), 3);
+		assertEquals(resultCache.getMissCount(), 1);
+	}
+
+	@Test
+	public void testDiskTier() throws Exception {
+		File directory = Files.createTempDirectory("resultCache").toFile();
+		ResultCache resultCache = new ResultCache(1, directory, 4096, 3);
+		for (int i = 0; i < 10; i++) {
+			resultCache.put("key" + i, ("response " + i).getBytes(StandardCharsets.UTF_8));
+		}
+		resultCache.close();
+
+		// Reopened, everything is read back from the segment files
+		resultCache = new ResultCache(1, directory, 4096, 3);
+		assertEquals(resultCache.getDiskSize(), 10);
+		assertEquals(new String(resultCache.get("key3"), StandardCharsets.UTF_8), "response 3");
+		assertEquals(resultCache.getDiskHitCount(), 1);
+		assertEquals(new String(resultCache.get("key3"), StandardCharsets.UTF_8), "response 3");
+		assertEquals(resultCache.getMemoryHitCount(), 1);
+
+		// Filling more segments than are kept drops the oldest entries
+		byte[] large = new byte[3000];
+		for (int i = 0; i < 4; i++) {
+			resultCache.put("large" + i, large);
+		}
+		assertNull(resultCache.get("key0"));
+		assertNull(resultCache.get("large0"));
+		assertEquals(resultCache.get("large3").length, 3000);
+		assertEquals(directory.list().length, 3);
+
+		resultCache.clear();
+		assertEquals(resultCache.getDiskSize(), 0);
+		assertNull(resultCache.get("large3"));
+	}
+
+	@Test
+	public void testGeneration() {
+		ResultCache resultCache = new ResultCache(10);
+		long generation = resultCache.getGeneration();
+		resultCache.put("before", new byte[] { 1 }, generation);
+		assertEquals(resultCache.get("before")[0], 1);
+
+		// A response requested before the cache was cleared is not put after it
+		resultCache.invalidate();
+		resultCache.put("stale", new byte[] { 2 }, generation);
+		assertNull(resultCache.get("stale"));
+		resultCache.put("fresh", new byte[] { 3 }, resultCache.getGeneration());
+		assertEquals(resultCache.get("fresh")[0], 3);
+	}
+
+	@Test
+	public void testMaxAge() throws Exception {
+		ResultCache resultCache = new ResultCache(10);
+		resultCache.setFingerprint("rulebases");
+		resultCache.put("key", new byte[] { 1 });
+		resultCache.setFingerprint("rulebases");
+		assertEquals(resultCache.getMemorySize(), 1);
+
+		// An unchanged fingerprint does not keep responses past the maximum age
+		resultCache.setMaxAgeMS(1);
+		Thread.sleep(5);
+		resultCache.setFingerprint("rulebases");
+		assertEquals(resultCache.getMemorySize(), 0);
+	}
+
+	@Test
+	public void testClient() throws Exception {
+		try (RulebaseServer server = new RulebaseServer();
+				ClassificationClient client = server.getClient(1)) {
+			ResultCache resultCache = new ResultCache(100);
+			client.setResultCache(resultCache);
+
+			Result result = client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+			assertEquals(result.getAllClassifications().get("IPSV").iterator().next().getName(), "Markets");
+			int requests = server.getRequestCount();
+			assertEquals(requests, 3, "Requests for the rulebases and workers, and one to classify");
+
+			result = client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+			assertEquals(result.getAllClassifications().get("IPSV").iterator().next().getName(), "Markets");
+			assertEquals(server.getRequestCount(), requests);
+
+			client.getClassifiedDocument(new Body("Document body"), new Title("Other title"));
+			assertEquals(server.getRequestCount(), requests + 1);
+
+			// A change to the rulebases is seen at the next validation
+			server.rulebases = "<response><Classes><Class Name=\"IPSV\" count_rules=\"11\"/></Classes></response>";
+			resultCache.setRevalidateIntervalMS(0);
+			client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+			assertEquals(server.getRequestCount(), requests + 4);
+			assertTrue(resultCache.getMemorySize() == 1, "Cleared then refilled: " + resultCache.getMemorySize());
+
+			// Validated again with nothing changed, the response is still cached
+			client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+			assertEquals(server.getRequestCount(), requests + 6);
+
+			// A publish with the same classes and rule counts restarts the workers under a new generation
+			server.generation = 2;
+			client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+			assertEquals(server.getRequestCount(), requests + 9);
+			assertEquals(resultCache.getMemorySize(), 1);
+
+			// Committing a publish set clears the cache
+			resultCache.setRevalidateIntervalMS(60000);
+			client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+			assertEquals(server.getRequestCount(), requests + 9);
+			client.commitPublishSet("default");
+			assertEquals(resultCache.getMemorySize(), 0);
+			client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+			assertEquals(server.getRequestCount(), requests + 13);
+		}
+	}
+
+	private static int getClassificationCount(StubClassificationServer server) {
+		int count = 0;
+		for (String requestBody: server.getRequestBodies()) {
+			if (!requestBody.contains("listrulenetclasses") && !requestBody.contains("op=\"info\"")) count++;
+		}
+		return count;
+	}
+
+	@Test
+	public void testNodeBalancer() throws Exception {
+		try (RulebaseServer server = new RulebaseServer();
+				RulebaseServer first = new RulebaseServer();
+				RulebaseServer second = new RulebaseServer();
+				ClassificationClient client = server.getClient(1)) {
+			first.generation = 2;
+			second.generation = 3;
+			NodeBalancer nodeBalancer = new NodeBalancer(Arrays.asList(first.getUrl(), second.getUrl()));
+			nodeBalancer.setPollIntervalMS(3600000);
+			client.setNodeBalancer(nodeBalancer);
+			ResultCache resultCache = new ResultCache(100);
+			resultCache.setRevalidateIntervalMS(0);
+			client.setResultCache(resultCache);
+
+			// The fingerprint is read from the configured server every time, whichever node classifies
+			for (int i = 0; i < 4; i++) {
+				client.getClassifiedDocument(new Body("Document body"), new Title("Title"));
+			}
+			assertEquals(getClassificationCount(first) + getClassificationCount(second), 1);
+			assertEquals(getClassificationCount(server), 0);
+			assertEquals(resultCache.getMemorySize(), 1);
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package com.smartlogic.classificationserver.client.publish;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.smartlogic.classificationserver.client.ClassificationClient;
+import com.smartlogic.classificationserver.client.ClassificationException;
+import com.smartlogic.classificationserver.client.NodeBalancer;
+import com.smartlogic.classificationserver.client.StubClassificationServer;
+
+public class TestPublishManager {
+
+	private static List<File> createPakFiles(Path directory, int count) throws IOException {
+		List<File> pakFiles = new ArrayList<File>();
+		for (int i = 0; i < count; i++) {
+			Path pakFile = directory.resolve("rulebase" + i + ".pak");
+			Files.write(pakFile, ("Rulebase " + i).getBytes(StandardCharsets.UTF_8));
+			pakFiles.add(pakFile.toFile());
+		}
+		return pakFiles;
+	}
+
+	private static int count(StubClassificationServer server, String op) {
+		int count = 0;
+		for (String requestBody: server.getRequestBodies()) {
+			if (requestBody.contains("op=\"" + op + "\"")) count++;
+		}
+		return count;
+	}
+
+	@Test
+	public void testIncremental() throws Exception {
+		Path directory = Files.createTempDirectory("paks");
+		File manifestDirectory = Files.createTempDirectory("manifests").toFile();
+		List<File> pakFiles = createPakFiles(directory, 6);
+
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(3)) {
+			PublishManager publishManager = new PublishManager(client);
+			publishManager.setManifestDirectory(manifestDirectory);
+			List<PublishProgress> reports = new ArrayList<PublishProgress>();
+			publishManager.setProgressListener(publishProgress -> {
+				synchronized (reports) {
+					reports.add(publishProgress);
+				}
+			});
+
+			// Nothing is known, so everything is sent
+			PublishProgress publishProgress = publishManager.publish("Set 1", pakFiles);
+			assertTrue(publishProgress.isCleared());
+			assertTrue(publishProgress.isCommitted());
+			assertEquals(publishProgress.getPakFilesUploaded(), 6);
+			assertEquals(count(server, "publish_set_init"), 1);
+			assertEquals(count(server, "publish_set_add"), 6);
+			assertEquals(count(server, "publish_set"), 1);
+			assertEquals(reports.size(), 7);
+			assertTrue(reports.get(6).isFinished());
+			assertTrue(server.getMaxInFlight() <= 3);
+
+			// Nothing has changed
+			publishProgress = publishManager.publish("Set 1", pakFiles);
+			assertFalse(publishProgress.isCleared());
+			assertEquals(publishProgress.getPakFilesUploaded(), 0);
+			assertEquals(publishProgress.getPakFilesSkipped(), 6);
+			assertEquals(count(server, "publish_set_add"), 6);
+			assertEquals(count(server, "publish_set"), 2);
+
+			// One pak file changes
+			Files.write(pakFiles.get(2).toPath(), "Rulebase 2 revised".getBytes(StandardCharsets.UTF_8));
+			publishProgress = publishManager.publish("Set 1", pakFiles);
+			assertFalse(publishProgress.isCleared());
+			assertEquals(publishProgress.getPakFilesUploaded(), 1);
+			assertEquals(publishProgress.getBytesUploaded(), pakFiles.get(2).length());
+			assertEquals(count(server, "publish_set_add"), 7);
+
+			// Touching a pak file without changing it does not send it
+			assertTrue(pakFiles.get(3).setLastModified(pakFiles.get(3).lastModified() + 10000));
+			publishProgress = publishManager.publish("Set 1", pakFiles);
+			assertEquals(publishProgress.getPakFilesUploaded(), 0);
+
+			// Dropping a pak file means starting again
+			pakFiles.remove(0);
+			publishProgress = publishManager.publish("Set 1", pakFiles);
+			assertTrue(publishProgress.isCleared());
+			assertEquals(publishProgress.getPakFilesUploaded(), 5);
+			assertEquals(count(server, "publish_set_init"), 2);
+
+			// Another publish set has a manifest of its own
+			publishProgress = publishManager.publish("Set 2", pakFiles);
+			assertTrue(publishProgress.isCleared());
+			assertEquals(publishProgress.getPakFilesUploaded(), 5);
+		}
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		Path directory = Files.createTempDirectory("paks");
+		File manifestDirectory = Files.createTempDirectory("manifests").toFile();
+		List<File> pakFiles = createPakFiles(directory, 4);
+
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(1)) {
+			PublishManager publishManager = new PublishManager(client);
+			publishManager.setManifestDirectory(manifestDirectory);
+			publishManager.setParallelism(1);
+
+			publishManager.publish("Set", pakFiles.subList(0, 1));
+			assertEquals(count(server, "publish_set"), 1);
+
+			// The first upload fails, so nothing is committed
+			server.setFailures(1);
+			try {
+				publishManager.publish("Set", pakFiles);
+				fail("Expected the publish to fail");
+			} catch (ClassificationException e) {
+				assertTrue(e.getMessage().contains("1 of 3"), e.getMessage());
+			}
+			assertEquals(count(server, "publish_set"), 1);
+
+			// Only the pak file that failed is sent again
+			PublishProgress publishProgress = publishManager.publish("Set", pakFiles);
+			assertEquals(publishProgress.getPakFilesUploaded(), 1);
+			assertEquals(publishProgress.getPakFilesSkipped(), 3);
+			assertTrue(publishProgress.isCommitted());
+			assertEquals(count(server, "publish_set"), 2);
+		}
+	}
+
+	@Test
+	public void testNodeBalancer() throws Exception {
+		List<File> pakFiles = createPakFiles(Files.createTempDirectory("paks"), 3);
+		File manifestDirectory = Files.createTempDirectory("manifests").toFile();
+		try (StubClassificationServer server = new StubClassificationServer();
+				StubClassificationServer node = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2)) {
+			NodeBalancer nodeBalancer = new NodeBalancer(Arrays.asList(node.getUrl()));
+			nodeBalancer.setPollIntervalMS(3600000);
+			client.setNodeBalancer(nodeBalancer);
+			PublishManager publishManager = new PublishManager(client);
+			publishManager.setManifestDirectory(manifestDirectory);
+
+			// The manifest describes the configured server, which every step goes to
+			publishManager.publish("Set", pakFiles);
+			PublishProgress publishProgress = publishManager.publish("Set", pakFiles);
+			assertEquals(publishProgress.getPakFilesSkipped(), 3);
+			assertEquals(count(server, "publish_set_add"), 3);
+			assertEquals(count(server, "publish_set"), 2);
+			assertEquals(count(node, "publish_set_init") + count(node, "publish_set_add") + count(node, "publish_set"), 0);
+		}
+	}
+
+	@Test
+	public void testWithoutManifest() throws Exception {
+		List<File> pakFiles = createPakFiles(Files.createTempDirectory("paks"), 3);
+		try (StubClassificationServer server = new StubClassificationServer();
+				ClassificationClient client = server.getClient(2)) {
+			PublishManager publishManager = new PublishManager(client);
+			publishManager.setCommit(false);
+			for (int i = 0; i < 2; i++) {
+				PublishProgress publishProgress = publishManager.publish("Set", pakFiles);
+				assertTrue(publishProgress.isCleared());
+				assertFalse(publishProgress.isCommitted());
+				assertEquals(publishProgress.getPakFilesUploaded(), 3);
+			}
+			assertEquals(count(server, "publish_set_add"), 6);
+			assertEquals(count(server, "publish_set"), 0);
+		}
+	}
+}
@@ -24,12 +24,18 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
@@ -37,6 +43,10 @@ import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.config.RequestConfig.Builder;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -49,6 +59,8 @@ import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import com.smartlogic.ses.client.cache.StructureCache;
+import com.smartlogic.ses.client.cache.TermCache;
 import com.smartlogic.ses.client.exceptions.NoSuchTermException;
 import com.smartlogic.ses.client.exceptions.SESException;
 
@@ -77,6 +89,7 @@ public class SESClient implements AutoCloseable {
 	private String url;
 
 	private CloseableHttpClient httpClient;
+	private PoolingHttpClientConnectionManager connectionManager;
 
 	public String getUrl() {
 		return url;
@@ -219,6 +232,89 @@ public class SESClient implements AutoCloseable {
 		this.saveFile = saveFile;
 	}
 
+	private int warmUpConnections = 0;
+
+	/**
+	 * The number of pooled connections that warmUp() opens ahead of the first request
+	 *
+	 * @return the number of connections to open (capped at the maximum number of connections)
+	 */
+	public int getWarmUpConnections() {
+		return warmUpConnections;
+	}
+
+	public void setWarmUpConnections(int warmUpConnections) {
+		this.warmUpConnections = warmUpConnections;
+	}
+
+	private boolean prefetchModels = false;
+
+	public boolean isPrefetchModels() {
+		return prefetchModels;
+	}
+
+	/**
+	 * @param prefetchModels whether warmUp() should fetch the model list, which the next listModels() then returns
+	 */
+	public void setPrefetchModels(boolean prefetchModels) {
+		this.prefetchModels = prefetchModels;
+	}
+
+	private boolean prefetchStructure = false;
+
+	public boolean isPrefetchStructure() {
+		return prefetchStructure;
+	}
+
+	/**
+	 * @param prefetchStructure whether warmUp() should fetch the OM structure into the structure cache; has no effect
+	 *                          without a structure cache
+	 */
+	public void setPrefetchStructure(boolean prefetchStructure) {
+		this.prefetchStructure = prefetchStructure;
+	}
+
+	private StructureCache structureCache = null;
+
+	/**
+	 * The cache that getStructure() uses to avoid downloading and parsing an unchanged structure again
+	 *
+	 * @return the structure cache, or null if structures are not cached
+	 */
+	public StructureCache getStructureCache() {
+		return structureCache;
+	}
+
+	/**
+	 * While a structure is cached, getStructure() returns the same OMStructure to every caller, so callers
+	 * must not modify it.
+	 *
+	 * @param structureCache the cache to keep parsed structures in (default null, each call downloads and
+	 *                       parses the structure)
+	 */
+	public void setStructureCache(StructureCache structureCache) {
+		this.structureCache = structureCache;
+	}
+
+	private TermCache termCache = null;
+
+	/**
+	 * The cache consulted by the unfiltered getTermDetails calls before going to the server
+	 *
+	 * @return the term cache, or null if terms are not cached
+	 */
+	public TermCache getTermCache() {
+		return termCache;
+	}
+
+	public void setTermCache(TermCache termCache) {
+		this.termCache = termCache;
+	}
+
+	private String getTermCacheKey(String id, DetailLevel detailLevel) {
+		return getOntology() + "|" + getLanguage() + "|" + detailLevel + "|" + id;
+	}
+
 	@Override
 	public void close() {
 		if (httpClient != null) {
@@ -228,7 +324,107 @@ public class SESClient implements AutoCloseable {
 				logger.warn("Failed to cleanly close HttpClient.", ioe);
 			}
 			httpClient = null;
+			connectionManager = null;
+		}
+	}
+
+	private volatile VersionInfo serverVersionInfo = null;
+	private final AtomicReference<Collection<Model>> prefetchedModels = new AtomicReference<Collection<Model>>();
+
+	/**
+	 * Do the one-off work that would otherwise fall on the first requests: probe the server version (which
+	 * decides the date format used by date filters), open the configured number of pooled connections and,
+	 * if requested, fetch the model list and OM structure. Calling this again refreshes the fetched data.
+	 *
+	 * @throws SESException SES exception
+	 */
+	public void warmUp() throws SESException {
+		logger.info("warmUp - entry");
+		long startTime = System.currentTimeMillis();
+
+		try {
+			initHttpClient();
+		} catch (KeyManagementException e) {
+			throw new SESException("KeyManagementException: " + e.getMessage());
+		} catch (NoSuchAlgorithmException e) {
+			throw new SESException("NoSuchAlgorithmException: " + e.getMessage());
+		}
+
+		VersionInfo versionInfo = getVersion();
+		synchronized (this) {
+			serverVersionInfo = versionInfo;
+			setDateFormat(versionInfo);
+		}
+
+		if (warmUpConnections > 0) {
+			openPooledConnections(Math.min(warmUpConnections, maxConnections));
+		}
+
+		prefetchedModels.set(null);
+		if (prefetchModels) {
+			prefetchedModels.set(listModels());
+		}
+		if (prefetchStructure && (structureCache != null)) {
+			getStructure();
+		}
+
+		logger.info("warmUp - exit: {} ms", System.currentTimeMillis() - startTime);
+	}
+
+	/**
+	 * @return the version information probed by warmUp(), or by the first date filter if warmUp() was not called;
+	 *         null if neither has happened yet
+	 */
+	public VersionInfo getServerVersionInfo() {
+		return serverVersionInfo;
+	}
+
+	private void openPooledConnections(int count) throws SESException {
+		URL url = getURLImpl("");
+		boolean secure = "https".equalsIgnoreCase(url.getProtocol());
+		int port = (url.getPort() != -1) ? url.getPort() : url.getDefaultPort();
+		HttpHost target = new HttpHost(url.getHost(), port, url.getProtocol());
+
+		HttpRoute route;
+		if ((getProxyHost() != null) && (getProxyHost().length() > 0) && (getProxyPort() > 0)) {
+			if (secure) {
+				// A tunnelled route needs a CONNECT exchange that only a real request performs
+				logger.info("warmUp - not opening connections through proxy to a secure host");
+				return;
+			}
+			route = new HttpRoute(target, null, new HttpHost(getProxyHost(), getProxyPort(), "http"), false);
+		} else {
+			route = new HttpRoute(target, null, secure);
+		}
+
+		// Hold every connection until all are open so that the pool cannot hand the same one out twice
+		List<HttpClientConnection> connections = new ArrayList<>();
+		HttpClientContext context = HttpClientContext.create();
+		try {
+			for (int i = 0; i < count; i++) {
+				ConnectionRequest connectionRequest = connectionManager.requestConnection(route, null);
+				HttpClientConnection connection = connectionRequest.get(getConnectionTimeoutMS(), TimeUnit.MILLISECONDS);
+				connections.add(connection);
+				if (!connection.isOpen()) {
+					connectionManager.connect(connection, route, getConnectionTimeoutMS(), context);
+					connectionManager.routeComplete(connection, route, context);
+				}
+			}
+		} catch (ConnectionPoolTimeoutException e) {
+			throw new SESException("ConnectionPoolTimeoutException: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SESException("InterruptedException: " + e.getMessage());
+		} catch (ExecutionException e) {
+			throw new SESException("ExecutionException: " + e.getMessage());
+		} catch (IOException e) {
+			throw new SESException("IOException: " + e.getMessage());
+		} finally {
+			for (HttpClientConnection connection : connections) {
+				connectionManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+			}
 		}
+		logger.debug("warmUp - {} pooled connections open", connections.size());
 	}
 
 	/**
@@ -485,11 +681,10 @@ public class SESClient implements AutoCloseable {
 		return returnData;
 	}
 
-	private String dateFormat = null;
+	private volatile String dateFormat = null;
 
-	private synchronized void setDateFormat() throws SESException {
-		VersionInfo versionInfo = this.getVersion();
-		String version = versionInfo.getVersion();
+	private void setDateFormat(VersionInfo versionInfo) {
+		String version = (versionInfo == null) ? null : versionInfo.getVersion();
 		logger.debug("setDateFormat - version: {}", version);
 		if (version != null) {
 			// This is SES > 4.0.36
@@ -500,10 +695,18 @@ public class SESClient implements AutoCloseable {
 	}
 
 	private SimpleDateFormat getDateFormatter() throws SESException {
-		if (dateFormat == null) {
-			setDateFormat();
+		String format = dateFormat;
+		if (format == null) {
+			synchronized (this) {
+				if (dateFormat == null) {
+					logger.info("getDateFormatter - probing server version; call warmUp() to do this at startup");
+					serverVersionInfo = getVersion();
+					setDateFormat(serverVersionInfo);
+				}
+				format = dateFormat;
+			}
 		}
-		return new SimpleDateFormat(dateFormat);
+		return new SimpleDateFormat(format);
 	}
 
 	private String getFilterString(SESFilter sesFilter) throws SESException {
@@ -669,6 +872,27 @@ public class SESClient implements AutoCloseable {
 
 		logger.info("getTermDetails - entry");
 
+		// Filtered requests may legitimately leave terms out, so only unfiltered results are cached
+		TermCache cache = (sesFilter == null) ? termCache : null;
+		Map<String, Term> cachedTerms = new HashMap<>();
+		String[] idsToFetch = ids;
+		if (cache != null) {
+			List<String> missingIds = new ArrayList<>();
+			for (String id : ids) {
+				Term term = cache.get(getTermCacheKey(id, detailLevel));
+				if (term != null) {
+					cachedTerms.put(id, term);
+				} else {
+					missingIds.add(id);
+				}
+			}
+			logger.debug("getTermDetails - {} of {} terms found in cache", cachedTerms.size(), ids.length);
+			if (missingIds.isEmpty()) {
+				return cachedTerms;
+			}
+			idsToFetch = missingIds.toArray(new String[0]);
+		}
+
 		List<URL> urls = new ArrayList<>();
 		URL url = null;
 
@@ -688,7 +912,7 @@ public class SESClient implements AutoCloseable {
 			basepath.append("&id=");
 			String sep = "";
 			StringBuffer path = new StringBuffer(basepath);
-			for (String id : ids) {
+			for (String id : idsToFetch) {
 				if (this.getPath().length() + path.length() + id.length() > 2048) {
 					url = getURLImpl(path.toString());
 					if (logger.isDebugEnabled()) {
@@ -721,6 +945,15 @@ public class SESClient implements AutoCloseable {
 			}
 		}
 
+		if (cache != null) {
+			for (Map.Entry<String, Term> entry : termdetails.entrySet()) {
+				if (entry.getValue() != null) {
+					cache.put(getTermCacheKey(entry.getKey(), detailLevel), entry.getValue());
+				}
+			}
+			termdetails.putAll(cachedTerms);
+		}
+
 		// Go through and fill in the gaps that might have been left by missing terms
 		// Unless of course we are filtering the results, in which case the missing
 		// terms
@@ -1063,7 +1296,19 @@ public class SESClient implements AutoCloseable {
 		return new HashMap<>();
 	}
 
+	/**
+	 * List the models on the server. The list fetched by warmUp() is returned by the first call after it only; every
+	 * other call asks the server, so models created or removed since are seen.
+	 *
+	 * @return the models
+	 * @throws SESException SES exception
+	 */
 	public Collection<Model> listModels() throws SESException {
+		Collection<Model> models = prefetchedModels.getAndSet(null);
+		if (models != null) {
+			return models;
+		}
+
 		logger.info("listModels - entry");
 		URL url = null;
 
@@ -1094,6 +1339,7 @@ public class SESClient implements AutoCloseable {
 	 * @return the terms marked as use for A to Z starting with the supplied prefix,
 	 *         sorted alphabetically
 	 * @throws SESException SES exception
+	 * @see com.smartlogic.ses.client.atoz.AtoZIndexBuilder for a complete, locale aware index
 	 */
 	public Collection<Term> getSortedAtoZTerms(String prefix) throws SESException {
 		Map<String, Term> termMap = getAtoZTerms(prefix);
@@ -1125,18 +1371,69 @@ public class SESClient implements AutoCloseable {
 	}
 
 	public OMStructure getStructure() throws SESException {
+		StructureCache cache = structureCache;
+		String cacheKey = getOntology() + "|" + getLanguage();
+		if (cache != null) {
+			OMStructure structure = cache.getIfFresh(cacheKey);
+			if (structure != null) {
+				return structure;
+			}
+		}
+
 		logger.info("getOMStructure - entry");
 
+		String statisticsFingerprint = null;
+		if (cache != null) {
+			statisticsFingerprint = getStatisticsFingerprint();
+			OMStructure structure = cache.getIfStatisticsUnchanged(cacheKey, statisticsFingerprint);
+			if (structure != null) {
+				logger.info("getOMStructure - exit: statistics unchanged");
+				return structure;
+			}
+		}
+
 		StringBuffer query = new StringBuffer();
 		query.append("/" + getOntology());
 		if (getLanguage() != null) {
 			query.append("/" + getLanguage());
 		}
 
-		Semaphore semaphore = getSemaphore(getURLImpl(query.toString()));
+		URL url = getURLImpl(query.toString());
+		if (cache == null) {
+			Semaphore semaphore = getSemaphore(url);
+			logger.info("getOMStructure - exit");
+			return semaphore.getOmStructure();
+		}
+
+		byte[] response = fetchResponse(url);
+		String contentHash = DigestUtils.sha256Hex(response);
+		OMStructure structure = cache.getIfUnchanged(cacheKey, statisticsFingerprint, contentHash);
+		if (structure == null) {
+			structure = parseSemaphore(response).getOmStructure();
+			cache.put(cacheKey, statisticsFingerprint, contentHash, structure);
+		} else {
+			logger.debug("getOMStructure - structure unchanged");
+		}
 
 		logger.info("getOMStructure - exit");
-		return semaphore.getOmStructure();
+		return structure;
+	}
+
+	/**
+	 * @return the index count and per-index term counts, which change when a new structure is published; null
+	 *         if the server does not report statistics
+	 */
+	private String getStatisticsFingerprint() {
+		try {
+			StatisticsInfo statisticsInfo = getStatistics();
+			if (statisticsInfo == null) {
+				return null;
+			}
+			return statisticsInfo.getNumOfIndexes() + "|" + new TreeMap<String, Integer>(statisticsInfo.getTermCounts());
+		} catch (SESException | RuntimeException e) {
+			logger.debug("getStatisticsFingerprint - no statistics: " + e.getMessage());
+			return null;
+		}
 	}
 
 	public StatisticsInfo getStatistics() throws SESException {
@@ -1187,6 +1484,7 @@ public class SESClient implements AutoCloseable {
 			PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
 			cm.setMaxTotal(this.maxConnections);
 			cm.setDefaultMaxPerRoute(this.maxConnections);
+			this.connectionManager = cm;
 
 			this.httpClient = HttpClients.custom().setConnectionManager(cm).setDefaultRequestConfig(requestConfig)
 					.setSSLSocketFactory(sslsf).build();
@@ -1197,7 +1495,23 @@ public class SESClient implements AutoCloseable {
 		if (logger.isInfoEnabled()) {
 			logger.info("getSemaphore - entry: '" + url.toExternalForm() + "'");
 		}
-		Semaphore semaphore = null;
+
+		Semaphore semaphore = parseSemaphore(fetchResponse(url));
+
+		if (logger.isInfoEnabled()) {
+			logger.info("getSemaphore - exit: '" + url.toExternalForm() + "'");
+		}
+		return semaphore;
+	}
+
+	/**
+	 * Make the request and return the raw response body
+	 *
+	 * @param url The URL to request
+	 * @return the response body
+	 * @throws SESException SES exception
+	 */
+	protected byte[] fetchResponse(URL url) throws SESException {
 		HttpGet httpGet = null;
 
 		try {
@@ -1243,45 +1557,41 @@ public class SESClient implements AutoCloseable {
 			if (saveFile != null) {
 				saveRequestAndResponse(saveFile, url, byteArrayOutputStream.toByteArray());
 			}
-
-			InputSource inputSource = new InputSource(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
-
-			// Read the semaphore object from the returned XML
-			DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-			documentBuilderFactory.setValidating(false);
-			DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-			Document xmlDocument = documentBuilder.parse(inputSource);
-
-			semaphore = new Semaphore(xmlDocument.getDocumentElement());
-		} catch (ParserConfigurationException e) {
-			throw new SESException("ParserConfigurationException: " + e.getMessage());
+			return byteArrayOutputStream.toByteArray();
 		} catch (IOException e) {
 			throw new SESException("IOException: " + e.getMessage());
-		} catch (SAXException e) {
-			throw new SESException("SAXException: " + e.getMessage());
 		} catch (KeyManagementException e) {
 			throw new SESException("KeyManagementException: " + e.getMessage());
 		} catch (NoSuchAlgorithmException e) {
 			throw new SESException("NoSuchAlgorithmException: " + e.getMessage());
 		} finally {
 			if (logger.isDebugEnabled()) {
-				logger.debug("getSemaphore - about to abort the connection " + url.toExternalForm());
+				logger.debug("fetchResponse - about to abort the connection " + url.toExternalForm());
 			}
 			if (httpGet != null) {
 				httpGet.abort();
 			}
-			if (logger.isDebugEnabled()) {
-				logger.debug("getSemaphore - about to release connection " + url.toExternalForm());
-			}
-			if (logger.isDebugEnabled()) {
-				logger.debug("getSemaphore - connection released " + url.toExternalForm());
-			}
 		}
+	}
 
-		if (logger.isInfoEnabled()) {
-			logger.info("getSemaphore - exit: '" + url.toExternalForm() + "'");
+	private Semaphore parseSemaphore(byte[] response) throws SESException {
+		try {
+			InputSource inputSource = new InputSource(new ByteArrayInputStream(response));
+
+			// Read the semaphore object from the returned XML
+			DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+			documentBuilderFactory.setValidating(false);
+			DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
+			Document xmlDocument = documentBuilder.parse(inputSource);
+
+			return new Semaphore(xmlDocument.getDocumentElement());
+		} catch (ParserConfigurationException e) {
+			throw new SESException("ParserConfigurationException: " + e.getMessage());
+		} catch (IOException e) {
+			throw new SESException("IOException: " + e.getMessage());
+		} catch (SAXException e) {
+			throw new SESException("SAXException: " + e.getMessage());
 		}
-		return semaphore;
 	}
 
 	private void saveRequestAndResponse(File saveFile, URL url, byte[] response) {
@@ -0,0 +1,93 @@
+//----------------------------------------------------------------------
+// Product:     Semantic Enhancement Server Java API
+//
+// (c) 2009 Smartlogic Semaphore Ltd
+//----------------------------------------------------------------------
+package com.smartlogic.ses.client.atoz;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.smartlogic.ses.client.Term;
+
+/**
+ * A sorted A to Z index, as built by {@link AtoZIndexBuilder}.
+ *
+ * The index itself cannot be modified, so one instance can be shared by any number of threads paging through
+ * it. The terms are those returned by the server and should be treated as read only.
+ */
+public class AtoZIndex {
+
+	private final List<Term> terms;
+	private final Map<String, List<Term>> termsByLetter;
+	private final Locale locale;
+	private final long builtAt;
+
+	AtoZIndex(List<Term> terms, Map<String, List<Term>> termsByLetter, Locale locale) {
+		this.terms = Collections.unmodifiableList(terms);
+		Map<String, List<Term>> letterMap = new LinkedHashMap<String, List<Term>>();
+		for (Map.Entry<String, List<Term>> entry: termsByLetter.entrySet()) {
+			letterMap.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+		}
+		this.termsByLetter = Collections.unmodifiableMap(letterMap);
+		this.locale = locale;
+		this.builtAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return every term in the index, in collation order
+	 */
+	public List<Term> getTerms() {
+		return terms;
+	}
+
+	/**
+	 * @param letter The letter (prefix) that was requested
+	 * @return the terms returned for that letter in collation order, or an empty list if it was not requested
+	 */
+	public List<Term> getTerms(String letter) {
+		List<Term> letterTerms = termsByLetter.get(letter);
+		return (letterTerms == null) ? Collections.<Term>emptyList() : letterTerms;
+	}
+
+	/**
+	 * @return the letters (prefixes) in the index, in the order they were requested
+	 */
+	public Set<String> getLetters() {
+		return termsByLetter.keySet();
+	}
+
+	/**
+	 * @param offset The position of the first term to return
+	 * @param limit  The maximum number of terms to return
+	 * @return a view of the requested page; empty if the offset is past the end of the index
+	 */
+	public List<Term> getPage(int offset, int limit) {
+		if ((offset < 0) || (limit < 0)) {
+			throw new IllegalArgumentException(String.format("Invalid page: offset %d limit %d", offset, limit));
+		}
+		if (offset >= terms.size()) {
+			return Collections.emptyList();
+		}
+		return terms.subList(offset, (int) Math.min((long) offset + limit, terms.size()));
+	}
+
+	public int size() {
+		return terms.size();
+	}
+
+	public Locale getLocale() {
+		return locale;
+	}
+
+	/**
+	 * @return the time the index was built, in milliseconds since the epoch
+	 */
+	public long getBuiltAt() {
+		return builtAt;
+	}
+}
@@ -0,0 +1,268 @@
+//----------------------------------------------------------------------
+// Product:     Semantic Enhancement Server Java API
+//
+// (c) 2009 Smartlogic Semaphore Ltd
+//----------------------------------------------------------------------
+package com.smartlogic.ses.client.atoz;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.smartlogic.ses.client.SESClient;
+import com.smartlogic.ses.client.SESFilter;
+import com.smartlogic.ses.client.Term;
+import com.smartlogic.ses.client.exceptions.SESException;
+
+/**
+ * Builds a complete, sorted A to Z index from an SESClient.
+ *
+ * All letters are requested concurrently. Each request computes a collation key for every term it
+ * returns and sorts its own letter, so the final merge only compares precomputed keys. Collation uses
+ * the configured locale at secondary strength, so case is ignored but accents are not.
+ *
+ * Built indexes are cached per ontology and language until they are older than the maximum age.
+ */
+public class AtoZIndexBuilder {
+	private static final Logger logger = LoggerFactory.getLogger(AtoZIndexBuilder.class);
+
+	public static final List<String> DEFAULT_LETTERS = Collections.unmodifiableList(Arrays.asList(
+			"A", "B", "C", "D", "E", "F", "G", "H", "I", "J", "K", "L", "M",
+			"N", "O", "P", "Q", "R", "S", "T", "U", "V", "W", "X", "Y", "Z",
+			"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"));
+
+	private final SESClient sesClient;
+	private final ConcurrentMap<String, AtoZIndex> indexes = new ConcurrentHashMap<String, AtoZIndex>();
+
+	public AtoZIndexBuilder(SESClient sesClient) {
+		this.sesClient = sesClient;
+	}
+
+	private List<String> letters = DEFAULT_LETTERS;
+
+	public List<String> getLetters() {
+		return letters;
+	}
+
+	public void setLetters(List<String> letters) {
+		this.letters = Collections.unmodifiableList(new ArrayList<String>(letters));
+		clear();
+	}
+
+	private Locale locale = Locale.getDefault();
+
+	public Locale getLocale() {
+		return locale;
+	}
+
+	public void setLocale(Locale locale) {
+		this.locale = locale;
+		clear();
+	}
+
+	private SESFilter sesFilter = null;
+
+	public SESFilter getSesFilter() {
+		return sesFilter;
+	}
+
+	public void setSesFilter(SESFilter sesFilter) {
+		this.sesFilter = sesFilter;
+		clear();
+	}
+
+	private int threads = 0;
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @param threads The number of letters to request at once; zero (the default) means as many as the
+	 *                client has connections
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	private ExecutorService executorService = null;
+
+	public ExecutorService getExecutorService() {
+		return executorService;
+	}
+
+	/**
+	 * @param executorService The executor to run requests on; if null a pool is created for each build
+	 */
+	public void setExecutorService(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+
+	private long maxAgeMS = 0;
+
+	public long getMaxAgeMS() {
+		return maxAgeMS;
+	}
+
+	/**
+	 * @param maxAgeMS How long getIndex() returns a cached index; zero means until clear() is called
+	 */
+	public void setMaxAgeMS(long maxAgeMS) {
+		this.maxAgeMS = maxAgeMS;
+	}
+
+	/**
+	 * Return the cached index for the client's current ontology and language, building it if there is none
+	 * or it has expired
+	 *
+	 * @return the index
+	 * @throws SESException SES exception
+	 */
+	public AtoZIndex getIndex() throws SESException {
+		String key = sesClient.getOntology() + "|" + sesClient.getLanguage();
+		AtoZIndex index = indexes.get(key);
+		if ((index != null) && ((maxAgeMS == 0) || (System.currentTimeMillis() - index.getBuiltAt() < maxAgeMS))) {
+			return index;
+		}
+		index = build();
+		indexes.put(key, index);
+		return index;
+	}
+
+	public void clear() {
+		indexes.clear();
+	}
+
+	/**
+	 * Build a new index without consulting or updating the cache
+	 *
+	 * @return the index
+	 * @throws SESException SES exception
+	 */
+	public AtoZIndex build() throws SESException {
+		logger.info("build - entry: {} letters", letters.size());
+		long startTime = System.currentTimeMillis();
+
+		final Collator collator = Collator.getInstance(locale);
+		collator.setStrength(Collator.SECONDARY);
+
+		ExecutorService executor = executorService;
+		boolean shutdown = false;
+		if (executor == null) {
+			int poolSize = (threads > 0) ? threads : sesClient.getMaxConnections();
+			executor = Executors.newFixedThreadPool(Math.max(1, Math.min(poolSize, letters.size())));
+			shutdown = true;
+		}
+
+		Map<String, List<SortEntry>> entriesByLetter = new LinkedHashMap<String, List<SortEntry>>();
+		try {
+			Map<String, Future<List<SortEntry>>> futures = new LinkedHashMap<String, Future<List<SortEntry>>>();
+			for (final String letter: letters) {
+				futures.put(letter, executor.submit(new Callable<List<SortEntry>>() {
+					@Override
+					public List<SortEntry> call() throws Exception {
+						// Collators are not thread safe
+						return fetchAndSort(letter, (Collator) collator.clone());
+					}
+				}));
+			}
+			for (Map.Entry<String, Future<List<SortEntry>>> future: futures.entrySet()) {
+				entriesByLetter.put(future.getKey(), future.getValue().get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SESException("InterruptedException: " + e.getMessage());
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SESException) {
+				throw (SESException) e.getCause();
+			}
+			throw new SESException(e.getCause().getClass().getSimpleName() + ": " + e.getCause().getMessage());
+		} finally {
+			if (shutdown) {
+				executor.shutdownNow();
+			}
+		}
+
+		// A term returned for more than one letter is only listed once in the full index
+		Map<String, SortEntry> distinct = new LinkedHashMap<String, SortEntry>();
+		Map<String, List<Term>> termsByLetter = new LinkedHashMap<String, List<Term>>();
+		for (Map.Entry<String, List<SortEntry>> entry: entriesByLetter.entrySet()) {
+			List<Term> letterTerms = new ArrayList<Term>(entry.getValue().size());
+			for (SortEntry sortEntry: entry.getValue()) {
+				letterTerms.add(sortEntry.term);
+				if (!distinct.containsKey(sortEntry.id)) {
+					distinct.put(sortEntry.id, sortEntry);
+				}
+			}
+			termsByLetter.put(entry.getKey(), letterTerms);
+		}
+
+		// The letters arrive as sorted runs, which the merge sort takes advantage of
+		List<SortEntry> allEntries = new ArrayList<SortEntry>(distinct.values());
+		Collections.sort(allEntries);
+		List<Term> terms = new ArrayList<Term>(allEntries.size());
+		for (SortEntry sortEntry: allEntries) {
+			terms.add(sortEntry.term);
+		}
+
+		logger.info("build - exit: {} terms in {} ms", terms.size(), System.currentTimeMillis() - startTime);
+		return new AtoZIndex(terms, termsByLetter, locale);
+	}
+
+	private List<SortEntry> fetchAndSort(String letter, Collator collator) throws SESException {
+		Map<String, Term> termMap = sesClient.getAtoZTerms(letter, sesFilter);
+		List<SortEntry> entries = new ArrayList<SortEntry>(termMap.size());
+		for (Map.Entry<String, Term> entry: termMap.entrySet()) {
+			Term term = entry.getValue();
+			if (term == null) {
+				continue;
+			}
+			String name = ((term.getName() == null) ? null : term.getName().getValue());
+			CollationKey collationKey = (name == null) ? null : collator.getCollationKey(name);
+			entries.add(new SortEntry(entry.getKey(), term, collationKey));
+		}
+		Collections.sort(entries);
+		return entries;
+	}
+
+	private static class SortEntry implements Comparable<SortEntry> {
+		private final String id;
+		private final Term term;
+		private final CollationKey collationKey;
+
+		private SortEntry(String id, Term term, CollationKey collationKey) {
+			this.id = id;
+			this.term = term;
+			this.collationKey = collationKey;
+		}
+
+		@Override
+		public int compareTo(SortEntry other) {
+			// Terms without names go last, as they do in getSortedAtoZTerms
+			if (collationKey == null) {
+				return (other.collationKey == null) ? 0 : 1;
+			}
+			if (other.collationKey == null) {
+				return -1;
+			}
+			return collationKey.compareTo(other.collationKey);
+		}
+	}
+}
@@ -0,0 +1,259 @@
+//----------------------------------------------------------------------
+// Product:     Semantic Enhancement Server Java API
+//
+// (c) 2009 Smartlogic Semaphore Ltd
+//----------------------------------------------------------------------
+package com.smartlogic.ses.client.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.smartlogic.ses.client.Term;
+import com.smartlogic.ses.client.codec.BinaryCodec;
+
+/**
+ * A term cache that holds its terms outside the Java heap.
+ *
+ * Terms are encoded with the {@link BinaryCodec} and appended to a fixed number of direct byte buffer
+ * segments. Only a small index from key to segment position is kept on the heap, so a large cache adds very
+ * little to garbage collection work. Terms are decoded each time they are read.
+ *
+ * When the segment being written to is full, a clock sweep picks the next segment to reuse: a segment that
+ * has been read from since the hand last passed it is given a second chance, otherwise all of its entries
+ * are dropped and it becomes the new write segment.
+ */
+public class OffHeapTermCache implements TermCache {
+	private static final Logger logger = LoggerFactory.getLogger(OffHeapTermCache.class);
+
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+	private final ByteBuffer[] segments;
+	private final AtomicIntegerArray referenced;
+	private final List<List<String>> segmentKeys;
+	private final Map<String, Entry> index = new HashMap<String, Entry>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private int writeSegment = 0;
+	private int clockHand = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param capacityBytes The total amount of off heap memory to use
+	 */
+	public OffHeapTermCache(long capacityBytes) {
+		this(capacityBytes, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param capacityBytes The total amount of off heap memory to use
+	 * @param segmentSize   The size of each segment; no single encoded term may be larger than this
+	 */
+	public OffHeapTermCache(long capacityBytes, int segmentSize) {
+		if (segmentSize <= 0) {
+			throw new IllegalArgumentException("Segment size must be positive: " + segmentSize);
+		}
+		long segmentCount = capacityBytes / segmentSize;
+		if (segmentCount < 2) {
+			throw new IllegalArgumentException(String.format("Capacity %d must hold at least two segments of %d bytes", capacityBytes, segmentSize));
+		}
+		if (segmentCount > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(String.format("Capacity %d needs too many segments of %d bytes", capacityBytes, segmentSize));
+		}
+
+		segments = new ByteBuffer[(int) segmentCount];
+		referenced = new AtomicIntegerArray(segments.length);
+		segmentKeys = new ArrayList<List<String>>(segments.length);
+		for (int s = 0; s < segments.length; s++) {
+			segments[s] = ByteBuffer.allocateDirect(segmentSize);
+			segmentKeys.add(new ArrayList<String>());
+		}
+	}
+
+	@Override
+	public Term get(String key) {
+		byte[] data = getBytes(key);
+		if (data == null) {
+			return null;
+		}
+		try {
+			return BinaryCodec.decodeTerm(data);
+		} catch (IOException e) {
+			logger.warn("Unable to decode cached term {}: {}", key, e.getMessage());
+			invalidate(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Return the encoded form of the cached term without decoding it
+	 *
+	 * @param key The cache key
+	 * @return the encoded term, or null if there is none
+	 */
+	public byte[] getBytes(String key) {
+		lock.readLock().lock();
+		try {
+			Entry entry = index.get(key);
+			if (entry == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			byte[] data = new byte[entry.length];
+			ByteBuffer view = segments[entry.segment].duplicate();
+			view.position(entry.offset);
+			view.get(data);
+			referenced.set(entry.segment, 1);
+			hits.incrementAndGet();
+			return data;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void put(String key, Term term) {
+		if ((key == null) || (term == null)) {
+			return;
+		}
+		byte[] data;
+		try {
+			data = BinaryCodec.encode(term);
+		} catch (IOException e) {
+			logger.warn("Unable to encode term {}: {}", key, e.getMessage());
+			return;
+		}
+		putBytes(key, data);
+	}
+
+	public void putBytes(String key, byte[] data) {
+		if (data.length > segments[0].capacity()) {
+			logger.debug("Term {} is too large to cache ({} bytes)", key, data.length);
+			return;
+		}
+
+		lock.writeLock().lock();
+		try {
+			if (segments[writeSegment].remaining() < data.length) {
+				advanceWriteSegment();
+			}
+			ByteBuffer segment = segments[writeSegment];
+			int offset = segment.position();
+			segment.put(data);
+			index.put(key, new Entry(writeSegment, offset, data.length));
+			segmentKeys.get(writeSegment).add(key);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void invalidate(String key) {
+		lock.writeLock().lock();
+		try {
+			// The bytes stay in their segment until it is reused
+			index.remove(key);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			index.clear();
+			for (int s = 0; s < segments.length; s++) {
+				segments[s].clear();
+				segmentKeys.get(s).clear();
+				referenced.set(s, 0);
+			}
+			writeSegment = 0;
+			clockHand = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public long getCapacity() {
+		return (long) segments.length * segments[0].capacity();
+	}
+
+	/** Must be called with the write lock held */
+	private void advanceWriteSegment() {
+		// Two passes at most: the first may only clear reference bits
+		int candidate = -1;
+		for (int step = 0; step < 2 * segments.length; step++) {
+			clockHand = (clockHand + 1) % segments.length;
+			if (clockHand == writeSegment) {
+				continue;
+			}
+			if (referenced.getAndSet(clockHand, 0) == 0) {
+				candidate = clockHand;
+				break;
+			}
+		}
+		if (candidate < 0) {
+			candidate = (writeSegment + 1) % segments.length;
+		}
+
+		List<String> keys = segmentKeys.get(candidate);
+		for (String key: keys) {
+			Entry entry = index.get(key);
+			if ((entry != null) && (entry.segment == candidate)) {
+				index.remove(key);
+				evictions.incrementAndGet();
+			}
+		}
+		keys.clear();
+		segments[candidate].clear();
+		referenced.set(candidate, 0);
+		writeSegment = candidate;
+	}
+
+	private static class Entry {
+		private final int segment;
+		private final int offset;
+		private final int length;
+
+		private Entry(int segment, int offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+//----------------------------------------------------------------------
+// Product:     Semantic Enhancement Server Java API
+//
+// (c) 2009 Smartlogic Semaphore Ltd
+//----------------------------------------------------------------------
+package com.smartlogic.ses.client.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.smartlogic.ses.client.OMStructure;
+
+/**
+ * A cache of parsed OM structures, keyed by the client on ontology and language. Clients do not cache
+ * structures unless one is set with SESClient.setStructureCache().
+ *
+ * Each structure is stored with a fingerprint of the index statistics and a hash of the response it was
+ * parsed from. Once the revalidation interval has passed, the client asks for the statistics, which is much
+ * smaller than the structure; if they are unchanged the cached structure is kept. Otherwise the structure is
+ * downloaded again and only parsed if its hash differs. A change to the structure that leaves every index's
+ * term counts unchanged is therefore not seen until the entry is invalidated or the cache cleared.
+ *
+ * The same OMStructure instance is returned to every caller for as long as it is cached, so callers must
+ * treat it as read-only.
+ */
+public class StructureCache {
+
+	private final long revalidateIntervalMS;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong statisticsMatches = new AtomicLong();
+	private final AtomicLong revalidations = new AtomicLong();
+	private final AtomicLong parses = new AtomicLong();
+
+	public StructureCache() {
+		this(0);
+	}
+
+	/**
+	 * @param revalidateIntervalMS How long a structure is returned without checking it against the server
+	 */
+	public StructureCache(long revalidateIntervalMS) {
+		if (revalidateIntervalMS < 0) {
+			throw new IllegalArgumentException("Revalidation interval must not be negative: " + revalidateIntervalMS);
+		}
+		this.revalidateIntervalMS = revalidateIntervalMS;
+	}
+
+	/**
+	 * @param key The cache key
+	 * @return the cached structure if it was validated within the revalidation interval, otherwise null
+	 */
+	public OMStructure getIfFresh(String key) {
+		Entry entry = entries.get(key);
+		if ((entry == null) || (revalidateIntervalMS == 0)
+				|| (System.currentTimeMillis() - entry.validatedAt >= revalidateIntervalMS)) {
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.structure;
+	}
+
+	/**
+	 * @param key                   The cache key
+	 * @param statisticsFingerprint The fingerprint of the index statistics just requested, or null if there are none
+	 * @return the cached structure if it was stored under the same statistics, otherwise null
+	 */
+	public OMStructure getIfStatisticsUnchanged(String key, String statisticsFingerprint) {
+		Entry entry = entries.get(key);
+		if ((entry == null) || (statisticsFingerprint == null)
+				|| !statisticsFingerprint.equals(entry.statisticsFingerprint)) {
+			return null;
+		}
+		entry.validatedAt = System.currentTimeMillis();
+		statisticsMatches.incrementAndGet();
+		return entry.structure;
+	}
+
+	/**
+	 * @param key                   The cache key
+	 * @param statisticsFingerprint The fingerprint of the index statistics the structure was downloaded under
+	 * @param contentHash           The hash of the structure response just downloaded
+	 * @return the cached structure if it was parsed from the same content, otherwise null
+	 */
+	public OMStructure getIfUnchanged(String key, String statisticsFingerprint, String contentHash) {
+		Entry entry = entries.get(key);
+		if ((entry == null) || !entry.contentHash.equals(contentHash)) {
+			return null;
+		}
+		entry.statisticsFingerprint = statisticsFingerprint;
+		entry.validatedAt = System.currentTimeMillis();
+		revalidations.incrementAndGet();
+		return entry.structure;
+	}
+
+	public void put(String key, String statisticsFingerprint, String contentHash, OMStructure structure) {
+		if (structure == null) {
+			entries.remove(key);
+			return;
+		}
+		entries.put(key, new Entry(statisticsFingerprint, contentHash, structure));
+		parses.incrementAndGet();
+	}
+
+	public void invalidate(String key) {
+		entries.remove(key);
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public long getRevalidateIntervalMS() {
+		return revalidateIntervalMS;
+	}
+
+	/** @return the number of structures returned without a request */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/** @return the number of structures returned after the index statistics were found unchanged */
+	public long getStatisticsMatchCount() {
+		return statisticsMatches.get();
+	}
+
+	/** @return the number of downloads that matched the cached structure */
+	public long getRevalidationCount() {
+		return revalidations.get();
+	}
+
+	/** @return the number of structures parsed and stored */
+	public long getParseCount() {
+		return parses.get();
+	}
+
+	private static class Entry {
+		private final String contentHash;
+		private final OMStructure structure;
+		private volatile String statisticsFingerprint;
+		private volatile long validatedAt;
+
+		private Entry(String statisticsFingerprint, String contentHash, OMStructure structure) {
+			this.statisticsFingerprint = statisticsFingerprint;
+			this.contentHash = contentHash;
+			this.structure = structure;
+			this.validatedAt = System.currentTimeMillis();
+		}
+	}
+}
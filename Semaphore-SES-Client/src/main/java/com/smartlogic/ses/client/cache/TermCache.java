@@ -0,0 +1,29 @@
+//----------------------------------------------------------------------
+// Product:     Semantic Enhancement Server Java API
+//
+// (c) 2009 Smartlogic Semaphore Ltd
+//----------------------------------------------------------------------
+package com.smartlogic.ses.client.cache;
+
+import com.smartlogic.ses.client.Term;
+
+/**
+ * A cache of terms that the SESClient consults before asking the server for term details.
+ *
+ * Keys are built by the client and already identify the ontology, language and detail level, so an
+ * implementation only needs to treat them as opaque strings. Implementations must be thread safe.
+ */
+public interface TermCache {
+
+	/**
+	 * @param key The cache key
+	 * @return the cached term, or null if there is none
+	 */
+	Term get(String key);
+
+	void put(String key, Term term);
+
+	void invalidate(String key);
+
+	void clear();
+}
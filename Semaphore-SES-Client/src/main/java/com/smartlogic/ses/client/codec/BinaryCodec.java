@@ -0,0 +1,89 @@
+//----------------------------------------------------------------------
+// Product:     Semantic Enhancement Server Java API
+//
+// (c) 2009 Smartlogic Semaphore Ltd
+//----------------------------------------------------------------------
+package com.smartlogic.ses.client.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.smartlogic.ses.client.Semaphore;
+import com.smartlogic.ses.client.Term;
+import com.smartlogic.ses.client.TermHint;
+
+/**
+ * Compact, versioned binary encoding of {@link Term}, {@link TermHint} and {@link Semaphore} objects.
+ *
+ * A stream starts with the four byte magic "SESB" followed by a one byte format version. It is then a
+ * sequence of records, each introduced by a one byte record type. Strings are dictionary encoded: the
+ * first occurrence of a string is written literally and every later occurrence within the same stream is
+ * written as a reference to it, so the class, facet and relationship names that repeat across a term set
+ * are only stored once.
+ *
+ * Use {@link BinaryWriter} and {@link BinaryReader} to stream many objects; the static methods here encode
+ * a single object into a self contained byte array.
+ */
+public final class BinaryCodec {
+
+	static final byte[] MAGIC = { 'S', 'E', 'S', 'B' };
+	static final int FORMAT_VERSION = 1;
+
+	static final int RECORD_TERM = 1;
+	static final int RECORD_TERM_HINT = 2;
+	static final int RECORD_SEMAPHORE = 3;
+
+	// String references: 0 is null, 1 is a literal, anything else is a dictionary index offset by 2
+	static final int STRING_NULL = 0;
+	static final int STRING_LITERAL = 1;
+	static final int STRING_REFERENCE_BASE = 2;
+
+	// Both ends of the stream apply the same rules, so the dictionaries always stay in step
+	static final int MAX_DICTIONARY_SIZE = 1 << 16;
+	static final int MAX_DICTIONARY_STRING_LENGTH = 256;
+
+	private BinaryCodec() {}
+
+	public static byte[] encode(Term term) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try (BinaryWriter writer = new BinaryWriter(byteArrayOutputStream)) {
+			writer.writeTerm(term);
+		}
+		return byteArrayOutputStream.toByteArray();
+	}
+
+	public static byte[] encode(TermHint termHint) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try (BinaryWriter writer = new BinaryWriter(byteArrayOutputStream)) {
+			writer.writeTermHint(termHint);
+		}
+		return byteArrayOutputStream.toByteArray();
+	}
+
+	public static byte[] encode(Semaphore semaphore) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try (BinaryWriter writer = new BinaryWriter(byteArrayOutputStream)) {
+			writer.writeSemaphore(semaphore);
+		}
+		return byteArrayOutputStream.toByteArray();
+	}
+
+	public static Term decodeTerm(byte[] data) throws IOException {
+		try (BinaryReader reader = new BinaryReader(new ByteArrayInputStream(data))) {
+			return reader.readTerm();
+		}
+	}
+
+	public static TermHint decodeTermHint(byte[] data) throws IOException {
+		try (BinaryReader reader = new BinaryReader(new ByteArrayInputStream(data))) {
+			return reader.readTermHint();
+		}
+	}
+
+	public static Semaphore decodeSemaphore(byte[] data) throws IOException {
+		try (BinaryReader reader = new BinaryReader(new ByteArrayInputStream(data))) {
+			return reader.readSemaphore();
+		}
+	}
+}
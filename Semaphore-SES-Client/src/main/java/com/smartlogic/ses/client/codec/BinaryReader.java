@@ -0,0 +1,734 @@
+//----------------------------------------------------------------------
+// Product:     Semantic Enhancement Server Java API
+//
+// (c) 2009 Smartlogic Semaphore Ltd
+//----------------------------------------------------------------------
+package com.smartlogic.ses.client.codec;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import com.smartlogic.ses.client.AbstractFieldListElement;
+import com.smartlogic.ses.client.AbstractFieldMapElement;
+import com.smartlogic.ses.client.AbstractSimpleNode;
+import com.smartlogic.ses.client.Associated;
+import com.smartlogic.ses.client.Attribute;
+import com.smartlogic.ses.client.AttributeType;
+import com.smartlogic.ses.client.ChoiceType;
+import com.smartlogic.ses.client.ChoiceValue;
+import com.smartlogic.ses.client.ClassType;
+import com.smartlogic.ses.client.CreatedDate;
+import com.smartlogic.ses.client.DisplayName;
+import com.smartlogic.ses.client.Error;
+import com.smartlogic.ses.client.Facet;
+import com.smartlogic.ses.client.Facets;
+import com.smartlogic.ses.client.Field;
+import com.smartlogic.ses.client.Frequency;
+import com.smartlogic.ses.client.Hierarchy;
+import com.smartlogic.ses.client.Id;
+import com.smartlogic.ses.client.Message;
+import com.smartlogic.ses.client.Metadata;
+import com.smartlogic.ses.client.Model;
+import com.smartlogic.ses.client.ModifiedDate;
+import com.smartlogic.ses.client.Name;
+import com.smartlogic.ses.client.NoteType;
+import com.smartlogic.ses.client.OMStructure;
+import com.smartlogic.ses.client.Parameter;
+import com.smartlogic.ses.client.Parameters;
+import com.smartlogic.ses.client.Path;
+import com.smartlogic.ses.client.RelationMetadata;
+import com.smartlogic.ses.client.RelationType;
+import com.smartlogic.ses.client.Semaphore;
+import com.smartlogic.ses.client.StatisticsInfo;
+import com.smartlogic.ses.client.Synonym;
+import com.smartlogic.ses.client.Synonyms;
+import com.smartlogic.ses.client.Term;
+import com.smartlogic.ses.client.TermClass;
+import com.smartlogic.ses.client.TermClasses;
+import com.smartlogic.ses.client.TermHint;
+import com.smartlogic.ses.client.TermHints;
+import com.smartlogic.ses.client.Terms;
+import com.smartlogic.ses.client.Type;
+import com.smartlogic.ses.client.User;
+import com.smartlogic.ses.client.Value;
+import com.smartlogic.ses.client.Values;
+import com.smartlogic.ses.client.VersionInfo;
+import com.smartlogic.ses.client.utils.FieldComparator;
+
+/**
+ * Reads terms, term hints and semaphore objects written by a {@link BinaryWriter}.
+ *
+ * The reader buffers the underlying stream and so should be the only consumer of it. Each of the read
+ * methods returns null once the stream is exhausted. Not thread safe.
+ */
+public class BinaryReader implements Closeable {
+
+	private static final FieldComparator alphabeticalComparator = new FieldComparator(FieldComparator.SortField.ALPHABETICAL);
+	private static final FieldComparator frequencyComparator = new FieldComparator(FieldComparator.SortField.FREQUENCY);
+
+	private final DataInputStream in;
+	private final List<String> dictionary = new ArrayList<String>();
+
+	public BinaryReader(InputStream inputStream) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(inputStream));
+
+		byte[] magic = new byte[BinaryCodec.MAGIC.length];
+		in.readFully(magic);
+		for (int i = 0; i < magic.length; i++) {
+			if (magic[i] != BinaryCodec.MAGIC[i]) {
+				throw new StreamCorruptedException("Stream does not contain SES binary data");
+			}
+		}
+		int version = in.readUnsignedByte();
+		if (version > BinaryCodec.FORMAT_VERSION) {
+			throw new StreamCorruptedException(String.format("Unsupported SES binary format version %d (maximum supported is %d)", version, BinaryCodec.FORMAT_VERSION));
+		}
+	}
+
+	/**
+	 * Read the next record whatever its type
+	 *
+	 * @return the next Term, TermHint or Semaphore, or null at the end of the stream
+	 * @throws IOException if the stream cannot be read or is corrupt
+	 */
+	public Object read() throws IOException {
+		int recordType = in.read();
+		switch (recordType) {
+		case -1:
+			return null;
+		case BinaryCodec.RECORD_TERM:
+			return readTermBody();
+		case BinaryCodec.RECORD_TERM_HINT:
+			return readTermHintBody();
+		case BinaryCodec.RECORD_SEMAPHORE:
+			return readSemaphoreBody();
+		default:
+			throw new StreamCorruptedException("Unknown record type: " + recordType);
+		}
+	}
+
+	public Term readTerm() throws IOException {
+		return readRecord(Term.class);
+	}
+
+	public TermHint readTermHint() throws IOException {
+		return readRecord(TermHint.class);
+	}
+
+	public Semaphore readSemaphore() throws IOException {
+		return readRecord(Semaphore.class);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private <T> T readRecord(Class<T> expectedClass) throws IOException {
+		Object object = read();
+		if ((object != null) && !expectedClass.isInstance(object)) {
+			throw new StreamCorruptedException(String.format("Expected %s but found %s", expectedClass.getSimpleName(), object.getClass().getSimpleName()));
+		}
+		return expectedClass.cast(object);
+	}
+
+	//----------------------------------------------------------------------
+	// Object graph
+	//----------------------------------------------------------------------
+	private Term readTermBody() throws IOException {
+		if (!readPresence()) return null;
+
+		Term term = new Term();
+		term.setStatus(readString());
+		term.setURI(readString());
+		term.setIndex(readString());
+		term.setName(readSimpleNode(Name::new));
+		term.setId(readSimpleNode(Id::new));
+		term.setZid(readSimpleNode(Id::new));
+		term.setDisplayName(readDisplayName());
+		term.setFrequency(readSimpleNode(Frequency::new));
+		term.setTermClasses(readTermClasses());
+
+		int termClassMode = in.readUnsignedByte();
+		if (termClassMode == 1) {
+			term.setTermClass(term.getTermClasses().getTermClasses().get(0));
+		} else if (termClassMode == 2) {
+			TermClass termClass = new TermClass();
+			termClass.setValue(readString());
+			term.setTermClass(termClass);
+		}
+
+		int size = readSize();
+		if (size >= 0) {
+			List<Path> paths = new ArrayList<Path>(size);
+			for (int i = 0; i < size; i++) paths.add(readFieldList(Path::new));
+			term.setPaths(paths);
+		} else {
+			term.setPaths(null);
+		}
+		size = readSize();
+		if (size >= 0) {
+			List<Hierarchy> hierarchies = new ArrayList<Hierarchy>(size);
+			for (int i = 0; i < size; i++) hierarchies.add(readFieldMap(Hierarchy::new));
+			term.setHierarchies(hierarchies);
+		} else {
+			term.setHierarchies(null);
+		}
+		size = readSize();
+		if (size >= 0) {
+			List<Associated> associateds = new ArrayList<Associated>(size);
+			for (int i = 0; i < size; i++) associateds.add(readFieldMap(Associated::new));
+			term.setAssociateds(associateds);
+		} else {
+			term.setAssociateds(null);
+		}
+
+		term.setFacets(readFacets());
+		term.setAttribute(readFieldMap(Attribute::new));
+		term.setMetadata(readFieldMap(Metadata::new));
+
+		size = readSize();
+		if (size >= 0) {
+			// addSynonyms keeps the deprecated single synonyms field pointing at the last entry, as parsing does
+			for (int i = 0; i < size; i++) term.addSynonyms(readSynonyms());
+		} else {
+			term.setSynonymsList(null);
+		}
+
+		term.setCreatedDate(readSimpleNode(CreatedDate::new));
+		term.setModifiedDate(readSimpleNode(ModifiedDate::new));
+		term.setPercentage(in.readFloat());
+		term.setRank(readSignedVarInt());
+		term.setSrc(readSignedVarInt());
+		term.setWeight(in.readFloat());
+		return term;
+	}
+
+	@SuppressWarnings("deprecation")
+	private TermHint readTermHintBody() throws IOException {
+		if (!readPresence()) return null;
+
+		TermHint termHint = new TermHint();
+		termHint.setName(readString());
+		termHint.setId(readString());
+		termHint.setIndex(readString());
+		termHint.setWeight(in.readFloat());
+		termHint.setTermClass(readString());
+		termHint.setFacets(readFacets());
+
+		int facetMode = in.readUnsignedByte();
+		if (facetMode == 1) {
+			List<Facet> facetList = termHint.getFacets().getFacets();
+			termHint.setFacet(facetList.get(facetList.size() - 1));
+		} else if (facetMode == 2) {
+			termHint.setFacet(readFacet());
+		}
+
+		termHint.setTermClasses(readTermClasses());
+		termHint.setHint(readString());
+
+		if (readPresence()) {
+			Values values = new Values();
+			int size = readSize();
+			if (size >= 0) {
+				List<Value> valueList = new ArrayList<Value>(size);
+				for (int i = 0; i < size; i++) {
+					if (!readPresence()) {
+						valueList.add(null);
+						continue;
+					}
+					Value value = new Value();
+					value.setNature(readString());
+					value.setId(readString());
+					value.setEm(readString());
+					value.setPreEm(readString());
+					value.setPostEm(readString());
+					valueList.add(value);
+				}
+				values.setValues(valueList);
+			} else {
+				values.setValues(null);
+			}
+			termHint.setValues(values);
+		}
+		return termHint;
+	}
+
+	private Semaphore readSemaphoreBody() throws IOException {
+		if (!readPresence()) return null;
+
+		Semaphore semaphore = new Semaphore();
+
+		if (readPresence()) {
+			Parameters parameters = new Parameters();
+			int size = readSize();
+			if (size >= 0) {
+				List<Parameter> parameterList = new ArrayList<Parameter>(size);
+				for (int i = 0; i < size; i++) {
+					if (!readPresence()) {
+						parameterList.add(null);
+						continue;
+					}
+					Parameter parameter = new Parameter();
+					parameter.setName(readString());
+					parameter.setValue(readString());
+					parameterList.add(parameter);
+				}
+				parameters.setParameters(parameterList);
+			}
+			semaphore.setParameters(parameters);
+		}
+
+		if (readPresence()) {
+			Terms terms = new Terms();
+			terms.setId(readString());
+			int size = readSize();
+			if (size >= 0) {
+				Map<String, Term> termMap = new LinkedHashMap<String, Term>();
+				for (int i = 0; i < size; i++) {
+					String key = readString();
+					termMap.put(key, readTermBody());
+				}
+				terms.setTerms(termMap);
+			} else {
+				terms.setTerms(null);
+			}
+			semaphore.setTerms(terms);
+		}
+
+		semaphore.setBrowseTerm(readTermBody());
+
+		if (readPresence()) {
+			TermHints termHints = new TermHints();
+			int size = readSize();
+			if (size >= 0) {
+				Map<String, TermHint> termHintMap = new LinkedHashMap<String, TermHint>();
+				for (int i = 0; i < size; i++) {
+					String key = readString();
+					termHintMap.put(key, readTermHintBody());
+				}
+				termHints.setTermHints(termHintMap);
+			}
+			semaphore.setTermHints(termHints);
+		}
+
+		int size = readSize();
+		if (size >= 0) {
+			Collection<Model> models = new TreeSet<Model>();
+			for (int i = 0; i < size; i++) {
+				if (!readPresence()) continue;
+				Model model = new Model();
+				model.setName(readString());
+				int languageCount = readSize();
+				if (languageCount >= 0) {
+					Collection<String> languages = new TreeSet<String>();
+					for (int l = 0; l < languageCount; l++) languages.add(readString());
+					model.setLanguages(languages);
+				} else {
+					model.setLanguages(null);
+				}
+				models.add(model);
+			}
+			semaphore.setModels(models);
+		} else {
+			semaphore.setModels(null);
+		}
+
+		if (readPresence()) {
+			VersionInfo versionInfo = new VersionInfo();
+			versionInfo.setIndexStructure(readString());
+			versionInfo.setApi(readString());
+			versionInfo.setBuild(readString());
+			versionInfo.setVersion(readString());
+			semaphore.setVersionInfo(versionInfo);
+		}
+
+		if (readPresence()) {
+			StatisticsInfo statisticsInfo = new StatisticsInfo();
+			statisticsInfo.setNumOfIndexes(readSignedVarInt());
+			statisticsInfo.setNumOfWorkers(readSignedVarInt());
+			statisticsInfo.setTotalNumOfRequests(readSignedVarInt());
+			statisticsInfo.setAvgNumOfRequestsPerSecOver5Mins(in.readDouble());
+			statisticsInfo.setAvgNumOfRequestsPerSecOverLastHour(in.readDouble());
+			statisticsInfo.setPeakNumOfRequestsPerSec(in.readDouble());
+			int termCountSize = readSize();
+			if (termCountSize >= 0) {
+				Map<String, Integer> termCounts = new HashMap<String, Integer>();
+				for (int i = 0; i < termCountSize; i++) {
+					String key = readString();
+					termCounts.put(key, readSignedVarInt());
+				}
+				statisticsInfo.setTermCounts(termCounts);
+			} else {
+				statisticsInfo.setTermCounts(null);
+			}
+			semaphore.setStatisticsInfo(statisticsInfo);
+		}
+
+		semaphore.setOmStructure(readOMStructure());
+
+		if (readPresence()) {
+			Error error = new Error();
+			error.setType(readSimpleNode(Type::new));
+			error.setMessage(readSimpleNode(Message::new));
+			semaphore.setError(error);
+		}
+		return semaphore;
+	}
+
+	private OMStructure readOMStructure() throws IOException {
+		if (!readPresence()) return null;
+
+		OMStructure omStructure = new OMStructure();
+
+		int size = readSize();
+		if (size >= 0) {
+			List<ClassType> classTypes = new ArrayList<ClassType>(size);
+			for (int i = 0; i < size; i++) {
+				if (!readPresence()) {
+					classTypes.add(null);
+					continue;
+				}
+				ClassType classType = new ClassType();
+				classType.setId(readString());
+				classType.setParentId(readString());
+				classType.setName(readString());
+				classTypes.add(classType);
+			}
+			omStructure.setClassTypes(classTypes);
+		}
+		size = readSize();
+		if (size >= 0) {
+			List<Field> facets = new ArrayList<Field>(size);
+			for (int i = 0; i < size; i++) facets.add(readField());
+			omStructure.setFacets(facets);
+		}
+		size = readSize();
+		if (size >= 0) {
+			List<AttributeType> attributeTypes = new ArrayList<AttributeType>(size);
+			for (int i = 0; i < size; i++) {
+				if (!readPresence()) {
+					attributeTypes.add(null);
+					continue;
+				}
+				AttributeType attributeType = new AttributeType();
+				attributeType.setId(readString());
+				attributeType.setName(readString());
+				attributeTypes.add(attributeType);
+			}
+			omStructure.setAttributes(attributeTypes);
+		}
+		size = readSize();
+		if (size >= 0) {
+			List<NoteType> noteTypes = new ArrayList<NoteType>(size);
+			for (int i = 0; i < size; i++) {
+				if (!readPresence()) {
+					noteTypes.add(null);
+					continue;
+				}
+				NoteType noteType = new NoteType();
+				noteType.setId(readString());
+				noteType.setName(readString());
+				noteTypes.add(noteType);
+			}
+			omStructure.setNotes(noteTypes);
+		}
+		size = readSize();
+		if (size >= 0) {
+			List<ChoiceType> choiceTypes = new ArrayList<ChoiceType>(size);
+			for (int i = 0; i < size; i++) {
+				if (!readPresence()) {
+					choiceTypes.add(null);
+					continue;
+				}
+				ChoiceType choiceType = new ChoiceType();
+				choiceType.setId(readString());
+				choiceType.setName(readString());
+				int valueCount = readSize();
+				if (valueCount >= 0) {
+					List<ChoiceValue> choiceValues = new ArrayList<ChoiceValue>(valueCount);
+					for (int v = 0; v < valueCount; v++) {
+						if (!readPresence()) {
+							choiceValues.add(null);
+							continue;
+						}
+						ChoiceValue choiceValue = new ChoiceValue();
+						choiceValue.setId(readString());
+						choiceValue.setValue(readString());
+						choiceValues.add(choiceValue);
+					}
+					choiceType.setChoiceValues(choiceValues);
+				} else {
+					choiceType.setChoiceValues(null);
+				}
+				choiceTypes.add(choiceType);
+			}
+			omStructure.setChoices(choiceTypes);
+		}
+		omStructure.setEquivalenceRelations(readRelationTypes());
+		omStructure.setHierarchicalRelations(readRelationTypes());
+		omStructure.setAssociativeRelations(readRelationTypes());
+		size = readSize();
+		if (size >= 0) {
+			List<User> users = new ArrayList<User>(size);
+			for (int i = 0; i < size; i++) {
+				if (!readPresence()) {
+					users.add(null);
+					continue;
+				}
+				User user = new User();
+				user.setId(readString());
+				user.setName(readString());
+				users.add(user);
+			}
+			omStructure.setUsers(users);
+		}
+		return omStructure;
+	}
+
+	private List<RelationType> readRelationTypes() throws IOException {
+		int size = readSize();
+		if (size < 0) return null;
+
+		List<RelationType> relationTypes = new ArrayList<RelationType>(size);
+		for (int i = 0; i < size; i++) {
+			if (!readPresence()) {
+				relationTypes.add(null);
+				continue;
+			}
+			RelationType relationType = new RelationType();
+			relationType.setSymmetric(in.readBoolean());
+			relationType.setId(readString());
+			relationType.setName(readString());
+			relationType.setReverseName(readString());
+			relationType.setDisplayName(readString());
+			relationType.setReverseDisplayName(readString());
+			relationType.setScopeNote(readString());
+			relationType.setAbbreviation(readString());
+			relationType.setReverseAbbreviation(readString());
+			relationTypes.add(relationType);
+		}
+		return relationTypes;
+	}
+
+	private DisplayName readDisplayName() throws IOException {
+		if (!readPresence()) return null;
+		DisplayName displayName = new DisplayName();
+		displayName.setValue(readString());
+		displayName.setMatchOnNPT(in.readBoolean());
+		return displayName;
+	}
+
+	private TermClasses readTermClasses() throws IOException {
+		if (!readPresence()) return null;
+		TermClasses termClasses = new TermClasses();
+		int size = readSize();
+		if (size >= 0) {
+			List<TermClass> termClassList = new ArrayList<TermClass>(size);
+			for (int i = 0; i < size; i++) termClassList.add(readSimpleNode(TermClass::new));
+			termClasses.setTermClasses(termClassList);
+		} else {
+			termClasses.setTermClasses(null);
+		}
+		return termClasses;
+	}
+
+	private Facets readFacets() throws IOException {
+		if (!readPresence()) return null;
+		Facets facets = new Facets();
+		int size = readSize();
+		if (size >= 0) {
+			List<Facet> facetList = new ArrayList<Facet>(size);
+			for (int i = 0; i < size; i++) facetList.add(readFacet());
+			facets.setFacets(facetList);
+		} else {
+			facets.setFacets(null);
+		}
+		return facets;
+	}
+
+	private Facet readFacet() throws IOException {
+		if (!readPresence()) return null;
+		Facet facet = new Facet();
+		facet.setName(readString());
+		facet.setId(readString());
+		return facet;
+	}
+
+	private Synonyms readSynonyms() throws IOException {
+		if (!readPresence()) return null;
+		Synonyms synonyms = new Synonyms();
+		synonyms.setType(readString());
+		synonyms.setAbbreviation(readString());
+		int size = readSize();
+		if (size >= 0) {
+			List<Synonym> synonymList = new ArrayList<Synonym>(size);
+			for (int i = 0; i < size; i++) {
+				if (!readPresence()) {
+					synonymList.add(null);
+					continue;
+				}
+				Synonym synonym = new Synonym();
+				synonym.setValue(readString());
+				synonym.setId(readString());
+				synonym.setRelationMetadata(readRelationMetadata());
+				synonymList.add(synonym);
+			}
+			synonyms.setSynonyms(synonymList);
+		} else {
+			synonyms.setSynonyms(null);
+		}
+		return synonyms;
+	}
+
+	private <T extends AbstractFieldListElement> T readFieldList(Supplier<T> supplier) throws IOException {
+		if (!readPresence()) return null;
+		T element = supplier.get();
+		element.setType(readString());
+		element.setAbbreviation(readString());
+		int size = readSize();
+		if (size >= 0) {
+			List<Field> fields = new ArrayList<Field>(size);
+			for (int i = 0; i < size; i++) fields.add(readField());
+			element.setFields(fields);
+		}
+		return element;
+	}
+
+	/** The sorted views of the fields are not stored, they are rebuilt from the field map */
+	private <T extends AbstractFieldMapElement> T readFieldMap(Supplier<T> supplier) throws IOException {
+		if (!readPresence()) return null;
+		T element = supplier.get();
+		element.setType(readString());
+		element.setAbbreviation(readString());
+		element.setCount(readSignedVarInt());
+		int size = readSize();
+		if (size >= 0) {
+			Map<String, Field> fieldMap = new HashMap<String, Field>();
+			TreeSet<Field> alphabeticalFields = new TreeSet<Field>(alphabeticalComparator);
+			TreeSet<Field> frequencyFields = new TreeSet<Field>(frequencyComparator);
+			for (int i = 0; i < size; i++) {
+				String key = readString();
+				Field field = readField();
+				fieldMap.put(key, field);
+				if (field != null) {
+					alphabeticalFields.add(field);
+					frequencyFields.add(field);
+				}
+			}
+			element.setFields(fieldMap);
+			element.setAlphabeticalFields(alphabeticalFields);
+			element.setFrequencyFields(frequencyFields);
+		}
+		return element;
+	}
+
+	private Field readField() throws IOException {
+		if (!readPresence()) return null;
+		Field field = new Field();
+		field.setValue(readString());
+		field.setFrequency(readSignedVarInt());
+		field.setId(readString());
+		field.setZid(readString());
+		field.setTermClass(readString());
+		field.setName(readString());
+		field.setFacetIds(readStrings());
+		field.setFacets(readStrings());
+		field.setRelationMetadata(readRelationMetadata());
+		return field;
+	}
+
+	private RelationMetadata readRelationMetadata() throws IOException {
+		if (!readPresence()) return null;
+		RelationMetadata relationMetadata = new RelationMetadata();
+		relationMetadata.setAttribute(readFieldMap(Attribute::new));
+		relationMetadata.setMetadata(readFieldMap(Metadata::new));
+		return relationMetadata;
+	}
+
+	private <T extends AbstractSimpleNode> T readSimpleNode(Supplier<T> supplier) throws IOException {
+		if (!readPresence()) return null;
+		T node = supplier.get();
+		node.setValue(readString());
+		return node;
+	}
+
+	private List<String> readStrings() throws IOException {
+		int size = readSize();
+		if (size < 0) return null;
+		List<String> strings = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) strings.add(readString());
+		return strings;
+	}
+
+	//----------------------------------------------------------------------
+	// Primitives
+	//----------------------------------------------------------------------
+	private boolean readPresence() throws IOException {
+		return in.readBoolean();
+	}
+
+	/** @return the collection size, or -1 if the collection was null */
+	private int readSize() throws IOException {
+		return readVarInt() - 1;
+	}
+
+	private String readString() throws IOException {
+		int code = readVarInt();
+		if (code == BinaryCodec.STRING_NULL) {
+			return null;
+		}
+		if (code != BinaryCodec.STRING_LITERAL) {
+			int index = code - BinaryCodec.STRING_REFERENCE_BASE;
+			if (index >= dictionary.size()) {
+				throw new StreamCorruptedException("String reference out of range: " + index);
+			}
+			return dictionary.get(index);
+		}
+
+		int length = readVarInt();
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		String string = new String(bytes, StandardCharsets.UTF_8);
+
+		if ((dictionary.size() < BinaryCodec.MAX_DICTIONARY_SIZE)
+				&& (string.length() <= BinaryCodec.MAX_DICTIONARY_STRING_LENGTH)) {
+			dictionary.add(string);
+		}
+		return string;
+	}
+
+	private int readSignedVarInt() throws IOException {
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed variable length integer");
+	}
+}
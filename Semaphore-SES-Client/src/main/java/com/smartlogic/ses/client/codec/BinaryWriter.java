@@ -0,0 +1,496 @@
+//----------------------------------------------------------------------
+// Product:     Semantic Enhancement Server Java API
+//
+// (c) 2009 Smartlogic Semaphore Ltd
+//----------------------------------------------------------------------
+package com.smartlogic.ses.client.codec;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.smartlogic.ses.client.AbstractFieldListElement;
+import com.smartlogic.ses.client.AbstractFieldMapElement;
+import com.smartlogic.ses.client.AbstractSimpleNode;
+import com.smartlogic.ses.client.AttributeType;
+import com.smartlogic.ses.client.ChoiceType;
+import com.smartlogic.ses.client.ChoiceValue;
+import com.smartlogic.ses.client.ClassType;
+import com.smartlogic.ses.client.DisplayName;
+import com.smartlogic.ses.client.Error;
+import com.smartlogic.ses.client.Facet;
+import com.smartlogic.ses.client.Facets;
+import com.smartlogic.ses.client.Field;
+import com.smartlogic.ses.client.Model;
+import com.smartlogic.ses.client.NoteType;
+import com.smartlogic.ses.client.OMStructure;
+import com.smartlogic.ses.client.Parameter;
+import com.smartlogic.ses.client.Parameters;
+import com.smartlogic.ses.client.RelationMetadata;
+import com.smartlogic.ses.client.RelationType;
+import com.smartlogic.ses.client.Semaphore;
+import com.smartlogic.ses.client.StatisticsInfo;
+import com.smartlogic.ses.client.Synonym;
+import com.smartlogic.ses.client.Synonyms;
+import com.smartlogic.ses.client.Term;
+import com.smartlogic.ses.client.TermClass;
+import com.smartlogic.ses.client.TermClasses;
+import com.smartlogic.ses.client.TermHint;
+import com.smartlogic.ses.client.TermHints;
+import com.smartlogic.ses.client.Terms;
+import com.smartlogic.ses.client.User;
+import com.smartlogic.ses.client.Value;
+import com.smartlogic.ses.client.Values;
+import com.smartlogic.ses.client.VersionInfo;
+
+/**
+ * Writes terms, term hints and semaphore objects to a stream in the format described by {@link BinaryCodec}.
+ *
+ * The string dictionary lives for as long as the writer, so writing a whole term set through one writer is
+ * considerably more compact than encoding each term separately. Not thread safe.
+ */
+public class BinaryWriter implements Closeable, Flushable {
+
+	private final DataOutputStream out;
+	private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+	public BinaryWriter(OutputStream outputStream) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(outputStream));
+		out.write(BinaryCodec.MAGIC);
+		out.writeByte(BinaryCodec.FORMAT_VERSION);
+	}
+
+	public void writeTerm(Term term) throws IOException {
+		out.writeByte(BinaryCodec.RECORD_TERM);
+		writeTermBody(term);
+	}
+
+	public void writeTerms(Collection<Term> terms) throws IOException {
+		for (Term term: terms) {
+			writeTerm(term);
+		}
+	}
+
+	public void writeTermHint(TermHint termHint) throws IOException {
+		out.writeByte(BinaryCodec.RECORD_TERM_HINT);
+		writeTermHintBody(termHint);
+	}
+
+	public void writeSemaphore(Semaphore semaphore) throws IOException {
+		out.writeByte(BinaryCodec.RECORD_SEMAPHORE);
+		writeSemaphoreBody(semaphore);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	//----------------------------------------------------------------------
+	// Object graph
+	//----------------------------------------------------------------------
+	@SuppressWarnings("deprecation")
+	private void writeTermBody(Term term) throws IOException {
+		if (!writePresence(term)) return;
+
+		writeString(term.getStatus());
+		writeString(term.getURI());
+		writeString(term.getIndex());
+		writeSimpleNode(term.getName());
+		writeSimpleNode(term.getId());
+		// getZid() falls back to the id, only store a genuinely separate value
+		writeSimpleNode((term.getZid() == term.getId()) ? null : term.getZid());
+		writeDisplayName(term.getDisplayName());
+		writeSimpleNode(term.getFrequency());
+		writeTermClasses(term.getTermClasses());
+
+		// The deprecated single class is normally the first of the class list
+		TermClass termClass = term.getTermClass();
+		if (termClass == null) {
+			out.writeByte(0);
+		} else if ((term.getTermClasses() != null) && (term.getTermClasses().getTermClasses() != null)
+				&& !term.getTermClasses().getTermClasses().isEmpty()
+				&& (term.getTermClasses().getTermClasses().get(0) == termClass)) {
+			out.writeByte(1);
+		} else {
+			out.writeByte(2);
+			writeString(termClass.getValue());
+		}
+
+		List<? extends AbstractFieldListElement> paths = term.getPaths();
+		if (writeSize(paths)) {
+			for (AbstractFieldListElement path: paths) writeFieldList(path);
+		}
+		List<? extends AbstractFieldMapElement> hierarchies = term.getHierarchies();
+		if (writeSize(hierarchies)) {
+			for (AbstractFieldMapElement hierarchy: hierarchies) writeFieldMap(hierarchy);
+		}
+		List<? extends AbstractFieldMapElement> associateds = term.getAssociateds();
+		if (writeSize(associateds)) {
+			for (AbstractFieldMapElement associated: associateds) writeFieldMap(associated);
+		}
+
+		writeFacets(term.getFacets());
+		writeFieldMap(term.getAttribute());
+		writeFieldMap(term.getMetadata());
+
+		List<Synonyms> synonymsList = term.getSynonymsList();
+		if (writeSize(synonymsList)) {
+			for (Synonyms synonyms: synonymsList) writeSynonyms(synonyms);
+		}
+
+		writeSimpleNode(term.getCreatedDate());
+		writeSimpleNode(term.getModifiedDate());
+		out.writeFloat(term.getPercentage());
+		writeSignedVarInt(term.getRank());
+		writeSignedVarInt(term.getSrc());
+		out.writeFloat(term.getWeight());
+	}
+
+	@SuppressWarnings("deprecation")
+	private void writeTermHintBody(TermHint termHint) throws IOException {
+		if (!writePresence(termHint)) return;
+
+		writeString(termHint.getName());
+		writeString(termHint.getId());
+		writeString(termHint.getIndex());
+		out.writeFloat(termHint.getWeight());
+		writeString(termHint.getTermClass());
+		writeFacets(termHint.getFacets());
+
+		// The deprecated single facet is normally the last of the facet list
+		Facet facet = termHint.getFacet();
+		List<Facet> facetList = (termHint.getFacets() == null) ? null : termHint.getFacets().getFacets();
+		if (facet == null) {
+			out.writeByte(0);
+		} else if ((facetList != null) && !facetList.isEmpty() && (facetList.get(facetList.size() - 1) == facet)) {
+			out.writeByte(1);
+		} else {
+			out.writeByte(2);
+			writeFacet(facet);
+		}
+
+		writeTermClasses(termHint.getTermClasses());
+		writeString(termHint.getHint());
+
+		Values values = termHint.getValues();
+		if (writePresence(values) && writeSize(values.getValues())) {
+			for (Value value: values.getValues()) {
+				if (!writePresence(value)) continue;
+				writeString(value.getNature());
+				writeString(value.getId());
+				writeString(value.getEm());
+				writeString(value.getPreEm());
+				writeString(value.getPostEm());
+			}
+		}
+	}
+
+	private void writeSemaphoreBody(Semaphore semaphore) throws IOException {
+		if (!writePresence(semaphore)) return;
+
+		Parameters parameters = semaphore.getParameters();
+		if (writePresence(parameters) && writeSize(parameters.getParameters())) {
+			for (Parameter parameter: parameters.getParameters()) {
+				if (!writePresence(parameter)) continue;
+				writeString(parameter.getName());
+				writeString(parameter.getValue());
+			}
+		}
+
+		Terms terms = semaphore.getTerms();
+		if (writePresence(terms)) {
+			writeString(terms.getId());
+			if (writeSize(terms.getTerms())) {
+				for (Map.Entry<String, Term> entry: terms.getTerms().entrySet()) {
+					writeString(entry.getKey());
+					writeTermBody(entry.getValue());
+				}
+			}
+		}
+
+		writeTermBody(semaphore.getBrowseTerm());
+
+		TermHints termHints = semaphore.getTermHints();
+		if (writePresence(termHints) && writeSize(termHints.getTermHints())) {
+			for (Map.Entry<String, TermHint> entry: termHints.getTermHints().entrySet()) {
+				writeString(entry.getKey());
+				writeTermHintBody(entry.getValue());
+			}
+		}
+
+		Collection<Model> models = semaphore.getModels();
+		if (writeSize(models)) {
+			for (Model model: models) {
+				if (!writePresence(model)) continue;
+				writeString(model.getName());
+				writeStrings(model.getLanguages());
+			}
+		}
+
+		VersionInfo versionInfo = semaphore.getVersionInfo();
+		if (writePresence(versionInfo)) {
+			writeString(versionInfo.getIndexStructure());
+			writeString(versionInfo.getApi());
+			writeString(versionInfo.getBuild());
+			writeString(versionInfo.getVersion());
+		}
+
+		StatisticsInfo statisticsInfo = semaphore.getStatisticsInfo();
+		if (writePresence(statisticsInfo)) {
+			writeSignedVarInt(statisticsInfo.getNumOfIndexes());
+			writeSignedVarInt(statisticsInfo.getNumOfWorkers());
+			writeSignedVarInt(statisticsInfo.getTotalNumOfRequests());
+			out.writeDouble(statisticsInfo.getAvgNumOfRequestsPerSecOver5Mins());
+			out.writeDouble(statisticsInfo.getAvgNumOfRequestsPerSecOverLastHour());
+			out.writeDouble(statisticsInfo.getPeakNumOfRequestsPerSec());
+			if (writeSize(statisticsInfo.getTermCounts())) {
+				for (Map.Entry<String, Integer> entry: statisticsInfo.getTermCounts().entrySet()) {
+					writeString(entry.getKey());
+					writeSignedVarInt(entry.getValue() == null ? 0 : entry.getValue());
+				}
+			}
+		}
+
+		writeOMStructure(semaphore.getOmStructure());
+
+		Error error = semaphore.getError();
+		if (writePresence(error)) {
+			writeSimpleNode(error.getType());
+			writeSimpleNode(error.getMessage());
+		}
+	}
+
+	private void writeOMStructure(OMStructure omStructure) throws IOException {
+		if (!writePresence(omStructure)) return;
+
+		if (writeSize(omStructure.getClassTypes())) {
+			for (ClassType classType: omStructure.getClassTypes()) {
+				if (!writePresence(classType)) continue;
+				writeString(classType.getId());
+				writeString(classType.getParentId());
+				writeString(classType.getName());
+			}
+		}
+		if (writeSize(omStructure.getFacets())) {
+			for (Field field: omStructure.getFacets()) writeField(field);
+		}
+		if (writeSize(omStructure.getAttributes())) {
+			for (AttributeType attributeType: omStructure.getAttributes()) {
+				if (!writePresence(attributeType)) continue;
+				writeString(attributeType.getId());
+				writeString(attributeType.getName());
+			}
+		}
+		if (writeSize(omStructure.getNotes())) {
+			for (NoteType noteType: omStructure.getNotes()) {
+				if (!writePresence(noteType)) continue;
+				writeString(noteType.getId());
+				writeString(noteType.getName());
+			}
+		}
+		if (writeSize(omStructure.getChoices())) {
+			for (ChoiceType choiceType: omStructure.getChoices()) {
+				if (!writePresence(choiceType)) continue;
+				writeString(choiceType.getId());
+				writeString(choiceType.getName());
+				if (writeSize(choiceType.getChoiceValues())) {
+					for (ChoiceValue choiceValue: choiceType.getChoiceValues()) {
+						if (!writePresence(choiceValue)) continue;
+						writeString(choiceValue.getId());
+						writeString(choiceValue.getValue());
+					}
+				}
+			}
+		}
+		writeRelationTypes(omStructure.getEquivalenceRelations());
+		writeRelationTypes(omStructure.getHierarchicalRelations());
+		writeRelationTypes(omStructure.getAssociativeRelations());
+		if (writeSize(omStructure.getUsers())) {
+			for (User user: omStructure.getUsers()) {
+				if (!writePresence(user)) continue;
+				writeString(user.getId());
+				writeString(user.getName());
+			}
+		}
+	}
+
+	private void writeRelationTypes(List<RelationType> relationTypes) throws IOException {
+		if (!writeSize(relationTypes)) return;
+		for (RelationType relationType: relationTypes) {
+			if (!writePresence(relationType)) continue;
+			out.writeBoolean(relationType.isSymmetric());
+			writeString(relationType.getId());
+			writeString(relationType.getName());
+			writeString(relationType.getReverseName());
+			writeString(relationType.getDisplayName());
+			writeString(relationType.getReverseDisplayName());
+			writeString(relationType.getScopeNote());
+			writeString(relationType.getAbbreviation());
+			writeString(relationType.getReverseAbbreviation());
+		}
+	}
+
+	private void writeDisplayName(DisplayName displayName) throws IOException {
+		if (!writePresence(displayName)) return;
+		writeString(displayName.getValue());
+		out.writeBoolean(displayName.isMatchOnNPT());
+	}
+
+	private void writeTermClasses(TermClasses termClasses) throws IOException {
+		if (writePresence(termClasses) && writeSize(termClasses.getTermClasses())) {
+			for (TermClass termClass: termClasses.getTermClasses()) writeSimpleNode(termClass);
+		}
+	}
+
+	private void writeFacets(Facets facets) throws IOException {
+		if (writePresence(facets) && writeSize(facets.getFacets())) {
+			for (Facet facet: facets.getFacets()) writeFacet(facet);
+		}
+	}
+
+	private void writeFacet(Facet facet) throws IOException {
+		if (!writePresence(facet)) return;
+		writeString(facet.getName());
+		writeString(facet.getId());
+	}
+
+	private void writeSynonyms(Synonyms synonyms) throws IOException {
+		if (!writePresence(synonyms)) return;
+		writeString(synonyms.getType());
+		writeString(synonyms.getAbbreviation());
+		if (writeSize(synonyms.getSynonyms())) {
+			for (Synonym synonym: synonyms.getSynonyms()) {
+				if (!writePresence(synonym)) continue;
+				writeString(synonym.getValue());
+				writeString(synonym.getId());
+				writeRelationMetadata(synonym.getRelationMetadata());
+			}
+		}
+	}
+
+	private void writeFieldList(AbstractFieldListElement element) throws IOException {
+		if (!writePresence(element)) return;
+		writeString(element.getType());
+		writeString(element.getAbbreviation());
+		if (writeSize(element.getFields())) {
+			for (Field field: element.getFields()) writeField(field);
+		}
+	}
+
+	private void writeFieldMap(AbstractFieldMapElement element) throws IOException {
+		if (!writePresence(element)) return;
+		writeString(element.getType());
+		writeString(element.getAbbreviation());
+		writeSignedVarInt(element.getCount());
+		if (writeSize(element.getFields())) {
+			for (Map.Entry<String, Field> entry: element.getFields().entrySet()) {
+				writeString(entry.getKey());
+				writeField(entry.getValue());
+			}
+		}
+	}
+
+	private void writeField(Field field) throws IOException {
+		if (!writePresence(field)) return;
+		writeString(field.getValue());
+		writeSignedVarInt(field.getFrequency());
+		writeString(field.getId());
+		writeString(field.getZid());
+		writeString(field.getTermClass());
+		writeString(field.getName());
+		writeStrings(field.getFacetIds());
+		writeStrings(field.getFacets());
+		writeRelationMetadata(field.getRelationMetadata());
+	}
+
+	private void writeRelationMetadata(RelationMetadata relationMetadata) throws IOException {
+		if (!writePresence(relationMetadata)) return;
+		writeFieldMap(relationMetadata.getAttribute());
+		writeFieldMap(relationMetadata.getMetadata());
+	}
+
+	private void writeSimpleNode(AbstractSimpleNode node) throws IOException {
+		if (!writePresence(node)) return;
+		writeString(node.getValue());
+	}
+
+	private void writeStrings(Collection<String> strings) throws IOException {
+		if (!writeSize(strings)) return;
+		for (String string: strings) writeString(string);
+	}
+
+	//----------------------------------------------------------------------
+	// Primitives
+	//----------------------------------------------------------------------
+	private boolean writePresence(Object object) throws IOException {
+		out.writeBoolean(object != null);
+		return object != null;
+	}
+
+	/** Sizes are written offset by one so that a null collection can be told apart from an empty one */
+	private boolean writeSize(Collection<?> collection) throws IOException {
+		if (collection == null) {
+			writeVarInt(0);
+			return false;
+		}
+		writeVarInt(collection.size() + 1);
+		return true;
+	}
+
+	private boolean writeSize(Map<?, ?> map) throws IOException {
+		if (map == null) {
+			writeVarInt(0);
+			return false;
+		}
+		writeVarInt(map.size() + 1);
+		return true;
+	}
+
+	private void writeString(String string) throws IOException {
+		if (string == null) {
+			writeVarInt(BinaryCodec.STRING_NULL);
+			return;
+		}
+		Integer reference = dictionary.get(string);
+		if (reference != null) {
+			writeVarInt(reference + BinaryCodec.STRING_REFERENCE_BASE);
+			return;
+		}
+
+		writeVarInt(BinaryCodec.STRING_LITERAL);
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length);
+		out.write(bytes);
+
+		if ((dictionary.size() < BinaryCodec.MAX_DICTIONARY_SIZE)
+				&& (string.length() <= BinaryCodec.MAX_DICTIONARY_STRING_LENGTH)) {
+			dictionary.put(string, dictionary.size());
+		}
+	}
+
+	private void writeSignedVarInt(int value) throws IOException {
+		writeVarInt((value << 1) ^ (value >> 31));
+	}
+
+	private void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+}
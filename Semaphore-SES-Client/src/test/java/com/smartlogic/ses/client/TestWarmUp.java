@@ -0,0 +1,135 @@
+package com.smartlogic.ses.client;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.smartlogic.ses.client.cache.StructureCache;
+import com.smartlogic.ses.client.exceptions.SESException;
+
+import junit.framework.TestCase;
+
+public class TestWarmUp extends TestCase {
+
+	private static class StubClient extends SESClient {
+		private final List<String> requests = new ArrayList<String>();
+
+		@Override
+		protected Semaphore getSemaphore(URL url) throws SESException {
+			requests.add(url.toExternalForm());
+			Semaphore semaphore = new Semaphore();
+			if (url.toExternalForm().contains("service=versions")) {
+				VersionInfo versionInfo = new VersionInfo();
+				versionInfo.setVersion("4.2.5");
+				semaphore.setVersionInfo(versionInfo);
+			} else if (url.toExternalForm().contains("service=modelslist")) {
+				List<Model> models = new ArrayList<Model>();
+				models.add(new Model());
+				semaphore.setModels(models);
+			}
+			return semaphore;
+		}
+
+		@Override
+		protected byte[] fetchResponse(URL url) throws SESException {
+			requests.add(url.toExternalForm());
+			try {
+				return "<SEMAPHORE><OM_STRUCTURE/></SEMAPHORE>".getBytes("UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new SESException(e.getMessage());
+			}
+		}
+	}
+
+	public void testWarmUpProbesAndPrefetches() throws Exception {
+		StubClient client = new StubClient();
+		client.setUrl("http://localhost/ses");
+		client.setOntology("IPSV");
+		client.setPrefetchModels(true);
+		client.setPrefetchStructure(true);
+		client.setStructureCache(new StructureCache(60000));
+
+		client.warmUp();
+		assertEquals("Version, models, statistics and structure", 4, client.requests.size());
+		assertEquals("Version probed", "4.2.5", client.getServerVersionInfo().getVersion());
+
+		Collection<Model> models = client.listModels();
+		assertEquals("Models", 1, models.size());
+		assertNotNull("Structure", client.getStructure());
+		assertEquals("Served from warm-up", 4, client.requests.size());
+
+		// Only the first call is served from warm-up, so later changes are seen
+		client.listModels();
+		assertEquals("Models asked for again", 5, client.requests.size());
+
+		// Date filters no longer need to ask for the version
+		SESFilter sesFilter = new SESFilter();
+		sesFilter.setModifiedAfterDate(new java.util.Date());
+		client.getTermDetails("1", SESClient.DetailLevel.FULL, sesFilter);
+		assertEquals("Only the term request", 6, client.requests.size());
+		client.close();
+	}
+
+	public void testLazyVersionProbeHappensOnce() throws Exception {
+		StubClient client = new StubClient();
+		client.setUrl("http://localhost/ses");
+		client.setOntology("IPSV");
+		assertNull("Not yet probed", client.getServerVersionInfo());
+
+		SESFilter sesFilter = new SESFilter();
+		sesFilter.setModifiedAfterDate(new java.util.Date());
+		client.getTermDetails("1", SESClient.DetailLevel.FULL, sesFilter);
+		client.getTermDetails("2", SESClient.DetailLevel.FULL, sesFilter);
+		assertEquals("One version probe and two term requests", 3, client.requests.size());
+		assertNotNull("Probed", client.getServerVersionInfo());
+		client.close();
+	}
+
+	public void testWarmUpOpensConnections() throws Exception {
+		final AtomicInteger accepted = new AtomicInteger();
+		final ServerSocket serverSocket = new ServerSocket(0);
+		final List<Socket> sockets = new ArrayList<Socket>();
+		Thread acceptor = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						sockets.add(serverSocket.accept());
+						accepted.incrementAndGet();
+					}
+				} catch (IOException e) {
+					// Server socket closed
+				}
+			}
+		};
+		acceptor.start();
+
+		try {
+			StubClient client = new StubClient();
+			client.setUrl("http://localhost:" + serverSocket.getLocalPort() + "/ses");
+			client.setOntology("IPSV");
+			client.setMaxConnections(3);
+			client.setWarmUpConnections(5);
+			client.warmUp();
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while ((accepted.get() < 3) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10);
+			}
+			assertEquals("Capped at the pool size", 3, accepted.get());
+			client.close();
+		} finally {
+			serverSocket.close();
+			acceptor.join();
+			for (Socket socket: sockets) {
+				socket.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package com.smartlogic.ses.client.atoz;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.smartlogic.ses.client.Id;
+import com.smartlogic.ses.client.Name;
+import com.smartlogic.ses.client.SESClient;
+import com.smartlogic.ses.client.Semaphore;
+import com.smartlogic.ses.client.Term;
+import com.smartlogic.ses.client.Terms;
+import com.smartlogic.ses.client.exceptions.SESException;
+
+import junit.framework.TestCase;
+
+public class TestAtoZIndexBuilder extends TestCase {
+
+	private static Term makeTerm(String id, String name) {
+		Term term = new Term();
+		Id termId = new Id();
+		termId.setValue(id);
+		term.setId(termId);
+		Name termName = new Name();
+		termName.setValue(name);
+		term.setName(termName);
+		return term;
+	}
+
+	private static class StubClient extends SESClient {
+		private final AtomicInteger requests = new AtomicInteger();
+
+		@Override
+		protected Semaphore getSemaphore(URL url) throws SESException {
+			requests.incrementAndGet();
+			String query = url.getQuery();
+			String letter = query.substring(query.indexOf("&az=") + 4).split("&")[0];
+			if ("fail".equals(letter)) {
+				throw new SESException("Server unavailable");
+			}
+			Map<String, Term> termMap = new LinkedHashMap<String, Term>();
+			if ("E".equals(letter)) {
+				termMap.put("e1", makeTerm("e1", "eagle"));
+				termMap.put("e2", makeTerm("e2", "École"));
+				termMap.put("e3", makeTerm("e3", "Economy"));
+			} else if ("A".equals(letter)) {
+				termMap.put("a2", makeTerm("a2", "apple"));
+				termMap.put("a1", makeTerm("a1", "Aardvark"));
+				termMap.put("e3", makeTerm("e3", "Economy"));
+			}
+			Terms terms = new Terms();
+			terms.setTerms(termMap);
+			Semaphore semaphore = new Semaphore();
+			semaphore.setTerms(terms);
+			return semaphore;
+		}
+	}
+
+	private static StubClient makeClient() {
+		StubClient client = new StubClient();
+		client.setUrl("http://localhost/ses");
+		client.setOntology("IPSV");
+		return client;
+	}
+
+	private static String names(List<Term> terms) {
+		StringBuilder stringBuilder = new StringBuilder();
+		for (Term term: terms) {
+			if (stringBuilder.length() > 0) stringBuilder.append(",");
+			stringBuilder.append(term.getName().getValue());
+		}
+		return stringBuilder.toString();
+	}
+
+	public void testBuildSortsAndPages() throws Exception {
+		StubClient client = makeClient();
+		AtoZIndexBuilder builder = new AtoZIndexBuilder(client);
+		builder.setLocale(Locale.ENGLISH);
+		AtoZIndex index = builder.build();
+
+		assertEquals("Every letter requested", AtoZIndexBuilder.DEFAULT_LETTERS.size(), client.requests.get());
+		assertEquals("Sorted ignoring case, accents after plain letters", "Aardvark,apple,eagle,École,Economy", names(index.getTerms()));
+		assertEquals("Letter", "eagle,École,Economy", names(index.getTerms("E")));
+		assertEquals("Empty letter", 0, index.getTerms("B").size());
+		assertEquals("Page", "apple,eagle", names(index.getPage(1, 2)));
+		assertEquals("Last page", "Economy", names(index.getPage(4, 10)));
+		assertEquals("Past the end", 0, index.getPage(10, 10).size());
+
+		try {
+			index.getTerms().add(makeTerm("z", "zebra"));
+			fail("Index modified");
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+		client.close();
+	}
+
+	public void testIndexCached() throws Exception {
+		StubClient client = makeClient();
+		AtoZIndexBuilder builder = new AtoZIndexBuilder(client);
+		builder.setLetters(Arrays.asList("A", "E"));
+
+		AtoZIndex index = builder.getIndex();
+		assertSame("Cached", index, builder.getIndex());
+		assertEquals("Requests", 2, client.requests.get());
+
+		client.setLanguage("fr");
+		assertNotSame("Keyed by language", index, builder.getIndex());
+		assertEquals("Requests", 4, client.requests.get());
+		client.close();
+	}
+
+	public void testFailedLetter() throws Exception {
+		StubClient client = makeClient();
+		AtoZIndexBuilder builder = new AtoZIndexBuilder(client);
+		builder.setLetters(Arrays.asList("A", "fail"));
+		try {
+			builder.build();
+			fail("Failure ignored");
+		} catch (SESException e) {
+			assertEquals("Server unavailable", e.getMessage());
+		}
+		client.close();
+	}
+}
@@ -0,0 +1,106 @@
+package com.smartlogic.ses.client.cache;
+
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.smartlogic.ses.client.Id;
+import com.smartlogic.ses.client.Name;
+import com.smartlogic.ses.client.SESClient;
+import com.smartlogic.ses.client.SESFilter;
+import com.smartlogic.ses.client.Semaphore;
+import com.smartlogic.ses.client.Term;
+import com.smartlogic.ses.client.Terms;
+import com.smartlogic.ses.client.exceptions.SESException;
+
+import junit.framework.TestCase;
+
+public class TestOffHeapTermCache extends TestCase {
+
+	private static Term makeTerm(String id, String name) {
+		Term term = new Term();
+		Id termId = new Id();
+		termId.setValue(id);
+		term.setId(termId);
+		Name termName = new Name();
+		termName.setValue(name);
+		term.setName(termName);
+		return term;
+	}
+
+	public void testPutAndGet() throws Exception {
+		OffHeapTermCache cache = new OffHeapTermCache(2 * 4096, 4096);
+		cache.put("a", makeTerm("1", "Markets"));
+
+		Term term = cache.get("a");
+		assertEquals("Name", "Markets", term.getName().getValue());
+		assertNotSame("Decoded on each read", term, cache.get("a"));
+		assertNull("Missing", cache.get("b"));
+		assertEquals("Hits", 2, cache.getHitCount());
+		assertEquals("Misses", 1, cache.getMissCount());
+
+		cache.invalidate("a");
+		assertNull("Invalidated", cache.get("a"));
+	}
+
+	public void testEviction() throws Exception {
+		OffHeapTermCache cache = new OffHeapTermCache(4 * 1024, 1024);
+		for (int i = 0; i < 500; i++) {
+			cache.put("key" + i, makeTerm(Integer.toString(i), "Term " + i));
+		}
+		assertNotNull("Most recent kept", cache.get("key499"));
+		assertNull("Oldest evicted", cache.get("key0"));
+		assertTrue("Evictions counted", cache.getEvictionCount() > 0);
+		assertTrue("Bounded", cache.size() < 500);
+	}
+
+	public void testSecondChance() throws Exception {
+		OffHeapTermCache cache = new OffHeapTermCache(3 * 1024, 1024);
+		cache.put("hot", makeTerm("hot", "Hot term"));
+		// Fill the first segment and keep reading the hot entry while later segments fill up
+		for (int i = 0; i < 400; i++) {
+			cache.put("key" + i, makeTerm(Integer.toString(i), "Term " + i));
+			assertNotNull("Hot term kept after " + i + " puts", cache.get("hot"));
+		}
+	}
+
+	public void testOversizedTermNotCached() throws Exception {
+		OffHeapTermCache cache = new OffHeapTermCache(2 * 64, 64);
+		StringBuilder longName = new StringBuilder();
+		for (int i = 0; i < 100; i++) longName.append("long name ");
+		cache.put("big", makeTerm("big", longName.toString()));
+		assertNull("Too large", cache.get("big"));
+	}
+
+	public void testClientUsesCache() throws Exception {
+		final AtomicInteger requests = new AtomicInteger();
+		SESClient client = new SESClient() {
+			@Override
+			protected Semaphore getSemaphore(URL url) throws SESException {
+				requests.incrementAndGet();
+				Map<String, Term> termMap = new LinkedHashMap<String, Term>();
+				termMap.put("1", makeTerm("1", "Markets"));
+				Terms terms = new Terms();
+				terms.setTerms(termMap);
+				Semaphore semaphore = new Semaphore();
+				semaphore.setTerms(terms);
+				return semaphore;
+			}
+		};
+		client.setUrl("http://localhost/ses");
+		client.setOntology("IPSV");
+		client.setTermCache(new OffHeapTermCache(2 * 4096, 4096));
+
+		assertEquals("First fetch", "Markets", client.getTermDetails("1", SESClient.DetailLevel.FULL).getName().getValue());
+		assertEquals("Second fetch", "Markets", client.getTermDetails("1", SESClient.DetailLevel.FULL).getName().getValue());
+		assertEquals("Served from cache", 1, requests.get());
+
+		client.getTermDetails("1", SESClient.DetailLevel.MINIMAL);
+		assertEquals("Detail level is part of the key", 2, requests.get());
+
+		client.getTermDetails("1", SESClient.DetailLevel.FULL, new SESFilter());
+		assertEquals("Filtered requests bypass the cache", 3, requests.get());
+		client.close();
+	}
+}
@@ -0,0 +1,132 @@
+package com.smartlogic.ses.client.cache;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.smartlogic.ses.client.OMStructure;
+import com.smartlogic.ses.client.SESClient;
+import com.smartlogic.ses.client.exceptions.SESException;
+
+import junit.framework.TestCase;
+
+public class TestStructureCache extends TestCase {
+
+	private static class StubClient extends SESClient {
+		private final List<String> requests = new ArrayList<String>();
+		private String response = "<SEMAPHORE><OM_STRUCTURE><TERM_CLASSES/></OM_STRUCTURE></SEMAPHORE>";
+		private String statistics = getStatistics(10);
+
+		private static String getStatistics(int termCount) {
+			return "<SEMAPHORE><STATS indexes=\"1\" requests=\"5\"><Indexes><Index name=\"IPSV\"><Labels><Preferred>"
+					+ "<Language code=\"en\"><Label count=\"" + termCount + "\"/></Language>"
+					+ "</Preferred></Labels></Index></Indexes></STATS></SEMAPHORE>";
+		}
+
+		private int getStructureRequestCount() {
+			int count = 0;
+			for (String request: requests) {
+				if (!request.contains("service=stats")) count++;
+			}
+			return count;
+		}
+
+		@Override
+		protected byte[] fetchResponse(URL url) throws SESException {
+			requests.add(url.toExternalForm());
+			try {
+				if (url.toExternalForm().contains("service=stats")) {
+					return statistics.getBytes("UTF-8");
+				}
+				return response.getBytes("UTF-8");
+			} catch (java.io.UnsupportedEncodingException e) {
+				throw new SESException(e.getMessage());
+			}
+		}
+	}
+
+	private static StubClient makeClient(StructureCache structureCache) {
+		StubClient client = new StubClient();
+		client.setUrl("http://localhost/ses");
+		client.setOntology("IPSV");
+		client.setStructureCache(structureCache);
+		return client;
+	}
+
+	public void testDisabledByDefault() throws Exception {
+		SESClient client = new SESClient();
+		assertNull("Not cached unless asked for", client.getStructureCache());
+		client.close();
+	}
+
+	public void testUnchangedStatisticsNotDownloadedAgain() throws Exception {
+		StructureCache structureCache = new StructureCache();
+		StubClient client = makeClient(structureCache);
+
+		OMStructure first = client.getStructure();
+		OMStructure second = client.getStructure();
+		assertSame("Same structure", first, second);
+		assertEquals("Statistics checked each time", 3, client.requests.size());
+		assertEquals("Structure downloaded once", 1, client.getStructureRequestCount());
+		assertEquals("Parsed once", 1, structureCache.getParseCount());
+		assertEquals("Statistics matched", 1, structureCache.getStatisticsMatchCount());
+
+		// New statistics with the same structure download it again, but do not parse it
+		client.statistics = StubClient.getStatistics(11);
+		assertSame("Same content", first, client.getStructure());
+		assertEquals("Downloaded again", 2, client.getStructureRequestCount());
+		assertEquals("Revalidated", 1, structureCache.getRevalidationCount());
+		assertSame("Under the new statistics", first, client.getStructure());
+		assertEquals("Not downloaded again", 2, client.getStructureRequestCount());
+
+		client.statistics = StubClient.getStatistics(12);
+		client.response = "<SEMAPHORE><OM_STRUCTURE><TERM_FACETS/></OM_STRUCTURE></SEMAPHORE>";
+		assertNotSame("Changed structure", first, client.getStructure());
+		assertEquals("Parsed again", 2, structureCache.getParseCount());
+		client.close();
+	}
+
+	public void testWithoutStatistics() throws Exception {
+		StructureCache structureCache = new StructureCache();
+		StubClient client = makeClient(structureCache);
+		client.statistics = "<SEMAPHORE/>";
+
+		OMStructure first = client.getStructure();
+		assertSame("Same structure", first, client.getStructure());
+		assertEquals("Downloaded each time", 2, client.getStructureRequestCount());
+		assertEquals("Parsed once", 1, structureCache.getParseCount());
+		assertEquals("Revalidated", 1, structureCache.getRevalidationCount());
+		client.close();
+	}
+
+	public void testRevalidateInterval() throws Exception {
+		StructureCache structureCache = new StructureCache(60000);
+		StubClient client = makeClient(structureCache);
+
+		OMStructure first = client.getStructure();
+		assertSame("Served without a request", first, client.getStructure());
+		assertEquals("Statistics and structure", 2, client.requests.size());
+		assertEquals("Hit", 1, structureCache.getHitCount());
+		client.close();
+	}
+
+	public void testKeyedByOntologyAndLanguage() throws Exception {
+		StructureCache structureCache = new StructureCache(60000);
+		StubClient client = makeClient(structureCache);
+
+		client.getStructure();
+		client.setLanguage("fr");
+		client.getStructure();
+		client.setOntology("Other");
+		client.getStructure();
+		assertEquals("One download per ontology and language", 3, client.getStructureRequestCount());
+		assertTrue("Language in URL", client.requests.get(3).endsWith("/IPSV/fr"));
+		client.close();
+	}
+
+	public void testCacheDisabled() throws Exception {
+		StubClient client = makeClient(null);
+		assertNotSame("Parsed each time", client.getStructure(), client.getStructure());
+		client.close();
+	}
+}
@@ -0,0 +1,159 @@
+package com.smartlogic.ses.client.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.bind.JAXBContext;
+
+import com.smartlogic.ses.client.Facet;
+import com.smartlogic.ses.client.Facets;
+import com.smartlogic.ses.client.Semaphore;
+import com.smartlogic.ses.client.Term;
+import com.smartlogic.ses.client.TermHint;
+import com.smartlogic.ses.client.TermHints;
+import com.smartlogic.ses.client.Terms;
+import com.smartlogic.ses.client.VersionInfo;
+
+import junit.framework.TestCase;
+
+public class TestBinaryCodec extends TestCase {
+
+	private static Term term;
+
+	public void setUp() throws Exception {
+		if (term == null) {
+			term = (Term) JAXBContext.newInstance(Term.class).createUnmarshaller().unmarshal(new File("src/test/resources/TestTerm.xml"));
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	public void testTermRoundTrip() throws Exception {
+		byte[] encoded = BinaryCodec.encode(term);
+		Term decoded = BinaryCodec.decodeTerm(encoded);
+
+		assertEquals("Name", term.getName().getValue(), decoded.getName().getValue());
+		assertEquals("Id", term.getId().getValue(), decoded.getId().getValue());
+		assertEquals("Zid falls back to id", decoded.getId(), decoded.getZid());
+		assertEquals("Paths", term.getPaths().size(), decoded.getPaths().size());
+		assertEquals("Hierarchies", term.getHierarchies().size(), decoded.getHierarchies().size());
+		assertEquals("Synonyms", "Cattle Markets", decoded.getSynonymsList().get(0).getSynonyms().get(1).getValue());
+		assertSame("Deprecated synonyms", decoded.getSynonymsList().get(decoded.getSynonymsList().size() - 1), decoded.getSynonyms());
+		assertEquals("Weight", term.getWeight(), decoded.getWeight());
+		assertEquals("Alphabetical fields rebuilt",
+				term.getHierarchies().get(0).getFields().size(),
+				decoded.getHierarchies().get(0).getAlphabeticalFields().size());
+
+		assertTrue("Re-encoding is stable", Arrays.equals(encoded, BinaryCodec.encode(decoded)));
+	}
+
+	@SuppressWarnings("deprecation")
+	public void testTermHintRoundTrip() throws Exception {
+		TermHint termHint = new TermHint();
+		termHint.setName("Appointments procedure");
+		termHint.setId("346a90a2-c8e9-523f-8a32-58fe02ba6efe");
+		termHint.setWeight(0.5f);
+		termHint.setTermClass("Concept");
+		Facet facet = new Facet();
+		facet.setName("Government, politics and public administration");
+		facet.setId("ed296c39-8be6-4257-b44b-4bae4ad2d9c9");
+		termHint.addFacet(facet);
+		termHint.setFacet(facet);
+
+		TermHint decoded = BinaryCodec.decodeTermHint(BinaryCodec.encode(termHint));
+
+		assertEquals("Name", termHint.getName(), decoded.getName());
+		assertEquals("Weight", 0.5f, decoded.getWeight());
+		assertEquals("Facets", 1, decoded.getFacets().getFacets().size());
+		assertSame("Deprecated facet", decoded.getFacets().getFacets().get(0), decoded.getFacet());
+		assertNull("Values", decoded.getValues());
+	}
+
+	public void testSemaphoreRoundTrip() throws Exception {
+		Semaphore semaphore = new Semaphore();
+		Terms terms = new Terms();
+		Map<String, Term> termMap = new LinkedHashMap<String, Term>();
+		termMap.put(term.getId().getValue(), term);
+		terms.setTerms(termMap);
+		semaphore.setTerms(terms);
+		TermHints termHints = new TermHints();
+		termHints.setTermHints(new LinkedHashMap<String, TermHint>());
+		semaphore.setTermHints(termHints);
+		VersionInfo versionInfo = new VersionInfo();
+		versionInfo.setVersion("4.2.5");
+		semaphore.setVersionInfo(versionInfo);
+
+		Semaphore decoded = BinaryCodec.decodeSemaphore(BinaryCodec.encode(semaphore));
+
+		assertEquals("Terms", 1, decoded.getTerms().getTerms().size());
+		assertNotNull("Term", decoded.getTerms().getTerms().get(term.getId().getValue()));
+		assertEquals("Term hints", 0, decoded.getTermHints().getTermHints().size());
+		assertEquals("Version", "4.2.5", decoded.getVersionInfo().getVersion());
+		assertNull("Browse term", decoded.getBrowseTerm());
+		assertNull("Structure", decoded.getOmStructure());
+	}
+
+	public void testStreamingAndDictionary() throws Exception {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try (BinaryWriter writer = new BinaryWriter(byteArrayOutputStream)) {
+			for (int i = 0; i < 100; i++) {
+				writer.writeTerm(term);
+			}
+		}
+		byte[] streamed = byteArrayOutputStream.toByteArray();
+
+		// Repeated strings are shared, so a stream of copies is much smaller than the copies encoded separately
+		assertTrue("Dictionary encoding", streamed.length < 100 * BinaryCodec.encode(term).length / 2);
+
+		int count = 0;
+		try (BinaryReader reader = new BinaryReader(new ByteArrayInputStream(streamed))) {
+			Term decoded;
+			while ((decoded = reader.readTerm()) != null) {
+				assertEquals("Streamed term", term.getName().getValue(), decoded.getName().getValue());
+				count++;
+			}
+		}
+		assertEquals("Streamed terms", 100, count);
+	}
+
+	public void testSmallerThanJavaSerialization() throws Exception {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
+			objectOutputStream.writeObject(term);
+		}
+		assertTrue("Binary encoding is smaller", BinaryCodec.encode(term).length < byteArrayOutputStream.size());
+	}
+
+	public void testWrongRecordType() throws Exception {
+		try {
+			BinaryCodec.decodeTermHint(BinaryCodec.encode(term));
+			fail("Term read as term hint");
+		} catch (StreamCorruptedException e) {
+			// Expected
+		}
+	}
+
+	public void testRejectsForeignData() throws Exception {
+		try {
+			BinaryCodec.decodeTerm("<?xml version=\"1.0\"?>".getBytes("UTF-8"));
+			fail("XML read as binary");
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	public void testNullFacetList() throws Exception {
+		TermHint termHint = new TermHint();
+		termHint.setFacets(new Facets());
+		termHint.getFacets().setFacets(null);
+		TermHint decoded = BinaryCodec.decodeTermHint(BinaryCodec.encode(termHint));
+		assertNotNull("Facets", decoded.getFacets());
+		assertNull("Facet list", decoded.getFacets().getFacets());
+	}
+}
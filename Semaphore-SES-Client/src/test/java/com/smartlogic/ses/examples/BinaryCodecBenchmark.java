@@ -0,0 +1,80 @@
+package com.smartlogic.ses.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import javax.xml.bind.JAXBContext;
+
+import com.smartlogic.ses.client.Term;
+import com.smartlogic.ses.client.codec.BinaryReader;
+import com.smartlogic.ses.client.codec.BinaryWriter;
+
+/**
+ * Compares the binary codec with Java serialization for a stream of terms.
+ *
+ * Run with the module directory as the working directory; the optional argument is the number of terms per run.
+ */
+public class BinaryCodecBenchmark {
+
+	private static final int WARMUP_RUNS = 5;
+	private static final int MEASURED_RUNS = 10;
+
+	public static void main(String[] args) throws Exception {
+		int termCount = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+		Term term = (Term) JAXBContext.newInstance(Term.class).createUnmarshaller().unmarshal(new File("src/test/resources/TestTerm.xml"));
+
+		for (int run = 0; run < WARMUP_RUNS; run++) {
+			runBinary(term, termCount);
+			runSerialization(term, termCount);
+		}
+
+		long binaryNanos = 0;
+		long serializationNanos = 0;
+		int binarySize = 0;
+		int serializationSize = 0;
+		for (int run = 0; run < MEASURED_RUNS; run++) {
+			long start = System.nanoTime();
+			binarySize = runBinary(term, termCount);
+			binaryNanos += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			serializationSize = runSerialization(term, termCount);
+			serializationNanos += System.nanoTime() - start;
+		}
+
+		System.out.println(String.format("%d terms per run, %d runs", termCount, MEASURED_RUNS));
+		System.out.println(String.format("Binary codec:       %8d bytes %8.1f ms per run", binarySize, binaryNanos / 1e6 / MEASURED_RUNS));
+		System.out.println(String.format("Java serialization: %8d bytes %8.1f ms per run", serializationSize, serializationNanos / 1e6 / MEASURED_RUNS));
+	}
+
+	private static int runBinary(Term term, int termCount) throws Exception {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try (BinaryWriter writer = new BinaryWriter(byteArrayOutputStream)) {
+			for (int i = 0; i < termCount; i++) writer.writeTerm(term);
+		}
+		try (BinaryReader reader = new BinaryReader(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()))) {
+			while (reader.readTerm() != null) {
+				// Decode everything
+			}
+		}
+		return byteArrayOutputStream.size();
+	}
+
+	private static int runSerialization(Term term, int termCount) throws Exception {
+		// Reset between terms so each is written in full, as it would be for distinct terms
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
+			for (int i = 0; i < termCount; i++) {
+				objectOutputStream.writeObject(term);
+				objectOutputStream.reset();
+			}
+		}
+		try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()))) {
+			for (int i = 0; i < termCount; i++) objectInputStream.readObject();
+		}
+		return byteArrayOutputStream.size();
+	}
+}